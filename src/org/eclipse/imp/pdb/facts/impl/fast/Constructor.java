@@ -11,7 +11,6 @@
 package org.eclipse.imp.pdb.facts.impl.fast;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -81,21 +80,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	public Type getConstructorType(){
 	  if (constructorType.getAbstractDataType().isParameterized()) {
       // this assures we always have the most concrete type for constructors.
-      Type[] actualTypes = new Type[children.length];
-      for (int i = 0; i < children.length; i++) {
-        actualTypes[i] = children[i].getType();
-      }
-    
-      Map<Type,Type> bindings = new HashMap<Type,Type>();
-      constructorType.getFieldTypes().match(TypeFactory.getInstance().tupleType(actualTypes), bindings);
-      
-      for (Type field : constructorType.getAbstractDataType().getTypeParameters()) {
-        if (!bindings.containsKey(field)) {
-          bindings.put(field, TypeFactory.getInstance().voidType());
-        }
-      }
-      
-      return constructorType.instantiate(bindings);
+      return TypeFactory.getInstance().instantiateConstructor(constructorType, children);
     }
 	  
 		return constructorType;
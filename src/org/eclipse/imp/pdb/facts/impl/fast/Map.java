@@ -17,6 +17,7 @@ import java.util.Map.Entry;
 import org.eclipse.imp.pdb.facts.IMap;
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.impl.AbstractValue;
+import org.eclipse.imp.pdb.facts.impl.func.MapFunctions;
 import org.eclipse.imp.pdb.facts.impl.util.collections.ShareableValuesHashMap;
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeFactory;
@@ -278,6 +279,9 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 			
 			return data.isEqual(otherMap.data);
 		}
+		else if (value instanceof IMap) {
+			return MapFunctions.isEqual(ValueFactory.getInstance(), this, value);
+		}
 		
 		return false;
 	}
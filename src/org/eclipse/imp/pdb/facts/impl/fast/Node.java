@@ -36,6 +36,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	
 	protected final String name;
 	protected final IValue[] children;
+	private int hashCode = 0;
 
 	/*package*/ static INode newNode(String name, IValue[] children) {
 		return new Node(name, children);
@@ -128,13 +129,15 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public int hashCode(){
-		int hash = name.hashCode();
-		
-		for(int i = children.length - 1; i >= 0; i--){
-			hash = (hash << 23) + (hash >> 5);
-			hash ^= children[i].hashCode();
+		if (hashCode == 0) {
+			hashCode = name.hashCode();
+			
+			for(int i = children.length - 1; i >= 0; i--){
+				hashCode = (hashCode << 23) + (hashCode >> 5);
+				hashCode ^= children[i].hashCode();
+			}
 		}
-		return hash;
+		return hashCode;
 	}
 
 	@Override
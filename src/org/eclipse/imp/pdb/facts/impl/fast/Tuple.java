@@ -30,6 +30,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	
 	protected final Type tupleType;
 	protected final IValue[] elements;
+	private int hashCode = 0;
 	
 	/*package*/ static ITuple newTuple(Type tupleType, IValue[] elements) {
 		return new Tuple(tupleType, elements);
@@ -140,14 +141,17 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	}
 	
 	public int hashCode(){
-		int hash = 1331;
-		
-		for(int i = elements.length - 1; i >= 0; i--){
-			hash -= (hash << 19) + (hash >>> 8);
-			hash ^= elements[i].hashCode();
+		if(hashCode == 0){
+			int hash = 1331;
+			
+			for(int i = elements.length - 1; i >= 0; i--){
+				hash -= (hash << 19) + (hash >>> 8);
+				hash ^= elements[i].hashCode();
+			}
+			
+			hashCode = hash - (hash << 7);
 		}
-		
-		return hash - (hash << 7);
+		return hashCode;
 	}
 
 	public boolean equals(Object o){
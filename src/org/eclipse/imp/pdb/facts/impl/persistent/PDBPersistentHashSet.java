@@ -11,8 +11,10 @@
  *******************************************************************************/
 package org.eclipse.imp.pdb.facts.impl.persistent;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 
 import org.eclipse.imp.pdb.facts.ISet;
@@ -193,7 +195,8 @@ public final class PDBPersistentHashSet extends AbstractSet {
 
 			final ImmutableSet<IValue> one;
 			final ImmutableSet<IValue> two;
-			AbstractTypeBag bag;
+			final AbstractTypeBag bag;
+			final AbstractTypeBag twoBag;
 			final ISet def;
 			
 			if (that.size() >= this.size()) {
@@ -201,25 +204,28 @@ public final class PDBPersistentHashSet extends AbstractSet {
 				one = that.content;
 				bag = that.elementTypeBag;
 				two = this.content;
+				twoBag = this.elementTypeBag;
 			} else {
 				def = this;
 				one = this.content;
 				bag = this.elementTypeBag;
 				two = that.content;
+				twoBag = that.elementTypeBag;
 			}
 
 			final TransientSet<IValue> tmp = one.asTransient();
-			boolean modified = false;
+			final List<Type> added = new ArrayList<>();
 
 			for (IValue key : two) {
 				if (tmp.__insertEquivalent(key, equivalenceComparator)) {
-					modified = true;
-					bag = bag.increase(key.getType());
+					added.add(key.getType());
 				}
 			}
 			
-			if (modified) {
-				return new PDBPersistentHashSet(bag, tmp.freeze());
+			if (!added.isEmpty()) {
+				// when all elements were new, the other bag already has the right counts
+				final AbstractTypeBag delta = added.size() == two.size() ? twoBag : bagOf(added);
+				return new PDBPersistentHashSet(bag.merge(delta), tmp.freeze());
 			}
 			return def;
 		} else {
@@ -239,7 +245,7 @@ public final class PDBPersistentHashSet extends AbstractSet {
 
 			final ImmutableSet<IValue> one;
 			final ImmutableSet<IValue> two;
-			AbstractTypeBag bag;
+			final AbstractTypeBag bag;
 			final ISet def;
 			
 			if (that.size() >= this.size()) {
@@ -255,19 +261,21 @@ public final class PDBPersistentHashSet extends AbstractSet {
 			}
 			
 			final TransientSet<IValue> tmp = one.asTransient();
-			boolean modified = false;
+			final List<Type> removed = new ArrayList<>();
 
 			for (Iterator<IValue> it = tmp.iterator(); it.hasNext();) {
 				final IValue key = it.next();
 				if (!two.containsEquivalent(key, equivalenceComparator)) {
 					it.remove();
-					modified = true;
-					bag = bag.decrease(key.getType());
+					removed.add(key.getType());
 				}
 			}
 			
-			if (modified) {
-				return new PDBPersistentHashSet(bag, tmp.freeze());
+			if (removed.size() == one.size()) {
+				return EMPTY;
+			}
+			if (!removed.isEmpty()) {
+				return new PDBPersistentHashSet(bag.subtract(bagOf(removed)), tmp.freeze());
 			}
 			return def;
 		} else {
@@ -287,7 +295,7 @@ public final class PDBPersistentHashSet extends AbstractSet {
 
 			final ImmutableSet<IValue> one;
 			final ImmutableSet<IValue> two;
-			AbstractTypeBag bag;
+			final AbstractTypeBag bag;
 			final ISet def;
 			
 			def = this;
@@ -296,17 +304,18 @@ public final class PDBPersistentHashSet extends AbstractSet {
 			two = that.content;
 			
 			final TransientSet<IValue> tmp = one.asTransient();
-			boolean modified = false;
+			final List<Type> removed = new ArrayList<>();
 
 			for (IValue key : two) {
 				if (tmp.__removeEquivalent(key, equivalenceComparator)) {
-					modified = true;
-					bag = bag.decrease(key.getType());
+					removed.add(key.getType());
 				}
 			}
 
-			if (modified) {
-				return new PDBPersistentHashSet(bag, tmp.freeze());
+			if (!removed.isEmpty()) {
+				// when all elements were removed, the other bag already has the right counts
+				final AbstractTypeBag delta = removed.size() == two.size() ? that.elementTypeBag : bagOf(removed);
+				return new PDBPersistentHashSet(bag.subtract(delta), tmp.freeze());
 			}
 			return def;
 		} else {
@@ -314,6 +323,10 @@ public final class PDBPersistentHashSet extends AbstractSet {
 		}
 	}
 
+	private static AbstractTypeBag bagOf(List<Type> types) {
+		return AbstractTypeBag.of(types.toArray(new Type[types.size()]));
+	}
+
 	@Override
 	public ISet product(ISet that) {
 		// TODO Auto-generated method stub
@@ -29,7 +29,6 @@ import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IValueFactory;
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeFactory;
-import org.eclipse.imp.pdb.facts.util.ShareableHashMap;
 
 /**
  * Base value factory with optimized representations of primitive values.
@@ -40,23 +39,7 @@ public abstract class AbstractPrimitiveValueFactory implements IValueFactory {
 	private final AtomicInteger currentPrecision = new AtomicInteger(DEFAULT_PRECISION);
 
 	protected Type inferInstantiatedTypeOfConstructor(final Type constructorType, final IValue... children) {
-		Type instantiatedType;
-		if (!constructorType.getAbstractDataType().isParameterized()) {
-			instantiatedType = constructorType;
-		} else {
-			ShareableHashMap<Type, Type> bindings = new ShareableHashMap<>();
-			TypeFactory tf = TypeFactory.getInstance();
-			Type params = constructorType.getAbstractDataType().getTypeParameters();
-			for (Type p : params) {
-				if (p.isOpen()) {
-					bindings.put(p, tf.voidType());
-				}
-			}
-			constructorType.getFieldTypes().match(tf.tupleType(children), bindings);
-			instantiatedType = constructorType.instantiate(bindings);
-		}
-
-		return instantiatedType;
+		return TypeFactory.getInstance().instantiateConstructor(constructorType, children);
 	}
 
 	@Override
@@ -215,6 +198,15 @@ public abstract class AbstractPrimitiveValueFactory implements IValueFactory {
 		return DateTimeValues.newDateTime(instant, timezoneHours, timezoneMinutes);
 	}
 
+	/**
+	 * @return true if a datetime with this instant and timezone offset is stored
+	 * in a single long, which is also when the binary format can encode it as
+	 * just the instant and the offset.
+	 */
+	public static boolean canPackDateTime(long instant, int timezoneHours, int timezoneMinutes) {
+		return DateTimeValues.canPack(instant, timezoneHours, timezoneMinutes);
+	}
+
 	@Override
 	public ISourceLocation sourceLocation(URI uri, int offset, int length) {
 		return sourceLocation(sourceLocation(uri), offset, length);
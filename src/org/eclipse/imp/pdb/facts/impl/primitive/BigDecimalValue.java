@@ -32,7 +32,8 @@ import org.eclipse.imp.pdb.facts.type.TypeFactory;
 import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 /*
- * TODO: provide specializations for smaller values, similar to IntegerValue / BigIntegerValue.
+ * Values whose unscaled representation fits in a long are stored in CompactDecimalValue instead,
+ * similar to IntegerValue / BigIntegerValue.
  */
 /*package*/ class BigDecimalValue extends AbstractNumberValue implements IReal {
 	private final static Type DOUBLE_TYPE = TypeFactory.getInstance().realType();
@@ -44,6 +45,10 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	}
 
 	/*package*/ static IReal newReal(String value) {
+		IReal result = CompactDecimalValue.parse(value);
+		if (result != null) {
+			return result;
+		}
 		return new BigDecimalValue(new BigDecimal(value));
 	}
 
@@ -53,6 +58,10 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	/*package*/ static IReal newReal(double value) {
 		checkNanAndInfinity(value);
+		IReal result = CompactDecimalValue.newReal(value);
+		if (result != null) {
+			return result;
+		}
 		return new BigDecimalValue(BigDecimal.valueOf(value));
 	}
 
@@ -129,7 +138,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	
 	@Override
 	public IReal add(IReal other){
-		return BigDecimalValue.newReal(value.add(((BigDecimalValue) other).value));
+		return BigDecimalValue.newReal(value.add(CompactDecimalValue.toBigDecimal(other)));
 	}
 	
 	@Override
@@ -144,7 +153,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	
 	@Override
 	public IReal subtract(IReal other){
-		return BigDecimalValue.newReal(value.subtract(((BigDecimalValue) other).value));
+		return BigDecimalValue.newReal(value.subtract(CompactDecimalValue.toBigDecimal(other)));
 	}
 	
 	@Override
@@ -161,7 +170,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	public IReal multiply(IReal other){
 		//int precision = Math.min(Math.max(value.precision(), other.precision()), BaseValueFactory.PRECISION);
 		//MathContext mc = new MathContext(precision, RoundingMode.HALF_UP);
-		return BigDecimalValue.newReal(value.multiply(((BigDecimalValue) other).value));
+		return BigDecimalValue.newReal(value.multiply(CompactDecimalValue.toBigDecimal(other)));
 	}
 	
 	@Override
@@ -179,7 +188,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 		// make sure the precision is *at least* the same as that of the arguments
 		precision = Math.max(Math.max(value.precision(), other.precision()), precision);
 		MathContext mc = new MathContext(precision, RoundingMode.HALF_UP);
-		return BigDecimalValue.newReal(value.divide(((BigDecimalValue) other).value, mc));
+		return BigDecimalValue.newReal(value.divide(CompactDecimalValue.toBigDecimal(other), mc));
 	}
 	
 	@Override
@@ -290,7 +299,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	
 	@Override
 	public int compare(IReal other){
-		return value.compareTo(((BigDecimalValue) other).value);
+		return value.compareTo(CompactDecimalValue.toBigDecimal(other));
 	}
 	
 	@Override
@@ -327,6 +336,10 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 			return (value.equals(otherDouble.value));
 		}
 		
+		if(o.getClass() == CompactDecimalValue.class){
+			return o.equals(this);
+		}
+		
 		return false;
 	}
 	
@@ -395,13 +408,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	}
 	@Override
 	public IReal pow(IReal power, int precision) {
-		BigDecimal actualPower = null;
-		if (power instanceof BigDecimalValue) {
-			actualPower = ((BigDecimalValue)power).value;
-		}
-		else {
-			actualPower = new BigDecimal(power.getStringRepresentation());
-		}
+		BigDecimal actualPower = CompactDecimalValue.toBigDecimal(power);
 		return newReal(BigDecimalCalculations.pow(value, actualPower, precision));
 	}
 
@@ -421,14 +428,14 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	}
 
 	public static IReal pi(int precision) {
-		if (precision < 0 || precision > 1000)
-			throw new IllegalArgumentException("PI max precision is 1000");
-		return newReal(BigDecimalCalculations.PI.setScale(precision, BigDecimal.ROUND_HALF_EVEN));
+		if (precision < 0)
+			throw new IllegalArgumentException("PI precision should not be negative");
+		return newReal(BigDecimalCalculations.pi(precision));
 	}
 	
 	public static IReal e(int precision) {
-		if (precision < 0 || precision > 1000)
-			throw new IllegalArgumentException("E max precision is 1000");
-		return newReal(BigDecimalCalculations.E.setScale(precision, BigDecimal.ROUND_HALF_EVEN));
+		if (precision < 0)
+			throw new IllegalArgumentException("E precision should not be negative");
+		return newReal(BigDecimalCalculations.e(precision));
 	}	
 }
@@ -0,0 +1,572 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.impl.primitive;
+
+import java.math.BigDecimal;
+
+import org.eclipse.imp.pdb.facts.IBool;
+import org.eclipse.imp.pdb.facts.IInteger;
+import org.eclipse.imp.pdb.facts.INumber;
+import org.eclipse.imp.pdb.facts.IRational;
+import org.eclipse.imp.pdb.facts.IReal;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeFactory;
+import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
+
+/**
+ * Implementation for IReal, for values whose unscaled decimal representation fits in a long.
+ * <br /><br />
+ * A value represents exactly the decimal <code>unscaled * 10^-scale</code>, which is what
+ * <code>BigDecimal.valueOf(double)</code> would produce for values that originate from doubles.
+ * Addition, subtraction, multiplication, negation and comparison are done on longs; whenever a
+ * result does not fit, the operation is delegated to BigDecimalValue, which gives the exact same
+ * result. Values of both representations are equal, hash and compare consistently.
+ */
+/*package*/ class CompactDecimalValue extends AbstractNumberValue implements IReal {
+	private final static Type DOUBLE_TYPE = TypeFactory.getInstance().realType();
+
+	private final static int MAX_EXACT_DOUBLE_POW10 = 22;
+	private final static long MAX_EXACT_DOUBLE_LONG = 1L << 53;
+
+	private final static long[] LONG_TEN_POWERS = new long[19];
+	private final static double[] DOUBLE_TEN_POWERS = new double[MAX_EXACT_DOUBLE_POW10 + 1];
+	static {
+		LONG_TEN_POWERS[0] = 1L;
+		for (int i = 1; i < LONG_TEN_POWERS.length; i++) {
+			LONG_TEN_POWERS[i] = LONG_TEN_POWERS[i - 1] * 10L;
+		}
+		DOUBLE_TEN_POWERS[0] = 1.0;
+		for (int i = 1; i < DOUBLE_TEN_POWERS.length; i++) {
+			DOUBLE_TEN_POWERS[i] = DOUBLE_TEN_POWERS[i - 1] * 10.0;
+		}
+	}
+
+	protected final long unscaled;
+	protected final int scale;
+
+	/*package*/ static IReal newReal(long unscaled, int scale) {
+		return new CompactDecimalValue(unscaled, scale);
+	}
+
+	/**
+	 * Returns a compact real for the given double, or null if it cannot be represented.
+	 */
+	/*package*/ static IReal newReal(double value) {
+		return parse(Double.toString(value));
+	}
+
+	/**
+	 * Parses the given string with the same semantics as <code>new BigDecimal(String)</code>,
+	 * returning null if the string is not a plain decimal that fits the compact representation.
+	 */
+	/*package*/ static IReal parse(String value) {
+		int length = value.length();
+		int i = 0;
+		boolean negative = false;
+
+		if (length == 0) return null;
+
+		char c = value.charAt(0);
+		if (c == '-' || c == '+') {
+			negative = (c == '-');
+			i++;
+		}
+
+		long unscaled = 0;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean seenDot = false;
+
+		for (; i < length; i++) {
+			c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (unscaled > (Long.MAX_VALUE - 9) / 10) return null;
+				unscaled = unscaled * 10 + (c - '0');
+				digits++;
+				if (seenDot) fractionDigits++;
+			} else if (c == '.' && !seenDot) {
+				seenDot = true;
+			} else {
+				break;
+			}
+		}
+
+		if (digits == 0) return null;
+
+		long exponent = 0;
+		if (i < length) {
+			c = value.charAt(i);
+			if (c != 'e' && c != 'E') return null;
+			i++;
+			if (i == length) return null;
+
+			boolean negativeExponent = false;
+			c = value.charAt(i);
+			if (c == '-' || c == '+') {
+				negativeExponent = (c == '-');
+				i++;
+			}
+			if (i == length) return null;
+
+			for (; i < length; i++) {
+				c = value.charAt(i);
+				if (c < '0' || c > '9' || exponent > Integer.MAX_VALUE) return null;
+				exponent = exponent * 10 + (c - '0');
+			}
+			if (negativeExponent) exponent = -exponent;
+		}
+
+		long scale = fractionDigits - exponent;
+		if (scale > Integer.MAX_VALUE || scale < Integer.MIN_VALUE) return null;
+
+		return new CompactDecimalValue(negative ? -unscaled : unscaled, (int) scale);
+	}
+
+	/**
+	 * Returns the exact BigDecimal that the given real represents.
+	 */
+	/*package*/ static BigDecimal toBigDecimal(IReal real) {
+		if (real instanceof BigDecimalValue) {
+			return ((BigDecimalValue) real).value;
+		}
+		if (real instanceof CompactDecimalValue) {
+			return ((CompactDecimalValue) real).toBigDecimal();
+		}
+		return new BigDecimal(real.getStringRepresentation());
+	}
+
+	private CompactDecimalValue(long unscaled, int scale) {
+		super();
+
+		this.unscaled = unscaled;
+		this.scale = scale;
+	}
+
+	/*package*/ BigDecimal toBigDecimal() {
+		return BigDecimal.valueOf(unscaled, scale);
+	}
+
+	private IReal toBigReal() {
+		return BigDecimalValue.newReal(toBigDecimal());
+	}
+
+	/**
+	 * Multiplies the given long by 10^exponent, returning Long.MIN_VALUE on overflow.
+	 */
+	private static long scaleUp(long value, int exponent) {
+		if (exponent < 0 || exponent >= LONG_TEN_POWERS.length) { // negative means the scale difference overflowed
+			return value == 0 ? 0 : Long.MIN_VALUE;
+		}
+		long factor = LONG_TEN_POWERS[exponent];
+		long limit = Long.MAX_VALUE / factor;
+		if (value > limit || value < -limit) {
+			return Long.MIN_VALUE;
+		}
+		return value * factor;
+	}
+
+	@Override
+	public IReal abs() {
+		return unscaled < 0 ? negate() : this;
+	}
+
+	@Override
+	public IReal toReal() {
+		return this;
+	}
+
+	@Override
+	public Type getType() {
+		return DOUBLE_TYPE;
+	}
+
+	@Override
+	public float floatValue() {
+		return (float) doubleValue();
+	}
+
+	@Override
+	public double doubleValue() {
+		// Both operands are exactly representable, so the division is correctly rounded; the
+		// same result BigDecimal.doubleValue produces.
+		if (unscaled <= MAX_EXACT_DOUBLE_LONG && unscaled >= -MAX_EXACT_DOUBLE_LONG) {
+			if (scale == 0) {
+				return unscaled;
+			}
+			if (scale > 0 && scale <= MAX_EXACT_DOUBLE_POW10) {
+				return unscaled / DOUBLE_TEN_POWERS[scale];
+			}
+		}
+		return toBigDecimal().doubleValue();
+	}
+
+	@Override
+	public IInteger toInteger() {
+		if (scale <= 0) {
+			long result = scaleUp(unscaled, -scale);
+			if (result != Long.MIN_VALUE) {
+				return IntegerValue.newInteger(result);
+			}
+		} else if (scale < LONG_TEN_POWERS.length) {
+			return IntegerValue.newInteger(unscaled / LONG_TEN_POWERS[scale]);
+		} else {
+			return IntegerValue.newInteger(0);
+		}
+		return toBigReal().toInteger();
+	}
+
+	@Override
+	public IRational toRational() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public IReal floor() {
+		return toBigReal().floor();
+	}
+
+	@Override
+	public IReal round() {
+		return toBigReal().round();
+	}
+
+	@Override
+	public IReal add(IReal other) {
+		if (other instanceof CompactDecimalValue) {
+			CompactDecimalValue o = (CompactDecimalValue) other;
+			long a = unscaled;
+			long b = o.unscaled;
+			int resultScale = scale;
+
+			if (scale < o.scale) {
+				a = scaleUp(a, o.scale - scale);
+				resultScale = o.scale;
+			} else if (scale > o.scale) {
+				b = scaleUp(b, scale - o.scale);
+			}
+
+			if (a != Long.MIN_VALUE && b != Long.MIN_VALUE) {
+				long result = a + b;
+				if (((a ^ result) & (b ^ result)) >= 0) {
+					return newReal(result, resultScale);
+				}
+			}
+		}
+		return toBigReal().add(other);
+	}
+
+	@Override
+	public INumber add(IInteger other) {
+		return add(other.toReal());
+	}
+
+	@Override
+	public INumber add(IRational other) {
+		return add(other.toReal());
+	}
+
+	@Override
+	public IReal subtract(IReal other) {
+		if (other instanceof CompactDecimalValue) {
+			return add(other.negate());
+		}
+		return toBigReal().subtract(other);
+	}
+
+	@Override
+	public INumber subtract(IInteger other) {
+		return subtract(other.toReal());
+	}
+
+	@Override
+	public INumber subtract(IRational other) {
+		return subtract(other.toReal());
+	}
+
+	@Override
+	public IReal multiply(IReal other) {
+		if (other instanceof CompactDecimalValue) {
+			CompactDecimalValue o = (CompactDecimalValue) other;
+			long a = unscaled;
+			long b = o.unscaled;
+			long resultScale = (long) scale + o.scale;
+
+			if (resultScale <= Integer.MAX_VALUE && resultScale >= Integer.MIN_VALUE) {
+				long result = a * b;
+				boolean fits;
+				if (((Math.abs(a) | Math.abs(b)) >>> 31) == 0) {
+					fits = true; // both operands fit in 31 bits, so the product fits in 62 bits
+				} else {
+					fits = (a == 0 || b == 0) || (a != Long.MIN_VALUE && b != Long.MIN_VALUE && result / b == a);
+				}
+				if (fits) {
+					return newReal(result, (int) resultScale);
+				}
+			}
+		}
+		return toBigReal().multiply(other);
+	}
+
+	@Override
+	public INumber multiply(IInteger other) {
+		return multiply(other.toReal());
+	}
+
+	@Override
+	public INumber multiply(IRational other) {
+		return multiply(other.toReal());
+	}
+
+	@Override
+	public IReal divide(IReal other, int precision) {
+		return toBigReal().divide(other, precision);
+	}
+
+	@Override
+	public IReal divide(IInteger other, int precision) {
+		return divide(other.toReal(), precision);
+	}
+
+	@Override
+	public IReal divide(IRational other, int precision) {
+		return divide(other.toReal(), precision);
+	}
+
+	@Override
+	public IReal negate() {
+		if (unscaled == Long.MIN_VALUE) {
+			return toBigReal().negate();
+		}
+		return newReal(-unscaled, scale);
+	}
+
+	@Override
+	public int precision() {
+		long abs = Math.abs(unscaled);
+		if (abs < 0) {
+			return LONG_TEN_POWERS.length; // Long.MIN_VALUE has 19 digits
+		}
+		int precision = 1;
+		while (precision < LONG_TEN_POWERS.length && abs >= LONG_TEN_POWERS[precision]) {
+			precision++;
+		}
+		return precision;
+	}
+
+	@Override
+	public int scale() {
+		return scale;
+	}
+
+	@Override
+	public IInteger unscaled() {
+		return IntegerValue.newInteger(unscaled);
+	}
+
+	@Override
+	public IBool equal(IReal other) {
+		return BoolValue.getBoolValue(compare(other) == 0);
+	}
+
+	@Override
+	public IBool equal(IInteger other) {
+		return equal(other.toReal());
+	}
+
+	@Override
+	public IBool equal(IRational other) {
+		return equal(other.toReal());
+	}
+
+	@Override
+	public IBool greater(IReal other) {
+		return BoolValue.getBoolValue(compare(other) > 0);
+	}
+
+	@Override
+	public IBool greater(IInteger other) {
+		return greater(other.toReal());
+	}
+
+	@Override
+	public IBool greater(IRational other) {
+		return greater(other.toReal());
+	}
+
+	@Override
+	public IBool greaterEqual(IReal other) {
+		return BoolValue.getBoolValue(compare(other) >= 0);
+	}
+
+	@Override
+	public IBool greaterEqual(IInteger other) {
+		return greaterEqual(other.toReal());
+	}
+
+	@Override
+	public IBool greaterEqual(IRational other) {
+		return greaterEqual(other.toReal());
+	}
+
+	@Override
+	public IBool less(IReal other) {
+		return BoolValue.getBoolValue(compare(other) < 0);
+	}
+
+	@Override
+	public IBool less(IInteger other) {
+		return less(other.toReal());
+	}
+
+	@Override
+	public IBool less(IRational other) {
+		return less(other.toReal());
+	}
+
+	@Override
+	public IBool lessEqual(IReal other) {
+		return BoolValue.getBoolValue(compare(other) <= 0);
+	}
+
+	@Override
+	public IBool lessEqual(IInteger other) {
+		return lessEqual(other.toReal());
+	}
+
+	@Override
+	public IBool lessEqual(IRational other) {
+		return lessEqual(other.toReal());
+	}
+
+	@Override
+	public int compare(IReal other) {
+		if (other instanceof CompactDecimalValue) {
+			CompactDecimalValue o = (CompactDecimalValue) other;
+			long a = unscaled;
+			long b = o.unscaled;
+
+			if (scale < o.scale) {
+				a = scaleUp(a, o.scale - scale);
+			} else if (scale > o.scale) {
+				b = scaleUp(b, scale - o.scale);
+			}
+
+			if (a != Long.MIN_VALUE && b != Long.MIN_VALUE) {
+				return a < b ? -1 : (a == b ? 0 : 1);
+			}
+		}
+		return toBigDecimal().compareTo(toBigDecimal(other));
+	}
+
+	@Override
+	public int compare(INumber other) {
+		return compare(other.toReal());
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(IValueVisitor<T, E> v) throws E {
+		return v.visitReal(this);
+	}
+
+	public int hashCode() {
+		// Consistent with BigDecimalValue, which hashes the double approximation.
+		long bits = Double.doubleToLongBits(doubleValue());
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	public boolean equals(Object o) {
+		if (o == null) return false;
+		else if (o == this) return true;
+
+		if (o.getClass() == getClass()) {
+			CompactDecimalValue other = (CompactDecimalValue) o;
+			return unscaled == other.unscaled && scale == other.scale;
+		}
+
+		if (o.getClass() == BigDecimalValue.class) {
+			return toBigDecimal().equals(((BigDecimalValue) o).value);
+		}
+
+		return false;
+	}
+
+	@Override
+	public boolean isEqual(IValue o) {
+		return equals(o);
+	}
+
+	@Override
+	public String getStringRepresentation() {
+		String decimalString = toBigDecimal().toString();
+		if (decimalString.indexOf('.') == -1 && decimalString.indexOf('E') == -1) {
+			return decimalString + ".";
+		}
+		return decimalString;
+	}
+
+	@Override
+	public int signum() {
+		return Long.signum(unscaled);
+	}
+
+	@Override
+	public IReal log(IInteger base, int precision) {
+		return toBigReal().log(base, precision);
+	}
+
+	@Override
+	public IReal log(IReal base, int precision) {
+		return toBigReal().log(base, precision);
+	}
+
+	@Override
+	public IReal ln(int precision) {
+		return toBigReal().ln(precision);
+	}
+
+	@Override
+	public IReal sqrt(int precision) {
+		return toBigReal().sqrt(precision);
+	}
+
+	@Override
+	public IReal nroot(IInteger n, int precision) {
+		return toBigReal().nroot(n, precision);
+	}
+
+	@Override
+	public IReal exp(int precision) {
+		return toBigReal().exp(precision);
+	}
+
+	@Override
+	public IReal pow(IInteger power) {
+		return toBigReal().pow(power);
+	}
+
+	@Override
+	public IReal pow(IReal power, int precision) {
+		return toBigReal().pow(power, precision);
+	}
+
+	@Override
+	public IReal tan(int precision) {
+		return toBigReal().tan(precision);
+	}
+
+	@Override
+	public IReal sin(int precision) {
+		return toBigReal().sin(precision);
+	}
+
+	@Override
+	public IReal cos(int precision) {
+		return toBigReal().cos(precision);
+	}
+}
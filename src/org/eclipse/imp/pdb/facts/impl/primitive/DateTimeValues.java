@@ -12,10 +12,10 @@
  *******************************************************************************/
 package org.eclipse.imp.pdb.facts.impl.primitive;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
 
 import org.eclipse.imp.pdb.facts.IDateTime;
 import org.eclipse.imp.pdb.facts.IValue;
@@ -32,11 +32,126 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
  *  NOTE: We currently do not support partial dates and times; i.e.,
  *  it is not possible to represent "July 2009" or "15" (hours).
  *
+ *  Validation and instant computations use plain epoch arithmetic on the
+ *  proleptic Gregorian calendar; only values that depend on the default
+ *  time zone consult its java.time rules.
+ *
  */
 /*package*/ class DateTimeValues {
 
 	private final static Type DATE_TIME_TYPE = TypeFactory.getInstance().dateTimeType();
 	
+	private final static int millisInAMinute = 1000 * 60;
+	private final static int millisInAnHour = millisInAMinute * 60;
+	private final static long millisInADay = 24L * millisInAnHour;
+	
+	/**
+	 * The largest year java.util.GregorianCalendar accepts, which used to bound valid dates.
+	 */
+	private final static int MAX_YEAR = 292278994;
+	
+	private static boolean isLeapYear(int year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+	
+	private static boolean isValidDate(int year, int month, int day) {
+		if (year < 1 || year > MAX_YEAR || month < 1 || month > 12 || day < 1) {
+			return false;
+		}
+		
+		switch (month) {
+		case 2:
+			return day <= (isLeapYear(year) ? 29 : 28);
+		case 4: case 6: case 9: case 11:
+			return day <= 30;
+		default:
+			return day <= 31;
+		}
+	}
+	
+	private static boolean isValidTime(int hour, int minute, int second, int millisecond) {
+		return hour >= 0 && hour < 24
+				&& minute >= 0 && minute < 60
+				&& second >= 0 && second < 60
+				&& millisecond >= 0 && millisecond < 1000;
+	}
+	
+	/**
+	 * @return the number of days between 1970-01-01 and the given date
+	 */
+	private static long epochDay(int year, int month, int day) {
+		// shift the year to start in March, such that the leap day is the last day of the year
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+	
+	/**
+	 * @return the civil date of the given number of days since 1970-01-01, 
+	 * encoded as <code>year &lt;&lt; 9 | month &lt;&lt; 5 | day</code>
+	 */
+	private static long civilDate(long epochDay) {
+		// years start in March, such that the leap day is the last day of the year
+		long z = epochDay + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		
+		long month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		return year << 9 | month << 5 | day;
+	}
+	
+	private static long millisOfDay(int hour, int minute, int second, int millisecond) {
+		return hour * (long) millisInAnHour + minute * millisInAMinute + second * 1000 + millisecond;
+	}
+	
+	/**
+	 * @return the offset in milliseconds of the given timezone offset. Like the "GMT+hhmm" 
+	 * time zone ids this used to be computed with, the sign is taken from the hours 
+	 * unless those are zero, and offsets that are out of range denote GMT.
+	 */
+	private static int offsetMillis(int hourOffset, int minuteOffset) {
+		int hours = Math.abs(hourOffset);
+		int minutes = Math.abs(minuteOffset);
+		
+		if (hours > 23 || minutes > 59) {
+			return 0;
+		}
+		
+		int offset = hours * millisInAnHour + minutes * millisInAMinute;
+		return (hourOffset < 0 || (0 == hourOffset && minuteOffset < 0)) ? -offset : offset;
+	}
+	
+	private static ZoneRules defaultZoneRules() {
+		return ZoneId.systemDefault().getRules();
+	}
+	
+	private static LocalDateTime localDateTime(int year, int month, int day, int hour, int minute, int second, int millisecond) {
+		return LocalDateTime.of(year, month, day, hour, minute, second, millisecond * 1000000);
+	}
+	
+	/**
+	 * @return the instant of the given local date and time in the default time zone. 
+	 */
+	private static long defaultZoneInstant(ZoneRules rules, int year, int month, int day, long millisOfDay) {
+		long local = epochDay(year, month, day) * millisInADay + millisOfDay;
+		
+		if (rules.isFixedOffset()) {
+			return local - rules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L;
+		}
+		
+		int millis = (int) millisOfDay;
+		LocalDateTime dt = localDateTime(year, month, day, millis / millisInAnHour, millis / millisInAMinute % 60, millis / 1000 % 60, millis % 1000);
+		return local - rules.getOffset(dt).getTotalSeconds() * 1000L;
+	}
+	
 	/*package*/ static IDateTime newDate(int year, int month, int day) {
 		return new DateTimeValues.DateValue(year, month, day);
 	}
@@ -62,13 +177,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 			this.day = day;
 
 			// Check to make sure the provided value are valid.
-			// TODO: Failure here should throw a PDB exception.
-			Calendar cal = Calendar.getInstance(TimeZone.getDefault(),Locale.getDefault());
-			cal.setLenient(false);
-			cal.set(year, month-1, day);
-			try {
-				cal.get(Calendar.YEAR);
-			} catch (IllegalArgumentException iae) {
+			if (!isValidDate(year, month, day)) {
 				throw new InvalidDateTimeException("Cannot create date with provided values."); 
 			}
 		}
@@ -104,10 +213,10 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 		 */
 		@Override
 		public long getInstant() {
-			Calendar cal = Calendar.getInstance(TimeZone.getDefault(),Locale.getDefault());
-			cal.setTime(new Date(0));
-			cal.set(this.year, this.month-1, this.day);
-			return cal.getTimeInMillis();
+			// dates are interpreted at the local time of day of the epoch in the default time zone
+			ZoneRules rules = defaultZoneRules();
+			long timeOfDay = Math.floorMod(rules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L, millisInADay);
+			return defaultZoneInstant(rules, year, month, day, timeOfDay);
 		}
 
 		/* (non-Javadoc)
@@ -266,26 +375,6 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 		private int timezoneHours;
 		private int timezoneMinutes;
 		
-		private final static int millisInAMinute = 1000 * 60;
-		private final static int millisInAnHour = TimeValue.millisInAMinute * 60;
-		
-		/**
-		 * Given the hour and minute offset, generate the appropriate Java
-		 * timezone string
-		 * 
-		 * @param hourOffset	The hour offset for the timezone.
-		 * @param minuteOffset	The minute offset for the timezone.
-		 * 
-		 * @return				A string with the proper timezone.
-		 */
-		private static String getTZString(int hourOffset, int minuteOffset) {
-			String tzString = "GMT" + 
-				((hourOffset < 0 || (0 == hourOffset && minuteOffset < 0)) ? "-" : "+") + 
-				String.format("%02d",hourOffset >= 0 ? hourOffset : hourOffset * -1) +
-				String.format("%02d",minuteOffset >= 0 ? minuteOffset : minuteOffset * -1);
-			return tzString;
-		}
-		
 		/**
 		 * Construct a DateTime object representing a time. 
 		 * 
@@ -303,25 +392,16 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 			this.millisecond = millisecond;
 			
 			// Check to make sure the provided values are valid.
-			// TODO: Failure here should throw a PDB exception.
-			Calendar cal = Calendar.getInstance(TimeZone.getDefault(),Locale.getDefault());
-			cal.setLenient(false);
-			cal.set(Calendar.HOUR_OF_DAY, hour);
-			cal.set(Calendar.MINUTE, minute);
-			cal.set(Calendar.SECOND, second);
-			cal.set(Calendar.MILLISECOND, millisecond);
-
-			try {
-				cal.get(Calendar.HOUR_OF_DAY);
-			} catch (IllegalArgumentException iae) {
+			if (!isValidTime(hour, minute, second, millisecond)) {
 				throw new InvalidDateTimeException("Cannot create time with provided values."); 
 			}
 			
-			// Get back the time zone information so we can store it with
-			// the rest of the date information. This is based on the
-			// current default time zone, since none was provided.
-			this.timezoneHours = cal.get(Calendar.ZONE_OFFSET) / TimeValue.millisInAnHour;
-			this.timezoneMinutes = cal.get(Calendar.ZONE_OFFSET) % TimeValue.millisInAnHour / TimeValue.millisInAMinute;
+			// Store the time zone information with the rest of the time
+			// information. This is based on the current standard offset of
+			// the default time zone, since none was provided.
+			int offset = defaultZoneRules().getStandardOffset(Instant.now()).getTotalSeconds() * 1000;
+			this.timezoneHours = offset / millisInAnHour;
+			this.timezoneMinutes = offset % millisInAnHour / millisInAMinute;
 		}
 		
 		/**
@@ -345,17 +425,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 			this.timezoneMinutes = minuteOffset;
 
 			// Check to make sure the provided values are valid.
-			// TODO: Failure here should throw a PDB exception.
-			Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(getTZString(hourOffset,minuteOffset)),Locale.getDefault());
-			cal.setLenient(false);
-			cal.set(Calendar.HOUR_OF_DAY, hour);
-			cal.set(Calendar.MINUTE, minute);
-			cal.set(Calendar.SECOND, second);
-			cal.set(Calendar.MILLISECOND, millisecond);
-
-			try {
-				cal.get(Calendar.HOUR_OF_DAY);
-			} catch (IllegalArgumentException iae) {
+			if (!isValidTime(hour, minute, second, millisecond)) {
 				throw new InvalidDateTimeException("Cannot create time with provided values."); 
 			}
 		}
@@ -391,10 +461,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 		 */
 		@Override
 		public long getInstant() {
-			Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(getTZString(this.timezoneHours,this.timezoneMinutes)),Locale.getDefault());
-			cal.set(1970, 0, 1, this.hour, this.minute, this.second);
-			cal.set(Calendar.MILLISECOND, this.millisecond);
-			return cal.getTimeInMillis();
+			return millisOfDay(hour, minute, second, millisecond) - offsetMillis(timezoneHours, timezoneMinutes);
 		}
 
 		/* (non-Javadoc)
@@ -546,23 +613,241 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	/*package*/ static IDateTime newDateTime(int year, int month, int day, int hour,
 							  int minute, int second, int millisecond) {
-		return new DateTimeValues.DateTimeValue(year, month, day, hour, minute, second, millisecond);
+		// Check to make sure the provided values are valid.
+		if (!isValidDate(year, month, day) || !isValidTime(hour, minute, second, millisecond)) {
+			throw new InvalidDateTimeException("Cannot create datetime with provided values."); 
+		}
+		
+		// Store the time zone information with the rest of the date
+		// information. This is based on the standard offset of the 
+		// default time zone at that moment, since none was provided.
+		ZoneRules rules = defaultZoneRules();
+		int offset;
+		
+		if (rules.isFixedOffset()) {
+			offset = rules.getStandardOffset(Instant.EPOCH).getTotalSeconds() * 1000;
+		}
+		else {
+			LocalDateTime dt = localDateTime(year, month, day, hour, minute, second, millisecond);
+			
+			if (rules.getValidOffsets(dt).isEmpty()) {
+				// the local time falls in a daylight saving gap
+				throw new InvalidDateTimeException("Cannot create datetime with provided values."); 
+			}
+			
+			long instant = defaultZoneInstant(rules, year, month, day, millisOfDay(hour, minute, second, millisecond));
+			offset = rules.getStandardOffset(Instant.ofEpochMilli(instant)).getTotalSeconds() * 1000;
+		}
+		
+		return newDateTime(year, month, day, hour, minute, second, millisecond, offset / millisInAnHour, offset % millisInAnHour / millisInAMinute);
 	}
 
 	/*package*/ static IDateTime newDateTime(int year, int month, int day, int hour,
 							  int minute, int second, int millisecond, int hourOffset,
 							  int minuteOffset) {
+		// Check to make sure the provided values are valid.
+		if (!isValidDate(year, month, day) || !isValidTime(hour, minute, second, millisecond)) {
+			throw new InvalidDateTimeException("Cannot create datetime with provided values."); 
+		}
+		
+		if (PackedDateTimeValue.canPack(hourOffset, minuteOffset)) {
+			long instant = epochDay(year, month, day) * millisInADay 
+					+ millisOfDay(hour, minute, second, millisecond)
+					- offsetMillis(hourOffset, minuteOffset);
+			
+			if (PackedDateTimeValue.canPack(instant)) {
+				return new DateTimeValues.PackedDateTimeValue(instant, hourOffset, minuteOffset);
+			}
+		}
+		
 		return new DateTimeValues.DateTimeValue(year, month, day, hour, minute, second, millisecond, hourOffset, minuteOffset);
 	}
 
 	/*package*/ static IDateTime newDateTime(long instant) {
-		return new DateTimeValues.DateTimeValue(instant, 0, 0);
+		return newDateTime(instant, 0, 0);
 	}
 	
 	/*package*/ static IDateTime newDateTime(long instant, int timezoneHours, int timezoneMinutes) {
+		if (canPack(instant, timezoneHours, timezoneMinutes)) {
+			return new DateTimeValues.PackedDateTimeValue(instant, timezoneHours, timezoneMinutes);
+		}
+		
 		return new DateTimeValues.DateTimeValue(instant, timezoneHours, timezoneMinutes);
 	}
 	
+	/*package*/ static boolean canPack(long instant, int timezoneHours, int timezoneMinutes) {
+		return PackedDateTimeValue.canPack(timezoneHours, timezoneMinutes) && PackedDateTimeValue.canPack(instant);
+	}
+	
+	/**
+	 * A datetime stored as a single long, holding the instant in milliseconds and
+	 * the timezone offset in minutes. All fields are computed on demand. This is
+	 * used whenever the offset hours and minutes agree in sign and are in range,
+	 * and the instant is within about 70,000 years of the epoch; other datetimes
+	 * fall back to {@link DateTimeValue}, so the two never represent the same value.
+	 */
+	private static class PackedDateTimeValue extends AbstractValue implements IDateTime {
+		private final static int OFFSET_BITS = 12;
+		private final static int OFFSET_BIAS = 1 << (OFFSET_BITS - 1);
+		private final static long MAX_INSTANT = Long.MAX_VALUE >> OFFSET_BITS;
+		private final static long MIN_INSTANT = Long.MIN_VALUE >> OFFSET_BITS;
+		
+		private final long packed;
+		
+		private static boolean canPack(int hourOffset, int minuteOffset) {
+			return hourOffset >= -23 && hourOffset <= 23
+					&& minuteOffset >= -59 && minuteOffset <= 59
+					&& (hourOffset == 0 || minuteOffset == 0 || (hourOffset < 0) == (minuteOffset < 0));
+		}
+		
+		private static boolean canPack(long instant) {
+			return instant >= MIN_INSTANT && instant <= MAX_INSTANT;
+		}
+		
+		private PackedDateTimeValue(long instant, int hourOffset, int minuteOffset) {
+			super();
+			this.packed = (instant << OFFSET_BITS) | (hourOffset * 60 + minuteOffset + OFFSET_BIAS);
+		}
+		
+		private int offsetMinutes() {
+			return (int) (packed & ((1 << OFFSET_BITS) - 1)) - OFFSET_BIAS;
+		}
+		
+		private long localMillis() {
+			return getInstant() + offsetMinutes() * (long) millisInAMinute;
+		}
+		
+		private long civilDate() {
+			return DateTimeValues.civilDate(Math.floorDiv(localMillis(), millisInADay));
+		}
+		
+		private int millisOfDay() {
+			return (int) Math.floorMod(localMillis(), millisInADay);
+		}
+		
+		@Override
+		public Type getType() {
+			return DATE_TIME_TYPE;
+		}
+
+		@Override
+		public <T, E extends Throwable> T accept(IValueVisitor<T,E> v) throws E {
+			return v.visitDateTime(this);
+		}
+
+		@Override
+		public int compareTo(IDateTime arg0) {
+			if (arg0.isDateTime()) {
+				long m1 = this.getInstant();
+				long m2 = arg0.getInstant();
+				if (m1 == m2)
+					return 0;
+				else if (m1 < m2)
+					return -1;
+				else
+					return 1;
+			} else {
+				throw new UnsupportedOperationException("DateTime and non-DateTime values are not comparable");
+			}
+		}
+		
+		@Override
+		public long getInstant() {
+			return packed >> OFFSET_BITS;
+		}
+		
+		@Override
+		public int getCentury() {
+			int year = getYear();
+			return (year - (year % 100)) / 100;
+		}
+		
+		@Override
+		public int getYear() {
+			return (int) (civilDate() >> 9);
+		}
+		
+		@Override
+		public int getMonthOfYear() {
+			return (int) (civilDate() >> 5) & 0xf;
+		}
+		
+		@Override
+		public int getDayOfMonth() {
+			return (int) civilDate() & 0x1f;
+		}
+		
+		@Override
+		public int getHourOfDay() {
+			return millisOfDay() / millisInAnHour;
+		}
+		
+		@Override
+		public int getMinuteOfHour() {
+			return millisOfDay() / millisInAMinute % 60;
+		}
+		
+		@Override
+		public int getSecondOfMinute() {
+			return millisOfDay() / 1000 % 60;
+		}
+		
+		@Override
+		public int getMillisecondsOfSecond() {
+			return millisOfDay() % 1000;
+		}
+		
+		@Override
+		public int getTimezoneOffsetHours() {
+			return offsetMinutes() / 60;
+		}
+		
+		@Override
+		public int getTimezoneOffsetMinutes() {
+			return offsetMinutes() % 60;
+		}
+		
+		@Override
+		public boolean isDate() {
+			return false;
+		}
+		
+		@Override
+		public boolean isTime() {
+			return false;
+		}
+		
+		@Override
+		public boolean isDateTime() {
+			return true;
+		}
+		
+		@Override
+		public int hashCode() {
+			return (int) (packed ^ (packed >>> 32));
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			return packed == ((PackedDateTimeValue) obj).packed;
+		}
+		
+		@Override
+		public boolean isEqual(IValue other) {
+			return equals(other);
+		}
+	}
+	
+	/**
+	 * A datetime with its fields stored separately, for the values that
+	 * {@link PackedDateTimeValue} cannot represent.
+	 */
 	private static class DateTimeValue extends AbstractValue implements IDateTime {
 
 		private int year;
@@ -575,48 +860,6 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 		private int timezoneHours;
 		private int timezoneMinutes;
 
-		/**
-		 * Construct a DateTime object representing a date and time.
-		 *  
-		 * @param year			The year of the datetime
-		 * @param month			The month of the datetime
-		 * @param day			The day of the datetime
-		 * @param hour			The hour of the datetime
-		 * @param minute		The minute of the datetime
-		 * @param second		The second of the datetime
-		 * @param millisecond	The millisecond of the datetime
-		 */
-		private DateTimeValue(int year, int month, int day, int hour, int minute, int second, int millisecond) {
-			super();
-			
-			this.year = year;
-			this.month = month;
-			this.day = day;
-			this.hour = hour;
-			this.minute = minute;
-			this.second = second;
-			this.millisecond = millisecond;
-			
-			// Check to make sure the provided values are valid.
-			// TODO: Failure here should throw a PDB exception.
-			Calendar cal = Calendar.getInstance(TimeZone.getDefault(),Locale.getDefault());
-			cal.setLenient(false);
-			cal.set(year, month-1, day, hour, minute, second);
-			cal.set(Calendar.MILLISECOND, millisecond);
-
-			try {
-				cal.get(Calendar.HOUR_OF_DAY);
-			} catch (IllegalArgumentException iae) {
-				throw new InvalidDateTimeException("Cannot create datetime with provided values."); 
-			}
-			
-			// Get back the time zone information so we can store it with
-			// the rest of the date information. This is based on the
-			// current default time zone, since none was provided.
-			this.timezoneHours = cal.get(Calendar.ZONE_OFFSET) / TimeValue.millisInAnHour;
-			this.timezoneMinutes = cal.get(Calendar.ZONE_OFFSET) % TimeValue.millisInAnHour / TimeValue.millisInAMinute;
-		}
-
 		/**
 		 * Construct a DateTime object representing a date and time, with an explicit timezone.
 		 * 
@@ -641,19 +884,6 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 			this.millisecond = millisecond;
 			this.timezoneHours = hourOffset;
 			this.timezoneMinutes = minuteOffset;
-
-			// Check to make sure the provided values are valid.
-			// TODO: Failure here should throw a PDB exception.
-			Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(TimeValue.getTZString(hourOffset,minuteOffset)),Locale.getDefault());
-			cal.setLenient(false);
-			cal.set(year, month-1, day, hour, minute, second);
-			cal.set(Calendar.MILLISECOND, millisecond);
-
-			try {
-				cal.get(Calendar.HOUR_OF_DAY);
-			} catch (IllegalArgumentException iae) {
-				throw new InvalidDateTimeException("Cannot create datetime with provided values."); 
-			}
 		}
 
 		/**
@@ -667,17 +897,17 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 		private DateTimeValue(long instant, int timezoneHours, int timezoneMinutes) {
 			super();
 			
-			Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(TimeValue.getTZString(timezoneHours, timezoneMinutes)),Locale.getDefault());
-			cal.setLenient(false);
-			cal.setTime(new Date(instant));
+			long local = instant + offsetMillis(timezoneHours, timezoneMinutes);
+			long date = civilDate(Math.floorDiv(local, millisInADay));
+			int millis = (int) Math.floorMod(local, millisInADay);
 			
-			this.year = cal.get(Calendar.YEAR);
-			this.month = cal.get(Calendar.MONTH) + 1;
-			this.day = cal.get(Calendar.DAY_OF_MONTH);
-			this.hour = cal.get(Calendar.HOUR_OF_DAY);
-			this.minute = cal.get(Calendar.MINUTE);
-			this.second = cal.get(Calendar.SECOND);
-			this.millisecond = cal.get(Calendar.MILLISECOND);
+			this.year = (int) (date >> 9);
+			this.month = (int) (date >> 5) & 0xf;
+			this.day = (int) date & 0x1f;
+			this.hour = millis / millisInAnHour;
+			this.minute = millis / millisInAMinute % 60;
+			this.second = millis / 1000 % 60;
+			this.millisecond = millis % 1000;
 			this.timezoneHours = timezoneHours;
 			this.timezoneMinutes = timezoneMinutes;
 		}
@@ -713,10 +943,9 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 		 */
 		@Override
 		public long getInstant() {
-			Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(TimeValue.getTZString(this.timezoneHours,this.timezoneMinutes)),Locale.getDefault());
-			cal.set(this.year, this.month-1, this.day, this.hour, this.minute, this.second);
-			cal.set(Calendar.MILLISECOND, this.millisecond);
-			return cal.getTimeInMillis();
+			return epochDay(year, month, day) * millisInADay 
+					+ millisOfDay(hour, minute, second, millisecond) 
+					- offsetMillis(timezoneHours, timezoneMinutes);
 		}
 
 		/* (non-Javadoc)
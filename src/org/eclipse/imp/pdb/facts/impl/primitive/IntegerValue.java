@@ -12,7 +12,6 @@
  *******************************************************************************/
 package org.eclipse.imp.pdb.facts.impl.primitive;
 
-import java.math.BigDecimal;
 import java.math.BigInteger;
 
 import org.eclipse.imp.pdb.facts.IBool;
@@ -133,7 +132,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	
 	@Override
 	public IReal toReal(){
-		return BigDecimalValue.newReal(BigDecimal.valueOf(value));
+		return CompactDecimalValue.newReal(value, 0);
 	}
 	
 	@Override
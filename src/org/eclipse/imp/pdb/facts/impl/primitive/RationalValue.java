@@ -22,17 +22,49 @@ import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeFactory;
 import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
+/**
+ * Implementation for IRational.
+ * <br /><br />
+ * Results of arithmetic are not reduced to lowest terms right away, unless that is cheap; the
+ * numerator and denominator are allowed to grow up to MAX_UNNORMALIZED_BITS before the gcd
+ * is divided out. Everything that observes the representation (equality, hashing, printing,
+ * serialization through numerator() and denominator()) works on the normalized form, which
+ * is computed once and cached. Operands that fit in 32 bits are handled with long arithmetic.
+ */
 /*package*/ class RationalValue extends AbstractNumberValue implements IRational {
 	public static final Type RATIONAL_TYPE = TypeFactory.getInstance().rationalType();
 
+	private static final int MAX_UNNORMALIZED_BITS = 512;
+
 	protected final IInteger num;
 	protected final IInteger denom;
 
+	/**
+	 * The normalized form of this value, which is this value itself when it is in lowest
+	 * terms, or null if it has not been computed yet.
+	 */
+	private RationalValue normalized;
+
 	/*package*/ static IRational newRational(IInteger a, IInteger b) {
-		return new RationalValue(a, b);
+		return new RationalValue(a, b, true);
+	}
+
+	/*package*/ static IRational newUnnormalizedRational(IInteger a, IInteger b) {
+		return new RationalValue(a, b, false);
+	}
+
+	private static IRational newRational(long a, long b) {
+		// b > 0 and gcd(a, b) == 1
+		return new RationalValue(IntegerValue.newInteger(a), IntegerValue.newInteger(b));
 	}
 
 	private RationalValue(IInteger num, IInteger denom) {
+		this.num = num;
+		this.denom = denom;
+		this.normalized = this;
+	}
+
+	private RationalValue(IInteger num, IInteger denom, boolean normalize) {
 		if(denom.signum() < 0) {
 			num = num.negate();
 			denom = denom.negate();
@@ -45,29 +77,111 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 				num = intOne().negate();
 			else
 				throw new ArithmeticException("Illegal fraction 0/0");
-
+			normalize = true;
 		}
 		else if(num.signum() == 0) {
 			denom = intOne();
+			normalize = true;
 		}
-		else {
+		else if(normalize || bitLength(num) > MAX_UNNORMALIZED_BITS || bitLength(denom) > MAX_UNNORMALIZED_BITS) {
 			IInteger gcd = gcd(num, denom);
-			while(gcd.compare(intOne()) != 0) {
+			if(gcd.compare(intOne()) != 0) {
 				num = num.divide(gcd);
 				denom = denom.divide(gcd);
-				gcd = gcd(num, denom);
 			}
+			normalize = true;
 		}
 		this.num = num;
 		this.denom = denom;
+		this.normalized = normalize ? this : null;
+	}
+
+	private RationalValue normalized() {
+		RationalValue result = normalized;
+		if(result == null) {
+			// racy, but every thread computes the same immutable value
+			result = new RationalValue(num, denom, true);
+			normalized = result;
+		}
+		return result;
+	}
+
+	private static IInteger rawNumerator(IRational r) {
+		return r instanceof RationalValue ? ((RationalValue) r).num : r.numerator();
+	}
+
+	private static IInteger rawDenominator(IRational r) {
+		return r instanceof RationalValue ? ((RationalValue) r).denom : r.denominator();
+	}
+
+	private static boolean isSmall(IInteger i) {
+		return i instanceof IntegerValue;
+	}
+
+	private static int bitLength(IInteger i) {
+		if(i instanceof BigIntegerValue) {
+			return ((BigIntegerValue) i).value.bitLength();
+		}
+		return 32;
+	}
+
+	private static long gcd(long a, long b) {
+		a = Math.abs(a);
+		b = Math.abs(b);
+		while(b != 0) {
+			long tmp = b;
+			b = a % b;
+			a = tmp;
+		}
+		return a;
+	}
+
+	/**
+	 * Reduces a/b, with b > 0 and both within 63 bits, to lowest terms.
+	 */
+	private static IRational reduce(long a, long b) {
+		if(a == 0) {
+			return newRational(0, 1);
+		}
+		long gcd = gcd(a, b);
+		return newRational(a / gcd, b / gcd);
+	}
+
+	private IRational add(IInteger n2, IInteger d2, boolean subtract) {
+		if(isSmall(num) && isSmall(denom) && isSmall(n2) && isSmall(d2)) {
+			long a = (long) num.intValue() * d2.intValue();
+			long b = (long) n2.intValue() * denom.intValue();
+			if(subtract) b = -b; // |b| <= 2^62, so this cannot overflow
+			long n = a + b;
+			if(((a ^ n) & (b ^ n)) >= 0) {
+				long d = (long) denom.intValue() * d2.intValue();
+				if(d > 0) {
+					return reduce(n, d);
+				}
+			}
+		}
+
+		// (num*d2 +- denom*n2) / denom*d2
+		IInteger a = num.multiply(d2);
+		IInteger b = denom.multiply(n2);
+		return toRational(subtract ? a.subtract(b) : a.add(b), denom.multiply(d2));
+	}
+
+	private IRational multiply(IInteger n2, IInteger d2) {
+		if(isSmall(num) && isSmall(denom) && isSmall(n2) && isSmall(d2)) {
+			long n = (long) num.intValue() * n2.intValue();
+			long d = (long) denom.intValue() * d2.intValue();
+			if(d != 0) { // both products are within 62 bits
+				return d < 0 ? reduce(-n, -d) : reduce(n, d);
+			}
+		}
+
+		return toRational(num.multiply(n2), denom.multiply(d2));
 	}
 
 	@Override
 	public IRational add(IRational other) {
-		// (num*other.denom + denom*other.num) / denom*other.denom
-		return toRational(
-				num.multiply(other.denominator()).add(denom.multiply(other.numerator())),
-				denom.multiply(other.denominator()));
+		return add(rawNumerator(other), rawDenominator(other), false);
 	}
 
 	@Override
@@ -77,15 +191,12 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public INumber add(IInteger other) {
-		return toRational(num.add(other.multiply(denom)), denom);
+		return add(other, intOne(), false);
 	}
 
 	@Override
 	public IRational subtract(IRational other) {
-		// (num*other.denom - denom*other.num) / denom*other.denom
-		return toRational(
-				num.multiply(other.denominator()).subtract(denom.multiply(other.numerator())),
-				denom.multiply(other.denominator()));
+		return add(rawNumerator(other), rawDenominator(other), true);
 	}
 
 	@Override
@@ -95,13 +206,12 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public INumber subtract(IInteger other) {
-		return toRational(num.subtract(other.multiply(denom)), denom);
+		return add(other, intOne(), true);
 	}
 
 	@Override
 	public IRational multiply(IRational other) {
-		return toRational(num.multiply(other.numerator()),
-				denom.multiply(other.denominator()));
+		return multiply(rawNumerator(other), rawDenominator(other));
 	}
 
 	@Override
@@ -111,15 +221,14 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public INumber multiply(IInteger other) {
-		return toRational(num.multiply(other), denom);
+		return multiply(other, intOne());
 	}
 
 	// TODO: should we perhaps drop this and only have the other divide?
 	// or vice-versa?
 	@Override
 	public IRational divide(IRational other) {
-		return toRational(num.multiply(other.denominator()),
-				denom.multiply(other.numerator()));
+		return multiply(rawDenominator(other), rawNumerator(other));
 	}
 
 	@Override
@@ -134,14 +243,13 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public IRational divide(IInteger other) {
-		return toRational(num, denom.multiply(other));
+		return multiply(intOne(), other);
 	}
 
 
 	@Override
 	public INumber divide(IRational other, int precision) {
-		return toRational(num.multiply(other.denominator()),
-				denom.multiply(other.numerator()));
+		return divide(other);
 	}
 
 	@Override
@@ -229,8 +337,9 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 		if(o == this) return true;
 
 		if(o.getClass() == getClass()){
-			RationalValue other = (RationalValue) o;
-			return num.equals(other.num) && denom.equals(other.denom);
+			RationalValue self = normalized();
+			RationalValue other = ((RationalValue) o).normalized();
+			return self.num.equals(other.num) && self.denom.equals(other.denom);
 		}
 
 		return false;
@@ -247,8 +356,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 				return rem.signum();
 		}
 		else if(isRationalType(other)){
-			IRational diff = subtract((IRational)other);
-			return diff.signum();
+			return compare((IRational) other);
 		}
 		else
 			return toReal().compare(other);
@@ -266,13 +374,17 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public IRational negate() {
+		if(normalized == this) {
+			return new RationalValue(num.negate(), denom);
+		}
 		return toRational(num.negate(), denom);
 	}
 
 	@Override
 	public IReal toReal() {
-		IReal r1 = num.toReal();
-		IReal r2 = denom.toReal();
+		RationalValue self = normalized();
+		IReal r1 = self.num.toReal();
+		IReal r2 = self.denom.toReal();
 		r1 = r1.divide(r2, r1.precision());
 		return r1;
 	}
@@ -284,13 +396,21 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public String getStringRepresentation() {
-		return num.getStringRepresentation() + "r" + (denom.equals(intOne()) ? "" : denom.getStringRepresentation());
+		RationalValue self = normalized();
+		return self.num.getStringRepresentation() + "r" + (self.denom.equals(intOne()) ? "" : self.denom.getStringRepresentation());
 	}
 
 	@Override
 	public int compare(IRational other) {
-		IRational diff = subtract(other);
-		return diff.signum();
+		// denominators are positive, so compare num*d2 with n2*denom
+		IInteger n2 = rawNumerator(other);
+		IInteger d2 = rawDenominator(other);
+		if(isSmall(num) && isSmall(denom) && isSmall(n2) && isSmall(d2)) {
+			long a = (long) num.intValue() * d2.intValue();
+			long b = (long) n2.intValue() * denom.intValue();
+			return a < b ? -1 : (a == b ? 0 : 1);
+		}
+		return num.multiply(d2).compare(n2.multiply(denom));
 	}
 
 	@Override
@@ -300,7 +420,10 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public IRational abs() {
-		return toRational(num.abs(), denom);
+		if(num.signum() >= 0) {
+			return this;
+		}
+		return negate();
 	}
 
 	@Override
@@ -319,7 +442,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 	}
 
 	public IRational toRational(IInteger n, IInteger d) {
-		return newRational(n, d);
+		return newUnnormalizedRational(n, d);
 	}
 
 	@Override
@@ -329,41 +452,39 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public int hashCode() {
-		if(denom.equals(intOne()))
-			return num.hashCode();
+		RationalValue self = normalized();
+		if(self.denom.equals(intOne()))
+			return self.num.hashCode();
 		else {
 			final int prime = 31;
 			int result = 1;
-			result = prime * result + num.hashCode();
-			result = prime * result + denom.hashCode();
+			result = prime * result + self.num.hashCode();
+			result = prime * result + self.denom.hashCode();
 			return result;
 		}
 	}
 
 	@Override
 	public IInteger numerator() {
-		return num;
+		return normalized().num;
 	}
 
 	@Override
 	public IInteger denominator() {
-		return denom;
+		return normalized().denom;
 	}
 
 	@Override
 	public IInteger remainder() {
-		return num.remainder(denom);
+		RationalValue self = normalized();
+		return self.num.remainder(self.denom);
 	}
 
 	protected IInteger gcd(IInteger n, IInteger d) {
-		n = n.abs();
-		d = d.abs();
-		while(d.signum() > 0) {
-			IInteger tmp = d;
-			d = n.mod(d);
-			n = tmp;
+		if(isSmall(n) && isSmall(d)) {
+			return IntegerValue.newInteger(gcd((long) n.intValue(), (long) d.intValue()));
 		}
-		return n;
+		return IntegerValue.newInteger(((ICanBecomeABigInteger) n).toBigInteger().gcd(((ICanBecomeABigInteger) d).toBigInteger()));
 	}
 	protected IInteger intOne() {
 		return IntegerValue.INTEGER_ONE;
@@ -371,6 +492,7 @@ import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
 
 	@Override
 	public double doubleValue() {
-		return num.doubleValue() / denom.doubleValue();
+		RationalValue self = normalized();
+		return self.num.doubleValue() / self.denom.doubleValue();
 	}
 }
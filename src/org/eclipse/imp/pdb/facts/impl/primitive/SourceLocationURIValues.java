@@ -2,7 +2,7 @@ package org.eclipse.imp.pdb.facts.impl.primitive;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /*
  * Not supported: in URI class, scheme is case insensitive, but this is already kinda broken, since on windows & osx, so should path's be.
@@ -12,25 +12,149 @@ import java.util.regex.Pattern;
 		return newURI(base.getScheme(), base.getAuthority(),base.getPath(), base.getQuery(), base.getFragment());
 	}
 
-	private static final Pattern schemePattern = Pattern.compile("[A-Za-z][A-Za-z0-9+\\-.]*");
-	private static final Pattern doubleSlashes = Pattern.compile("//+");
+	/**
+	 * Source locations typically point into a limited number of files, so we share
+	 * the IURI instances between them. The cache is keyed on the raw arguments of
+	 * {@link #newURI(String, String, String, String, String)}, such that a hit does 
+	 * not need any normalization or validation. When the cache grows beyond its
+	 * bound it is simply flushed; this only costs sharing, never correctness.
+	 */
+	private static final int MAX_INTERNED_URIS = 1 << 16;
+	private static final ConcurrentHashMap<URIKey, IURI> internedURIs = new ConcurrentHashMap<>();
+	
 	static IURI newURI(String scheme, String authority, String path, String query, String fragment) throws URISyntaxException  {
+		URIKey key = new URIKey(scheme, authority, path, query, fragment);
+		IURI result = internedURIs.get(key);
+		
+		if (result == null) {
+			result = buildURI(scheme, authority, path, query, fragment);
+			
+			if (internedURIs.size() >= MAX_INTERNED_URIS) {
+				internedURIs.clear();
+			}
+			
+			IURI previous = internedURIs.putIfAbsent(key, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		
+		return result;
+	}
+	
+	private static final class URIKey {
+		private final String scheme;
+		private final String authority;
+		private final String path;
+		private final String query;
+		private final String fragment;
+		private final int hash;
+		
+		URIKey(String scheme, String authority, String path, String query, String fragment) {
+			this.scheme = scheme;
+			this.authority = authority;
+			this.path = path;
+			this.query = query;
+			this.fragment = fragment;
+			
+			int h = hash(scheme);
+			h = 31 * h + hash(authority);
+			h = 31 * h + hash(path);
+			h = 31 * h + hash(query);
+			this.hash = 31 * h + hash(fragment);
+		}
+		
+		private static int hash(String s) {
+			return s == null ? 0 : s.hashCode();
+		}
+		
+		private static boolean eq(String a, String b) {
+			return a == b || (a != null && a.equals(b));
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof URIKey)) {
+				return false;
+			}
+			URIKey other = (URIKey) obj;
+			return hash == other.hash
+					&& eq(path, other.path)
+					&& eq(scheme, other.scheme)
+					&& eq(authority, other.authority)
+					&& eq(query, other.query)
+					&& eq(fragment, other.fragment);
+		}
+	}
+	
+	/**
+	 * Checks the scheme production of RFC 3986: ALPHA *( ALPHA / DIGIT / "+" / "-" / "." )
+	 */
+	private static boolean isValidScheme(String scheme) {
+		if (!isAlpha(scheme.charAt(0))) {
+			return false;
+		}
+		
+		for (int i = 1; i < scheme.length(); i++) {
+			char c = scheme.charAt(i);
+			if (!isAlpha(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static boolean isAlpha(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	/**
+	 * Replaces every run of two or more slashes by a single slash.
+	 */
+	private static String normalizeSlashes(String path) {
+		int i = path.indexOf("//");
+		if (i == -1) {
+			return path;
+		}
+		
+		StringBuilder b = new StringBuilder(path.length());
+		b.append(path, 0, i + 1);
+		
+		for (i = i + 1; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c != '/' || path.charAt(i - 1) != '/') {
+				b.append(c);
+			}
+		}
+		
+		return b.toString();
+	}
+	
+	private static IURI buildURI(String scheme, String authority, String path, String query, String fragment) throws URISyntaxException  {
 		if (path != null) {
 			if (path.isEmpty()) {
 				path = null;
 			}
-			else if (!path.startsWith("/")) {
-				path = "/" + path;
-			}
-			if (path != null) {
-				// normalize double or longer slashes
-				path = doubleSlashes.matcher(path).replaceAll("/");
+			else {
+				if (!path.startsWith("/")) {
+					path = "/" + path;
+				}
+				path = normalizeSlashes(path);
 			}
 		}
 		if (scheme == null || scheme.equals("")) {
 			throw new URISyntaxException(scheme, "scheme cannot be empty or null");
 		}
-		if (!schemePattern.matcher(scheme).matches()) {
+		if (!isValidScheme(scheme)) {
 			throw new URISyntaxException(scheme, "Scheme is not a valid scheme");
 		}
 		if (authority == null || authority.equals("")) {
@@ -84,14 +208,29 @@ import java.util.regex.Pattern;
 	
 	private static class BaseURI implements IURI {
 		protected final String scheme;
-		
+		private volatile URI uri; // instances are shared, so caching the java.net.URI pays off
 		
 		public BaseURI(String scheme)  {
 			this.scheme = scheme.intern();
 		}
 		
+		public final URI getURI() {
+			URI result = uri;
+			
+			if (result == null) {
+				result = buildURI();
+				try {
+					// assure correct encoding, side effect of JRE's implementation of URIs
+					result = new URI(result.toASCIIString());
+				} catch (URISyntaxException e) {
+				}
+				uri = result;
+			}
+			
+			return result;
+		}
 
-		public URI getURI() {
+		protected URI buildURI() {
 			try {
 				return new URI(scheme,"","/",null,null);
 			} catch (URISyntaxException e) {
@@ -160,14 +299,12 @@ import java.util.regex.Pattern;
 
 	}
 	
-	private static final Pattern squareBrackets = Pattern.compile("(\\[|\\])");
-
 	private static URI buildURIWithAuthority(String scheme, String authority,
 			String path, String query, String fragment) {
 		try {
 				return new URI(scheme, authority, path, query, fragment);
 		} catch (URISyntaxException e) {
-			if (authority != null && squareBrackets.matcher(authority).find()) {
+			if (authority != null && (authority.indexOf('[') != -1 || authority.indexOf(']') != -1)) {
 				// Java URI do not correctly quote the brackets inside the authority 
 				// even though RFC2732 specifies this.
 				// it has to do with the fact that the encoding/quotation is a single pass
@@ -186,12 +323,12 @@ import java.util.regex.Pattern;
 		
 	}
 
-	private static final Pattern squareBracketOpenPlaceholder = Pattern.compile("%00%00%EF%BF%B0%00%00");
-	private static final Pattern squareBracketClosePlaceholder = Pattern.compile("%00%00%EF%BF%B1%00%00");
+	private static final String squareBracketOpenPlaceholder = "%00%00%EF%BF%B0%00%00";
+	private static final String squareBracketClosePlaceholder = "%00%00%EF%BF%B1%00%00";
 	private static URI unhideBrackets(URI temp) {
 		String newURI = temp.toASCIIString();
-		newURI = squareBracketOpenPlaceholder.matcher(newURI).replaceAll("%5B");
-		newURI = squareBracketClosePlaceholder.matcher(newURI).replaceAll("%5D");
+		newURI = replaceAll(newURI, squareBracketOpenPlaceholder, "%5B");
+		newURI = replaceAll(newURI, squareBracketClosePlaceholder, "%5D");
 		try {
 			return new URI(newURI);
 		} catch (URISyntaxException e) {
@@ -199,11 +336,30 @@ import java.util.regex.Pattern;
 		}
 	}
 
-	private static final Pattern squareBracketOpen = Pattern.compile("\\[");
-	private static final Pattern squareBracketClose = Pattern.compile("\\]");
 	private static String hideBrackets(String authority) {
-		authority = squareBracketOpen.matcher(authority).replaceAll("\0\0\uFFF0\0\0");
-		return squareBracketClose.matcher(authority).replaceAll("\0\0\uFFF1\0\0");
+		authority = replaceAll(authority, "[", "\0\0\uFFF0\0\0");
+		return replaceAll(authority, "]", "\0\0\uFFF1\0\0");
+	}
+	
+	/**
+	 * Literal replacement of all occurrences of target, without going through java.util.regex.
+	 */
+	private static String replaceAll(String s, String target, String replacement) {
+		int i = s.indexOf(target);
+		if (i == -1) {
+			return s;
+		}
+		
+		StringBuilder b = new StringBuilder(s.length() + replacement.length());
+		int last = 0;
+		
+		do {
+			b.append(s, last, i).append(replacement);
+			last = i + target.length();
+			i = s.indexOf(target, last);
+		} while (i != -1);
+		
+		return b.append(s, last, s.length()).toString();
 	}
 
 
@@ -218,7 +374,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			return buildURIWithAuthority(scheme, authority, null,null,null);
 		}
 		
@@ -264,7 +420,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			try {
 				return new URI(scheme, "", path, null, null);
 			} catch (URISyntaxException e) {
@@ -311,7 +467,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			return buildURIWithAuthority(scheme, authority, path,null,null);
 		}
 		
@@ -350,7 +506,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			try {
 				return new URI(scheme, "", "/", query, null);
 			} catch (URISyntaxException e) {
@@ -393,7 +549,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			return buildURIWithAuthority(scheme, authority, null, query, null);
 		}
 		
@@ -433,7 +589,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			try {
 				return new URI(scheme, "", path, query, null);
 			} catch (URISyntaxException e) {
@@ -477,7 +633,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			return buildURIWithAuthority(scheme, authority, path,query,null);
 		}
 		
@@ -518,7 +674,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			try {
 				return new URI(scheme, "", "/", null, fragment);
 			} catch (URISyntaxException e) {
@@ -561,7 +717,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			return buildURIWithAuthority(scheme, authority, null, null, fragment);
 		}
 		
@@ -601,7 +757,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			try {
 				return new URI(scheme, "", path, null, fragment);
 			} catch (URISyntaxException e) {
@@ -645,7 +801,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			return buildURIWithAuthority(scheme, authority, path, null, fragment);
 		}
 		
@@ -685,7 +841,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			try {
 				return new URI(scheme, "", "/", query, fragment);
 			} catch (URISyntaxException e) {
@@ -729,7 +885,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			return buildURIWithAuthority(scheme, authority, null, query, fragment);
 		}
 		
@@ -770,7 +926,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			try {
 				return new URI(scheme, "", path, query, fragment);
 			} catch (URISyntaxException e) {
@@ -815,7 +971,7 @@ import java.util.regex.Pattern;
 		}
 		
 		@Override
-		public URI getURI() {
+		protected URI buildURI() {
 			return buildURIWithAuthority(scheme, authority, path, query, fragment);
 		}
 		
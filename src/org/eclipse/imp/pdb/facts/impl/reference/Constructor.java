@@ -1,7 +1,6 @@
 package org.eclipse.imp.pdb.facts.impl.reference;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -70,21 +69,7 @@ public class Constructor extends Node implements IConstructor {
       assert fType.getAbstractDataType().isOpen();
     
       // this assures we always have the most concrete type for constructors.
-      Type[] actualTypes = new Type[fChildren.length];
-      for (int i = 0; i < fChildren.length; i++) {
-        actualTypes[i] = fChildren[i].getType();
-      }
-    
-      Map<Type,Type> bindings = new HashMap<Type,Type>();
-      fType.getFieldTypes().match(TypeFactory.getInstance().tupleType(actualTypes), bindings);
-      
-      for (Type field : fType.getAbstractDataType().getTypeParameters()) {
-        if (!bindings.containsKey(field)) {
-          bindings.put(field, TypeFactory.getInstance().voidType());
-        }
-      }
-      
-      return fType.instantiate(bindings);
+      return TypeFactory.getInstance().instantiateConstructor(fType, fChildren);
     }
     
     return fType;
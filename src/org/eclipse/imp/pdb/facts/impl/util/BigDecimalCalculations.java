@@ -61,17 +61,185 @@ public class BigDecimalCalculations {
 			"27041978623209002160990235304369941849146314093431738143640546253152" +
 			"09618369088870701676839642437814059271456354906130310720851038375051" +
 			"011574770417189861068739696552126715468895703503540");
-	
+
     /**
-     * above 500 (/below -500) the approximation slows down more than the normalisation costs.
-     * So we normalize first
+     * Extra digits used for intermediate results, to absorb rounding errors.
      */
-    private static final BigDecimal sincosNormalizePoint = BigDecimal.valueOf(500);
+    private static final int GUARD_DIGITS = 10;
     
-    private static BigInteger maxBigDecimalPowExp = BigInteger.valueOf(999999999); // maximum exponent for BigDecimal.pow
-	
+    /**
+     * The number of digits before the decimal point up to which exp is exact to the
+     * requested scale; larger results are rounded to this many digits plus the scale.
+     */
+    private static final int EXACT_EXP_DIGITS = 1000;
     
-	/**
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final BigDecimal THREE = BigDecimal.valueOf(3);
+    private static final BigDecimal FOUR = BigDecimal.valueOf(4);
+    
+    /**
+     * The most precise versions of the constants computed so far; they only grow.
+     */
+    private static volatile BigDecimal cachedPI = PI;
+    private static volatile BigDecimal cachedE = E;
+    private static volatile BigDecimal cachedLN2 = null;
+
+    /**
+     * Returns pi rounded to the given scale. Digits beyond the ones already known are
+     * computed with the Chudnovsky series and cached for later calls.
+     */
+    public static BigDecimal pi(int scale) {
+    	BigDecimal pi = cachedPI;
+    	if (pi.scale() < scale + GUARD_DIGITS) {
+    		pi = computePI(scale + GUARD_DIGITS);
+    		if (cachedPI.scale() < pi.scale()) {
+    			cachedPI = pi;
+    		}
+    	}
+    	return pi.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+    
+    /**
+     * Returns e rounded to the given scale. Digits beyond the ones already known are
+     * computed with the series sum(1/k!) and cached for later calls.
+     */
+    public static BigDecimal e(int scale) {
+    	BigDecimal e = cachedE;
+    	if (e.scale() < scale + GUARD_DIGITS) {
+    		e = computeE(scale + GUARD_DIGITS);
+    		if (cachedE.scale() < e.scale()) {
+    			cachedE = e;
+    		}
+    	}
+    	return e.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+    
+    /**
+     * Returns ln(2) rounded to the given scale, computed with a Machin-like formula
+     * and cached for later calls.
+     */
+    public static BigDecimal ln2(int scale) {
+    	BigDecimal ln2 = cachedLN2;
+    	if (ln2 == null || ln2.scale() < scale + GUARD_DIGITS) {
+    		ln2 = computeLN2(scale + GUARD_DIGITS);
+    		BigDecimal current = cachedLN2;
+    		if (current == null || current.scale() < ln2.scale()) {
+    			cachedLN2 = ln2;
+    		}
+    	}
+    	return ln2.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+    
+    /**
+     * A hypergeometric-like series sum(a(n)/b(n) * p(0)...p(n) / q(0)...q(n)) of which the
+     * terms can be summed exactly with binary splitting. 
+     */
+    private static abstract class Series {
+    	abstract BigInteger a(int n);
+    	abstract BigInteger b(int n);
+    	abstract BigInteger p(int n);
+    	abstract BigInteger q(int n);
+    	
+    	/**
+    	 * Sums the terms [0, terms) of the series to the given scale.
+    	 */
+    	BigDecimal sum(int terms, int scale) {
+    		BigInteger[] pqbt = split(0, terms);
+    		BigDecimal numerator = new BigDecimal(pqbt[3]);
+    		BigDecimal denominator = new BigDecimal(pqbt[2].multiply(pqbt[1]));
+    		return numerator.divide(denominator, scale, RoundingMode.HALF_EVEN);
+    	}
+    	
+    	/**
+    	 * Returns {P, Q, B, T} for the terms [n1, n2), such that their sum is T / (B * Q).
+    	 */
+    	private BigInteger[] split(int n1, int n2) {
+    		if (n2 - n1 == 1) {
+    			BigInteger p = p(n1);
+    			return new BigInteger[] { p, q(n1), b(n1), a(n1).multiply(p) };
+    		}
+    		
+    		int middle = (n1 + n2) >>> 1;
+    		BigInteger[] left = split(n1, middle);
+    		BigInteger[] right = split(middle, n2);
+    		
+    		BigInteger p = left[0].multiply(right[0]);
+    		BigInteger q = left[1].multiply(right[1]);
+    		BigInteger b = left[2].multiply(right[2]);
+    		BigInteger t = right[2].multiply(right[1]).multiply(left[3])
+    				.add(left[2].multiply(left[0]).multiply(right[3]));
+    		return new BigInteger[] { p, q, b, t };
+    	}
+    }
+    
+    private static BigDecimal computePI(int scale) {
+    	// Chudnovsky: 1/pi = 12/640320^(3/2) * sum((-1)^n (6n)! (13591409 + 545140134n) / ((3n)! (n!)^3 640320^(3n)))
+    	final BigInteger c = BigInteger.valueOf(10939058860032000L); // 640320^3 / 24
+    	Series chudnovsky = new Series() {
+    		BigInteger a(int n) { return BigInteger.valueOf(13591409L + 545140134L * n); }
+    		BigInteger b(int n) { return BigInteger.ONE; }
+    		BigInteger p(int n) {
+    			if (n == 0) return BigInteger.ONE;
+    			return BigInteger.valueOf(6L * n - 5).multiply(BigInteger.valueOf(2L * n - 1)).multiply(BigInteger.valueOf(6L * n - 1)).negate();
+    		}
+    		BigInteger q(int n) {
+    			if (n == 0) return BigInteger.ONE;
+    			BigInteger bn = BigInteger.valueOf(n);
+    			return bn.multiply(bn).multiply(bn).multiply(c);
+    		}
+    	};
+    	
+    	int terms = scale / 14 + 2; // each term adds a little over 14 digits
+    	int workingScale = scale + GUARD_DIGITS;
+    	BigDecimal sum = chudnovsky.sum(terms, workingScale);
+    	BigDecimal sqrt10005 = sqrt(BigDecimal.valueOf(10005), workingScale);
+    	return BigDecimal.valueOf(426880).multiply(sqrt10005).divide(sum, scale, RoundingMode.HALF_EVEN);
+    }
+    
+    private static BigDecimal computeE(int scale) {
+    	Series factorials = new Series() {
+    		BigInteger a(int n) { return BigInteger.ONE; }
+    		BigInteger b(int n) { return BigInteger.ONE; }
+    		BigInteger p(int n) { return BigInteger.ONE; }
+    		BigInteger q(int n) { return n == 0 ? BigInteger.ONE : BigInteger.valueOf(n); }
+    	};
+    	
+    	// enough terms such that terms! > 10^scale
+    	int terms = 1;
+    	double log10Factorial = 0;
+    	while (log10Factorial <= scale + 1) {
+    		terms++;
+    		log10Factorial += Math.log10(terms);
+    	}
+    	return factorials.sum(terms + 1, scale);
+    }
+    
+    private static BigDecimal computeLN2(int scale) {
+    	// ln(2) = 18 atanh(1/26) - 2 atanh(1/4801) + 8 atanh(1/8749)
+    	int workingScale = scale + GUARD_DIGITS;
+    	BigDecimal result = atanhOfInverse(26, workingScale).multiply(BigDecimal.valueOf(18))
+    			.subtract(atanhOfInverse(4801, workingScale).multiply(TWO))
+    			.add(atanhOfInverse(8749, workingScale).multiply(BigDecimal.valueOf(8)));
+    	return result.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+    
+    /**
+     * atanh(1/x) = sum(1 / ((2n + 1) x^(2n + 1)))
+     */
+    private static BigDecimal atanhOfInverse(final long x, int scale) {
+    	final BigInteger bx = BigInteger.valueOf(x);
+    	final BigInteger xSquared = bx.multiply(bx);
+    	Series atanh = new Series() {
+    		BigInteger a(int n) { return BigInteger.ONE; }
+    		BigInteger b(int n) { return BigInteger.valueOf(2L * n + 1); }
+    		BigInteger p(int n) { return BigInteger.ONE; }
+    		BigInteger q(int n) { return n == 0 ? bx : xSquared; }
+    	};
+    	int terms = (int) (scale / (2 * Math.log10(x))) + 2;
+    	return atanh.sum(terms, scale);
+    }
+
+    /**
      * Compute the sine of x to a given scale
      * @param x 
      *      the value of x
@@ -83,52 +251,7 @@ public class BigDecimalCalculations {
     {
         if (x.signum() == 0)
         	return BigDecimal.ZERO;
-        if (x.abs().compareTo(sincosNormalizePoint) >= 0 ) {
-	        x = x.remainder(twoPI, new MathContext(scale + 1));
-        }
-        if (x.signum() == -1)
-            return sinTaylor(x.negate(), scale).negate();
-        else 
-        	return sinTaylor(x, scale);
-    }
-    
-    
-    private static BigDecimal calculateConvergenceTolerance(int scale) {
-    	return BigDecimal.valueOf(5).movePointLeft(scale + 1);
-    }
-    
-    // code based on arctanTaylor by Ronald Mak  
-    private static BigDecimal sinTaylor(BigDecimal x, int scale)
-    {
-        int     sp1     = scale + 1;
-        int     i       = 3;
-        boolean addFlag = false;
-
-        BigDecimal power = x;
-        BigDecimal result   = x;
-        BigDecimal fac = new BigDecimal(2*3);
-        BigDecimal term;
-
-        BigDecimal tolerance = calculateConvergenceTolerance(scale);
-
-        // Loop until the approximations converge
-        // (two successive approximations are within the tolerance).
-        do {
-            // x^i
-            power = power.multiply(x).multiply(x).setScale(sp1, BigDecimal.ROUND_HALF_EVEN);
-            // (x^i)/(i!)
-            term = power.divide(fac, sp1,BigDecimal.ROUND_HALF_EVEN);
-            // result = result +- (x^i)/(i!)
-            result = addFlag ? result.add(term) : result.subtract(term);
-            
-            // state for next round
-            i += 2;
-            fac = fac.multiply(BigDecimal.valueOf(i - 1)).multiply(BigDecimal.valueOf(i));
-            addFlag = !addFlag;
-
-        } while (term.compareTo(tolerance) > 0);
-
-        return result;
+        return sinCos(x, scale, false);
     }
     
     /**
@@ -141,49 +264,74 @@ public class BigDecimalCalculations {
     {
         if (x.signum() == 0)
         	return BigDecimal.ONE;
-        if (x.abs().compareTo(sincosNormalizePoint) >= 0 ) {
-	        x = x.remainder(twoPI, new MathContext(scale + 1));
-        }
-        if (x.signum() == -1)
-            return cosTaylor(x.negate(), scale);
-        else 
-        	return cosTaylor(x, scale);
+        return sinCos(x, scale, true);
     }
     
-    // code based on arctanTaylor by Ronald Mak 
-    // same as sin but without the x starting point and +1 in faculty
-    private static BigDecimal cosTaylor(BigDecimal x, int scale)
-    {
-        int     sp1     = scale + 1;
-        int     i       = 2;
-        boolean addFlag = false;
-
-        BigDecimal power = BigDecimal.ONE;
-        BigDecimal result   = BigDecimal.ONE;
-        BigDecimal fac = new BigDecimal(2);
-        BigDecimal term;
-
-        BigDecimal tolerance = calculateConvergenceTolerance(scale);
-
-        // Loop until the approximations converge
-        // (two successive approximations are within the tolerance).
-        do {
-            // x^i
-            power = power.multiply(x).multiply(x).setScale(sp1, BigDecimal.ROUND_HALF_EVEN);
-            // (x^i)/(i!)
-            term = power.divide(fac, sp1, BigDecimal.ROUND_HALF_EVEN);
-            // result = result +- (x^i)/(i!)
-            result = addFlag ? result.add(term) : result.subtract(term);
-            
-            // prepare state for next loop
-            i += 2;
-            fac = fac.multiply(BigDecimal.valueOf(i -1)).multiply(BigDecimal.valueOf(i));
-            addFlag = !addFlag;
-
-        } while (term.compareTo(tolerance) > 0);
-        return result;
+    /**
+     * Reduces x to r in [-pi/4, pi/4] such that x = q*(pi/2) + r, and derives the sine or
+     * cosine of x from the sine or cosine of r depending on the quadrant q.
+     */
+    private static BigDecimal sinCos(BigDecimal x, int scale, boolean cosine) {
+    	int workingScale = scale + GUARD_DIGITS;
+    	int integerDigits = Math.max(0, x.precision() - x.scale());
+    	BigDecimal halfPi = pi(workingScale + integerDigits).divide(TWO);
+    	
+    	BigDecimal quotient = x.divide(halfPi, 0, RoundingMode.HALF_EVEN);
+    	BigDecimal r = x.subtract(halfPi.multiply(quotient)).setScale(workingScale, RoundingMode.HALF_EVEN);
+    	
+    	// cos(x) = sin(x + pi/2)
+    	int quadrant = quotient.toBigInteger().mod(BigInteger.valueOf(4)).intValue();
+    	if (cosine) {
+    		quadrant = (quadrant + 1) % 4;
+    	}
+    	
+    	BigDecimal result;
+    	switch (quadrant) {
+    	case 0: result = sinReduced(r, workingScale); break;
+    	case 1: result = cosReduced(r, workingScale); break;
+    	case 2: result = sinReduced(r, workingScale).negate(); break;
+    	default: result = cosReduced(r, workingScale).negate(); break;
+    	}
+    	return result.setScale(scale, RoundingMode.HALF_EVEN);
     }
     
+    /**
+     * sin(r) for |r| <= pi/4: the argument is divided by 3^k, so the Taylor series converges
+     * quickly, after which the triple angle formula sin(3a) = 3sin(a) - 4sin(a)^3 is applied k times.
+     */
+    private static BigDecimal sinReduced(BigDecimal r, int scale) {
+    	if (r.signum() == 0) {
+    		return BigDecimal.ZERO;
+    	}
+    	
+    	int k = (int) Math.sqrt(scale) / 2;
+    	// every triple angle step can triple the error
+    	int workingScale = scale + k / 2 + 1;
+    	BigDecimal t = r.divide(THREE.pow(k), workingScale, RoundingMode.HALF_EVEN);
+    	
+    	BigDecimal tSquared = t.multiply(t).setScale(workingScale, RoundingMode.HALF_EVEN);
+    	BigDecimal term = t;
+    	BigDecimal sum = t;
+    	for (long i = 2; term.signum() != 0; i += 2) {
+    		// term = -term * t^2 / (i * (i + 1))
+    		term = term.multiply(tSquared).divide(BigDecimal.valueOf(i * (i + 1)), workingScale, RoundingMode.HALF_EVEN).negate();
+    		sum = sum.add(term);
+    	}
+    	
+    	for (int i = 0; i < k; i++) {
+    		BigDecimal cube = sum.multiply(sum).multiply(sum);
+    		sum = sum.multiply(THREE).subtract(cube.multiply(FOUR)).setScale(workingScale, RoundingMode.HALF_EVEN);
+    	}
+    	return sum;
+    }
+    
+    /**
+     * cos(r) for |r| <= pi/4, where the cosine is at least 1/sqrt(2).
+     */
+    private static BigDecimal cosReduced(BigDecimal r, int scale) {
+    	BigDecimal sin = sinReduced(r, scale + 1);
+    	return sqrt(BigDecimal.ONE.subtract(sin.multiply(sin)), scale + 1);
+    }
     
 	/**
 	 * Compute the tangent of x to a given scale, |x| < pi/2
@@ -200,86 +348,21 @@ public class BigDecimalCalculations {
 		if (x.abs().compareTo(halfPI) > 0)
 			throw new ArithmeticException("x should be between -(pi/2) and (pi/2)");
 		// easiest implementation of tan (no need for Bernoulli numbers) but this is slower than the other 2
-		return sin(x, scale + 1).divide(cos(x, scale + 1), scale, RoundingMode.HALF_UP);
-	}
-	
-	
-	/**
-	 * Compute x^exponent to a given scale.
-	 * 
-	 * @param x
-	 *            the value x
-	 * @param exponent
-	 *            the exponent value
-	 * @param scale
-	 *            the desired scale of the result
-	 * @return the result value
-	 */
-	private static BigDecimal intPower(BigDecimal x, BigInteger exponent, int scale) {
-		boolean negativeExponent = exponent.signum() == -1;
-
-		if (negativeExponent) {
-			exponent = exponent.negate();
+		int workingScale = scale + GUARD_DIGITS;
+		BigDecimal cos = cos(x, workingScale);
+		// near +-pi/2 the cosine is small and its error gets magnified by the division
+		int leadingZeros = cos.scale() - cos.precision();
+		if (leadingZeros > 0) {
+			workingScale += leadingZeros;
+			cos = cos(x, workingScale);
 		}
-
-		if (exponent.equals(BigInteger.ZERO)) {
-			return BigDecimal.ONE.setScale(scale);
-		}
-
-		MathContext mc = new MathContext(scale, RoundingMode.HALF_EVEN);
-		
-		if (exponent.equals(BigInteger.ONE)) {
-			if (negativeExponent) {
-				return BigDecimal.ONE.divide(x, mc);
-			}
-			return x.setScale(scale, BigDecimal.ROUND_HALF_EVEN);
-		}
-		
-		BigDecimal result = BigDecimal.valueOf(1);
-
-		if (exponent.compareTo(maxBigDecimalPowExp) >= 0) {
-			BigDecimal maxExpPow = x.pow(maxBigDecimalPowExp.intValue(), mc);
-			while (exponent.compareTo(maxBigDecimalPowExp) >= 0) {
-				result = result.multiply(maxExpPow);
-				exponent = exponent.subtract(maxBigDecimalPowExp);	
-			}
-		}
-		
-		result = result.multiply(x.pow(exponent.intValue(), mc));
-		
-		if (negativeExponent) {
-			return BigDecimal.ONE.divide(result, mc);
-		}
-		
-		return result.setScale(scale, RoundingMode.HALF_EVEN);
-	}	
+		return sin(x, workingScale).divide(cos, scale, RoundingMode.HALF_UP);
+	}
 	
 	/**
-	 * The functions below this line are based on the Numerical implementations of
-	 * Java Number Cruncher: The Java Programmer's Guide 
-	 *    to Numerical Computing
-	 * by Ronald Mak
-	 * 
-	 * He has shared the code in the book at the following page:
-	 * http://authors.phptr.com/mak/downloads.html
-	 * 
-	 * And has put the source in the public domain:
-	 *      "I wrote all these programs strictly as 
-	 *      illustrative examples for my book. 
-	 *      You're free to use the source code any 
-	 *      way you like, but bear in mind that this is 
-	 *      NOT fully tested, commercial-quality code. 
-	 *      Neither Prentice Hall PTR nor I can be 
-	 *      responsible for anything bad that may happen 
-	 *      if you use these programs."
-	 * 
-	 * The only changes were the removal of call to Thread.yield(), switching to
-	 *  and formatting improvements
-	 */
-
-	/**
-	 * Compute the integral root of x to a given scale, x >= 0. Use Newton's
-	 * algorithm.
+	 * Compute the integral root of x to a given scale, x >= 0. Starts from a
+	 * floating point approximation and uses Newton's algorithm, doubling the
+	 * working precision in every iteration.
 	 * 
 	 * @param x
 	 *            the value of x
@@ -294,52 +377,59 @@ public class BigDecimalCalculations {
 		if (x.signum() < 0) {
 			throw new ArithmeticException("x < 0");
 		}
+		if (index.signum() <= 0) {
+			throw new ArithmeticException("index <= 0");
+		}
+		if (x.signum() == 0) {
+			return BigDecimal.ZERO.setScale(scale);
+		}
+		if (index.equals(BigInteger.ONE)) {
+			return x.setScale(scale, RoundingMode.HALF_EVEN);
+		}
+		if (index.bitLength() > 30) {
+			// x^(1/index) = e^(ln(x)/index)
+			BigDecimal lnX = ln(x, scale + GUARD_DIGITS + x.precision());
+			return exp(lnX.divide(new BigDecimal(index), scale + GUARD_DIGITS, RoundingMode.HALF_EVEN), scale);
+		}
+		int n = index.intValue();
+		
+		// log10(x) = magnitude + log10(mantissa) with the mantissa in [0.1, 1)
+		int magnitude = x.precision() - x.scale();
+		double log10Root = (magnitude + Math.log10(x.movePointLeft(magnitude).doubleValue())) / n;
+		int rootMagnitude = (int) Math.floor(log10Root);
+		BigDecimal root = BigDecimal.valueOf(Math.pow(10, log10Root - rootMagnitude)).movePointRight(rootMagnitude);
+		
+		// significant digits needed for the requested scale
+		int targetPrecision = Math.max(scale + rootMagnitude + 1, 1) + GUARD_DIGITS;
+		BigDecimal bn = BigDecimal.valueOf(n);
+		BigDecimal nm1 = BigDecimal.valueOf(n - 1);
+		int precision = 15; // what the floating point approximation gives us
+		boolean done = false;
+		while (!done) {
+			done = precision == targetPrecision;
+			precision = Math.min(2 * precision, targetPrecision);
+			MathContext mc = new MathContext(precision + 2, RoundingMode.HALF_EVEN);
+			// root = ((n - 1) * root + x / root^(n-1)) / n
+			BigDecimal quotient = x.divide(root.pow(n - 1, mc), mc);
+			root = root.multiply(nm1).add(quotient).divide(bn, mc);
+		}
 
-		int sp1 = scale + 1;
-		BigDecimal n = x;
-		BigDecimal i = new BigDecimal(index);
-		BigDecimal im1 = i.subtract(BigDecimal.ONE);
-		BigDecimal tolerance = BigDecimal.valueOf(5).movePointLeft(sp1);
-		BigDecimal xPrev;
-		BigInteger indexm1 = index.subtract(BigInteger.ONE);
-
-		// The initial approximation is x/index.
-		x = x.divide(i, scale, BigDecimal.ROUND_HALF_EVEN);
-
-		// Loop until the approximations converge
-		// (two successive approximations are equal after rounding).
-		do {
-			// x^(index-1)
-			BigDecimal xToIm1 = intPower(x, indexm1, sp1 + 1);
-			// x^index
-			BigDecimal xToI = x.multiply(xToIm1);
-			// n + (index-1)*(x^index)
-			BigDecimal numerator = n.add(im1.multiply(xToI));
-			// (index*(x^(index-1))
-			BigDecimal denominator = i.multiply(xToIm1);
-			// x = (n + (index-1)*(x^index)) / (index*(x^(index-1)))
-			xPrev = x;
-			if (denominator.compareTo(BigDecimal.ZERO) == 0) {
-				x = BigDecimal.ZERO.setScale(sp1);
-			}
-			else {
-				x = numerator.divide(denominator, sp1, BigDecimal.ROUND_DOWN);
-			}
-
-		} while (x.subtract(xPrev).abs().compareTo(tolerance) > 0);
-
-		return x.setScale(scale, RoundingMode.HALF_EVEN);
+		return root.setScale(scale, RoundingMode.HALF_EVEN);
 	}
 
 	/**
-	 * Compute e^x to a given scale. Break x into its whole and fraction parts
-	 * and compute (e^(1 + fraction/whole))^whole using Taylor's formula.
+	 * Compute e^x to a given scale. For negative x the result has scale
+	 * significant digits instead, since it quickly approaches zero. For x so large
+	 * that e^x has more than a thousand digits before the decimal point, the result
+	 * has a thousand plus scale significant digits, and hence a smaller scale.
 	 * 
 	 * @param x
 	 *            the value of x
 	 * @param scale
 	 *            the desired scale of the result
 	 * @return the result value
+	 * @throws ArithmeticException
+	 *             if e^x is too large or too small to be represented
 	 */
 	public static BigDecimal exp(BigDecimal x, int scale) {
 		// e^0 = 1
@@ -347,76 +437,86 @@ public class BigDecimalCalculations {
 			return BigDecimal.valueOf(1);
 		}
 		
-		boolean isNegative = x.signum() == -1;
-		
-		if (isNegative) {
-			x = x.negate();
+		if (x.signum() == -1) {
+			return expWithPrecision(x, scale);
 		}
 		
-		// Compute the whole part of x.
-		BigDecimal xWhole = x.setScale(0, BigDecimal.ROUND_DOWN);
-
-		BigDecimal result;
+		// e^x has about x/ln(10) digits before the decimal point, all of
+		// which would have to be computed to get scale digits after it
+		double magnitude = Math.ceil(x.doubleValue() / Math.log(10));
+		int precision = scale + 1 + (int) Math.min(magnitude, EXACT_EXP_DIGITS);
+		BigDecimal result = expWithPrecision(x, precision);
 		
-		// If there isn't a whole part, compute and return e^x.
-		if (xWhole.signum() == 0) {
-			result = expTaylor(x, scale);
+		// padding with zeros up to the scale would take time and space linear in x
+		if (result.scale() > scale) {
+			result = result.setScale(scale, RoundingMode.HALF_EVEN);
 		}
-		else {
-			// Compute the fraction part of x.
-			BigDecimal xFraction = x.subtract(xWhole);
-	
-			// z = 1 + fraction/whole
-			BigDecimal z = BigDecimal.valueOf(1).add(
-					xFraction.divide(xWhole, scale, BigDecimal.ROUND_HALF_EVEN));
-	
-			// t = e^z
-			BigDecimal t = expTaylor(z, scale);
+		return result;
+	}
 	
-			result = intPower(t, xWhole.toBigInteger(), scale);
+	/**
+	 * Computes e^x to the given number of significant digits. The argument is reduced to
+	 * r = x - n*ln(2), |r| <= ln(2)/2, and then to r/2^k, for which the Taylor series
+	 * converges quickly; e^x = (e^(r/2^k))^(2^k) * 2^n.
+	 */
+	private static BigDecimal expWithPrecision(BigDecimal x, int precision) {
+		int workingScale = precision + GUARD_DIGITS;
+		
+		BigInteger n = BigInteger.ZERO;
+		BigDecimal r = x;
+		if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+			int integerDigits = Math.max(0, x.precision() - x.scale()) + 1;
+			BigDecimal ln2 = ln2(workingScale + integerDigits);
+			BigDecimal quotient = x.divide(ln2, 0, RoundingMode.HALF_EVEN);
+			n = quotient.toBigInteger();
+			r = x.subtract(ln2.multiply(quotient));
+			
+			if (n.abs().bitLength() > 31) {
+				throw new ArithmeticException(n.signum() > 0 ? "exp overflow" : "exp underflow");
+			}
 		}
 		
-		if (isNegative) {
-			return BigDecimal.ONE.divide(result, new MathContext(scale, RoundingMode.HALF_EVEN));
+		// every squaring can double the relative error
+		int k = (int) Math.sqrt(workingScale);
+		workingScale += k / 3 + 1;
+		r = r.multiply(BigDecimal.valueOf(5).pow(k)).movePointLeft(k).setScale(workingScale, RoundingMode.HALF_EVEN); // r / 2^k
+		
+		BigDecimal term = BigDecimal.ONE;
+		BigDecimal sum = BigDecimal.ONE;
+		for (int i = 1; term.signum() != 0; i++) {
+			// term = term * r / i
+			term = term.multiply(r).divide(BigDecimal.valueOf(i), workingScale, RoundingMode.HALF_EVEN);
+			sum = sum.add(term);
 		}
 		
-		return result;
+		for (int i = 0; i < k; i++) {
+			sum = sum.multiply(sum).setScale(workingScale, RoundingMode.HALF_EVEN);
+		}
+		
+		// 2^n has about 0.3n digits, so only compute the significant ones
+		MathContext mc = new MathContext(precision + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+		if (n.signum() > 0) {
+			sum = sum.multiply(powerOfTwo(n.intValue(), mc), mc);
+		} 
+		else if (n.signum() < 0) {
+			sum = sum.divide(powerOfTwo(n.negate().intValue(), mc), mc);
+		}
+		
+		return sum.round(new MathContext(precision, RoundingMode.HALF_EVEN));
 	}
 
 	/**
-	 * Compute e^x to a given scale by the Taylor series.
-	 * 
-	 * @param x
-	 *            the value of x
-	 * @param scale
-	 *            the desired scale of the result
-	 * @return the result value
+	 * Computes 2^n, n >= 0, rounded to the given context. BigDecimal.pow only
+	 * accepts exponents up to 999999999, so larger ones are halved.
 	 */
-	private static BigDecimal expTaylor(BigDecimal x, int scale) {
-		BigDecimal factorial = BigDecimal.valueOf(1);
-		BigDecimal xPower = x;
-		BigDecimal sumPrev;
-
-		// 1 + x
-		BigDecimal sum = x.add(BigDecimal.valueOf(1));
-		// Loop until the sums converge
-		// (two successive sums are equal after rounding).
-		int i = 2;
-		do {
-			// x^i
-			xPower = xPower.multiply(x).setScale(scale, BigDecimal.ROUND_HALF_EVEN);
-			// i!
-			factorial = factorial.multiply(BigDecimal.valueOf(i));
-			// x^i/i!
-			BigDecimal term = xPower.divide(factorial, scale, BigDecimal.ROUND_HALF_EVEN);
-			// sum = sum + x^i/i!
-			sumPrev = sum;
-			sum = sum.add(term);
-
-			++i;
-		} while (sum.compareTo(sumPrev) != 0);
-
-		return sum;
+	private static BigDecimal powerOfTwo(int n, MathContext mc) {
+		if (n <= 999999999) {
+			return TWO.pow(n, mc);
+		}
+		
+		BigDecimal half = powerOfTwo(n / 2, mc);
+		BigDecimal result = half.multiply(half, mc);
+		return n % 2 == 0 ? result : result.multiply(TWO, mc);
 	}
 
 	/**
@@ -433,52 +533,71 @@ public class BigDecimalCalculations {
 		if (x.signum() <= 0) {
 			throw new ArithmeticException("x <= 0");
 		}
-		// The number of digits to the left of the decimal point.
-		int magnitude = x.toString().length() - x.scale() - 1;
-		if (magnitude < 3) {
-			return lnNewton(x, scale);
-		}
-		// Compute magnitude*ln(x^(1/magnitude)).
+		int workingScale = scale + GUARD_DIGITS;
+		
+		// x = m * 2^k with m close to 1, so ln(x) = ln(m) + k*ln(2)
+		double log2 = x.unscaledValue().bitLength() - x.scale() * (Math.log(10) / Math.log(2));
+		int k = (int) Math.round(log2);
+		BigDecimal m;
+		if (k > 0) {
+			m = x.multiply(BigDecimal.valueOf(5).pow(k)).movePointLeft(k); // x / 2^k
+		} 
 		else {
-			// x^(1/magnitude)
-			BigDecimal root = intRoot(x, BigInteger.valueOf(magnitude), scale);
-			// ln(x^(1/magnitude))
-			BigDecimal lnRoot = lnNewton(root, scale);
-			// magnitude*ln(x^(1/magnitude))
-			return BigDecimal.valueOf(magnitude).multiply(lnRoot)
-					.setScale(scale, BigDecimal.ROUND_HALF_EVEN);
+			m = x.multiply(new BigDecimal(BigInteger.ONE.shiftLeft(-k)));
 		}
+		
+		BigDecimal result = lnHalley(m, workingScale);
+		if (k != 0) {
+			int kDigits = Integer.toString(Math.abs(k)).length();
+			result = result.add(ln2(workingScale + kDigits).multiply(BigDecimal.valueOf(k)));
+		}
+		return result.setScale(scale, RoundingMode.HALF_EVEN);
 	}
 
 	/**
-	 * Compute the natural logarithm of x to a given scale, x > 0. Use Newton's
-	 * algorithm.
+	 * Compute the natural logarithm of x to a given scale, for x close to 1. Uses
+	 * Halley's method y = y + 2(x - e^y)/(x + e^y), which triples the number of
+	 * correct digits in every iteration.
 	 */
-	private static BigDecimal lnNewton(BigDecimal x, int scale) {
-		int sp1 = scale + 1;
-		BigDecimal n = x;
-		BigDecimal term;
-
-		// Convergence tolerance = 5*(10^-(scale+1))
-		BigDecimal tolerance = BigDecimal.valueOf(5).movePointLeft(sp1);
-		// Loop until the approximations converge
-		// (two successive approximations are within the tolerance).
-		do {
-			// e^x
-			BigDecimal eToX = exp(x, sp1);
-			// (e^x - n)/e^x
-			if (eToX.compareTo(BigDecimal.ZERO) == 0) {
-				break;
-			}
-			term = eToX.subtract(n).divide(eToX, sp1, BigDecimal.ROUND_DOWN);
-			// x - (e^x - n)/e^x
-			x = x.subtract(term);
-
-		} while (term.compareTo(tolerance) > 0);
-
-		return x.setScale(scale, BigDecimal.ROUND_HALF_EVEN);
+	private static BigDecimal lnHalley(BigDecimal x, int scale) {
+		BigDecimal y = BigDecimal.valueOf(Math.log(x.doubleValue()));
+		int precision = 15; // what the floating point approximation gives us
+		boolean done = false;
+		while (!done) {
+			done = precision == scale;
+			precision = Math.min(3 * precision, scale);
+			int workingScale = precision + 2;
+			BigDecimal eToY = expWithPrecision(y, workingScale);
+			BigDecimal correction = x.subtract(eToY).multiply(TWO)
+					.divide(x.add(eToY), workingScale, RoundingMode.HALF_EVEN);
+			y = y.add(correction).setScale(workingScale, RoundingMode.HALF_EVEN);
+		}
+		return y;
 	}
 
+	/**
+	 * The function below this line is based on the Numerical implementations of
+	 * Java Number Cruncher: The Java Programmer's Guide 
+	 *    to Numerical Computing
+	 * by Ronald Mak
+	 * 
+	 * He has shared the code in the book at the following page:
+	 * http://authors.phptr.com/mak/downloads.html
+	 * 
+	 * And has put the source in the public domain:
+	 *      "I wrote all these programs strictly as 
+	 *      illustrative examples for my book. 
+	 *      You're free to use the source code any 
+	 *      way you like, but bear in mind that this is 
+	 *      NOT fully tested, commercial-quality code. 
+	 *      Neither Prentice Hall PTR nor I can be 
+	 *      responsible for anything bad that may happen 
+	 *      if you use these programs."
+	 * 
+	 * The only changes were the removal of call to Thread.yield(), switching to
+	 *  and formatting improvements
+	 */
+
 	/**
 	 * Compute the square root of x to a given scale, x >= 0. Use Newton's
 	 * algorithm.
@@ -11,23 +11,37 @@
 package org.eclipse.imp.pdb.facts.io;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IValueFactory;
 import org.eclipse.imp.pdb.facts.io.binary.BinaryReader;
+import org.eclipse.imp.pdb.facts.io.binary.BlockCompressedInputStream;
+import org.eclipse.imp.pdb.facts.io.binary.IndexedBinaryReader;
+import org.eclipse.imp.pdb.facts.io.binary.IndexedBinaryWriter;
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeStore;
 
 /**
  * A reader for PDB Binary Files (PBF).
+ * <p>
+ * Streams are wrapped in a buffer, unless they are a {@link BufferedInputStream},
+ * a {@link ByteArrayInputStream} or a {@link BlockCompressedInputStream}
+ * already. The buffer may read beyond the end of the value, so pass a
+ * {@link BufferedInputStream} to keep reading the same stream after the value.
  * 
  * @author Arnold Lankamp
  */
 public class BinaryValueReader implements IValueBinaryReader{
+	private final static int BUFFER_SIZE = 64 * 1024;
 	
 	/**
 	 * Constructor.
@@ -57,13 +71,46 @@ public class BinaryValueReader implements IValueBinaryReader{
 		return doRead(valueFactory, typeStore, inputStream);
 	}
 	
+	/**
+	 * Reads a value from the given buffer, starting at its current position.
+	 * 
+	 * @param valueFactory
+	 *            The value factory to use.
+	 * @param typeStore
+	 *            The typestore to use.
+	 * @param buffer
+	 *            The buffer to read from; its position is left after the value.
+	 * @return The resulting value.
+	 * @throws IOException
+	 *            Thrown when something goes wrong.
+	 */
+	public IValue read(IValueFactory valueFactory, TypeStore typeStore, ByteBuffer buffer) throws IOException{
+		BinaryReader binaryReader = new BinaryReader(valueFactory, typeStore, buffer);
+		return binaryReader.deserialize();
+	}
+	
 	private IValue doRead(IValueFactory valueFactory, TypeStore typeStore, InputStream inputStream) throws IOException{
-		BinaryReader binaryReader = new BinaryReader(valueFactory, typeStore, inputStream);
+		BinaryReader binaryReader = new BinaryReader(valueFactory, typeStore, buffered(inputStream));
 		return binaryReader.deserialize();
 	}
 	
 	/**
-	 * Reads the value from the given file.
+	 * The BinaryReader reads streams byte by byte, so streams that are not
+	 * buffered yet are wrapped in a buffer. Streams that are passed through are
+	 * left positioned right after the value.
+	 */
+	private static InputStream buffered(InputStream inputStream){
+		if(inputStream instanceof BufferedInputStream || inputStream instanceof ByteArrayInputStream || inputStream instanceof BlockCompressedInputStream){
+			return inputStream;
+		}
+		return new BufferedInputStream(inputStream, BUFFER_SIZE);
+	}
+	
+	/**
+	 * Reads the value from the given file. The file is mapped into memory, unless
+	 * it is too large to be mapped as a whole. Files written by
+	 * {@link BinaryValueWriter#writeCompressedValueToFile(IValue, File, TypeStore)}
+	 * are recognized and decompressed block by block while they are read.
 	 * 
 	 * @param valueFactory
 	 *            The value factory to use.
@@ -78,6 +125,32 @@ public class BinaryValueReader implements IValueBinaryReader{
 	public static IValue readValueFromFile(IValueFactory valueFactory, TypeStore typeStore, File file) throws IOException{
 		IValue result;
 		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			
+			if(BlockCompressedInputStream.isCompressed(channel)){
+				BlockCompressedInputStream in = new BlockCompressedInputStream(channel);
+				try{
+					BinaryReader binaryReader = new BinaryReader(valueFactory, typeStore, in);
+					return binaryReader.deserialize();
+				}finally{
+					in.close();
+				}
+			}
+			
+			long size = channel.size();
+			
+			if(size <= Integer.MAX_VALUE){
+				ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+				
+				BinaryReader binaryReader = new BinaryReader(valueFactory, typeStore, buffer);
+				return binaryReader.deserialize();
+			}
+		}finally{
+			raf.close();
+		}
+		
 		InputStream fis = null;
 		try{
 			fis = new BufferedInputStream(new FileInputStream(file));
@@ -92,4 +165,30 @@ public class BinaryValueReader implements IValueBinaryReader{
 		
 		return result;
 	}
+	
+	/**
+	 * Opens a file written by {@link BinaryValueWriter#writeIndexedValueToFile(IValue, File, TypeStore)}.
+	 * Lists, sets and maps are returned without decoding them; their elements
+	 * are decoded when they are first accessed.
+	 * 
+	 * @param valueFactory
+	 *            The value factory to use.
+	 * @param typeStore
+	 *            The typestore to use.
+	 * @param file
+	 *            The file to read from.
+	 * @return The resulting value.
+	 * @throws IOException
+	 *            Thrown when something goes wrong.
+	 * @see IndexedBinaryWriter
+	 */
+	public static IValue readIndexedValueFromFile(IValueFactory valueFactory, TypeStore typeStore, File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			IndexedBinaryReader reader = new IndexedBinaryReader(valueFactory, typeStore, raf.getChannel());
+			return reader.deserialize();
+		}finally{
+			raf.close();
+		}
+	}
 }
@@ -10,14 +10,17 @@
 *******************************************************************************/
 package org.eclipse.imp.pdb.facts.io;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.io.binary.BinaryWriter;
+import org.eclipse.imp.pdb.facts.io.binary.BlockCompressedInputStream;
+import org.eclipse.imp.pdb.facts.io.binary.BlockCompressedOutputStream;
+import org.eclipse.imp.pdb.facts.io.binary.IndexedBinaryWriter;
 import org.eclipse.imp.pdb.facts.type.TypeStore;
 
 /**
@@ -105,6 +108,26 @@ public class BinaryValueWriter implements IValueBinaryWriter{
 		outputStream.flush();
 	}
 	
+	/**
+	 * Writes the given value to the given channel. The channel is neither forced
+	 * nor closed.
+	 * 
+	 * @param value
+	 *            The value to write.
+	 * @param channel
+	 *            The channel to write to.
+	 * @param maximalSharing
+	 *            If we want to enable maximal sharing compression
+	 * @param typeStore
+	 *            The type store to use.
+	 * @throws IOException
+	 *            Thrown when something goes wrong.
+	 */
+	public void write(IValue value, WritableByteChannel channel, boolean maximalSharing, TypeStore typeStore) throws IOException{
+		BinaryWriter binaryWriter = new BinaryWriter(value, channel, maximalSharing, typeStore);
+		binaryWriter.serialize();
+	}
+	
 	/**
 	 * Writes the given value to a file.
 	 * 
@@ -120,17 +143,65 @@ public class BinaryValueWriter implements IValueBinaryWriter{
 	 */
 	@Deprecated
 	public static void writeValueToFile(IValue value, File file, TypeStore typeStore) throws IOException{
-		OutputStream fos = null;
+		FileOutputStream fos = new FileOutputStream(file);
 		try{
-			fos = new BufferedOutputStream(new FileOutputStream(file));
-			
-			BinaryWriter binaryWriter = new BinaryWriter(value, fos, true, typeStore);
+			BinaryWriter binaryWriter = new BinaryWriter(value, fos.getChannel(), true, typeStore);
 			binaryWriter.serialize();
-			fos.flush();
 		}finally{
-			if(fos != null){
-				fos.close();
-			}
+			fos.close();
+		}
+	}
+	
+	/**
+	 * Writes the given value to a file, compressed in blocks that can be
+	 * decompressed independently. The file can be read with
+	 * {@link BinaryValueReader#readValueFromFile(org.eclipse.imp.pdb.facts.IValueFactory, TypeStore, File)},
+	 * or positioned anywhere with a {@link BlockCompressedInputStream}.
+	 * 
+	 * @param value
+	 *            The value to write.
+	 * @param file
+	 *            The file to write to.
+	 * @param typeStore
+	 *            The type store to use.
+	 * @throws IOException
+	 *            Thrown when something goes wrong.
+	 * @see BlockCompressedOutputStream
+	 */
+	public static void writeCompressedValueToFile(IValue value, File file, TypeStore typeStore) throws IOException{
+		FileOutputStream fos = new FileOutputStream(file);
+		try{
+			BlockCompressedOutputStream bcos = new BlockCompressedOutputStream(fos);
+			BinaryWriter binaryWriter = new BinaryWriter(value, bcos, true, typeStore);
+			binaryWriter.serialize();
+			bcos.finish();
+		}finally{
+			fos.close();
+		}
+	}
+	
+	/**
+	 * Writes the given value to a file in the indexed format, which can be
+	 * opened without decoding it with
+	 * {@link BinaryValueReader#readIndexedValueFromFile(org.eclipse.imp.pdb.facts.IValueFactory, TypeStore, File)}.
+	 * 
+	 * @param value
+	 *            The value to write.
+	 * @param file
+	 *            The file to write to.
+	 * @param typeStore
+	 *            The type store to use.
+	 * @throws IOException
+	 *            Thrown when something goes wrong.
+	 * @see IndexedBinaryWriter
+	 */
+	public static void writeIndexedValueToFile(IValue value, File file, TypeStore typeStore) throws IOException{
+		FileOutputStream fos = new FileOutputStream(file);
+		try{
+			IndexedBinaryWriter indexedWriter = new IndexedBinaryWriter(value, fos.getChannel(), typeStore);
+			indexedWriter.serialize();
+		}finally{
+			fos.close();
 		}
 	}
 }
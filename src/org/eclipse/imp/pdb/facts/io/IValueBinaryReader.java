@@ -26,6 +26,10 @@ import org.eclipse.imp.pdb.facts.type.TypeStore;
  * There should be a corresponding IValueWriter to serialize them again. Note
  * that IValueReaders should also <emph>validate</emph> the serialized input
  * against a {@link Type}.
+ * <p>
+ * A reader may consume bytes from the stream beyond the end of the value, for
+ * instance to buffer it, so the stream is not necessarily positioned right after
+ * the value when read returns.
  * 
  * @author jurgenv
  * 
@@ -42,7 +46,8 @@ public interface IValueBinaryReader {
 	 * @param type
 	 *            used to validate the value
 	 * @param stream
-	 *            source of bytes to parse
+	 *            source of bytes to parse; bytes after the value may be
+	 *            consumed as well
 	 * @return an IValue that represents the string input
 	 */
 	IValue read(IValueFactory factory, TypeStore store, Type type,
@@ -56,7 +61,8 @@ public interface IValueBinaryReader {
 	 * @param type
 	 *            used to validate the value
 	 * @param stream
-	 *            source of bytes to parse
+	 *            source of bytes to parse; bytes after the value may be
+	 *            consumed as well
 	 * @return an IValue that represents the string input
 	 */
 	IValue read(IValueFactory factory, Type type, InputStream stream)
@@ -68,7 +74,8 @@ public interface IValueBinaryReader {
 	 * @param factory
 	 *            used when building the value
 	 * @param stream
-	 *            source of bytes to parse
+	 *            source of bytes to parse; bytes after the value may be
+	 *            consumed as well
 	 * @return an IValue that represents the string input
 	 */
 	IValue read(IValueFactory factory,  InputStream stream)
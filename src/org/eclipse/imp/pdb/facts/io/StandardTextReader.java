@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.imp.pdb.facts.IInteger;
 import org.eclipse.imp.pdb.facts.IListWriter;
 import org.eclipse.imp.pdb.facts.IMapWriter;
 import org.eclipse.imp.pdb.facts.INode;
@@ -80,6 +81,7 @@ public class StandardTextReader extends AbstractTextReader {
 	private TypeFactory types;
 	private int current;
 	private LinkedHashMap<String, ISourceLocation> sourceLocationCache;
+	private final StringBuilder token = new StringBuilder();
 
 	@SuppressWarnings("serial")
   public IValue read(IValueFactory factory, TypeStore store, Type type, Reader stream) throws FactTypeUseException, IOException {
@@ -193,32 +195,16 @@ public class StandardTextReader extends AbstractTextReader {
 				readFixed(types.valueType(), ')', args, null);
 
 				if (args.size() >= 2) {
-					if (!args.get(0).getType().isSubtypeOf(types.integerType())) {
-						throw new UnexpectedTypeException(types.integerType(), args.get(0).getType());
-					}
-					if (!args.get(1).getType().isSubtypeOf(types.integerType())) {
-						throw new UnexpectedTypeException(types.integerType(), args.get(1).getType());
-					}
-					
-					Type posType = types.tupleType(types.integerType(), types.integerType());
-
-					if (args.size() == 4) {
-						if (!args.get(2).getType().isSubtypeOf(posType)) {
-							throw new UnexpectedTypeException(posType, args.get(2).getType());
-						}
-						if (!args.get(3).getType().isSubtypeOf(posType)) {
-							throw new UnexpectedTypeException(posType, args.get(3).getType());
-						}
-					}
-
-					int offset = Integer.parseInt(args.get(0).toString());
-					int length = Integer.parseInt(args.get(1).toString());
+					int offset = locationInt(args.get(0), "offset");
+					int length = locationInt(args.get(1), "length");
 					
 					if (args.size() == 4) {
-						int beginLine = Integer.parseInt(((ITuple) args.get(2)).get(0).toString());
-						int beginColumn = Integer.parseInt(((ITuple) args.get(2)).get(1).toString());
-						int endLine = Integer.parseInt(((ITuple) args.get(3)).get(0).toString());
-						int endColumn = Integer.parseInt(((ITuple) args.get(3)).get(1).toString());
+						ITuple begin = locationPosition(args.get(2), "begin");
+						ITuple end = locationPosition(args.get(3), "end");
+						int beginLine = locationInt(begin.get(0), "begin line");
+						int beginColumn = locationInt(begin.get(1), "begin column");
+						int endLine = locationInt(end.get(0), "end line");
+						int endColumn = locationInt(end.get(1), "end column");
 						
 						return factory.sourceLocation(loc, offset, length, beginLine, endLine, beginColumn, endColumn);
 					}
@@ -238,6 +224,25 @@ public class StandardTextReader extends AbstractTextReader {
 		}
 	}
 
+	private int locationInt(IValue value, String name) {
+		if (!(value instanceof IInteger)) {
+			throw new FactParseError("source location " + name + " should be an int, found: " + value, stream.offset);
+		}
+		
+		IInteger integer = (IInteger) value;
+		if (integer.getTwosComplementRepresentation().length > 4) {
+			throw new FactParseError("source location " + name + " does not fit in an int: " + value, stream.offset);
+		}
+		return integer.intValue();
+	}
+	
+	private ITuple locationPosition(IValue value, String name) {
+		if (!(value instanceof ITuple) || ((ITuple) value).arity() != 2) {
+			throw new FactParseError("source location " + name + " should be a <line,column> tuple, found: " + value, stream.offset);
+		}
+		return (ITuple) value;
+	}
+
 	private String parseURL() throws IOException {
 		current = stream.read();
 		StringBuilder result = new StringBuilder();
@@ -323,18 +328,60 @@ public class StandardTextReader extends AbstractTextReader {
 	
 
 	private IValue readNumber(Type expected) throws IOException {
-		StringBuilder builder = new StringBuilder();
-	
+		StringBuilder builder = token;
+		builder.setLength(0);
+		
+		// Integers of at most 18 digits, and rationals of two of them, are
+		// computed while reading them; other numbers are parsed afterwards.
+		boolean exact = true;
+		boolean negative = false;
+		boolean rational = false;
+		long value = 0;
+		long numerator = 0;
+		int digits = 0;
+		int separators = 0;
+		
 		do{
 			builder.append((char) current);
+			
+			if (current >= '0' && current <= '9') {
+				value = value * 10 + (current - '0');
+				if (++digits > 18) {
+					exact = false;
+				}
+			}
+			else if (current == NEGATIVE_SIGN && builder.length() == 1) {
+				negative = true;
+			}
+			else if (current == RATIONAL_SEP && !rational && digits > 0) {
+				rational = true;
+				numerator = negative ? -value : value;
+				negative = false;
+				value = 0;
+				digits = 0;
+			}
+			else {
+				exact = false;
+				if (current == RATIONAL_SEP || current == DOUBLE_DOT || current == 'E' || current == 'e') {
+					separators++;
+				}
+			}
+			
 			current = stream.read();
 		} while(Character.isDigit(current) || current == RATIONAL_SEP || current == DOUBLE_DOT || current == 'E' || current == 'e' || current == '+' || current == '-');
 		
+		if (exact && digits > 0) {
+			IInteger integer = factory.integer(negative ? -value : value);
+			return rational ? factory.rational(factory.integer(numerator), integer) : integer;
+		}
+		
 		String val = builder.toString();
-		checkMoreThanOnce(val, RATIONAL_SEP);
-		checkMoreThanOnce(val, DOUBLE_DOT);
-		checkMoreThanOnce(val, 'E');
-		checkMoreThanOnce(val, 'e');
+		if (separators > 1 || rational) {
+			checkMoreThanOnce(val, RATIONAL_SEP);
+			checkMoreThanOnce(val, DOUBLE_DOT);
+			checkMoreThanOnce(val, 'E');
+			checkMoreThanOnce(val, 'e');
+		}
 		
 		try {
 			if (val.contains(".") || val.contains("E") || val.contains("e")) {
@@ -404,24 +451,29 @@ public class StandardTextReader extends AbstractTextReader {
 	}
 
 	/**
-	 * Read in a single character from the input stream and append it to the
-	 * given buffer only if it is numeric.
-	 *  
-	 * @param buf	The buffer to which the read character should be appended
+	 * Read in the given number of digits [0-9] from the input stream.
+	 * 
+	 * @param kind	What is being read, for the error message
 	 * 
-	 * @return		True if the input character was numeric [0-9] and was appended,
-	 * 				false otherwise.
+	 * @return		The value of the digits as a decimal number
 	 * 
 	 * @throws IOException	when an error is encountered reading the input stream
+	 * @throws FactParseError	when one of the characters is not a digit
 	 */
-	private boolean readAndAppendIfNumeric(StringBuilder buf) throws IOException {
-		current = stream.read();
-		if (Character.isDigit(current)) {
-			buf.append((char)current);
-			return true;
-		} else {
-			return false;
+	private int readDigits(int count, String kind) throws IOException, FactParseError {
+		int result = 0;
+		for (int i = 0; i < count; ++i) {
+			current = stream.read();
+			result = result * 10 + digit(kind);
+		}
+		return result;
+	}
+	
+	private int digit(String kind) throws FactParseError {
+		if (!Character.isDigit(current)) {
+			throw new FactParseError("Error reading " + kind + ", expected digit, found: " + current, stream.offset);
 		}
+		return Character.digit(current, 10);
 	}
 
 	/**
@@ -434,17 +486,9 @@ public class StandardTextReader extends AbstractTextReader {
 	 * @throws FactParseError	when the correct characters are not found while lexing
 	 *                          the date
 	 */
-	private DateParts readDate(char firstChar) throws IOException, FactParseError {
-		StringBuilder buf = new StringBuilder();
-		buf.append(firstChar);
-		
-		// The first four characters should be the year
-		for (int i = 0; i < 3; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (!res) {
-				throw new FactParseError("Error reading date, expected digit, found: " + current, stream.offset);
-			}
-		}
+	private DateParts readDate() throws IOException, FactParseError {
+		// The first four characters should be the year, of which the first one is current
+		int year = digit("date") * 1000 + readDigits(3, "date");
 		
 		// The next character should be a '-'
 		current = stream.read();		
@@ -453,12 +497,7 @@ public class StandardTextReader extends AbstractTextReader {
 		}
 		
 		// The next two characters should be the month
-		for (int i = 0; i < 2; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (!res) {
-				throw new FactParseError("Error reading date, expected digit, found: " + current, stream.offset);
-			}
-		}
+		int month = readDigits(2, "date");
 			
 		// The next character should be a '-'
 		current = stream.read();		
@@ -467,18 +506,9 @@ public class StandardTextReader extends AbstractTextReader {
 		}
 		
 		// The next two characters should be the day
-		for (int i = 0; i < 2; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (!res) {
-				throw new FactParseError("Error reading date, expected digit, found: " + current, stream.offset);
-			}
-		}
+		int day = readDigits(2, "date");
 		
-		String dateString = buf.toString();
-		return new DateParts(
-				Integer.parseInt(dateString.substring(0, 4)), // year
-				Integer.parseInt(dateString.substring(4,6)), // month
-				Integer.parseInt(dateString.substring(6))); // day
+		return new DateParts(year, month, day);
 	}
 	
 	/**
@@ -494,15 +524,8 @@ public class StandardTextReader extends AbstractTextReader {
 	 *                          the time
 	 */
 	private TimeParts readTime() throws IOException, FactParseError {
-		StringBuilder buf = new StringBuilder();
-
 		// The first two characters should be the hour
-		for (int i = 0; i < 2; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (!res) {
-				throw new FactParseError("Error reading time, expected digit, found: " + current, stream.offset);
-			}
-		}
+		int hour = readDigits(2, "time");
 		
 		// The next character should be a ':'
 		current = stream.read();	
@@ -511,12 +534,7 @@ public class StandardTextReader extends AbstractTextReader {
 		}
 		
 		// The next two characters should be the minute
-		for (int i = 0; i < 2; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (!res) {
-				throw new FactParseError("Error reading time, expected digit, found: " + current, stream.offset);
-			}
-		}
+		int minute = readDigits(2, "time");
 		
 		// The next character should be a ':'
 		current = stream.read();		
@@ -525,12 +543,7 @@ public class StandardTextReader extends AbstractTextReader {
 		}
 		
 		// The next two characters should be the second
-		for (int i = 0; i < 2; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (!res) {
-				throw new FactParseError("Error reading time, expected digit, found: " + current, stream.offset);
-			}
-		}
+		int second = readDigits(2, "time");
 		
 		// The next character should be a '.'
 		current = stream.read();		
@@ -539,50 +552,28 @@ public class StandardTextReader extends AbstractTextReader {
 		}
 		
 		// The next three characters should be the millisecond
-		for (int i = 0; i < 3; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (!res) {
-				throw new FactParseError("Error reading time, expected digit, found: " + current, stream.offset);
-			}
-		}
+		int millisecond = readDigits(3, "time");
 		
 		// The next character should be '+' or '-'
 		current = stream.read();		
 		if (! ('+' == current || '-' == current)) {
 			throw new FactParseError("Error reading time, expected '+' or '-', found: " + current, stream.offset);
 		}
-		buf.append((char)current);
+		boolean negativeTZHours = '-' == current;
 		
 		// The next two characters should be the hour offset
-		for (int i = 0; i < 2; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (!res) {
-				throw new FactParseError("Error reading time, expected digit, found: " + current, stream.offset);
-			}
-		}
+		int timezoneHours = readDigits(2, "time");
 		
-		// The next two characters should be the minute offset
-		for (int i = 0; i < 2; ++i) {
-			boolean res = readAndAppendIfNumeric(buf);
-			if (current == ':' && i == 0) {
-				// skip optional : separator between hour and minute offset
-				i = -1;
-				res = true;
-			}
-			if (!res) {
-				throw new FactParseError("Error reading time, expected digit, found: " + current, stream.offset);
-			}
+		// The next two characters should be the minute offset, after an optional
+		// : separator between hour and minute offset
+		current = stream.read();
+		while (current == ':') {
+			current = stream.read();
 		}
+		int timezoneMinutes = digit("time") * 10 + readDigits(1, "time");
 		
-		String timeString = buf.toString();
-		boolean negativeTZHours = timeString.substring(9,10).equals("-");
-		return new TimeParts(
-				Integer.parseInt(timeString.substring(0,2)), // hour
-				Integer.parseInt(timeString.substring(2,4)), // minutes
-				Integer.parseInt(timeString.substring(4,6)), // seconds
-				Integer.parseInt(timeString.substring(6,9)), // milliseconds
-				Integer.parseInt(timeString.substring(10,12)) * (negativeTZHours ? -1 : 1), // timezone hours
-				Integer.parseInt(timeString.substring(12))); // timezone minutes
+		return new TimeParts(hour, minute, second, millisecond,
+				negativeTZHours ? -timezoneHours : timezoneHours, timezoneMinutes);
 	}
 
 	private IValue readDateTime(Type expected) throws IOException, FactParseError {
@@ -600,7 +591,7 @@ public class StandardTextReader extends AbstractTextReader {
 			isTime = true;
 			current = stream.read(); // advance to next character for parsing
 		} else {
-			dateParts = readDate((char)current);
+			dateParts = readDate();
 			current = stream.read();
 			if ('T' == current || 't' == current) {
 				timeParts = readTime();
@@ -628,7 +619,8 @@ public class StandardTextReader extends AbstractTextReader {
 	}
 
 	private String readIdentifier() throws IOException {
-		StringBuilder builder = new StringBuilder();
+		StringBuilder builder = token;
+		builder.setLength(0);
 		boolean escaped = (current == '\\');
 
 		if (escaped) {
@@ -721,7 +713,8 @@ public class StandardTextReader extends AbstractTextReader {
 				throw new FactParseError("End of input before finding end of String", stream.offset);
 			}
 			else {
-				builder.appendCodePoint(current);
+				builder.append((char) current);
+				stream.readStringPart(builder);
 				current = stream.read();
 			}
 		}
@@ -858,8 +851,18 @@ public class StandardTextReader extends AbstractTextReader {
 		throw new FactParseError("Unexpected " + ((char) current), stream.getOffset());
 	}
 
-  private static class NoWhiteSpaceReader extends Reader {
+	/**
+	 * Skips white space outside of strings. The input is read into a buffer in
+	 * blocks, from which the characters are taken one by one, or, for the
+	 * contents of strings, in runs.
+	 */
+	private static class NoWhiteSpaceReader extends Reader {
+		private static final int BUFFER_SIZE = 64 * 1024;
+		
 		private Reader wrapped;
+		private final char[] buffer = new char[BUFFER_SIZE];
+		private int position = 0;
+		private int limit = 0;
 		int offset;
 		boolean inString = false;
 		boolean escaping = false;
@@ -875,13 +878,14 @@ public class StandardTextReader extends AbstractTextReader {
 		
 		@Override
 		public int read() throws IOException {
-			int r = wrapped.read();
+			int r = next();
 			offset++;
 
 			if (!inString) {
-				while (Character.isWhitespace(r)) {
+				// printable ASCII is never white space
+				while ((r <= ' ' || r > '~') && Character.isWhitespace(r)) {
 					offset++;
-					r = wrapped.read();
+					r = next();
 				}
 			}
 			
@@ -905,6 +909,40 @@ public class StandardTextReader extends AbstractTextReader {
 			return r;
 		}
 		
+		/**
+		 * Appends the characters of a string up to the next quote or backslash,
+		 * which are read as usual, or up to the end of the input. None of these
+		 * characters changes the state of the reader.
+		 */
+		void readStringPart(StringBuilder builder) throws IOException {
+			do {
+				int start = position;
+				while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+					position++;
+				}
+				builder.append(buffer, start, position - start);
+				offset += position - start;
+			} while (position == limit && fill());
+		}
+		
+		private int next() throws IOException {
+			if (position == limit && !fill()) {
+				return -1;
+			}
+			return buffer[position++];
+		}
+		
+		private boolean fill() throws IOException {
+			int read;
+			do {
+				read = wrapped.read(buffer, 0, buffer.length);
+			} while (read == 0);
+			
+			position = 0;
+			limit = Math.max(read, 0);
+			return read > 0;
+		}
+		
 		int getOffset() {
 			return offset;
 		}
@@ -13,7 +13,6 @@ package org.eclipse.imp.pdb.facts.io;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Map.Entry;
 
 import org.eclipse.imp.pdb.facts.IBool;
@@ -31,11 +30,11 @@ import org.eclipse.imp.pdb.facts.ISourceLocation;
 import org.eclipse.imp.pdb.facts.IString;
 import org.eclipse.imp.pdb.facts.ITuple;
 import org.eclipse.imp.pdb.facts.IValue;
-import org.eclipse.imp.pdb.facts.IWithKeywordParameters;
 import org.eclipse.imp.pdb.facts.type.ITypeVisitor;
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeStore;
 import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
+import org.eclipse.imp.pdb.facts.visitors.ValueTraversal;
 
 /**
  * This class implements the standard readable syntax for {@link IValue}'s.
@@ -69,7 +68,7 @@ public class StandardTextWriter implements IValueTextWriter {
 	
 	public void write(IValue value, java.io.Writer stream) throws IOException {
 	  try {
-			value.accept(new Writer(stream, indent, tabSize));
+			new Writer(stream, indent, tabSize).traverse(value);
 		} 
 		finally {
 			stream.flush();
@@ -80,7 +79,14 @@ public class StandardTextWriter implements IValueTextWriter {
 		write(value, stream);
 	}
 	
-	private static class Writer implements IValueVisitor<IValue, IOException> {
+	/**
+	 * Writes values iteratively: the visit methods write the leaves and the opening
+	 * of a container, and schedule a {@link Frame} which writes the separators and
+	 * closing of the container in between its children.
+	 */
+	private static class Writer extends ValueTraversal<IOException> implements IValueVisitor<IValue, IOException> {
+		private static final int FRAME = CUSTOM;
+		
 		private final java.io.Writer stream;
 		private final int tabSize;
 		private final boolean indent;
@@ -108,6 +114,200 @@ public class StandardTextWriter implements IValueTextWriter {
 			this.tab--;
 		}
 		
+		@Override
+		protected boolean enter(IValue value) throws IOException {
+			value.accept(this);
+			return false;
+		}
+		
+		@Override
+		protected void step(int tag, Object item) throws IOException {
+			if (tag != FRAME) {
+				super.step(tag, item);
+				return;
+			}
+			
+			Frame frame = (Frame) item;
+			IValue next = frame.next();
+			
+			if (next != null) {
+				push(frame, FRAME);
+				push(next, VISIT);
+			}
+		}
+		
+		private abstract class Frame {
+			/**
+			 * Writes what precedes the next child and returns it, or writes the
+			 * closing of the container and returns null.
+			 */
+			abstract IValue next() throws IOException;
+		}
+		
+		/**
+		 * The elements of a list, set or tuple.
+		 */
+		private final class Elements extends Frame {
+			private final Iterator<IValue> elements;
+			private final boolean indent;
+			private final boolean tabbed;
+			private final char close;
+			private boolean first = true;
+			
+			Elements(Iterator<IValue> elements, boolean indent, boolean tabbed, char close) {
+				this.elements = elements;
+				this.indent = indent;
+				this.tabbed = tabbed;
+				this.close = close;
+			}
+			
+			@Override
+			IValue next() throws IOException {
+				if (elements.hasNext()) {
+					if (!first) {
+						append(',');
+						if (tabbed) {
+							indent(indent);
+						}
+					}
+					first = false;
+					return elements.next();
+				}
+				
+				if (tabbed) {
+					untab();
+					indent(indent);
+				}
+				append(close);
+				return null;
+			}
+		}
+		
+		/**
+		 * The keys and values of a map.
+		 */
+		private final class Entries extends Frame {
+			private final Iterator<Entry<IValue, IValue>> entries;
+			private final boolean indent;
+			private IValue value = null;
+			private boolean first = true;
+			
+			Entries(Iterator<Entry<IValue, IValue>> entries, boolean indent) {
+				this.entries = entries;
+				this.indent = indent;
+			}
+			
+			@Override
+			IValue next() throws IOException {
+				if (value != null) {
+					append(':');
+					IValue result = value;
+					value = null;
+					return result;
+				}
+				
+				if (entries.hasNext()) {
+					if (!first) {
+						append(',');
+						indent(indent);
+					}
+					first = false;
+					Entry<IValue, IValue> entry = entries.next();
+					value = entry.getValue();
+					return entry.getKey();
+				}
+				
+				untab();
+				indent(indent);
+				append(')');
+				return null;
+			}
+		}
+		
+		/**
+		 * The children, keyword parameters and annotations of a node or constructor.
+		 */
+		private final class Children extends Frame {
+			private final Iterator<IValue> children;
+			private final boolean indent;
+			private final Iterator<Entry<String, IValue>> keywordParameters;
+			private final Iterator<Entry<String, IValue>> annotations;
+			private int count = 0;
+			private int annotationCount = 0;
+			private boolean closed = false;
+			
+			Children(INode node, boolean indent) {
+				this.children = node.iterator();
+				this.indent = indent;
+				
+				if (node.mayHaveKeywordParameters() && node.asWithKeywordParameters().hasParameters()) {
+					keywordParameters = node.asWithKeywordParameters().getParameters().entrySet().iterator();
+				}
+				else {
+					keywordParameters = null;
+				}
+				
+				if (node.isAnnotatable() && node.asAnnotatable().hasAnnotations()) {
+					annotations = node.asAnnotatable().getAnnotations().entrySet().iterator();
+				}
+				else {
+					annotations = null;
+				}
+			}
+			
+			@Override
+			IValue next() throws IOException {
+				if (children.hasNext()) {
+					if (count++ > 0) {
+						append(',');
+						indent(indent);
+					}
+					return children.next();
+				}
+				
+				if (keywordParameters != null && keywordParameters.hasNext()) {
+					if (count++ > 0) {
+						append(',');
+					}
+					Entry<String, IValue> e = keywordParameters.next();
+					append(e.getKey());
+					append('=');
+					return e.getValue();
+				}
+				
+				if (!closed) {
+					closed = true;
+					append(')');
+					untab();
+					
+					if (annotations != null) {
+						append('[');
+						tab();
+						indent();
+					}
+				}
+				
+				if (annotations == null) {
+					return null;
+				}
+				
+				if (annotations.hasNext()) {
+					if (annotationCount++ > 0) {
+						append(",");
+						indent();
+					}
+					Entry<String, IValue> entry = annotations.next();
+					append("@" + entry.getKey() + "=");
+					return entry.getValue();
+				}
+				
+				untab();
+				indent();
+				append(']');
+				return null;
+			}
+		}
+		
 		public IValue visitBoolean(IBool boolValue)
 				throws IOException {
 			append(boolValue.getValue() ? "true" : "false");
@@ -133,21 +333,9 @@ public class StandardTextWriter implements IValueTextWriter {
 			append('[');
 			
 			boolean indent = checkIndent(o);
-			Iterator<IValue> listIterator = o.iterator();
 			tab();
 			indent(indent);
-			if(listIterator.hasNext()){
-				listIterator.next().accept(this);
-				
-				while(listIterator.hasNext()){
-					append(',');
-					if (indent) indent();
-					listIterator.next().accept(this);
-				}
-			}
-			untab();
-			indent(indent);
-			append(']');
+			push(new Elements(o.iterator(), indent, true, ']'), FRAME);
 			
 			return o;
 		}
@@ -157,25 +345,7 @@ public class StandardTextWriter implements IValueTextWriter {
 			tab();
 			boolean indent = checkIndent(o);
 			indent(indent);
-			Iterator<IValue> mapIterator = o.iterator();
-			if(mapIterator.hasNext()){
-				IValue key = mapIterator.next();
-				key.accept(this);
-				append(':');
-				o.get(key).accept(this);
-				
-				while(mapIterator.hasNext()){
-					append(',');
-					indent(indent);
-					key = mapIterator.next();
-					key.accept(this);
-					append(':');
-					o.get(key).accept(this);
-				}
-			}
-			untab();
-			indent(indent);
-			append(')');
+			push(new Entries(o.entryIterator(), indent), FRAME);
 			
 			return o;
 		}
@@ -198,60 +368,7 @@ public class StandardTextWriter implements IValueTextWriter {
 			append('(');
 			tab();
 			indent(indent);
-			Iterator<IValue> it = o.iterator();
-			int k = 0;
-			while (it.hasNext()) {
-				it.next().accept(this);
-				if (it.hasNext()) {
-					append(',');
-					indent(indent);
-				}
-				k++;
-			}
-			
-			if (o.mayHaveKeywordParameters()) {
-			  IWithKeywordParameters<? extends IConstructor> wkw = o.asWithKeywordParameters();
-			  if (wkw.hasParameters()) {
-			    if (k > 0) {
-			      append(',');
-			    }
-			    
-			    Iterator<Entry<String, IValue>> iterator = wkw.getParameters().entrySet().iterator();
-			    while (iterator.hasNext()) {
-			      Entry<String,IValue> e = iterator.next();
-			      
-			      append(e.getKey());
-			      append('=');
-			      e.getValue().accept(this);
-			      
-			      if (iterator.hasNext()) {
-			        append(',');
-			      }
-			    }
-			  }
-			}
-	      
-			append(')');
-			untab();
-			if (o.isAnnotatable() && o.asAnnotatable().hasAnnotations()) {
-				append('[');
-				tab();
-				indent();
-				int i = 0;
-				Map<String, IValue> annotations = o.asAnnotatable().getAnnotations();
-				for (Entry<String, IValue> entry : annotations.entrySet()) {
-					append("@" + entry.getKey() + "=");
-					entry.getValue().accept(this);
-					
-					if (++i < annotations.size()) {
-						append(",");
-						indent();
-					}
-				}
-				untab();
-				indent();
-				append(']');
-			}
+			push(new Children(o, indent), FRAME);
 			
 			return o;
 		}
@@ -279,19 +396,7 @@ public class StandardTextWriter implements IValueTextWriter {
 			boolean indent = checkIndent(o);
 			tab();
 			indent(indent);
-			Iterator<IValue> setIterator = o.iterator();
-			if(setIterator.hasNext()){
-				setIterator.next().accept(this);
-				
-				while(setIterator.hasNext()){
-					append(",");
-					indent(indent);
-					setIterator.next().accept(this);
-				}
-			}
-			untab(); 
-			indent(indent);
-			append('}');
+			push(new Elements(o.iterator(), indent, true, '}'), FRAME);
 			return o;
 		}
 
@@ -564,18 +669,7 @@ public class StandardTextWriter implements IValueTextWriter {
     
 		public IValue visitTuple(ITuple o) throws IOException {
 			 append('<');
-			 
-			 Iterator<IValue> it = o.iterator();
-			 
-			 if (it.hasNext()) {
-				 it.next().accept(this);
-			 }
-			 
-			 while (it.hasNext()) {
-				 append(',');
-				 it.next().accept(this);
-			 }
-			 append('>');
+			 push(new Elements(o.iterator(), false, false, '>'), FRAME);
 			 
 			 return o;
 		}
@@ -649,60 +743,7 @@ public class StandardTextWriter implements IValueTextWriter {
     	append('(');
     	tab();
     	indent(indent);
-    	Iterator<IValue> it = o.iterator();
-    	int k = 0;
-    	while (it.hasNext()) {
-    		it.next().accept(this);
-    		if (it.hasNext()) {
-    			append(',');
-    			indent(indent);
-    		}
-    		k++;
-    	}
-    
-    	
-    	if (o.mayHaveKeywordParameters()) {
-    	IWithKeywordParameters<? extends INode> wkw = o.asWithKeywordParameters();
-    	if (wkw.hasParameters()) {
-    	  if (k > 0) {
-    	    append(',');
-    	  }
-    	    
-    	  Iterator<Entry<String,IValue>> kwIt = wkw.getParameters().entrySet().iterator();
-    	  while (kwIt.hasNext()) {
-    	    Entry<String, IValue> e = kwIt.next();
-    	    append(e.getKey());
-    	    append('=');
-    	    e.getValue().accept(this);
-    	    
-    	    if (kwIt.hasNext()) {
-    	      append(',');
-    	    }
-    	    
-    	  }
-    	}
-    	}
-    	append(')');
-    	untab();
-    	if (o.isAnnotatable() && o.asAnnotatable().hasAnnotations()) {
-    		append('[');
-    		tab();
-    		indent();
-    		int i = 0;
-    		Map<String, IValue> annotations = o.asAnnotatable().getAnnotations();
-    		for (Entry<String, IValue> entry : annotations.entrySet()) {
-    			append("@" + entry.getKey() + "=");
-    			entry.getValue().accept(this);
-    			
-    			if (++i < annotations.size()) {
-    				append(",");
-    				indent();
-    			}
-    		}
-    		untab();
-    		indent();
-    		append(']');
-    	}
+    	push(new Children(o, indent), FRAME);
     	
     	return o;
     }
@@ -17,6 +17,8 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -47,6 +49,13 @@ import org.eclipse.imp.pdb.facts.util.ShareableHashMap;
 
 // TODO Change this thing so it doesn't use recursion.
 /**
+ * Reads values from an {@link InputStream} or directly from a {@link ByteBuffer},
+ * for instance a memory mapped file. Streams are read byte by byte, so a reader
+ * never consumes more than the value it deserializes, and should therefore be
+ * buffered by the caller, as the {@link org.eclipse.imp.pdb.facts.io.BinaryValueReader}
+ * does. Buffers are decoded in place, without copying; the
+ * position of the buffer is left just after the value.
+ * 
  * @author Arnold Lankamp
  */
 public class BinaryReader{
@@ -75,6 +84,8 @@ public class BinaryReader{
 	private final static int RATIONAL_HEADER = 0x11;
 	private final static int KEYWORDED_NODE_HEADER = 0x12;
 	private final static int KEYWORDED_CONSTRUCTOR_HEADER = 0x13;
+	private final static int COLUMNAR_RELATION_HEADER = 0x15;
+	private final static int SHARING_WINDOW_HEADER = 0x16;
 	
 	private final static int VALUE_TYPE_HEADER = 0x01;
 	private final static int VOID_TYPE_HEADER = 0x02;
@@ -112,11 +123,22 @@ public class BinaryReader{
 	
 	private final static int DATE_TIME_INDICATOR = 0x01;
 	private final static int DATE_INDICATOR = 0x02;
+	private final static int PACKED_DATE_TIME_INDICATOR = 0x04;
+	
+	private final static int INTEGER_COLUMN = 0x01;
+	private final static int SORTED_INTEGER_COLUMN = 0x02;
+	private final static int STRING_COLUMN = 0x03;
+	private final static int SOURCE_LOCATION_COLUMN = 0x04;
+	private final static int VALUE_COLUMN = 0x05;
+	
+	private final static int HAS_OFFSET = 0x01;
+	private final static int HAS_LINES = 0x02;
 	
 	private final static TypeFactory tf = TypeFactory.getInstance();
 	
 	private final ResizingArray<IValue> sharedValues;
 	private int currentSharedValueId;
+	private int window;
 	private final ResizingArray<Type> sharedTypes;
 	private int currentSharedTypeId;
 	private final ResizingArray<ISourceLocation> sharedPaths;
@@ -127,16 +149,28 @@ public class BinaryReader{
 	private final IValueFactory valueFactory;
 	private final TypeStore typeStore;
 	private final InputStream in;
+	private final ByteBuffer buffer;
+	private boolean columnar;
 	
 	public BinaryReader(IValueFactory valueFactory, TypeStore typeStore, InputStream inputStream){
+		this(valueFactory, typeStore, inputStream, null);
+	}
+	
+	public BinaryReader(IValueFactory valueFactory, TypeStore typeStore, ByteBuffer buffer){
+		this(valueFactory, typeStore, null, buffer);
+	}
+	
+	private BinaryReader(IValueFactory valueFactory, TypeStore typeStore, InputStream inputStream, ByteBuffer buffer){
 		super();
 		
 		this.valueFactory = valueFactory;
 		this.typeStore = typeStore;
 		this.in = inputStream;
+		this.buffer = buffer;
 
 		sharedValues = new ResizingArray<>(DEFAULT_SHARED_VALUES_STORE_SIZE);
 		currentSharedValueId = 0;
+		window = 0;
 		sharedTypes = new ResizingArray<>(DEFAULT_SHARED_TYPES_STORE_SIZE);
 		currentSharedTypeId = 0;
 		sharedPaths = new ResizingArray<>(DEFAULT_SHARED_PATHS_STORE_SIZE);
@@ -145,8 +179,36 @@ public class BinaryReader{
 		currentSharedNamesId = 0;
 	}
 	
+	private BinaryReader(BinaryReader prefix, ByteBuffer buffer){
+		super();
+		
+		this.valueFactory = prefix.valueFactory;
+		this.typeStore = prefix.typeStore;
+		this.in = null;
+		this.buffer = buffer;
+		
+		sharedValues = new ResizingArray<>(prefix.sharedValues);
+		currentSharedValueId = prefix.currentSharedValueId;
+		window = prefix.window;
+		sharedTypes = new ResizingArray<>(prefix.sharedTypes);
+		currentSharedTypeId = prefix.currentSharedTypeId;
+		sharedPaths = new ResizingArray<>(prefix.sharedPaths);
+		currentSharedPathId = prefix.currentSharedPathId;
+		sharedNames = new ResizingArray<>(prefix.sharedNames);
+		currentSharedNamesId = prefix.currentSharedNamesId;
+	}
+	
+	/**
+	 * Creates a reader for the given buffer that starts with copies of the
+	 * sharing tables of this one. Forks of the same reader can be used by
+	 * different threads.
+	 */
+	/*package*/ BinaryReader fork(ByteBuffer buffer){
+		return new BinaryReader(this, buffer);
+	}
+	
 	public IValue deserialize() throws IOException{
-		int header = read();
+		int header = readHeader();
 		if((header & SHARED_FLAG) == SHARED_FLAG){
 			return sharedValues.get(parseInteger());
 		}
@@ -203,6 +265,9 @@ public class BinaryReader{
 			case RELATION_HEADER:
 				value = readRelation(header);
 				break;
+			case COLUMNAR_RELATION_HEADER:
+				value = readColumnarRelation(header);
+				break;
 			case MAP_HEADER:
 				value = readMap(header);
 				break;
@@ -236,12 +301,80 @@ public class BinaryReader{
 		}
 		
 		if (hashValue) {
-			sharedValues.set(value, currentSharedValueId++);
+			// with a window, only the most recent values are kept, each in its slot
+			sharedValues.set(value, window == 0 ? currentSharedValueId : currentSharedValueId % window);
+			currentSharedValueId++;
 		}
 		
 		return value;
 	}
 	
+	/**
+	 * Reads the header of a value, after the size of the sharing window if the
+	 * writer had one.
+	 */
+	private int readHeader() throws IOException{
+		int header = read();
+		if(header == SHARING_WINDOW_HEADER){
+			window = parseInteger();
+			if(window < 0){
+				throw new IOException("Negative sharing window: " + window);
+			}
+			header = read();
+		}
+		return header;
+	}
+	
+	/**
+	 * Reads a type written by {@link BinaryWriter#serializeType(Type)}.
+	 */
+	public Type deserializeType() throws IOException{
+		return doReadType();
+	}
+	
+	/**
+	 * Reads the start of a list, set, relation or map, up to the length, which
+	 * has to be read with {@link #readCollectionLength()} before the elements.
+	 * 
+	 * @return the type of the collection
+	 */
+	/*package*/ Type readCollectionType() throws IOException{
+		int header = readHeader();
+		Type elementType;
+		
+		switch(header & TYPE_MASK){
+			case LIST_HEADER:
+				elementType = readType(header);
+				return elementType.isFixedWidth() ? tf.lrelTypeFromTuple(elementType) : tf.listType(elementType);
+			case SET_HEADER:
+				elementType = readType(header);
+				return elementType.isFixedWidth() ? tf.relTypeFromTuple(elementType) : tf.setType(elementType);
+			case RELATION_HEADER:
+				return tf.relTypeFromTuple(readType(header));
+			case COLUMNAR_RELATION_HEADER:
+				columnar = true;
+				return tf.relTypeFromTuple(readType(header));
+			case MAP_HEADER:
+				return readType(header);
+			default:
+				throw new IOException("Not a collection: "+(header & TYPE_MASK));
+		}
+	}
+	
+	/*package*/ int readCollectionLength() throws IOException{
+		return parseInteger();
+	}
+	
+	/**
+	 * @return true if the collection of which the type was read last with
+	 *         {@link #readCollectionType()} is a relation that was written column
+	 *         by column, of which all tuples have to be read at once with
+	 *         {@link #readRows(Type, int)}
+	 */
+	/*package*/ boolean isColumnar(){
+		return columnar;
+	}
+	
 	// Called by value stuff.
 	private Type readType(int header) throws IOException{
 		if((header & TYPE_SHARED_FLAG) == TYPE_SHARED_FLAG){
@@ -396,9 +529,7 @@ public class BinaryReader{
 		int size = parseInteger();
 		
 		byte[] data = new byte[size];
-		for(int i = 0; i< size; i++){
-			data[i] = (byte) read();
-		}
+		read(data);
 		
 		return valueFactory.string(new String(data, BinaryWriter.CharEncoding));
 	}
@@ -412,9 +543,7 @@ public class BinaryReader{
 			int pathSize = parseInteger();
 			
 			byte[] data = new byte[pathSize];
-			for(int i = 0; i< pathSize; i++){
-				data[i] = (byte) read();
-			}
+			read(data);
 			
 			try{
 				path = valueFactory.sourceLocation(new URI(new String(data, BinaryWriter.CharEncoding)));
@@ -459,6 +588,12 @@ public class BinaryReader{
 			int timeZoneMinuteOffset = parseInteger();
 			
 			return valueFactory.datetime(year, month, day, hour, minute, second, millisecond, timeZoneHourOffset, timeZoneMinuteOffset);
+		}else if(typeIndicator == PACKED_DATE_TIME_INDICATOR){
+			long instant = parseLong();
+			instant = (instant & 1) == 1 ? unZigZag(instant >>> 1) * 1000 : unZigZag(instant >>> 1);
+			int offset = (int) unZigZag(parseLong());
+			
+			return valueFactory.datetime(instant, offset / 60, offset % 60);
 		}else if(typeIndicator == DATE_INDICATOR){
 			int year = parseInteger();
 			int month = parseInteger();
@@ -497,9 +632,7 @@ public class BinaryReader{
 			int nodeNameLength = parseInteger();
 			
 			byte[] data = new byte[nodeNameLength];
-			for(int i = 0; i < nodeNameLength; i++){
-				data[i] = (byte) read();
-			}
+			read(data);
 			nodeName = new String(data, BinaryWriter.CharEncoding);
 			
 			sharedNames.set(nodeName, currentSharedNamesId++);
@@ -522,9 +655,7 @@ public class BinaryReader{
 			int nodeNameLength = parseInteger();
 			
 			byte[] data = new byte[nodeNameLength];
-			for(int i = 0; i < nodeNameLength; i++){
-				data[i] = (byte) read();
-			}
+			read(data);
 			nodeName = new String(data, BinaryWriter.CharEncoding);
 
 			sharedNames.set(nodeName, currentSharedNamesId++);
@@ -562,9 +693,7 @@ public class BinaryReader{
 			int nodeNameLength = parseInteger();
 			
 			byte[] data = new byte[nodeNameLength];
-			for(int i = 0; i < nodeNameLength; i++){
-				data[i] = (byte) read();
-			}
+			read(data);
 			nodeName = new String(data, BinaryWriter.CharEncoding);
 
 			sharedNames.set(nodeName, currentSharedNamesId++);
@@ -702,6 +831,153 @@ public class BinaryReader{
 		return relationWriter.done();
 	}
 	
+	private ISet readColumnarRelation(int header) throws IOException{
+		Type elementType = readType(header);
+		
+		int length = parseInteger();
+		
+		ISetWriter relationWriter = valueFactory.setWriter();
+		for(ITuple tuple : readRows(elementType, length)){
+			relationWriter.insert(tuple);
+		}
+		
+		return relationWriter.done();
+	}
+	
+	/**
+	 * Reads the columns of a relation, and puts its tuples together.
+	 */
+	/*package*/ ITuple[] readRows(Type tupleType, int length) throws IOException{
+		int arity = tupleType.getArity();
+		
+		IValue[][] columns = new IValue[arity][];
+		for(int i = 0; i < arity; i++){
+			columns[i] = readColumn(length);
+		}
+		
+		ITuple[] rows = new ITuple[length];
+		for(int row = 0; row < length; row++){
+			IValue[] fields = new IValue[arity];
+			for(int i = 0; i < arity; i++){
+				fields[i] = columns[i][row];
+			}
+			rows[row] = valueFactory.tuple(fields);
+		}
+		
+		return rows;
+	}
+	
+	private IValue[] readColumn(int length) throws IOException{
+		IValue[] column = new IValue[length];
+		
+		int kind = read();
+		switch(kind){
+			case INTEGER_COLUMN:
+				for(int i = 0; i < length; i++){
+					column[i] = valueFactory.integer(unZigZag(parseLong()));
+				}
+				break;
+			case SORTED_INTEGER_COLUMN:
+				long integer = unZigZag(parseLong());
+				column[0] = valueFactory.integer(integer);
+				for(int i = 1; i < length; i++){
+					integer += parseLong();
+					column[i] = valueFactory.integer(integer);
+				}
+				break;
+			case STRING_COLUMN:
+				String[] strings = readStrings();
+				IValue[] stringDictionary = new IValue[strings.length];
+				for(int i = 0; i < strings.length; i++){
+					stringDictionary[i] = valueFactory.string(strings[i]);
+				}
+				readIndices(stringDictionary, column);
+				break;
+			case SOURCE_LOCATION_COLUMN:
+				readSourceLocationColumn(column);
+				break;
+			case VALUE_COLUMN:
+				IValue[] dictionary = new IValue[parseInteger()];
+				for(int i = 0; i < dictionary.length; i++){
+					dictionary[i] = deserialize();
+				}
+				readIndices(dictionary, column);
+				break;
+			default:
+				throw new IOException("Unknown column kind: " + kind);
+		}
+		
+		return column;
+	}
+	
+	private void readSourceLocationColumn(IValue[] column) throws IOException{
+		String[] paths = readStrings();
+		ISourceLocation[] dictionary = new ISourceLocation[paths.length];
+		for(int i = 0; i < paths.length; i++){
+			try{
+				dictionary[i] = valueFactory.sourceLocation(new URI(paths[i]));
+			}catch(URISyntaxException e){
+				throw new FactParseError("Illegal URI", e); // Can't happen.
+			}
+		}
+		
+		// The last offset and line per path.
+		int[] offsets = new int[paths.length];
+		int[] lines = new int[paths.length];
+		
+		for(int i = 0; i < column.length; i++){
+			int header = parseInteger();
+			int path = header >>> 2;
+			if(path >= paths.length){
+				throw new IOException("Unknown path: " + path);
+			}
+			
+			if((header & HAS_OFFSET) == 0){
+				column[i] = dictionary[path];
+				continue;
+			}
+			
+			int offset = (int) (offsets[path] + unZigZag(parseLong()));
+			int length = (int) unZigZag(parseLong());
+			offsets[path] = offset;
+			
+			if((header & HAS_LINES) == 0){
+				column[i] = valueFactory.sourceLocation(dictionary[path], offset, length);
+				continue;
+			}
+			
+			int beginLine = (int) (lines[path] + unZigZag(parseLong()));
+			int endLine = (int) (beginLine + unZigZag(parseLong()));
+			int beginCol = (int) unZigZag(parseLong());
+			int endCol = (int) unZigZag(parseLong());
+			lines[path] = beginLine;
+			
+			column[i] = valueFactory.sourceLocation(dictionary[path], offset, length, beginLine, endLine, beginCol, endCol);
+		}
+	}
+	
+	private String[] readStrings() throws IOException{
+		String[] strings = new String[parseInteger()];
+		
+		for(int i = 0; i < strings.length; i++){
+			byte[] data = new byte[parseInteger()];
+			read(data);
+			strings[i] = new String(data, BinaryWriter.CharEncoding);
+		}
+		
+		return strings;
+	}
+	
+	private void readIndices(IValue[] dictionary, IValue[] column) throws IOException{
+		for(int i = 0; i < column.length; i++){
+			int index = parseInteger();
+			if(index < 0 || index >= dictionary.length){
+				throw new IOException("Unknown dictionary entry: " + index);
+			}
+			column[i] = dictionary[index];
+		}
+	}
+	
 	private IMap readMap(int header) throws IOException{
 		Type mapType = readType(header);
 
@@ -947,6 +1223,10 @@ public class BinaryReader{
 	private final static int SIGNBIT = 0x00000080;
 	
 	private int parseInteger() throws IOException{
+		if(buffer != null && buffer.remaining() >= 5){
+			return parseBufferedInteger();
+		}
+		
 		int part = read();
 		int result = (part & SEVENBITS);
 		
@@ -969,6 +1249,45 @@ public class BinaryReader{
 		return result;
 	}
 
+	private int parseBufferedInteger(){
+		int part = buffer.get();
+		int result = (part & SEVENBITS);
+		
+		if((part & SIGNBIT) == 0) return result;
+			
+		part = buffer.get();
+		result |= ((part & SEVENBITS) << 7);
+		if((part & SIGNBIT) == 0) return result;
+			
+		part = buffer.get();
+		result |= ((part & SEVENBITS) << 14);
+		if((part & SIGNBIT) == 0) return result;
+			
+		part = buffer.get();
+		result |= ((part & SEVENBITS) << 21);
+		if((part & SIGNBIT) == 0) return result;
+			
+		part = buffer.get();
+		result |= ((part & SEVENBITS) << 28);
+		return result;
+	}
+
+	private static long unZigZag(long value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	private long parseLong() throws IOException{
+		long result = 0;
+		int shift = 0;
+		int part;
+		do{
+			part = read();
+			result |= ((long) (part & SEVENBITS)) << shift;
+			shift += 7;
+		}while((part & SIGNBIT) != 0);
+		return result;
+	}
+
 	private final static int BYTEMASK = 0x000000ff;
 	private final static int BYTEBITS = 8;
 	private final static int LONGBITS = 8;
@@ -982,6 +1301,14 @@ public class BinaryReader{
 	}
 	
 	private int read() throws IOException {
+		if(buffer != null) {
+			if(!buffer.hasRemaining()) {
+				throw new UnexpectedEOF();
+			}
+			
+			return buffer.get() & BYTEMASK;
+		}
+		
 		int b = in.read();
 
 		if(b == -1) {
@@ -991,15 +1318,25 @@ public class BinaryReader{
 		return b;
 	}
 
-	private void read(byte[] buffer) throws IOException {
-		read(buffer, 0, buffer.length);
+	private void read(byte[] data) throws IOException {
+		read(data, 0, data.length);
 	}
 	
-	private void read(byte[] buffer, int offset, int length) throws IOException {
+	private void read(byte[] data, int offset, int length) throws IOException {
+		if(buffer != null) {
+			try {
+				buffer.get(data, offset, length);
+			}
+			catch(BufferUnderflowException e) {
+				throw new UnexpectedEOF();
+			}
+			return;
+		}
+		
 		int read;
 
 		while(length > 0) {
-			read = in.read(buffer, offset, length);
+			read = in.read(data, offset, length);
 
 			if(read == -1) {
 				throw new UnexpectedEOF();
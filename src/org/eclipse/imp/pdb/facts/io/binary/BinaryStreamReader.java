@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.imp.pdb.facts.ITuple;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Reads the elements of a list, set or map in the binary format one at a time,
+ * without building the collection. The entries of maps are returned as tuples
+ * of a key and a value. Elements are read on demand, and neither the collection
+ * nor its hash table is built, so a single pass over a collection does not have
+ * to keep the elements it has seen. The reader does keep the values that later
+ * values may refer to in its sharing tables. Relations that were written column
+ * by column are the exception: all of their tuples are read at once.
+ * <p>
+ * Errors that occur while reading the elements are thrown as
+ * {@link UncheckedIOException}s, since {@link Iterator} does not allow checked
+ * exceptions.
+ */
+public class BinaryStreamReader implements Iterator<IValue>{
+	private final IValueFactory valueFactory;
+	private final BinaryReader reader;
+	private final Type type;
+	private final int size;
+	private final ITuple[] rows;
+	private int next;
+	
+	public BinaryStreamReader(IValueFactory valueFactory, TypeStore typeStore, InputStream inputStream) throws IOException{
+		this(valueFactory, new BinaryReader(valueFactory, typeStore, inputStream));
+	}
+	
+	public BinaryStreamReader(IValueFactory valueFactory, TypeStore typeStore, ByteBuffer buffer) throws IOException{
+		this(valueFactory, new BinaryReader(valueFactory, typeStore, buffer));
+	}
+	
+	private BinaryStreamReader(IValueFactory valueFactory, BinaryReader reader) throws IOException{
+		super();
+		
+		this.valueFactory = valueFactory;
+		this.reader = reader;
+		this.type = reader.readCollectionType();
+		this.size = reader.readCollectionLength();
+		this.rows = reader.isColumnar() ? reader.readRows(type.getElementType(), size) : null;
+		this.next = 0;
+	}
+	
+	/**
+	 * @return the type of the collection that is read
+	 */
+	public Type getType(){
+		return type;
+	}
+	
+	/**
+	 * @return the number of elements, or entries, of the collection
+	 */
+	public int size(){
+		return size;
+	}
+	
+	public boolean hasNext(){
+		return next < size;
+	}
+	
+	public IValue next(){
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		
+		if(rows != null){
+			return rows[next++];
+		}
+		
+		try{
+			IValue element = reader.deserialize();
+			
+			if(type.isMap()){
+				element = valueFactory.tuple(element, reader.deserialize());
+			}
+			
+			next++;
+			return element;
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	public void remove(){
+		throw new UnsupportedOperationException();
+	}
+}
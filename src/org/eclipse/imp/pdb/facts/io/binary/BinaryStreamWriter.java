@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.exceptions.UnexpectedElementTypeException;
+import org.eclipse.imp.pdb.facts.exceptions.UnexpectedMapKeyTypeException;
+import org.eclipse.imp.pdb.facts.exceptions.UnexpectedMapValueTypeException;
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Writes a list, set or map in the binary format one element at a time, so the
+ * collection never has to be built in memory. The length of the collection is
+ * written as a padded placeholder, which is filled in by {@link #done()}; the
+ * result can be read by the normal {@link BinaryReader}.
+ * <p>
+ * The elements share the sharing tables of a single {@link BinaryWriter}, so
+ * the writer does keep the values that later elements may refer to. A
+ * {@link SharingPolicy} with a window bounds the number of those values, and
+ * with that the memory that writing and reading a long stream takes. Elements
+ * of sets are not checked for duplicates; the reader removes them.
+ */
+public class BinaryStreamWriter{
+	private final SeekableByteChannel channel;
+	private final BinaryWriter writer;
+	private final Type type;
+	private final long lengthPosition;
+	private int length;
+	private boolean done;
+	
+	/**
+	 * Starts a collection of the given type at the current position of the
+	 * channel.
+	 * 
+	 * @param collectionType a list, set, relation or map type, to which all elements should conform
+	 */
+	public BinaryStreamWriter(SeekableByteChannel channel, Type collectionType, boolean maximalSharing, TypeStore typeStore) throws IOException{
+		this(channel, collectionType, SharingPolicy.of(maximalSharing), typeStore);
+	}
+	
+	/**
+	 * Starts a collection of the given type at the current position of the
+	 * channel, of which the values are shared according to the given policy.
+	 * 
+	 * @param collectionType a list, set, relation or map type, to which all elements should conform
+	 */
+	public BinaryStreamWriter(SeekableByteChannel channel, Type collectionType, SharingPolicy policy, TypeStore typeStore) throws IOException{
+		super();
+		
+		this.channel = channel;
+		this.type = collectionType;
+		this.writer = new BinaryWriter(null, null, channel, ByteBuffer.allocateDirect(64 * 1024), policy, typeStore);
+		
+		long start = channel.position();
+		this.lengthPosition = start + writer.serializeCollectionStart(collectionType);
+		this.length = 0;
+		this.done = false;
+	}
+	
+	/**
+	 * Appends an element to a list or set.
+	 */
+	public void append(IValue element) throws IOException{
+		checkOpen();
+		if(type.isMap()){
+			throw new IllegalStateException("Use put to write the entries of a map");
+		}
+		if(!element.getType().isSubtypeOf(type.getElementType())){
+			throw new UnexpectedElementTypeException(type.getElementType(), element.getType());
+		}
+		
+		writer.serializeElement(element);
+		length++;
+	}
+	
+	/**
+	 * Appends an entry to a map. Keys are not checked for duplicates; the reader
+	 * keeps the last value of a key.
+	 */
+	public void put(IValue key, IValue value) throws IOException{
+		checkOpen();
+		if(!type.isMap()){
+			throw new IllegalStateException("Use append to write the elements of a list or set");
+		}
+		if(!key.getType().isSubtypeOf(type.getKeyType())){
+			throw new UnexpectedMapKeyTypeException(type.getKeyType(), key.getType());
+		}
+		if(!value.getType().isSubtypeOf(type.getValueType())){
+			throw new UnexpectedMapValueTypeException(type.getValueType(), value.getType());
+		}
+		
+		writer.serializeElement(key);
+		writer.serializeElement(value);
+		length++;
+	}
+	
+	/**
+	 * @return how well the elements that were written so far were shared
+	 */
+	public SharingStatistics getSharingStatistics(){
+		return writer.getSharingStatistics();
+	}
+	
+	/**
+	 * @return the number of elements, or entries, written so far
+	 */
+	public int length(){
+		return length;
+	}
+	
+	/**
+	 * Ends the collection: flushes the elements and fills in the length. The
+	 * channel is left positioned after the collection, and is not closed.
+	 */
+	public void done() throws IOException{
+		checkOpen();
+		done = true;
+		
+		writer.flush();
+		long end = channel.position();
+		
+		channel.position(lengthPosition);
+		ByteBuffer patch = ByteBuffer.wrap(BinaryWriter.paddedLength(length));
+		while(patch.hasRemaining()){
+			channel.write(patch);
+		}
+		channel.position(end);
+	}
+	
+	private void checkOpen(){
+		if(done){
+			throw new IllegalStateException("The collection is already done");
+		}
+	}
+}
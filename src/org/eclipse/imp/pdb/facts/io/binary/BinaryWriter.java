@@ -15,7 +15,13 @@ package org.eclipse.imp.pdb.facts.io.binary;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Map.Entry;
@@ -24,6 +30,7 @@ import org.eclipse.imp.pdb.facts.IAnnotatable;
 import org.eclipse.imp.pdb.facts.IBool;
 import org.eclipse.imp.pdb.facts.IConstructor;
 import org.eclipse.imp.pdb.facts.IDateTime;
+import org.eclipse.imp.pdb.facts.IExternalValue;
 import org.eclipse.imp.pdb.facts.IInteger;
 import org.eclipse.imp.pdb.facts.IList;
 import org.eclipse.imp.pdb.facts.IMap;
@@ -36,15 +43,36 @@ import org.eclipse.imp.pdb.facts.IString;
 import org.eclipse.imp.pdb.facts.ITuple;
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IWithKeywordParameters;
+import org.eclipse.imp.pdb.facts.impl.primitive.AbstractPrimitiveValueFactory;
 import org.eclipse.imp.pdb.facts.type.ExternalType;
 import org.eclipse.imp.pdb.facts.type.ITypeVisitor;
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeStore;
 import org.eclipse.imp.pdb.facts.util.IndexedSet;
 import org.eclipse.imp.pdb.facts.visitors.IValueVisitor;
+import org.eclipse.imp.pdb.facts.visitors.ValueTraversal;
 
-// TODO Change this thing so it doesn't use recursion.
 /**
+ * Values are serialized by an iterative {@link ValueTraversal}, so the depth of
+ * the values that can be written does not depend on the size of the stack.
+ * <p>
+ * The output is collected in an internal {@link ByteBuffer}, which is handed to
+ * the underlying stream or channel whenever it is full, and once more at the end
+ * of {@link #serialize()}. Streams therefore do not need to be buffered by the
+ * caller. Writing to a {@link WritableByteChannel}, for instance a file channel,
+ * uses a direct buffer.
+ * <p>
+ * Sets of fixed-width tuples are written column by column: every field of the
+ * tuples is written as a separate column, with a dictionary of the distinct
+ * strings, paths of locations or other values in it, and integers and offsets
+ * as small differences where possible. Datetimes are written as their instant
+ * and timezone offset where possible. Readers that predate these encodings can
+ * not read them, see {@link #setCompactEncodings(boolean)}.
+ * <p>
+ * Which values are written only once, and referred to afterwards, is decided
+ * by a {@link SharingPolicy}, which can also bound the number of values that
+ * the writer and the reader keep for that.
+ * 
  * @author Arnold Lankamp
  */
 public class BinaryWriter{
@@ -114,6 +142,8 @@ public class BinaryWriter{
 	private final static int RATIONAL_HEADER = 0x11;
 	private final static int KEYWORDED_NODE_HEADER = 0x12;
 	private final static int KEYWORDED_CONSTRUCTOR_HEADER = 0x13;
+	private final static int COLUMNAR_RELATION_HEADER = 0x15;
+	private final static int SHARING_WINDOW_HEADER = 0x16;
 
 
 	private final static int VALUE_TYPE_HEADER = 0x01;
@@ -148,132 +178,604 @@ public class BinaryWriter{
 	private final static int DATE_TIME_INDICATOR = 0x01;
 	private final static int DATE_INDICATOR = 0x02;
 	private final static int TIME_INDICATOR = 0x03;
+	private final static int PACKED_DATE_TIME_INDICATOR = 0x04;
 	
-	private final IndexedSet<IValue> sharedValues;
+	private final static int INTEGER_COLUMN = 0x01;
+	private final static int SORTED_INTEGER_COLUMN = 0x02;
+	private final static int STRING_COLUMN = 0x03;
+	private final static int SOURCE_LOCATION_COLUMN = 0x04;
+	private final static int VALUE_COLUMN = 0x05;
+	
+	private final static int HAS_OFFSET = 0x01;
+	private final static int HAS_LINES = 0x02;
+	
+	private final SharingTable sharedValues;
 	private final IndexedSet<Type> sharedTypes;
 	private final IndexedSet<String> sharedPaths;
 	private final IndexedSet<String> sharedNames;
+	private Type lastType;
+	private int lastTypeId;
+	
+	private final static int BUFFER_SIZE = 64 * 1024;
 	
 	private final IValue value;
 	private final OutputStream out;
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	private long written;
 	private final TypeStore typeStore;
-	private final boolean maximalSharing;
+	private final SharingPolicy policy;
+	private boolean windowWritten;
+	private boolean compactEncodings;
+	private final Serializer serializer;
+	private final ValueWriter valueWriter;
 	
 	public BinaryWriter(IValue value, OutputStream outputStream, TypeStore typeStore){
 		this(value, outputStream, true, typeStore);
 	}
 	public BinaryWriter(IValue value, OutputStream outputStream, boolean maximalSharing, TypeStore typeStore){
+		this(value, outputStream, SharingPolicy.of(maximalSharing), typeStore);
+	}
+	
+	public BinaryWriter(IValue value, OutputStream outputStream, SharingPolicy policy, TypeStore typeStore){
+		this(value, outputStream, null, ByteBuffer.allocate(BUFFER_SIZE), policy, typeStore);
+	}
+	
+	public BinaryWriter(IValue value, WritableByteChannel channel, TypeStore typeStore){
+		this(value, channel, true, typeStore);
+	}
+	
+	public BinaryWriter(IValue value, WritableByteChannel channel, boolean maximalSharing, TypeStore typeStore){
+		this(value, channel, SharingPolicy.of(maximalSharing), typeStore);
+	}
+	
+	public BinaryWriter(IValue value, WritableByteChannel channel, SharingPolicy policy, TypeStore typeStore){
+		this(value, null, channel, ByteBuffer.allocateDirect(BUFFER_SIZE), policy, typeStore);
+	}
+	
+	/*package*/ BinaryWriter(IValue value, OutputStream outputStream, WritableByteChannel channel, ByteBuffer buffer, SharingPolicy policy, TypeStore typeStore){
 		super();
 		
 		this.value = value;
 		this.out = outputStream;
+		this.channel = channel;
+		this.buffer = buffer;
 		this.typeStore = typeStore;
-		this.maximalSharing = maximalSharing;
+		this.policy = policy;
+		this.windowWritten = false;
+		this.compactEncodings = true;
 		
-		sharedValues = new IndexedSet<>();
+		sharedValues = new SharingTable(policy.getWindow());
 		sharedTypes = new IndexedSet<>();
 		sharedPaths = new IndexedSet<>();
 		sharedNames = new IndexedSet<>();
+		
+		serializer = new Serializer();
+		valueWriter = new ValueWriter();
+	}
+	
+	private BinaryWriter(BinaryWriter prefix, IValue value, OutputStream outputStream){
+		super();
+		
+		this.value = value;
+		this.out = outputStream;
+		this.channel = null;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.typeStore = prefix.typeStore;
+		this.policy = prefix.policy;
+		this.windowWritten = prefix.windowWritten;
+		this.compactEncodings = prefix.compactEncodings;
+		
+		sharedValues = new SharingTable(prefix.sharedValues);
+		sharedTypes = new IndexedSet<>(prefix.sharedTypes);
+		sharedPaths = new IndexedSet<>(prefix.sharedPaths);
+		sharedNames = new IndexedSet<>(prefix.sharedNames);
+		
+		serializer = new Serializer();
+		valueWriter = new ValueWriter();
+	}
+	
+	/**
+	 * Creates a writer that starts with copies of the sharing tables of this
+	 * one, so what it writes can be read by a {@link BinaryReader#fork(ByteBuffer)}
+	 * of a reader that has read what this writer wrote.
+	 */
+	/*package*/ BinaryWriter fork(IValue value, OutputStream outputStream){
+		return new BinaryWriter(this, value, outputStream);
+	}
+	
+	/**
+	 * Sets whether relations are written column by column and datetimes as
+	 * their instant, which is the default. Turn this off to write values that
+	 * readers which predate these encodings can read.
+	 */
+	public void setCompactEncodings(boolean compactEncodings){
+		this.compactEncodings = compactEncodings;
 	}
 	
 	public void serialize() throws IOException{
-		doSerialize(value);
+		writeWindow();
+		serializer.traverse(value);
+		flushBuffer();
 	}
 	
-	private void doSerialize(IValue value) throws IOException{
-		// This special cases the hashing logic: if we have a constructor with
-		// at least one location annotation, don't try to hash it
-		boolean tryHashing = true;
+	/**
+	 * @return how well the values that were written so far were shared
+	 */
+	public SharingStatistics getSharingStatistics(){
+		return sharedValues.statistics();
+	}
+	
+	/**
+	 * Tells the reader the size of the sharing window before the first value,
+	 * if the policy has one.
+	 */
+	private void writeWindow() throws IOException{
+		if(!windowWritten && policy.getWindow() > 0){
+			write(SHARING_WINDOW_HEADER);
+			printInteger(policy.getWindow());
+		}
+		windowWritten = true;
+	}
+	
+	/**
+	 * Writes the start of a list, set or map of the given type, with a length
+	 * that is padded to five bytes, so it can be patched afterwards with
+	 * {@link #paddedLength(int)}. The elements are written one by one with
+	 * {@link #serializeElement(IValue)}.
+	 * 
+	 * @return the position of the length, relative to where the channel started
+	 */
+	/*package*/ long serializeCollectionStart(Type collectionType) throws IOException{
+		writeWindow();
+		
+		if(collectionType.isList()){
+			writeCollectionHeader(LIST_HEADER, collectionType.getElementType());
+		}else if(collectionType.isSet()){
+			writeCollectionHeader(SET_HEADER, collectionType.getElementType());
+		}else if(collectionType.isMap()){
+			writeCollectionHeader(MAP_HEADER, collectionType);
+		}else{
+			throw new IllegalArgumentException("Not a collection type: " + collectionType);
+		}
 		
-		if (tryHashing && value.getType().isAbstractData()) {
-			IConstructor consValue = (IConstructor)value;
-			if (consValue.isAnnotatable() && consValue.asAnnotatable().hasAnnotations()) {
-				Map<String,IValue> amap = consValue.asAnnotatable().getAnnotations();
-				for (Entry<String, IValue> aEntry : amap.entrySet()) {
-					Type aType = aEntry.getValue().getType();
-					if (!aType.isBottom() && aType.isSourceLocation()) {
-						tryHashing = false;
-						break;
+		long position = written + buffer.position();
+		write(paddedLength(0));
+		return position;
+	}
+	
+	/**
+	 * Writes a value with the sharing tables of this writer, without flushing.
+	 */
+	/*package*/ void serializeElement(IValue element) throws IOException{
+		serializer.traverse(element);
+	}
+	
+	/*package*/ void flush() throws IOException{
+		flushBuffer();
+	}
+	
+	/**
+	 * @return a length as a varint of five bytes, which the reader accepts just
+	 *         like the shortest encoding
+	 */
+	/*package*/ static byte[] paddedLength(int length){
+		return new byte[]{
+			(byte) ((length & SEVENBITS) | SIGNBIT),
+			(byte) (((length >>> 7) & SEVENBITS) | SIGNBIT),
+			(byte) (((length >>> 14) & SEVENBITS) | SIGNBIT),
+			(byte) (((length >>> 21) & SEVENBITS) | SIGNBIT),
+			(byte) ((length >>> 28) & SEVENBITS)
+		};
+	}
+	
+	/**
+	 * Writes only the given type, instead of the value. It can be read back with
+	 * {@link BinaryReader#deserializeType()}.
+	 */
+	public void serializeType(Type type) throws IOException{
+		writeType(type);
+		flushBuffer();
+	}
+	
+	/**
+	 * Writes each value when it is entered, and schedules its children, the
+	 * labels of its keyword parameters or annotations, and the moment at which
+	 * it becomes available for sharing. This produces the same output, in the
+	 * same order, as writing the children recursively would.
+	 */
+	private final class Serializer extends ValueTraversal<IOException>{
+		private static final int STORE = CUSTOM;
+		private static final int LABELS = CUSTOM + 1;
+		private static final int LABELED = CUSTOM + 2;
+		private static final int COLUMNS = CUSTOM + 3;
+		private static final int SKIP = CUSTOM + 4;
+		
+		@Override
+		protected boolean enter(IValue value) throws IOException{
+			doSerialize(value);
+			return false;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void step(int tag, Object item) throws IOException{
+			switch(tag){
+				case STORE:
+					sharedValues.store(item);
+					break;
+				case SKIP:
+					sharedValues.skip();
+					break;
+				case LABELS:
+					Map<String, IValue> labeled = (Map<String, IValue>) item;
+					printInteger(labeled.size());
+					if(!labeled.isEmpty()){
+						push(labeled.entrySet().iterator(), LABELED);
 					}
-				}
+					break;
+				case LABELED:
+					Iterator<Map.Entry<String, IValue>> entries = (Iterator<Map.Entry<String, IValue>>) item;
+					Map.Entry<String, IValue> entry = entries.next();
+					if(entries.hasNext()){
+						push(entries, LABELED);
+					}
+					
+					byte[] labelData = entry.getKey().getBytes(CharEncoding);
+					printInteger(labelData.length);
+					write(labelData);
+					
+					push(entry.getValue(), VISIT);
+					break;
+				case COLUMNS:
+					writeColumns((Columns) item);
+					break;
+				default:
+					super.step(tag, item);
 			}
 		}
 		
-		boolean alwaysMaximallyShare = value.getType().isString() || value.getType().isNumber() || value.getType().isSourceLocation();
-		if (tryHashing) {
-		  int valueId;
-		  if (maximalSharing || alwaysMaximallyShare) {
-		    valueId = sharedValues.get(value);
-		  }
-		  else {
-		    valueId = sharedValues.get(new IdentityValue(value));
-		  }
-		  if(valueId != -1){
-		    out.write(SHARED_FLAG);
-		    printInteger(valueId);
-		    return;
-		  }
-		}
-		
-		// This sucks and is order dependent :-/.
-		if(value instanceof IBool){
-			writeBool((IBool) value);
-		}else if(value instanceof IInteger){
-			writeInteger((IInteger) value);
-		}else if(value instanceof IRational){
-			writeRational((IRational) value);
-		}else if(value instanceof IReal){
-			writeDouble((IReal) value);
-		}else if(value instanceof IString){
-			writeString((IString) value);
-		}else if(value instanceof ISourceLocation){
-			writeSourceLocation((ISourceLocation) value);
-		}else if(value instanceof IDateTime){
-			writeDateTime((IDateTime) value);
-		}else if(value instanceof ITuple){
-			writeTuple((ITuple) value);
-		}else if(value instanceof IConstructor){
-			IConstructor constructor = (IConstructor) value;
-			if (constructor.mayHaveKeywordParameters() && constructor.asWithKeywordParameters().hasParameters()) {
-				writeKeywordedConstructor(constructor);
+		/**
+		 * Stores the value for sharing once everything scheduled after it was written.
+		 */
+		void store(IValue value){
+			push(value, STORE);
+		}
+		
+		/**
+		 * Skips an identifier for a value that is not shared, at the moment at
+		 * which it would have been stored.
+		 */
+		void skip(){
+			push(null, SKIP);
+		}
+		
+		void children(Iterator<IValue> children){
+			pushElements(children);
+		}
+		
+		void entries(Iterator<Map.Entry<IValue, IValue>> entries){
+			pushEntries(entries);
+		}
+		
+		/**
+		 * Writes the number of labeled values, and each label followed by its value,
+		 * after the children that are scheduled next.
+		 */
+		void labeled(Map<String, IValue> labeled){
+			push(labeled, LABELS);
+		}
+		
+		/**
+		 * Writes the remaining columns of a relation, after the values that are
+		 * scheduled next.
+		 */
+		void columns(Columns columns){
+			push(columns, COLUMNS);
+		}
+	}
+	
+	/**
+	 * The columns of a relation, of which the ones from next onwards remain to be
+	 * written. When the dictionary of a column of values is being written, the
+	 * column is written as the given indices into it afterwards.
+	 */
+	private final static class Columns{
+		final Type tupleType;
+		final IValue[][] columns;
+		int next;
+		int[] indices;
+		
+		Columns(Type tupleType, IValue[][] columns){
+			this.tupleType = tupleType;
+			this.columns = columns;
+		}
+	}
+	
+	private void doSerialize(IValue value) throws IOException{
+		value.accept(valueWriter);
+	}
+	
+	/**
+	 * Writes a reference to the value if it was written before. Otherwise it
+	 * becomes available for sharing after its children, or right away for
+	 * values without children, which are written directly.
+	 * 
+	 * @return true if a reference was written instead of the value
+	 */
+	private boolean writeReference(IValue value, boolean leaf) throws IOException{
+		if(!policy.shares(value)){
+			if(leaf){
+				sharedValues.skip();
+			}else{
+				serializer.skip();
 			}
-			else if (!constructor.mayHaveKeywordParameters() && constructor.isAnnotatable() && constructor.asAnnotatable().hasAnnotations()) {
-				writeAnnotatedConstructor(constructor);
+			return false;
+		}
+		
+		IValue key = policy.key(value);
+		int valueId = sharedValues.get(key);
+		if(valueId != -1){
+			// with a window, the reader only keeps the slot of the value
+			int window = policy.getWindow();
+			write(SHARED_FLAG);
+			printInteger(window == 0 ? valueId : valueId % window);
+			return true;
+		}
+		
+		if(leaf){
+			sharedValues.store(key);
+		}else{
+			// after the children, which are scheduled by the write methods
+			serializer.store(key);
+		}
+		return false;
+	}
+	
+	/**
+	 * Writes a value that is entered by the {@link Serializer}, dispatched on the
+	 * kind of value.
+	 */
+	private final class ValueWriter implements IValueVisitor<Void, IOException>{
+		
+		@Override
+		public Void visitBoolean(IBool bool) throws IOException{
+			if(!writeReference(bool, true)){
+				writeBool(bool);
 			}
-			else {
-				writeConstructor(constructor);
+			return null;
+		}
+		
+		@Override
+		public Void visitInteger(IInteger integer) throws IOException{
+			if(!writeReference(integer, true)){
+				writeInteger(integer);
 			}
-		}else if(value instanceof INode){
-			INode node = (INode) value;
-			if (node.mayHaveKeywordParameters() && node.asWithKeywordParameters().hasParameters()) {
-				writeKeywordedNode(node);
+			return null;
+		}
+		
+		@Override
+		public Void visitRational(IRational rational) throws IOException{
+			if(!writeReference(rational, true)){
+				writeRational(rational);
 			}
-			else if (!node.mayHaveKeywordParameters() && node.asAnnotatable().hasAnnotations()) {
-				writeAnnotatedNode(node);
+			return null;
+		}
+		
+		@Override
+		public Void visitReal(IReal real) throws IOException{
+			if(!writeReference(real, true)){
+				writeDouble(real);
 			}
-			else {
+			return null;
+		}
+		
+		@Override
+		public Void visitString(IString string) throws IOException{
+			if(!writeReference(string, true)){
+				writeString(string);
+			}
+			return null;
+		}
+		
+		@Override
+		public Void visitSourceLocation(ISourceLocation sourceLocation) throws IOException{
+			if(!writeReference(sourceLocation, true)){
+				writeSourceLocation(sourceLocation);
+			}
+			return null;
+		}
+		
+		@Override
+		public Void visitDateTime(IDateTime dateTime) throws IOException{
+			if(!writeReference(dateTime, true)){
+				writeDateTime(dateTime);
+			}
+			return null;
+		}
+		
+		@Override
+		public Void visitTuple(ITuple tuple) throws IOException{
+			if(!writeReference(tuple, false)){
+				writeTuple(tuple);
+			}
+			return null;
+		}
+		
+		@Override
+		public Void visitNode(INode node) throws IOException{
+			if(writeReference(node, false)){
+				return null;
+			}
+			
+			if(node.mayHaveKeywordParameters() && node.asWithKeywordParameters().hasParameters()){
+				writeKeywordedNode(node);
+			}else if(!node.mayHaveKeywordParameters() && node.asAnnotatable().hasAnnotations()){
+				writeAnnotatedNode(node);
+			}else{
 				writeNode(node);
 			}
-		}else if(value instanceof IList){
-			writeList((IList) value);
-		}else if(value instanceof ISet){
-				writeSet((ISet) value);
-		}else if(value instanceof IMap){
-			writeMap((IMap) value);
+			return null;
+		}
+		
+		@Override
+		public Void visitConstructor(IConstructor constructor) throws IOException{
+			boolean annotated = constructor.isAnnotatable() && constructor.asAnnotatable().hasAnnotations();
+			
+			// A constructor with a location annotation is not shared, since the
+			// reader does not hash it either.
+			boolean tryHashing = !annotated || !hasLocations(constructor.asAnnotatable().getAnnotations());
+			if(tryHashing && writeReference(constructor, false)){
+				return null;
+			}
+			
+			if(constructor.mayHaveKeywordParameters() && constructor.asWithKeywordParameters().hasParameters()){
+				writeKeywordedConstructor(constructor);
+			}else if(!constructor.mayHaveKeywordParameters() && annotated){
+				writeAnnotatedConstructor(constructor);
+			}else{
+				writeConstructor(constructor);
+			}
+			return null;
+		}
+		
+		@Override
+		public Void visitList(IList list) throws IOException{
+			if(!writeReference(list, false)){
+				writeList(list);
+			}
+			return null;
+		}
+		
+		@Override
+		public Void visitListRelation(IList relation) throws IOException{
+			return visitList(relation);
+		}
+		
+		@Override
+		public Void visitSet(ISet set) throws IOException{
+			if(!writeReference(set, false)){
+				writeSet(set);
+			}
+			return null;
 		}
 		
-		if (tryHashing) {
-		  if (maximalSharing || alwaysMaximallyShare) {
-		    sharedValues.store(value);
-		  }
-		  else {
-		    sharedValues.store(new IdentityValue(value));
-		  }
+		@Override
+		public Void visitRelation(ISet relation) throws IOException{
+			return visitSet(relation);
+		}
+		
+		@Override
+		public Void visitMap(IMap map) throws IOException{
+			if(!writeReference(map, false)){
+				writeMap(map);
+			}
+			return null;
+		}
+		
+		@Override
+		public Void visitExternal(IExternalValue externalValue) throws IOException{
+			// External values have no representation; only their identifier is taken.
+			writeReference(externalValue, true);
+			return null;
 		}
 	}
 	
+	/**
+	 * @return the header of the values of the given type if they have no
+	 *         children, so they can be written directly, or -1
+	 */
+	private static int leafHeader(Type type){
+		if(type.isBottom()){
+			return -1;
+		}else if(type.isInteger()){
+			return BIG_INTEGER_HEADER;
+		}else if(type.isString()){
+			return STRING_HEADER;
+		}else if(type.isSourceLocation()){
+			return SOURCE_LOCATION_HEADER;
+		}else if(type.isReal()){
+			return DOUBLE_HEADER;
+		}else if(type.isRational()){
+			return RATIONAL_HEADER;
+		}else if(type.isBool()){
+			return BOOL_HEADER;
+		}else if(type.isDateTime()){
+			return DATE_TIME_HEADER;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Writes a value without children of which the header was determined from
+	 * the type of the collection that holds it, so no dispatch is needed.
+	 */
+	private void writeLeaf(int header, IValue value) throws IOException{
+		if(writeReference(value, true)){
+			return;
+		}
+		
+		switch(header){
+			case BIG_INTEGER_HEADER:
+				writeInteger((IInteger) value);
+				break;
+			case STRING_HEADER:
+				writeString((IString) value);
+				break;
+			case SOURCE_LOCATION_HEADER:
+				writeSourceLocation((ISourceLocation) value);
+				break;
+			case DOUBLE_HEADER:
+				writeDouble((IReal) value);
+				break;
+			case RATIONAL_HEADER:
+				writeRational((IRational) value);
+				break;
+			case BOOL_HEADER:
+				writeBool((IBool) value);
+				break;
+			default:
+				writeDateTime((IDateTime) value);
+		}
+	}
+	
+	/**
+	 * Writes the elements of a collection right away if they have no children,
+	 * and schedules them otherwise.
+	 */
+	private void writeElements(Iterator<IValue> elements, Type elementType) throws IOException{
+		int header = leafHeader(elementType);
+		if(header == -1){
+			serializer.children(elements);
+			return;
+		}
+		
+		while(elements.hasNext()){
+			writeLeaf(header, elements.next());
+		}
+	}
+	
+	private static boolean hasLocationAnnotations(IValue value){
+		if (value.getType().isAbstractData()) {
+			IConstructor consValue = (IConstructor)value;
+			if (consValue.isAnnotatable() && consValue.asAnnotatable().hasAnnotations()) {
+				return hasLocations(consValue.asAnnotatable().getAnnotations());
+			}
+		}
+		return false;
+	}
+	
+	private static boolean hasLocations(Map<String, IValue> annotations){
+		for (Entry<String, IValue> aEntry : annotations.entrySet()) {
+			Type aType = aEntry.getValue().getType();
+			if (!aType.isBottom() && aType.isSourceLocation()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	private void doWriteType(Type type) throws IOException{
-		// This sucks and is order dependent :-/.
 	  type.accept(new ITypeVisitor<Type,IOException>() {
 
       @Override
@@ -397,10 +899,28 @@ public class BinaryWriter{
     });
 	}
 	
-	private void writeType(Type type) throws IOException{
+	/**
+	 * @return the identifier of a type that was written before, or -1. The last
+	 *         one that was found is remembered, since the elements of collections
+	 *         and the constructors in them tend to repeat the same type.
+	 */
+	private int sharedTypeId(Type type){
+		if(type == lastType){
+			return lastTypeId;
+		}
+		
 		int typeId = sharedTypes.get(type);
 		if(typeId != -1){
-			out.write(SHARED_FLAG);
+			lastType = type;
+			lastTypeId = typeId;
+		}
+		return typeId;
+	}
+	
+	private void writeType(Type type) throws IOException{
+		int typeId = sharedTypeId(type);
+		if(typeId != -1){
+			write(SHARED_FLAG);
 			printInteger(typeId);
 			return;
 		}
@@ -411,21 +931,21 @@ public class BinaryWriter{
 	}
 	
 	private void writeBool(IBool bool) throws IOException{
-		out.write(BOOL_HEADER);
+		write(BOOL_HEADER);
 		
 		if(bool.getValue()){
-			out.write(1);
+			write(1);
 		}else{
-			out.write(0);
+			write(0);
 		}
 	}
 	
 	private void writeInteger(IInteger integer) throws IOException{
 		byte[] valueData = integer.getTwosComplementRepresentation();
 		int length = valueData.length;
-		out.write(BIG_INTEGER_HEADER);
+		write(BIG_INTEGER_HEADER);
 		printInteger(length);
-		out.write(valueData, 0, length);
+		write(valueData, 0, length);
 	}
 
 	/**
@@ -437,38 +957,38 @@ public class BinaryWriter{
 	 *    denominator byte[]
 	 */
 	private void writeRational(IRational rational) throws IOException{
-		out.write(RATIONAL_HEADER);
+		write(RATIONAL_HEADER);
 		
 		byte[] valueData = rational.numerator().getTwosComplementRepresentation();
 		int length = valueData.length;
 		printInteger(length);
-		out.write(valueData, 0, length);
+		write(valueData, 0, length);
 
 		valueData = rational.denominator().getTwosComplementRepresentation();
 		length = valueData.length;
 		printInteger(length);
-		out.write(valueData, 0, length);
+		write(valueData, 0, length);
 		
 	}
 	private void writeDouble(IReal real) throws IOException{
-		out.write(DOUBLE_HEADER);
+		write(DOUBLE_HEADER);
 		
 		byte[] valueData = real.unscaled().getTwosComplementRepresentation();
 		int length = valueData.length;
 		printInteger(length);
-		out.write(valueData, 0, length);
+		write(valueData, 0, length);
 		
 		printInteger(real.scale());
 	}
 	
 	private void writeString(IString string) throws IOException{
-		out.write(STRING_HEADER);
+		write(STRING_HEADER);
 		
 		String theString = string.getValue();
 		
 		byte[] stringData = theString.getBytes(CharEncoding);
 		printInteger(stringData.length);
-		out.write(stringData);
+		write(stringData);
 	}
 	
 	private void writeSourceLocation(ISourceLocation sourceLocation) throws IOException{
@@ -479,13 +999,13 @@ public class BinaryWriter{
 		int header = SOURCE_LOCATION_HEADER;
 		
 		if(id == -1){
-			out.write(header);
+			write(header);
 			
 			byte[] pathData = path.getBytes(CharEncoding);
 			printInteger(pathData.length);
-			out.write(pathData);
+			write(pathData);
 		} else{
-			out.write(header | URL_SHARED_FLAG);
+			write(header | URL_SHARED_FLAG);
 			
 			printInteger(id);
 		}
@@ -524,10 +1044,28 @@ public class BinaryWriter{
 	}
 	
 	private void writeDateTime(IDateTime dateTime) throws IOException{
-		out.write(DATE_TIME_HEADER);
+		write(DATE_TIME_HEADER);
 		
 		if(dateTime.isDateTime()){
-			out.write(DATE_TIME_INDICATOR);
+			int hourOffset = dateTime.getTimezoneOffsetHours();
+			int minuteOffset = dateTime.getTimezoneOffsetMinutes();
+			long instant = dateTime.getInstant();
+			
+			if(compactEncodings && AbstractPrimitiveValueFactory.canPackDateTime(instant, hourOffset, minuteOffset)){
+				// The instant and the offset in minutes determine all fields. Whole seconds,
+				// which are common for time stamps, are stored in seconds to save a few bytes.
+				write(PACKED_DATE_TIME_INDICATOR);
+				
+				if(instant % 1000 == 0){
+					printLong(zigZag(instant / 1000) << 1 | 1);
+				}else{
+					printLong(zigZag(instant) << 1);
+				}
+				printLong(zigZag(hourOffset * 60 + minuteOffset));
+				return;
+			}
+			
+			write(DATE_TIME_INDICATOR);
 			
 			printInteger(dateTime.getYear());
 			printInteger(dateTime.getMonthOfYear());
@@ -541,13 +1079,13 @@ public class BinaryWriter{
 			printInteger(dateTime.getTimezoneOffsetHours());
 			printInteger(dateTime.getTimezoneOffsetMinutes());
 		}else if(dateTime.isDate()){
-			out.write(DATE_INDICATOR);
+			write(DATE_INDICATOR);
 			
 			printInteger(dateTime.getYear());
 			printInteger(dateTime.getMonthOfYear());
 			printInteger(dateTime.getDayOfMonth());
 		}else{
-			out.write(TIME_INDICATOR);
+			write(TIME_INDICATOR);
 			
 			printInteger(dateTime.getHourOfDay());
 			printInteger(dateTime.getMinuteOfHour());
@@ -560,14 +1098,12 @@ public class BinaryWriter{
 	}
 	
 	private void writeTuple(ITuple tuple) throws IOException{
-		out.write(TUPLE_HEADER);
+		write(TUPLE_HEADER);
 		
 		int arity = tuple.arity();
 		printInteger(arity);
 		
-		for(int i = 0; i < arity; i++){
-			doSerialize(tuple.get(i));
-		}
+		serializer.children(tuple.iterator());
 	}
 	
 	private void writeNode(INode node) throws IOException{
@@ -575,13 +1111,13 @@ public class BinaryWriter{
 		int nodeNameId = sharedNames.store(nodeName);
 		
 		if(nodeNameId == -1){
-			out.write(NODE_HEADER);
+			write(NODE_HEADER);
 			
 			byte[] nodeData = nodeName.getBytes(CharEncoding);
 			printInteger(nodeData.length);
-			out.write(nodeData);
+			write(nodeData);
 		}else{
-			out.write(NODE_HEADER | NAME_SHARED_FLAG);
+			write(NODE_HEADER | NAME_SHARED_FLAG);
 			
 			printInteger(nodeNameId);
 		}
@@ -589,9 +1125,7 @@ public class BinaryWriter{
 		int arity = node.arity();
 		printInteger(arity);
 		
-		for(int i = 0; i < arity; i++){
-			doSerialize(node.get(i));
-		}
+		serializer.children(node.iterator());
 	}
 	
 	private void writeKeywordedNode(INode node) throws IOException{
@@ -599,13 +1133,13 @@ public class BinaryWriter{
 		int nodeNameId = sharedNames.store(nodeName);
 		
 		if(nodeNameId == -1){
-			out.write(KEYWORDED_NODE_HEADER);
+			write(KEYWORDED_NODE_HEADER);
 			
 			byte[] nodeData = nodeName.getBytes(CharEncoding);
 			printInteger(nodeData.length);
-			out.write(nodeData);
+			write(nodeData);
 		}else{
-			out.write(KEYWORDED_NODE_HEADER | NAME_SHARED_FLAG);
+			write(KEYWORDED_NODE_HEADER | NAME_SHARED_FLAG);
 			
 			printInteger(nodeNameId);
 		}
@@ -613,36 +1147,21 @@ public class BinaryWriter{
 		int arity = node.arity();
 		printInteger(arity);
 		
-		for(int i = 0; i < arity; i++){
-			doSerialize(node.get(i));
-		}
-		
-		Map<String, IValue> kwParams = node.asWithKeywordParameters().getParameters();
-		
-		printInteger(kwParams.size());
-		
-		for (Map.Entry<String, IValue> param : kwParams.entrySet()) {
-			String label = param.getKey();
-			byte[] labelData = label.getBytes(CharEncoding);
-			printInteger(labelData.length);
-			out.write(labelData);
-			
-			IValue value = param.getValue();
-			doSerialize(value);
-		}
+		serializer.labeled(node.asWithKeywordParameters().getParameters());
+		serializer.children(node.iterator());
 	}
 	private void writeAnnotatedNode(INode node) throws IOException{
 		String nodeName = node.getName();
 		int nodeNameId = sharedNames.store(nodeName);
 		
 		if(nodeNameId == -1){
-			out.write(ANNOTATED_NODE_HEADER);
+			write(ANNOTATED_NODE_HEADER);
 			
 			byte[] nodeData = nodeName.getBytes(CharEncoding);
 			printInteger(nodeData.length);
-			out.write(nodeData);
+			write(nodeData);
 		}else{
-			out.write(ANNOTATED_NODE_HEADER | NAME_SHARED_FLAG);
+			write(ANNOTATED_NODE_HEADER | NAME_SHARED_FLAG);
 			
 			printInteger(nodeNameId);
 		}
@@ -650,39 +1169,22 @@ public class BinaryWriter{
 		int arity = node.arity();
 		printInteger(arity);
 		
-		for(int i = 0; i < arity; i++){
-			doSerialize(node.get(i));
-		}
-		
-		Map<String, IValue> annotations = node.asAnnotatable().getAnnotations();
-		
-		printInteger(annotations.size());
-		
-		Iterator<Map.Entry<String, IValue>> annotationsIterator = annotations.entrySet().iterator();
-		while(annotationsIterator.hasNext()){
-			Map.Entry<String, IValue> annotation = annotationsIterator.next();
-			String label = annotation.getKey();
-			byte[] labelData = label.getBytes(CharEncoding);
-			printInteger(labelData.length);
-			out.write(labelData);
-			
-			IValue value = annotation.getValue();
-			doSerialize(value);
-		}
+		serializer.labeled(node.asAnnotatable().getAnnotations());
+		serializer.children(node.iterator());
 	}
 	
 	private void writeConstructor(IConstructor constructor) throws IOException{
 		Type constructorType = constructor.getUninstantiatedConstructorType();
-		int constructorTypeId = sharedTypes.get(constructorType);
+		int constructorTypeId = sharedTypeId(constructorType);
 		
 		if(constructorTypeId == -1){
-			out.write(CONSTRUCTOR_HEADER);
+			write(CONSTRUCTOR_HEADER);
 			
 			doWriteType(constructorType);
 			
 			sharedTypes.store(constructorType);
 		}else{
-			out.write(CONSTRUCTOR_HEADER | TYPE_SHARED_FLAG);
+			write(CONSTRUCTOR_HEADER | TYPE_SHARED_FLAG);
 			
 			printInteger(constructorTypeId);
 		}
@@ -690,23 +1192,21 @@ public class BinaryWriter{
 		int arity = constructor.arity();
 		printInteger(arity);
 		
-		for(int i = 0; i < arity; i++){
-			doSerialize(constructor.get(i));
-		}
+		serializer.children(constructor.iterator());
 	}
 
 	private void writeKeywordedConstructor(IConstructor constructor) throws IOException{
 		Type constructorType = constructor.getConstructorType();
-		int constructorTypeId = sharedTypes.get(constructorType);
+		int constructorTypeId = sharedTypeId(constructorType);
 		
 		if(constructorTypeId == -1){
-			out.write(KEYWORDED_CONSTRUCTOR_HEADER);
+			write(KEYWORDED_CONSTRUCTOR_HEADER);
 			
 			doWriteType(constructorType);
 			
 			sharedTypes.store(constructorType);
 		}else{
-			out.write(KEYWORDED_CONSTRUCTOR_HEADER | TYPE_SHARED_FLAG);
+			write(KEYWORDED_CONSTRUCTOR_HEADER | TYPE_SHARED_FLAG);
 			
 			printInteger(constructorTypeId);
 		}
@@ -714,37 +1214,22 @@ public class BinaryWriter{
 		int arity = constructor.arity();
 		printInteger(arity);
 		
-		for(int i = 0; i < arity; i++){
-			doSerialize(constructor.get(i));
-		}
-		
-		Map<String, IValue> kwParams = constructor.asWithKeywordParameters().getParameters();
-		
-		printInteger(kwParams.size());
-		
-		for (Map.Entry<String, IValue> param: kwParams.entrySet()) {
-			String label = param.getKey();
-			byte[] labelData = label.getBytes(CharEncoding);
-			printInteger(labelData.length);
-			out.write(labelData);
-			
-			IValue value = param.getValue();
-			doSerialize(value);
-		}
+		serializer.labeled(constructor.asWithKeywordParameters().getParameters());
+		serializer.children(constructor.iterator());
 	}
 	
 	private void writeAnnotatedConstructor(IConstructor constructor) throws IOException{
 		Type constructorType = constructor.getConstructorType();
-		int constructorTypeId = sharedTypes.get(constructorType);
+		int constructorTypeId = sharedTypeId(constructorType);
 		
 		if(constructorTypeId == -1){
-			out.write(ANNOTATED_CONSTRUCTOR_HEADER);
+			write(ANNOTATED_CONSTRUCTOR_HEADER);
 			
 			doWriteType(constructorType);
 			
 			sharedTypes.store(constructorType);
 		}else{
-			out.write(ANNOTATED_CONSTRUCTOR_HEADER | TYPE_SHARED_FLAG);
+			write(ANNOTATED_CONSTRUCTOR_HEADER | TYPE_SHARED_FLAG);
 			
 			printInteger(constructorTypeId);
 		}
@@ -752,147 +1237,397 @@ public class BinaryWriter{
 		int arity = constructor.arity();
 		printInteger(arity);
 		
-		for(int i = 0; i < arity; i++){
-			doSerialize(constructor.get(i));
+		serializer.labeled(constructor.asAnnotatable().getAnnotations());
+		serializer.children(constructor.iterator());
+	}
+	
+	private void writeCollectionHeader(int header, Type type) throws IOException{
+		int typeId = sharedTypeId(type);
+		
+		if(typeId == -1){
+			write(header);
+			
+			doWriteType(type);
+			
+			sharedTypes.store(type);
+		}else{
+			write(header | TYPE_SHARED_FLAG);
+			
+			printInteger(typeId);
 		}
+	}
+	
+	private void writeList(IList list) throws IOException{
+		writeCollectionHeader(LIST_HEADER, list.getElementType());
 		
-		Map<String, IValue> annotations = constructor.asAnnotatable().getAnnotations();
+		printInteger(list.length());
+		writeElements(list.iterator(), list.getElementType());
+	}
+	
+	private void writeSet(ISet set) throws IOException{
+		if(compactEncodings && set.size() > 1 && set.getElementType().isFixedWidth()){
+			writeRelation(set);
+			return;
+		}
 		
-		printInteger(annotations.size());
+		writeCollectionHeader(SET_HEADER, set.getElementType());
 		
-		Iterator<Map.Entry<String, IValue>> annotationsIterator = annotations.entrySet().iterator();
-		while(annotationsIterator.hasNext()){
-			Map.Entry<String, IValue> annotation = annotationsIterator.next();
-			String label = annotation.getKey();
-			byte[] labelData = label.getBytes(CharEncoding);
-			printInteger(labelData.length);
-			out.write(labelData);
-			
-			IValue value = annotation.getValue();
-			doSerialize(value);
+		printInteger(set.size());
+		writeElements(set.iterator(), set.getElementType());
+	}
+	
+	/**
+	 * Writes a set of tuples as one column per field. Strings and the paths of
+	 * locations are replaced by indexes into a dictionary of the distinct ones in
+	 * the column. Integers that fit in a long are written as the differences
+	 * between consecutive values when the column is sorted, and the offsets and
+	 * lines of locations are written relative to the previous location with the
+	 * same path. The distinct values of other columns are written normally,
+	 * followed by the index of the value of every row.
+	 * <p>
+	 * The tuples themselves are not written, so they are not available for
+	 * sharing.
+	 */
+	private void writeRelation(ISet relation) throws IOException{
+		Type tupleType = relation.getElementType();
+		writeCollectionHeader(COLUMNAR_RELATION_HEADER, tupleType);
+		
+		int size = relation.size();
+		printInteger(size);
+		
+		ITuple[] rows = new ITuple[size];
+		int row = 0;
+		for(IValue element : relation){
+			rows[row++] = (ITuple) element;
 		}
+		rows = sortRows(rows, tupleType.getFieldType(0));
+		
+		int arity = tupleType.getArity();
+		IValue[][] columns = new IValue[arity][size];
+		for(row = 0; row < size; row++){
+			for(int i = 0; i < arity; i++){
+				columns[i][row] = rows[row].get(i);
+			}
+		}
+		
+		serializer.columns(new Columns(tupleType, columns));
 	}
 	
-	private void writeList(IList list) throws IOException{
-		Type elementType = list.getElementType();
-		int elementTypeId = sharedTypes.get(elementType);
+	/**
+	 * Orders the rows of a relation by their first field when it holds integers
+	 * that fit in a long, or locations, which are grouped by path and ordered by
+	 * offset within a path. This makes the differences between consecutive
+	 * values in the first column small. The order of the rows of a set does not
+	 * matter.
+	 */
+	private static ITuple[] sortRows(ITuple[] rows, Type fieldType){
+		final long[] keys = new long[rows.length];
 		
-		if(elementTypeId == -1){
-			out.write(LIST_HEADER);
-			
-			doWriteType(elementType);
+		if(fieldType.isSourceLocation()){
+			IndexedSet<String> paths = new IndexedSet<>();
+			int count = 0;
 			
-			sharedTypes.store(elementType);
+			for(int i = 0; i < rows.length; i++){
+				ISourceLocation sourceLocation = (ISourceLocation) rows[i].get(0);
+				int path = paths.store(sourceLocation.getURI().toString());
+				if(path == -1){
+					path = count++;
+				}
+				
+				int offset = sourceLocation.hasOffsetLength() ? sourceLocation.getOffset() : -1;
+				keys[i] = (((long) path) << 32) | (offset + 1L);
+			}
+		}else if(fieldType.isInteger()){
+			for(int i = 0; i < rows.length; i++){
+				IInteger integer = (IInteger) rows[i].get(0);
+				if(integer.getTwosComplementRepresentation().length > 8){
+					return rows;
+				}
+				keys[i] = integer.longValue();
+			}
 		}else{
-			out.write(LIST_HEADER | TYPE_SHARED_FLAG);
-			
-			printInteger(elementTypeId);
+			return rows;
 		}
 		
-		int length = list.length();
-		printInteger(length);
-		for(int i = 0; i < length; i++){
-			doSerialize(list.get(i));
+		Integer[] order = new Integer[rows.length];
+		for(int i = 0; i < order.length; i++){
+			order[i] = i;
 		}
+		Arrays.sort(order, new Comparator<Integer>(){
+			public int compare(Integer o1, Integer o2){
+				return Long.compare(keys[o1], keys[o2]);
+			}
+		});
+		
+		ITuple[] sorted = new ITuple[rows.length];
+		for(int i = 0; i < order.length; i++){
+			sorted[i] = rows[order[i]];
+		}
+		return sorted;
 	}
 	
-	private void writeSet(ISet set) throws IOException{
-		Type elementType = set.getElementType();
-		int elementTypeId = sharedTypes.get(elementType);
+	private void writeColumns(Columns columns) throws IOException{
+		if(columns.indices != null){
+			// The dictionary of this column was written.
+			printIntegers(columns.indices);
+			columns.indices = null;
+			columns.next++;
+		}
 		
-		if(elementTypeId == -1){
-			out.write(SET_HEADER);
+		for(; columns.next < columns.columns.length; columns.next++){
+			Type fieldType = columns.tupleType.getFieldType(columns.next);
+			IValue[] column = columns.columns[columns.next];
+			long[] integers;
 			
-			doWriteType(elementType);
+			if(fieldType.isString()){
+				writeStringColumn(column);
+			}else if(fieldType.isSourceLocation()){
+				writeSourceLocationColumn(column);
+			}else if(fieldType.isInteger() && (integers = toLongs(column)) != null){
+				writeIntegerColumn(integers);
+			}else{
+				List<IValue> dictionary = new ArrayList<>();
+				columns.indices = dictionaryEncode(column, dictionary);
+				
+				write(VALUE_COLUMN);
+				printInteger(dictionary.size());
+				
+				serializer.columns(columns);
+				serializer.children(dictionary.iterator());
+				return;
+			}
+		}
+	}
+	
+	private void writeStringColumn(IValue[] column) throws IOException{
+		String[] strings = new String[column.length];
+		for(int i = 0; i < column.length; i++){
+			strings[i] = ((IString) column[i]).getValue();
+		}
+		
+		List<String> dictionary = new ArrayList<>();
+		int[] indices = dictionaryEncode(strings, dictionary);
+		
+		write(STRING_COLUMN);
+		printStrings(dictionary);
+		printIntegers(indices);
+	}
+	
+	private void writeSourceLocationColumn(IValue[] column) throws IOException{
+		String[] paths = new String[column.length];
+		for(int i = 0; i < column.length; i++){
+			paths[i] = ((ISourceLocation) column[i]).getURI().toString();
+		}
+		
+		List<String> dictionary = new ArrayList<>();
+		int[] indices = dictionaryEncode(paths, dictionary);
+		
+		write(SOURCE_LOCATION_COLUMN);
+		printStrings(dictionary);
+		
+		// The last offset and line per path.
+		int[] offsets = new int[dictionary.size()];
+		int[] lines = new int[dictionary.size()];
+		
+		for(int i = 0; i < column.length; i++){
+			ISourceLocation sourceLocation = (ISourceLocation) column[i];
+			int path = indices[i];
+			
+			if(!sourceLocation.hasOffsetLength()){
+				printInteger(path << 2);
+				continue;
+			}
+			
+			int offset = sourceLocation.getOffset();
+			if(!sourceLocation.hasLineColumn()){
+				printInteger((path << 2) | HAS_OFFSET);
+				printLong(zigZag((long) offset - offsets[path]));
+				printLong(zigZag(sourceLocation.getLength()));
+				offsets[path] = offset;
+				continue;
+			}
 			
-			sharedTypes.store(elementType);
+			int beginLine = sourceLocation.getBeginLine();
+			printInteger((path << 2) | HAS_OFFSET | HAS_LINES);
+			printLong(zigZag((long) offset - offsets[path]));
+			printLong(zigZag(sourceLocation.getLength()));
+			printLong(zigZag((long) beginLine - lines[path]));
+			printLong(zigZag((long) sourceLocation.getEndLine() - beginLine));
+			printLong(zigZag(sourceLocation.getBeginColumn()));
+			printLong(zigZag(sourceLocation.getEndColumn()));
+			offsets[path] = offset;
+			lines[path] = beginLine;
+		}
+	}
+	
+	private void writeIntegerColumn(long[] integers) throws IOException{
+		boolean sorted = true;
+		for(int i = 1; i < integers.length && sorted; i++){
+			// the difference may overflow for values far apart
+			sorted = integers[i] >= integers[i - 1] && integers[i] - integers[i - 1] >= 0;
+		}
+		
+		if(sorted){
+			write(SORTED_INTEGER_COLUMN);
+			
+			printLong(zigZag(integers[0]));
+			for(int i = 1; i < integers.length; i++){
+				printLong(integers[i] - integers[i - 1]);
+			}
 		}else{
-			out.write(SET_HEADER | TYPE_SHARED_FLAG);
+			write(INTEGER_COLUMN);
 			
-			printInteger(elementTypeId);
+			for(int i = 0; i < integers.length; i++){
+				printLong(zigZag(integers[i]));
+			}
 		}
-
-		printInteger(set.size());
+	}
+	
+	/**
+	 * @return the values of a column of integers, or null if one of them does
+	 *         not fit in a long
+	 */
+	private static long[] toLongs(IValue[] column){
+		long[] integers = new long[column.length];
 		
-		Iterator<IValue> content = set.iterator();
-		while(content.hasNext()){
-			doSerialize(content.next());
+		for(int i = 0; i < column.length; i++){
+			IInteger integer = (IInteger) column[i];
+			if(integer.getTwosComplementRepresentation().length > 8){
+				return null;
+			}
+			integers[i] = integer.longValue();
 		}
+		
+		return integers;
 	}
 	
-	private void writeMap(IMap map) throws IOException{
-		Type mapType = map.getType();
-		int mapTypeId = sharedTypes.get(mapType);
+	/**
+	 * Collects the distinct strings of a column in the order in which they occur.
+	 * 
+	 * @return the index of the string of each row in the dictionary
+	 */
+	private static int[] dictionaryEncode(String[] column, List<String> dictionary){
+		IndexedSet<String> distinct = new IndexedSet<>();
+		int[] indices = new int[column.length];
+		
+		for(int i = 0; i < column.length; i++){
+			int index = distinct.store(column[i]);
+			if(index == -1){
+				index = dictionary.size();
+				dictionary.add(column[i]);
+			}
+			indices[i] = index;
+		}
 		
-		if(mapTypeId == -1){
-			out.write(MAP_HEADER);
-			
-			doWriteType(mapType);
-			
-			sharedTypes.store(mapType);
-		}else{
-			out.write(MAP_HEADER | TYPE_SHARED_FLAG);
+		return indices;
+	}
+	
+	/**
+	 * Collects the values of a column that would not be shared with each other
+	 * in the order in which they occur.
+	 * 
+	 * @return the index of the value of each row in the dictionary
+	 */
+	private int[] dictionaryEncode(IValue[] column, List<IValue> dictionary){
+		IndexedSet<IValue> distinct = new IndexedSet<>();
+		int[] indices = new int[column.length];
+		
+		for(int i = 0; i < column.length; i++){
+			IValue value = column[i];
+			IValue key = hasLocationAnnotations(value) ? new IdentityValue(value) : policy.key(value);
 			
-			printInteger(mapTypeId);
+			int index = distinct.store(key);
+			if(index == -1){
+				index = dictionary.size();
+				dictionary.add(value);
+			}
+			indices[i] = index;
+		}
+		
+		return indices;
+	}
+	
+	private void printStrings(List<String> strings) throws IOException{
+		printInteger(strings.size());
+		
+		for(String string : strings){
+			byte[] stringData = string.getBytes(CharEncoding);
+			printInteger(stringData.length);
+			write(stringData);
+		}
+	}
+	
+	private void printIntegers(int[] values) throws IOException{
+		for(int i = 0; i < values.length; i++){
+			printInteger(values[i]);
 		}
+	}
+	
+	private void writeMap(IMap map) throws IOException{
+		writeCollectionHeader(MAP_HEADER, map.getType());
 		
 		printInteger(map.size());
 		
-		Iterator<Map.Entry<IValue, IValue>> content = map.entryIterator();
-		while(content.hasNext()){
-			Map.Entry<IValue, IValue> entry = content.next();
-			
-			doSerialize(entry.getKey());
-			doSerialize(entry.getValue());
+		int keyHeader = leafHeader(map.getKeyType());
+		int valueHeader = leafHeader(map.getValueType());
+		if(keyHeader == -1 || valueHeader == -1){
+			serializer.entries(map.entryIterator());
+			return;
+		}
+		
+		for(Iterator<Map.Entry<IValue, IValue>> entries = map.entryIterator(); entries.hasNext();){
+			Map.Entry<IValue, IValue> entry = entries.next();
+			writeLeaf(keyHeader, entry.getKey());
+			writeLeaf(valueHeader, entry.getValue());
 		}
 	}
 	
 	private void writeValueType() throws IOException{
-		out.write(VALUE_TYPE_HEADER);
+		write(VALUE_TYPE_HEADER);
 	}
 	
 	private void writeVoidType() throws IOException{
-		out.write(VOID_TYPE_HEADER);
+		write(VOID_TYPE_HEADER);
 	}
 	
 	private void writeBoolType() throws IOException{
-		out.write(BOOL_TYPE_HEADER);
+		write(BOOL_TYPE_HEADER);
 	}
 	
 	private void writeIntegerType() throws IOException{
-		out.write(INTEGER_TYPE_HEADER);
+		write(INTEGER_TYPE_HEADER);
 	}
 	
 	private void writeNumType() throws IOException {
-    out.write(NUM_TYPE_HEADER);
+    write(NUM_TYPE_HEADER);
   }
 	
 	private void writeRationalType() throws IOException{
-		out.write(RATIONAL_TYPE_HEADER);
+		write(RATIONAL_TYPE_HEADER);
 	}
 	
 	private void writeDoubleType() throws IOException{
-		out.write(DOUBLE_TYPE_HEADER);
+		write(DOUBLE_TYPE_HEADER);
 	}
 	
 	private void writeStringType() throws IOException{
-		out.write(STRING_TYPE_HEADER);
+		write(STRING_TYPE_HEADER);
 	}
 	
 	private void writeSourceLocationType() throws IOException{
-		out.write(SOURCE_LOCATION_TYPE_HEADER);
+		write(SOURCE_LOCATION_TYPE_HEADER);
 	}
 	
 	private void writeDateTimeType(Type dateTimeType) throws IOException{
-		out.write(DATE_TIME_TYPE_HEADER);
+		write(DATE_TIME_TYPE_HEADER);
 	}
 	
 	private void writeNodeType(Type nodeType) throws IOException{
 		Map<String, Type> declaredAnnotations = typeStore.getAnnotations(nodeType);
 		if(declaredAnnotations.isEmpty()){
-			out.write(NODE_TYPE_HEADER);
+			write(NODE_TYPE_HEADER);
 		}else{
-			out.write(ANNOTATED_NODE_TYPE_HEADER);
+			write(ANNOTATED_NODE_TYPE_HEADER);
 			
 			// Annotations.
 			int nrOfAnnotations = declaredAnnotations.size();
@@ -905,7 +1640,7 @@ public class BinaryWriter{
 				String label = declaredAnnotation.getKey();
 				byte[] labelBytes = label.getBytes(CharEncoding);
 				printInteger(labelBytes.length);
-				out.write(labelBytes);
+				write(labelBytes);
 				
 				writeType(declaredAnnotation.getValue());
 			}
@@ -916,7 +1651,7 @@ public class BinaryWriter{
 		boolean hasFieldNames = tupleType.hasFieldNames();
 		
 		if(hasFieldNames){
-			out.write(TUPLE_TYPE_HEADER | HAS_FIELD_NAMES);
+			write(TUPLE_TYPE_HEADER | HAS_FIELD_NAMES);
 			
 			int arity = tupleType.getArity();
 			printInteger(arity);
@@ -926,10 +1661,10 @@ public class BinaryWriter{
 				String name = tupleType.getFieldName(i);
 				byte[] nameData = name.getBytes(CharEncoding);
 				printInteger(nameData.length);
-				out.write(nameData);
+				write(nameData);
 			}
 		}else{
-			out.write(TUPLE_TYPE_HEADER);
+			write(TUPLE_TYPE_HEADER);
 			
 			int arity = tupleType.getArity();
 			printInteger(arity);
@@ -940,13 +1675,13 @@ public class BinaryWriter{
 	}
 	
 	private void writeListType(Type listType) throws IOException{
-		out.write(LIST_TYPE_HEADER);
+		write(LIST_TYPE_HEADER);
 		
 		writeType(listType.getElementType());
 	}
 	
 	private void writeSetType(Type setType) throws IOException{
-		out.write(SET_TYPE_HEADER);
+		write(SET_TYPE_HEADER);
 		
 		writeType(setType.getElementType());
 	}
@@ -955,7 +1690,7 @@ public class BinaryWriter{
 		boolean hasFieldNames = mapType.hasFieldNames();
 		
 		if(hasFieldNames){
-			out.write(MAP_TYPE_HEADER | HAS_FIELD_NAMES);
+			write(MAP_TYPE_HEADER | HAS_FIELD_NAMES);
 
 			String name;
 			byte[] nameData;
@@ -964,39 +1699,39 @@ public class BinaryWriter{
 			name = mapType.getKeyLabel();
 			nameData = name.getBytes(CharEncoding);
 			printInteger(nameData.length);
-			out.write(nameData);
+			write(nameData);
 			
 			writeType(mapType.getValueType());
 			name = mapType.getValueLabel();
 			nameData = name.getBytes(CharEncoding);
 			printInteger(nameData.length);
-			out.write(nameData);
+			write(nameData);
 		}
 		else {
-			out.write(MAP_TYPE_HEADER);
+			write(MAP_TYPE_HEADER);
 			writeType(mapType.getKeyType());
 			writeType(mapType.getValueType());
 		}
 	}
 	
 	private void writeParameterType(Type parameterType) throws IOException{
-		out.write(PARAMETER_TYPE_HEADER);
+		write(PARAMETER_TYPE_HEADER);
 		
 		String name = parameterType.getName();
 		byte[] nameData = name.getBytes(CharEncoding);
 		printInteger(nameData.length);
-		out.write(nameData);
+		write(nameData);
 		
 		writeType(parameterType.getBound());
 	}
 	
 	private void writeADTType(Type adtType) throws IOException{
-		out.write(ADT_TYPE_HEADER);
+		write(ADT_TYPE_HEADER);
 		
 		String name = adtType.getName();
 		byte[] nameData = name.getBytes(CharEncoding);
 		printInteger(nameData.length);
-		out.write(nameData);
+		write(nameData);
 		
 		writeType(adtType.getTypeParameters());
 	}
@@ -1004,23 +1739,23 @@ public class BinaryWriter{
 	private void writeConstructorType(Type constructorType) throws IOException{
 		Map<String, Type> declaredAnnotations = typeStore.getAnnotations(constructorType);
 		if(declaredAnnotations.isEmpty()){
-			out.write(CONSTRUCTOR_TYPE_HEADER);
+			write(CONSTRUCTOR_TYPE_HEADER);
 			
 			String name = constructorType.getName();
 			byte[] nameData = name.getBytes(CharEncoding);
 			printInteger(nameData.length);
-			out.write(nameData);
+			write(nameData);
 			
 			writeType(constructorType.getFieldTypes());
 			
 			writeType(constructorType.getAbstractDataType());
 		}else{
-			out.write(ANNOTATED_CONSTRUCTOR_TYPE_HEADER);
+			write(ANNOTATED_CONSTRUCTOR_TYPE_HEADER);
 			
 			String name = constructorType.getName();
 			byte[] nameData = name.getBytes(CharEncoding);
 			printInteger(nameData.length);
-			out.write(nameData);
+			write(nameData);
 			
 			writeType(constructorType.getFieldTypes());
 			
@@ -1037,7 +1772,7 @@ public class BinaryWriter{
 				String label = declaredAnnotation.getKey();
 				byte[] labelBytes = label.getBytes(CharEncoding);
 				printInteger(labelBytes.length);
-				out.write(labelBytes);
+				write(labelBytes);
 				
 				writeType(declaredAnnotation.getValue());
 			}
@@ -1045,12 +1780,12 @@ public class BinaryWriter{
 	}
 	
 	private void writeAliasType(Type aliasType) throws IOException{
-		out.write(ALIAS_TYPE_HEADER);
+		write(ALIAS_TYPE_HEADER);
 		
 		String name = aliasType.getName();
 		byte[] nameData = name.getBytes(CharEncoding);
 		printInteger(nameData.length);
-		out.write(nameData);
+		write(nameData);
 		
 		writeType(aliasType.getAliased());
 		
@@ -1060,33 +1795,92 @@ public class BinaryWriter{
 	private final static int SEVENBITS = 0x0000007f;
 	private final static int SIGNBIT = 0x00000080;
 	
+	private static long zigZag(long value){
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	private void printLong(long value) throws IOException{
+		if(buffer.remaining() < 10){
+			flushBuffer();
+		}
+		
+		while((value & ~((long) SEVENBITS)) != 0){
+			buffer.put((byte) ((value & SEVENBITS) | SIGNBIT));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
 	private void printInteger(int value) throws IOException{
+		if(buffer.remaining() < 5){
+			flushBuffer();
+		}
+		
 		int intValue = value;
 		
 		if((intValue & 0xffffff80) == 0){
-			out.write((byte) (intValue & SEVENBITS));
+			buffer.put((byte) (intValue & SEVENBITS));
 			return;
 		}
-		out.write((byte) ((intValue & SEVENBITS) | SIGNBIT));
+		buffer.put((byte) ((intValue & SEVENBITS) | SIGNBIT));
 		
 		if((intValue & 0xffffc000) == 0){
-			out.write((byte) ((intValue >>> 7) & SEVENBITS));
+			buffer.put((byte) ((intValue >>> 7) & SEVENBITS));
 			return;
 		}
-		out.write((byte) (((intValue >>> 7) & SEVENBITS) | SIGNBIT));
+		buffer.put((byte) (((intValue >>> 7) & SEVENBITS) | SIGNBIT));
 		
 		if((intValue & 0xffe00000) == 0){
-			out.write((byte) ((intValue >>> 14) & SEVENBITS));
+			buffer.put((byte) ((intValue >>> 14) & SEVENBITS));
 			return;
 		}
-		out.write((byte) (((intValue >>> 14) & SEVENBITS) | SIGNBIT));
+		buffer.put((byte) (((intValue >>> 14) & SEVENBITS) | SIGNBIT));
 		
 		if((intValue & 0xf0000000) == 0){
-			out.write((byte) ((intValue >>> 21) & SEVENBITS));
+			buffer.put((byte) ((intValue >>> 21) & SEVENBITS));
 			return;
 		}
-		out.write((byte) (((intValue >>> 21) & SEVENBITS) | SIGNBIT));
+		buffer.put((byte) (((intValue >>> 21) & SEVENBITS) | SIGNBIT));
+		
+		buffer.put((byte) ((intValue >>> 28) & SEVENBITS));
+	}
+	
+	private void write(int b) throws IOException{
+		if(!buffer.hasRemaining()){
+			flushBuffer();
+		}
+		buffer.put((byte) b);
+	}
+	
+	private void write(byte[] data) throws IOException{
+		write(data, 0, data.length);
+	}
+	
+	private void write(byte[] data, int offset, int length) throws IOException{
+		while(length > 0){
+			if(!buffer.hasRemaining()){
+				flushBuffer();
+			}
+			
+			int chunk = Math.min(length, buffer.remaining());
+			buffer.put(data, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+	
+	private void flushBuffer() throws IOException{
+		buffer.flip();
+		written += buffer.remaining();
+		
+		if(channel != null){
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		}else{
+			out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+		}
 		
-		out.write((byte) ((intValue >>> 28) & SEVENBITS));
+		buffer.clear();
 	}
 }
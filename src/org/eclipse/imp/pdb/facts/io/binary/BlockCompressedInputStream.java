@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file written through a {@link BlockCompressedOutputStream}. Only the
+ * block that contains the current position is kept decompressed, and
+ * {@link #seek(long)} moves to any position by decompressing the block it is
+ * in. The channel is read at explicit positions, so its own position is not
+ * used, and it is not closed by {@link #close()}.
+ */
+public class BlockCompressedInputStream extends InputStream{
+	private final FileChannel channel;
+	private final Inflater inflater;
+	private final int blockSize;
+	private final long[] offsets;
+	private final long length;
+
+	private final byte[] block;
+	private byte[] compressed;
+	private int current;
+	private int limit;
+	private int position;
+
+	public BlockCompressedInputStream(FileChannel channel) throws IOException{
+		super();
+
+		this.channel = channel;
+
+		if(!isCompressed(channel)){
+			throw new IOException("not a block compressed file");
+		}
+
+		long size = channel.size();
+		ByteBuffer header = readFully(ByteBuffer.allocate(BlockCompressedOutputStream.HEADER_SIZE), 0);
+		this.blockSize = header.getInt(BlockCompressedOutputStream.MAGIC.length + 1);
+
+		long indexOffset = readFully(ByteBuffer.allocate(8), size - 8).getLong(0);
+		if(indexOffset < BlockCompressedOutputStream.HEADER_SIZE || indexOffset > size - 20){
+			throw new IOException("index out of bounds: " + indexOffset);
+		}
+
+		int count = readFully(ByteBuffer.allocate(4), indexOffset).getInt(0);
+		if(count < 0 || 4 + 8L * count + 16 != size - indexOffset || blockSize <= 0){
+			throw new IOException("corrupt index");
+		}
+
+		ByteBuffer index = readFully(ByteBuffer.allocate(8 * count + 8), indexOffset + 4);
+		this.offsets = new long[count + 1];
+		for(int i = 0; i < count; i++){
+			offsets[i] = index.getLong(8 * i);
+		}
+		offsets[count] = indexOffset;
+		this.length = index.getLong(8 * count);
+
+		this.inflater = new Inflater(true);
+		this.block = new byte[blockSize];
+		this.compressed = new byte[0];
+		this.current = -1;
+	}
+
+	/**
+	 * @return true if the file starts like one written through a {@link BlockCompressedOutputStream}
+	 */
+	public static boolean isCompressed(FileChannel channel) throws IOException{
+		if(channel.size() < BlockCompressedOutputStream.HEADER_SIZE){
+			return false;
+		}
+
+		byte[] magic = new byte[BlockCompressedOutputStream.MAGIC.length];
+		ByteBuffer buffer = ByteBuffer.wrap(magic);
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer, buffer.position()) == -1){
+				return false;
+			}
+		}
+		return Arrays.equals(magic, BlockCompressedOutputStream.MAGIC);
+	}
+
+	/**
+	 * @return the number of bytes before compression
+	 */
+	public long length(){
+		return length;
+	}
+
+	/**
+	 * @return the current position, before compression
+	 */
+	public long position(){
+		return current == -1 ? 0 : ((long) current) * blockSize + position;
+	}
+
+	/**
+	 * Moves to the given position, before compression, which may be anywhere up
+	 * to the length.
+	 */
+	public void seek(long newPosition) throws IOException{
+		if(newPosition < 0 || newPosition > length){
+			throw new IOException("position out of bounds: " + newPosition);
+		}
+
+		if(offsets.length == 1){
+			// An empty file.
+			return;
+		}
+
+		int target = (int) (newPosition / blockSize);
+		if(target == offsets.length - 1){
+			// At the end of a file of which the last block is full.
+			target--;
+		}
+		if(target != current){
+			load(target);
+		}
+		position = (int) (newPosition - ((long) target) * blockSize);
+	}
+
+	@Override
+	public int read() throws IOException{
+		if(position == limit && !next()){
+			return -1;
+		}
+		return block[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] data, int offset, int size) throws IOException{
+		if(size == 0){
+			return 0;
+		}
+		if(position == limit && !next()){
+			return -1;
+		}
+
+		int chunk = Math.min(size, limit - position);
+		System.arraycopy(block, position, data, offset, chunk);
+		position += chunk;
+		return chunk;
+	}
+
+	@Override
+	public long skip(long n) throws IOException{
+		long skipped = Math.max(0, Math.min(n, length - position()));
+		seek(position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available(){
+		return limit - position;
+	}
+
+	@Override
+	public void close(){
+		inflater.end();
+	}
+
+	/**
+	 * Moves to the start of the next block.
+	 * 
+	 * @return false at the end of the file
+	 */
+	private boolean next() throws IOException{
+		if(current + 1 >= offsets.length - 1){
+			return false;
+		}
+		load(current + 1);
+		position = 0;
+		return true;
+	}
+
+	private void load(int index) throws IOException{
+		long start = offsets[index];
+		long end = offsets[index + 1];
+		if(start < BlockCompressedOutputStream.HEADER_SIZE || end < start || end - start > Integer.MAX_VALUE){
+			throw new IOException("block out of bounds: " + start + " - " + end);
+		}
+
+		int size = (int) (end - start);
+		if(compressed.length < size){
+			compressed = new byte[size];
+		}
+		readFully(ByteBuffer.wrap(compressed, 0, size), start);
+
+		int expected = (int) Math.min(blockSize, length - ((long) index) * blockSize);
+		inflater.reset();
+		inflater.setInput(compressed, 0, size);
+		try{
+			int inflated = 0;
+			while(inflated < expected && !inflater.finished()){
+				int n = inflater.inflate(block, inflated, expected - inflated);
+				if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+					break;
+				}
+				inflated += n;
+			}
+			if(inflated != expected){
+				throw new IOException("corrupt block: " + index);
+			}
+		}catch(DataFormatException e){
+			throw new IOException("corrupt block: " + index, e);
+		}
+
+		current = index;
+		limit = expected;
+	}
+
+	private ByteBuffer readFully(ByteBuffer buffer, long at) throws IOException{
+		long offset = at;
+		while(buffer.hasRemaining()){
+			int read = channel.read(buffer, offset);
+			if(read == -1){
+				throw new BinaryReader.UnexpectedEOF();
+			}
+			offset += read;
+		}
+		return buffer;
+	}
+}
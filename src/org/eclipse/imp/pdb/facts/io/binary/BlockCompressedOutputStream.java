@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses what is written to it in blocks of a fixed size, which are
+ * compressed independently with a {@link Deflater}. An index with the offset of
+ * every block follows the blocks, so a {@link BlockCompressedInputStream} can
+ * start reading at any position by decompressing only the block it is in:
+ *
+ * <pre>
+ * header:  'P' 'D' 'B' 'Z' version blockSize:int
+ * blocks:  deflated*
+ * index:   count:int (offset:long)* length:long
+ * trailer: indexOffset:long
+ * </pre>
+ *
+ * All blocks but the last hold exactly blockSize bytes before compression. The
+ * index is written when the stream is finished or closed.
+ */
+public class BlockCompressedOutputStream extends OutputStream{
+	/*package*/ final static byte[] MAGIC = new byte[]{'P', 'D', 'B', 'Z'};
+	/*package*/ final static byte VERSION = 1;
+	/*package*/ final static int HEADER_SIZE = 9;
+
+	/**
+	 * The default number of bytes per block, before compression.
+	 */
+	public final static int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+	private final OutputStream out;
+	private final Deflater deflater;
+	private final byte[] block;
+	private final byte[] compressed;
+	private int used;
+
+	private long written;
+	private long[] offsets;
+	private int count;
+	private long length;
+	private boolean finished;
+
+	public BlockCompressedOutputStream(OutputStream outputStream) throws IOException{
+		this(outputStream, DEFAULT_BLOCK_SIZE, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * @param blockSize the number of bytes per block, before compression
+	 * @param level the compression level of the {@link Deflater}
+	 */
+	public BlockCompressedOutputStream(OutputStream outputStream, int blockSize, int level) throws IOException{
+		super();
+
+		if(blockSize <= 0){
+			throw new IllegalArgumentException("Blocks should hold at least one byte");
+		}
+
+		this.out = outputStream;
+		this.deflater = new Deflater(level, true);
+		this.block = new byte[blockSize];
+		this.compressed = new byte[blockSize + (blockSize >> 3) + 64];
+		this.offsets = new long[16];
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.put(MAGIC).put(VERSION).putInt(blockSize);
+		writeOut(header.array(), header.position());
+	}
+
+	@Override
+	public void write(int b) throws IOException{
+		if(used == block.length){
+			writeBlock();
+		}
+		block[used++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException{
+		while(length > 0){
+			if(used == block.length){
+				writeBlock();
+			}
+
+			int chunk = Math.min(length, block.length - used);
+			System.arraycopy(data, offset, block, used, chunk);
+			used += chunk;
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	/**
+	 * Flushes the underlying stream. The current block is only written once it
+	 * is full, or when the stream is finished.
+	 */
+	@Override
+	public void flush() throws IOException{
+		out.flush();
+	}
+
+	/**
+	 * Writes the last block and the index, without closing the underlying
+	 * stream. Nothing can be written afterwards.
+	 */
+	public void finish() throws IOException{
+		if(finished){
+			return;
+		}
+
+		if(used > 0){
+			writeBlock();
+		}
+
+		ByteBuffer index = ByteBuffer.allocate(4 + 8 * count + 16);
+		index.putInt(count);
+		for(int i = 0; i < count; i++){
+			index.putLong(offsets[i]);
+		}
+		index.putLong(length);
+		index.putLong(written);
+		writeOut(index.array(), index.position());
+		out.flush();
+
+		deflater.end();
+		finished = true;
+	}
+
+	@Override
+	public void close() throws IOException{
+		try{
+			finish();
+		}finally{
+			out.close();
+		}
+	}
+
+	private void writeBlock() throws IOException{
+		if(finished){
+			throw new IOException("The stream was finished");
+		}
+
+		if(count == offsets.length){
+			long[] larger = new long[count * 2];
+			System.arraycopy(offsets, 0, larger, 0, count);
+			offsets = larger;
+		}
+		offsets[count++] = written;
+
+		deflater.reset();
+		deflater.setInput(block, 0, used);
+		deflater.finish();
+		while(!deflater.finished()){
+			writeOut(compressed, deflater.deflate(compressed));
+		}
+
+		length += used;
+		used = 0;
+	}
+
+	private void writeOut(byte[] data, int size) throws IOException{
+		out.write(data, 0, size);
+		written += size;
+	}
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.eclipse.imp.pdb.facts.IList;
+import org.eclipse.imp.pdb.facts.IListWriter;
+import org.eclipse.imp.pdb.facts.IMap;
+import org.eclipse.imp.pdb.facts.IMapWriter;
+import org.eclipse.imp.pdb.facts.ISet;
+import org.eclipse.imp.pdb.facts.ISetWriter;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Reads collections written by a {@link ChunkedBinaryWriter}. The chunks are
+ * decoded in parallel on a {@link ForkJoinPool}, each into a collection of its
+ * own, and these are combined pairwise: lists are concatenated in order, sets
+ * are united and maps are joined. With the persistent value factory, uniting
+ * sets inserts the elements of the smaller set into a transient copy of the
+ * larger one.
+ */
+public class ChunkedBinaryReader{
+	private final IValueFactory valueFactory;
+	private final TypeStore typeStore;
+	private final ByteBuffer buffer;
+
+	/**
+	 * @param buffer the buffer to read from, for instance a mapped file; it is not modified
+	 */
+	public ChunkedBinaryReader(IValueFactory valueFactory, TypeStore typeStore, ByteBuffer buffer){
+		super();
+
+		this.valueFactory = valueFactory;
+		this.typeStore = typeStore;
+		this.buffer = buffer;
+	}
+
+	public IValue deserialize() throws IOException{
+		return deserialize(ForkJoinPool.commonPool());
+	}
+
+	public IValue deserialize(ForkJoinPool pool) throws IOException{
+		ByteBuffer data = buffer.duplicate();
+		Decoder decoder;
+
+		try{
+			byte[] magic = new byte[ChunkedBinaryWriter.MAGIC.length];
+			data.get(magic);
+			if(!Arrays.equals(magic, ChunkedBinaryWriter.MAGIC) || data.get() != ChunkedBinaryWriter.VERSION){
+				throw new IOException("not a chunked binary value file");
+			}
+
+			int kind = data.get();
+			if(kind < ChunkedBinaryWriter.LIST_KIND || kind > ChunkedBinaryWriter.MAP_KIND){
+				throw new IOException("unknown kind of value: " + kind);
+			}
+
+			BinaryReader prefix = new BinaryReader(valueFactory, typeStore, slice(data, data.getInt()));
+			// the writers of the value factory infer the type of the collection from its elements again
+			prefix.deserializeType();
+
+			int count = data.getInt();
+			ByteBuffer[] chunks = new ByteBuffer[count];
+			int[] sizes = new int[count];
+			for(int i = 0; i < count; i++){
+				int length = data.getInt();
+				sizes[i] = data.getInt();
+				chunks[i] = slice(data, length);
+			}
+
+			decoder = new Decoder(prefix, kind, chunks, sizes, 0, count);
+		}catch(BufferUnderflowException e){
+			throw new BinaryReader.UnexpectedEOF();
+		}catch(IllegalArgumentException e){
+			// a negative count or a length beyond the end of the buffer
+			throw new BinaryReader.UnexpectedEOF();
+		}
+
+		if(decoder.to == 0){
+			return decoder.decode(-1);
+		}
+
+		try{
+			return pool.invoke(decoder);
+		}catch(UncheckedIOException e){
+			throw e.getCause();
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer data, int length){
+		ByteBuffer result = data.duplicate();
+		result.limit(data.position() + length);
+		data.position(data.position() + length);
+		return result;
+	}
+
+	/**
+	 * Decodes a range of chunks, splitting it in halves that are decoded in
+	 * parallel until a single chunk remains.
+	 */
+	private final class Decoder extends RecursiveTask<IValue>{
+		private static final long serialVersionUID = -3484718016593632140L;
+
+		private final BinaryReader prefix;
+		private final int kind;
+		private final ByteBuffer[] chunks;
+		private final int[] sizes;
+		private final int from;
+		private final int to;
+
+		Decoder(BinaryReader prefix, int kind, ByteBuffer[] chunks, int[] sizes, int from, int to){
+			this.prefix = prefix;
+			this.kind = kind;
+			this.chunks = chunks;
+			this.sizes = sizes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected IValue compute(){
+			try{
+				if(to - from == 1){
+					return decode(from);
+				}
+
+				int middle = (from + to) >>> 1;
+				Decoder left = new Decoder(prefix, kind, chunks, sizes, from, middle);
+				Decoder right = new Decoder(prefix, kind, chunks, sizes, middle, to);
+
+				right.fork();
+				IValue result = left.compute();
+				return combine(result, right.join());
+			}catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Decodes a single chunk, or an empty collection when the chunk is -1.
+		 */
+		IValue decode(int chunk) throws IOException{
+			BinaryReader reader = chunk < 0 ? null : prefix.fork(chunks[chunk]);
+			int size = chunk < 0 ? 0 : sizes[chunk];
+
+			switch(kind){
+				case ChunkedBinaryWriter.LIST_KIND:
+					IListWriter listWriter = valueFactory.listWriter();
+					for(int i = 0; i < size; i++){
+						listWriter.append(reader.deserialize());
+					}
+					return listWriter.done();
+				case ChunkedBinaryWriter.SET_KIND:
+					ISetWriter setWriter = valueFactory.setWriter();
+					for(int i = 0; i < size; i++){
+						setWriter.insert(reader.deserialize());
+					}
+					return setWriter.done();
+				default:
+					IMapWriter mapWriter = valueFactory.mapWriter();
+					for(int i = 0; i < size; i++){
+						IValue key = reader.deserialize();
+						mapWriter.put(key, reader.deserialize());
+					}
+					return mapWriter.done();
+			}
+		}
+
+		private IValue combine(IValue left, IValue right){
+			switch(kind){
+				case ChunkedBinaryWriter.LIST_KIND:
+					return ((IList) left).concat((IList) right);
+				case ChunkedBinaryWriter.SET_KIND:
+					return ((ISet) left).union((ISet) right);
+				default:
+					return ((IMap) left).join((IMap) right);
+			}
+		}
+	}
+}
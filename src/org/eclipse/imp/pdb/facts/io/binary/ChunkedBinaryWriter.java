@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.eclipse.imp.pdb.facts.IList;
+import org.eclipse.imp.pdb.facts.IMap;
+import org.eclipse.imp.pdb.facts.ISet;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Writes a list, set or map in chunks that can be decoded independently, and
+ * therefore in parallel, by a {@link ChunkedBinaryReader}.
+ * <p>
+ * The file starts with a prefix in the normal binary format, which holds the
+ * type of the collection. Every chunk holds a number of consecutive elements,
+ * or entries, in the normal binary format. A chunk is written with copies of
+ * the sharing tables the prefix left behind, so it may refer to the prefix,
+ * but not to other chunks:
+ *
+ * <pre>
+ * header: 'P' 'D' 'B' 'C' version kind
+ * prefix: length:int bytes
+ * chunks: count:int (length:int elements:int bytes)*
+ * </pre>
+ */
+public class ChunkedBinaryWriter{
+	/*package*/ final static byte[] MAGIC = new byte[]{'P', 'D', 'B', 'C'};
+	/*package*/ final static byte VERSION = 1;
+
+	/*package*/ final static byte LIST_KIND = 1;
+	/*package*/ final static byte SET_KIND = 2;
+	/*package*/ final static byte MAP_KIND = 3;
+
+	/**
+	 * The default number of elements per chunk.
+	 */
+	public final static int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+	private final IValue value;
+	private final OutputStream out;
+	private final int chunkSize;
+	private final TypeStore typeStore;
+
+	public ChunkedBinaryWriter(IValue value, OutputStream outputStream, TypeStore typeStore){
+		this(value, outputStream, DEFAULT_CHUNK_SIZE, typeStore);
+	}
+
+	/**
+	 * @param chunkSize the number of elements, or entries, per chunk
+	 */
+	public ChunkedBinaryWriter(IValue value, OutputStream outputStream, int chunkSize, TypeStore typeStore){
+		super();
+
+		if(!(value instanceof IList || value instanceof ISet || value instanceof IMap)){
+			throw new IllegalArgumentException("Only lists, sets and maps can be chunked: " + value.getType());
+		}
+		if(chunkSize <= 0){
+			throw new IllegalArgumentException("Chunks should hold at least one element");
+		}
+
+		this.value = value;
+		this.out = outputStream;
+		this.chunkSize = chunkSize;
+		this.typeStore = typeStore;
+	}
+
+	public void serialize() throws IOException{
+		DataOutputStream data = new DataOutputStream(out);
+
+		byte kind;
+		int size;
+		if(value instanceof IList){
+			kind = LIST_KIND;
+			size = ((IList) value).length();
+		}else if(value instanceof ISet){
+			kind = SET_KIND;
+			size = ((ISet) value).size();
+		}else{
+			kind = MAP_KIND;
+			size = ((IMap) value).size();
+		}
+
+		data.write(MAGIC);
+		data.writeByte(VERSION);
+		data.writeByte(kind);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryWriter prefix = new BinaryWriter(value, bytes, true, typeStore);
+		prefix.serializeType(value.getType());
+		data.writeInt(bytes.size());
+		bytes.writeTo(data);
+
+		data.writeInt((size + chunkSize - 1) / chunkSize);
+
+		if(kind == MAP_KIND){
+			Iterator<Entry<IValue, IValue>> entries = ((IMap) value).entryIterator();
+			while(entries.hasNext()){
+				bytes.reset();
+				BinaryWriter chunk = prefix.fork(value, bytes);
+
+				int count = 0;
+				while(count < chunkSize && entries.hasNext()){
+					Entry<IValue, IValue> entry = entries.next();
+					chunk.serializeElement(entry.getKey());
+					chunk.serializeElement(entry.getValue());
+					count++;
+				}
+
+				writeChunk(data, chunk, bytes, count);
+			}
+		}else{
+			Iterator<IValue> elements = kind == LIST_KIND ? ((IList) value).iterator() : ((ISet) value).iterator();
+			while(elements.hasNext()){
+				bytes.reset();
+				BinaryWriter chunk = prefix.fork(value, bytes);
+
+				int count = 0;
+				while(count < chunkSize && elements.hasNext()){
+					chunk.serializeElement(elements.next());
+					count++;
+				}
+
+				writeChunk(data, chunk, bytes, count);
+			}
+		}
+
+		data.flush();
+	}
+
+	private static void writeChunk(DataOutputStream data, BinaryWriter chunk, ByteArrayOutputStream bytes, int count) throws IOException{
+		chunk.flush();
+
+		data.writeInt(bytes.size());
+		data.writeInt(count);
+		bytes.writeTo(data);
+	}
+}
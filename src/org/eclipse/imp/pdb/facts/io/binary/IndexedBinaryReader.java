@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.exceptions.FactParseError;
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Opens files written by an {@link IndexedBinaryWriter} without decoding them.
+ * The file is mapped into memory, and lists, sets and maps are returned as lazy
+ * values, which decode an element the first time it is accessed and keep it
+ * afterwards. Looking up an element of a set, or a key of a map, only decodes
+ * the elements with the same hash code. Operations that need all elements,
+ * like equality or union, decode all of them.
+ * <p>
+ * Files larger than what fits in a single mapping are mapped in segments, so
+ * the channel does not have to stay open after the file was opened. Decoding
+ * errors, which can only be caused by corrupt files, surface as
+ * {@link FactParseError}s.
+ */
+public class IndexedBinaryReader{
+	private final static int SEGMENT_BITS = 30;
+	private final static long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+	private final static int HEADER_SIZE = 6;
+
+	private final IValueFactory valueFactory;
+	private final TypeStore typeStore;
+	private final ByteBuffer[] segments;
+	private final long size;
+
+	public IndexedBinaryReader(IValueFactory valueFactory, TypeStore typeStore, FileChannel channel) throws IOException{
+		super();
+
+		this.valueFactory = valueFactory;
+		this.typeStore = typeStore;
+		this.size = channel.size();
+
+		int count = (int) ((size + SEGMENT_SIZE - 1) >> SEGMENT_BITS);
+		this.segments = new ByteBuffer[count];
+		for(int i = 0; i < count; i++){
+			long start = ((long) i) << SEGMENT_BITS;
+			segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+		}
+	}
+
+	public IValue deserialize() throws IOException{
+		if(size < HEADER_SIZE + 16){
+			throw new BinaryReader.UnexpectedEOF();
+		}
+
+		byte[] magic = new byte[IndexedBinaryWriter.MAGIC.length];
+		for(int i = 0; i < magic.length; i++){
+			magic[i] = get(i);
+		}
+		if(!Arrays.equals(magic, IndexedBinaryWriter.MAGIC) || get(4) != IndexedBinaryWriter.VERSION){
+			throw new IOException("not an indexed binary value file");
+		}
+
+		int kind = get(5);
+		long table = getLong(size - 8);
+
+		if(kind == IndexedBinaryWriter.VALUE_KIND){
+			return read(HEADER_SIZE, table);
+		}
+
+		Type type = newReader(HEADER_SIZE, table).deserializeType();
+		int count = getInt(table);
+
+		switch(kind){
+			case IndexedBinaryWriter.LIST_KIND:
+				return new LazyList(this, type, count, table + 4);
+			case IndexedBinaryWriter.SET_KIND:
+				return new LazySet(this, type, count, table + 4);
+			case IndexedBinaryWriter.MAP_KIND:
+				return new LazyMap(this, type, count, table + 4);
+			default:
+				throw new IOException("unknown kind of value: " + kind);
+		}
+	}
+
+	/*package*/ IValueFactory getValueFactory(){
+		return valueFactory;
+	}
+
+	/**
+	 * Decodes the value stored from start up to end.
+	 */
+	/*package*/ IValue decode(long start, long end){
+		try{
+			return read(start, end);
+		}catch(IOException e){
+			throw new FactParseError("Corrupt indexed value file", e);
+		}
+	}
+
+	private IValue read(long start, long end) throws IOException{
+		return newReader(start, end).deserialize();
+	}
+
+	private BinaryReader newReader(long start, long end) throws IOException{
+		if(start < 0 || start > end || end > size){
+			throw new IOException("value out of bounds: " + start + " - " + end);
+		}
+
+		return new BinaryReader(valueFactory, typeStore, slice(start, end));
+	}
+
+	private ByteBuffer slice(long start, long end){
+		int segment = (int) (start >> SEGMENT_BITS);
+		int offset = (int) (start & (SEGMENT_SIZE - 1));
+		int length = (int) Math.min(end - start, Integer.MAX_VALUE);
+
+		if(offset + (long) length <= segments[segment].capacity()){
+			ByteBuffer result = segments[segment].duplicate();
+			result.limit(offset + length).position(offset);
+			return result;
+		}
+
+		// straddles two segments, which is rare enough to copy
+		byte[] data = new byte[length];
+		for(int i = 0; i < length; i++){
+			data[i] = get(start + i);
+		}
+		return ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * Searches a table of entries that start with a hash code, ordered by it.
+	 * 
+	 * @return the index of the first entry of which the hash code is not less
+	 *         than the given one, or count if there is none
+	 */
+	/*package*/ int search(long table, int count, int width, int hash){
+		int low = 0;
+		int high = count;
+
+		while(low < high){
+			int middle = (low + high) >>> 1;
+
+			if(getInt(table + ((long) width) * middle) < hash){
+				low = middle + 1;
+			}else{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/*package*/ byte get(long position){
+		return segments[(int) (position >> SEGMENT_BITS)].get((int) (position & (SEGMENT_SIZE - 1)));
+	}
+
+	/*package*/ int getInt(long position){
+		int offset = (int) (position & (SEGMENT_SIZE - 1));
+		ByteBuffer segment = segments[(int) (position >> SEGMENT_BITS)];
+
+		if(offset + 4 <= segment.capacity()){
+			return segment.getInt(offset);
+		}
+
+		int result = 0;
+		for(int i = 0; i < 4; i++){
+			result = (result << 8) | (get(position + i) & 0xff);
+		}
+		return result;
+	}
+
+	/*package*/ long getLong(long position){
+		int offset = (int) (position & (SEGMENT_SIZE - 1));
+		ByteBuffer segment = segments[(int) (position >> SEGMENT_BITS)];
+
+		if(offset + 8 <= segment.capacity()){
+			return segment.getLong(offset);
+		}
+
+		long result = 0;
+		for(int i = 0; i < 8; i++){
+			result = (result << 8) | (get(position + i) & 0xff);
+		}
+		return result;
+	}
+
+	/**
+	 * Keeps the decoded elements of a lazy collection. The slots are allocated
+	 * in blocks on first use, so the memory that is used grows with the number
+	 * of elements that are accessed. Racing threads may both decode an element,
+	 * which is harmless since values are immutable.
+	 */
+	/*package*/ final static class Slots{
+		private final static int BLOCK_BITS = 10;
+		private final static int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+		private final IValue[][] blocks;
+
+		Slots(int size){
+			blocks = new IValue[(size + BLOCK_SIZE - 1) >> BLOCK_BITS][];
+		}
+
+		IValue get(int index){
+			IValue[] block = blocks[index >> BLOCK_BITS];
+			return block == null ? null : block[index & (BLOCK_SIZE - 1)];
+		}
+
+		void set(int index, IValue value){
+			IValue[] block = blocks[index >> BLOCK_BITS];
+			if(block == null){
+				block = new IValue[BLOCK_SIZE];
+				blocks[index >> BLOCK_BITS] = block;
+			}
+			block[index & (BLOCK_SIZE - 1)] = value;
+		}
+	}
+}
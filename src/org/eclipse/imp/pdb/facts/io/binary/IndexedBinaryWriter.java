@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.eclipse.imp.pdb.facts.IList;
+import org.eclipse.imp.pdb.facts.IMap;
+import org.eclipse.imp.pdb.facts.ISet;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Writes values in the indexed binary format, which can be opened without
+ * decoding it with an {@link IndexedBinaryReader}.
+ * <p>
+ * The file starts with a header, which holds the kind of the value, and the
+ * type of the value when it is a collection. The elements of lists and sets,
+ * and the keys and values of maps, follow as separate values in the normal
+ * binary format, each with its own sharing tables. The elements of sets and
+ * the entries of maps are ordered by hash code. A table with the offsets of
+ * the elements, and their hash codes for sets and maps, comes last, followed
+ * by the offset of the table itself:
+ *
+ * <pre>
+ * header:  'P' 'D' 'B' 'I' version kind [type]
+ * values:  value | element* | (key value)*
+ * table:   count:int (offset:long | hash:int offset:long | hash:int keyOffset:long valueOffset:long)* end:long
+ * trailer: tableOffset:long
+ * </pre>
+ *
+ * Values that are not collections are stored as a single value, which is
+ * decoded when the file is opened.
+ */
+public class IndexedBinaryWriter{
+	/*package*/ final static byte[] MAGIC = new byte[]{'P', 'D', 'B', 'I'};
+	/*package*/ final static byte VERSION = 1;
+
+	/*package*/ final static byte VALUE_KIND = 0;
+	/*package*/ final static byte LIST_KIND = 1;
+	/*package*/ final static byte SET_KIND = 2;
+	/*package*/ final static byte MAP_KIND = 3;
+
+	private final static int BUFFER_SIZE = 64 * 1024;
+
+	private final IValue value;
+	private final FileChannel channel;
+	private final TypeStore typeStore;
+	private final ByteBuffer buffer;
+
+	public IndexedBinaryWriter(IValue value, FileChannel channel, TypeStore typeStore){
+		super();
+
+		this.value = value;
+		this.channel = channel;
+		this.typeStore = typeStore;
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	public void serialize() throws IOException{
+		byte kind;
+		if(value instanceof IList){
+			kind = LIST_KIND;
+		}else if(value instanceof ISet){
+			kind = SET_KIND;
+		}else if(value instanceof IMap){
+			kind = MAP_KIND;
+		}else{
+			kind = VALUE_KIND;
+		}
+
+		buffer.put(MAGIC).put(VERSION).put(kind);
+		flush();
+
+		if(kind == VALUE_KIND){
+			writeValue(value);
+			writeTable(new long[0], null, 0);
+			return;
+		}
+
+		newWriter(value).serializeType(value.getType());
+
+		switch(kind){
+			case LIST_KIND:
+				writeList((IList) value);
+				break;
+			case SET_KIND:
+				writeSet((ISet) value);
+				break;
+			default:
+				writeMap((IMap) value);
+		}
+	}
+
+	private void writeList(IList list) throws IOException{
+		long[] offsets = new long[list.length()];
+
+		int i = 0;
+		for(IValue element : list){
+			offsets[i++] = writeValue(element);
+		}
+
+		writeTable(offsets, null, 1);
+	}
+
+	private void writeSet(ISet set) throws IOException{
+		IValue[] elements = new IValue[set.size()];
+
+		int i = 0;
+		for(IValue element : set){
+			elements[i++] = element;
+		}
+
+		long[] order = sortByHash(elements);
+		int[] hashes = new int[elements.length];
+		long[] offsets = new long[elements.length];
+
+		for(i = 0; i < order.length; i++){
+			IValue element = elements[(int) order[i]];
+			hashes[i] = (int) (order[i] >> 32);
+			offsets[i] = writeValue(element);
+		}
+
+		writeTable(offsets, hashes, 1);
+	}
+
+	private void writeMap(IMap map) throws IOException{
+		IValue[] keys = new IValue[map.size()];
+		IValue[] values = new IValue[keys.length];
+
+		int i = 0;
+		for(Iterator<Entry<IValue, IValue>> it = map.entryIterator(); it.hasNext(); i++){
+			Entry<IValue, IValue> entry = it.next();
+			keys[i] = entry.getKey();
+			values[i] = entry.getValue();
+		}
+
+		long[] order = sortByHash(keys);
+		int[] hashes = new int[keys.length];
+		long[] offsets = new long[keys.length * 2];
+
+		for(i = 0; i < order.length; i++){
+			int index = (int) order[i];
+			hashes[i] = (int) (order[i] >> 32);
+			offsets[2 * i] = writeValue(keys[index]);
+			offsets[2 * i + 1] = writeValue(values[index]);
+		}
+
+		writeTable(offsets, hashes, 2);
+	}
+
+	/**
+	 * @return the indexes of the values ordered by hash code, with the hash code
+	 *         of each value in the upper half
+	 */
+	private static long[] sortByHash(IValue[] values){
+		long[] order = new long[values.length];
+
+		for(int i = 0; i < values.length; i++){
+			order[i] = (((long) values[i].hashCode()) << 32) | i;
+		}
+
+		Arrays.sort(order);
+		return order;
+	}
+
+	private long writeValue(IValue element) throws IOException{
+		long offset = channel.position();
+		newWriter(element).serialize();
+		return offset;
+	}
+
+	private BinaryWriter newWriter(IValue element){
+		return new BinaryWriter(element, null, channel, buffer, SharingPolicy.MAXIMAL, typeStore);
+	}
+
+	private void writeTable(long[] offsets, int[] hashes, int offsetsPerEntry) throws IOException{
+		long tableOffset = channel.position();
+		int count = offsetsPerEntry == 0 ? 0 : offsets.length / offsetsPerEntry;
+
+		putInt(count);
+		for(int i = 0; i < count; i++){
+			if(hashes != null){
+				putInt(hashes[i]);
+			}
+			for(int j = 0; j < offsetsPerEntry; j++){
+				putLong(offsets[i * offsetsPerEntry + j]);
+			}
+		}
+
+		// the end of the last value
+		putLong(tableOffset);
+		putLong(tableOffset);
+		flush();
+	}
+
+	private void putInt(int i) throws IOException{
+		if(buffer.remaining() < 4){
+			flush();
+		}
+		buffer.putInt(i);
+	}
+
+	private void putLong(long l) throws IOException{
+		if(buffer.remaining() < 8){
+			flush();
+		}
+		buffer.putLong(l);
+	}
+
+	private void flush() throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
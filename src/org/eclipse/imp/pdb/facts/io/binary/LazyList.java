@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.AbstractList;
+import org.eclipse.imp.pdb.facts.impl.func.ListFunctions;
+import org.eclipse.imp.pdb.facts.io.binary.IndexedBinaryReader.Slots;
+import org.eclipse.imp.pdb.facts.type.Type;
+
+/**
+ * A list in an indexed binary file, of which the elements are decoded on first
+ * access. The table holds the offset of every element, followed by the end of
+ * the last one.
+ */
+/*package*/ class LazyList extends AbstractList{
+	private final IndexedBinaryReader file;
+	private final Type type;
+	private final int length;
+	private final long table;
+	private final Slots elements;
+	
+	/*package*/ LazyList(IndexedBinaryReader file, Type type, int length, long table){
+		super();
+		
+		this.file = file;
+		this.type = type;
+		this.length = length;
+		this.table = table;
+		this.elements = new Slots(length);
+	}
+	
+	@Override
+	protected IValueFactory getValueFactory(){
+		return file.getValueFactory();
+	}
+	
+	@Override
+	public Type getType(){
+		return type;
+	}
+	
+	@Override
+	public int length(){
+		return length;
+	}
+	
+	@Override
+	public boolean isEmpty(){
+		return length == 0;
+	}
+	
+	@Override
+	public IValue get(int index){
+		if(index < 0 || index >= length){
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for a list of length " + length);
+		}
+		
+		IValue element = elements.get(index);
+		if(element == null){
+			long position = table + 8L * index;
+			element = file.decode(file.getLong(position), file.getLong(position + 8));
+			elements.set(index, element);
+		}
+		return element;
+	}
+	
+	@Override
+	public Iterator<IValue> iterator(){
+		return new Iterator<IValue>(){
+			private int next = 0;
+			
+			@Override
+			public boolean hasNext(){
+				return next < length;
+			}
+			
+			@Override
+			public IValue next(){
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				return get(next++);
+			}
+			
+			@Override
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	@Override
+	public int hashCode(){
+		return ListFunctions.hashCode(getValueFactory(), this);
+	}
+	
+	@Override
+	public boolean equals(Object other){
+		return ListFunctions.equals(getValueFactory(), this, other);
+	}
+	
+	@Override
+	public boolean isEqual(IValue other){
+		return ListFunctions.isEqual(getValueFactory(), this, other);
+	}
+}
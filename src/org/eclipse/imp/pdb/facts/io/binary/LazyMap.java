@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.AbstractMap;
+import org.eclipse.imp.pdb.facts.impl.func.MapFunctions;
+import org.eclipse.imp.pdb.facts.io.binary.IndexedBinaryReader.Slots;
+import org.eclipse.imp.pdb.facts.type.Type;
+
+/**
+ * A map in an indexed binary file, of which the keys and values are decoded on
+ * first access. The table holds the hash code of the key, the offset of the key
+ * and the offset of the value of every entry, ordered by hash code, followed by
+ * the end of the last value. A lookup only decodes the keys with the same hash
+ * code, and the value that belongs to the key that is found.
+ */
+/*package*/ class LazyMap extends AbstractMap{
+	private final static int ENTRY_SIZE = 20;
+	
+	private final IndexedBinaryReader file;
+	private final Type type;
+	private final int size;
+	private final long table;
+	private final Slots keys;
+	private final Slots values;
+	
+	/*package*/ LazyMap(IndexedBinaryReader file, Type type, int size, long table){
+		super();
+		
+		this.file = file;
+		this.type = type;
+		this.size = size;
+		this.table = table;
+		this.keys = new Slots(size);
+		this.values = new Slots(size);
+	}
+	
+	@Override
+	protected IValueFactory getValueFactory(){
+		return file.getValueFactory();
+	}
+	
+	@Override
+	public Type getType(){
+		return type;
+	}
+	
+	@Override
+	public int size(){
+		return size;
+	}
+	
+	@Override
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	
+	@Override
+	public IValue get(IValue key){
+		int index = indexOf(key);
+		return index == -1 ? null : valueAt(index);
+	}
+	
+	@Override
+	public boolean containsKey(IValue key){
+		return indexOf(key) != -1;
+	}
+	
+	private int indexOf(IValue key){
+		int hash = key.hashCode();
+		
+		for(int i = file.search(table, size, ENTRY_SIZE, hash); i < size && hashAt(i) == hash; i++){
+			if(key.isEqual(keyAt(i))){
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private int hashAt(int index){
+		return file.getInt(table + ((long) ENTRY_SIZE) * index);
+	}
+	
+	private long keyOffsetAt(int index){
+		if(index == size){
+			return file.getLong(table + ((long) ENTRY_SIZE) * size);
+		}
+		return file.getLong(table + ((long) ENTRY_SIZE) * index + 4);
+	}
+	
+	private long valueOffsetAt(int index){
+		return file.getLong(table + ((long) ENTRY_SIZE) * index + 12);
+	}
+	
+	private IValue keyAt(int index){
+		IValue key = keys.get(index);
+		if(key == null){
+			key = file.decode(keyOffsetAt(index), valueOffsetAt(index));
+			keys.set(index, key);
+		}
+		return key;
+	}
+	
+	private IValue valueAt(int index){
+		IValue value = values.get(index);
+		if(value == null){
+			value = file.decode(valueOffsetAt(index), keyOffsetAt(index + 1));
+			values.set(index, value);
+		}
+		return value;
+	}
+	
+	@Override
+	public Iterator<IValue> iterator(){
+		return new EntryIterator<IValue>(){
+			@Override
+			protected IValue at(int index){
+				return keyAt(index);
+			}
+		};
+	}
+	
+	@Override
+	public Iterator<IValue> valueIterator(){
+		return new EntryIterator<IValue>(){
+			@Override
+			protected IValue at(int index){
+				return valueAt(index);
+			}
+		};
+	}
+	
+	@Override
+	public Iterator<Entry<IValue, IValue>> entryIterator(){
+		return new EntryIterator<Entry<IValue, IValue>>(){
+			@Override
+			protected Entry<IValue, IValue> at(int index){
+				return new SimpleImmutableEntry<>(keyAt(index), valueAt(index));
+			}
+		};
+	}
+	
+	private abstract class EntryIterator<T> implements Iterator<T>{
+		private int next = 0;
+		
+		protected abstract T at(int index);
+		
+		@Override
+		public boolean hasNext(){
+			return next < size;
+		}
+		
+		@Override
+		public T next(){
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			return at(next++);
+		}
+		
+		@Override
+		public void remove(){
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	@Override
+	public int hashCode(){
+		return MapFunctions.hashCode(getValueFactory(), this);
+	}
+	
+	@Override
+	public boolean equals(Object other){
+		return MapFunctions.equals(getValueFactory(), this, other);
+	}
+	
+	@Override
+	public boolean isEqual(IValue other){
+		return MapFunctions.isEqual(getValueFactory(), this, other);
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.AbstractSet;
+import org.eclipse.imp.pdb.facts.impl.func.SetFunctions;
+import org.eclipse.imp.pdb.facts.io.binary.IndexedBinaryReader.Slots;
+import org.eclipse.imp.pdb.facts.type.Type;
+
+/**
+ * A set in an indexed binary file, of which the elements are decoded on first
+ * access. The table holds the hash code and the offset of every element,
+ * ordered by hash code, followed by the end of the last element, so a lookup
+ * only decodes the elements with the same hash code.
+ */
+/*package*/ class LazySet extends AbstractSet{
+	private final static int ENTRY_SIZE = 12;
+	
+	private final IndexedBinaryReader file;
+	private final Type type;
+	private final int size;
+	private final long table;
+	private final Slots elements;
+	
+	/*package*/ LazySet(IndexedBinaryReader file, Type type, int size, long table){
+		super();
+		
+		this.file = file;
+		this.type = type;
+		this.size = size;
+		this.table = table;
+		this.elements = new Slots(size);
+	}
+	
+	@Override
+	protected IValueFactory getValueFactory(){
+		return file.getValueFactory();
+	}
+	
+	@Override
+	public Type getType(){
+		return type;
+	}
+	
+	@Override
+	public int size(){
+		return size;
+	}
+	
+	@Override
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	
+	@Override
+	public boolean contains(IValue element){
+		int hash = element.hashCode();
+		
+		for(int i = file.search(table, size, ENTRY_SIZE, hash); i < size && hashAt(i) == hash; i++){
+			if(element.isEqual(get(i))){
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private int hashAt(int index){
+		return file.getInt(table + ((long) ENTRY_SIZE) * index);
+	}
+	
+	private long offsetAt(int index){
+		if(index == size){
+			return file.getLong(table + ((long) ENTRY_SIZE) * size);
+		}
+		return file.getLong(table + ((long) ENTRY_SIZE) * index + 4);
+	}
+	
+	private IValue get(int index){
+		IValue element = elements.get(index);
+		if(element == null){
+			element = file.decode(offsetAt(index), offsetAt(index + 1));
+			elements.set(index, element);
+		}
+		return element;
+	}
+	
+	@Override
+	public Iterator<IValue> iterator(){
+		return new Iterator<IValue>(){
+			private int next = 0;
+			
+			@Override
+			public boolean hasNext(){
+				return next < size;
+			}
+			
+			@Override
+			public IValue next(){
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				return get(next++);
+			}
+			
+			@Override
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	@Override
+	public int hashCode(){
+		return SetFunctions.hashCode(getValueFactory(), this);
+	}
+	
+	@Override
+	public boolean equals(Object other){
+		return SetFunctions.equals(getValueFactory(), this, other);
+	}
+	
+	@Override
+	public boolean isEqual(IValue other){
+		return SetFunctions.isEqual(getValueFactory(), this, other);
+	}
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+import org.eclipse.imp.pdb.facts.IList;
+import org.eclipse.imp.pdb.facts.IMap;
+import org.eclipse.imp.pdb.facts.INode;
+import org.eclipse.imp.pdb.facts.INumber;
+import org.eclipse.imp.pdb.facts.ISet;
+import org.eclipse.imp.pdb.facts.ISourceLocation;
+import org.eclipse.imp.pdb.facts.IString;
+import org.eclipse.imp.pdb.facts.ITuple;
+import org.eclipse.imp.pdb.facts.IValue;
+
+/**
+ * Determines which values a {@link BinaryWriter} writes only once, and refers
+ * to afterwards. Policies are immutable; the methods that configure them return
+ * a modified copy.
+ * <p>
+ * With maximal sharing, values that are equal are written once, otherwise only
+ * the same object is. Strings, numbers and locations are always shared when
+ * they are equal. Maximal sharing hashes every value that is written, which is
+ * not needed when the values are hash-consed, so equal values are the same
+ * object; {@link #hashConsed()} shares them by identity instead.
+ * <p>
+ * By default every written value is kept for sharing until the end. A window
+ * only keeps the most recently written ones, so the memory that the writer and
+ * the reader need does not grow with the size of the output. The window is
+ * recorded in the output, so readers adapt to it.
+ * <p>
+ * Sharing can also be limited to some kinds of values, and to values of at
+ * least a minimal size: the length of strings, the arity of tuples and nodes,
+ * or the number of elements of collections.
+ */
+public final class SharingPolicy{
+	public final static int STRINGS = 0x01;
+	public final static int NUMBERS = 0x02;
+	public final static int LOCATIONS = 0x04;
+	public final static int TUPLES = 0x08;
+	/** Nodes and constructors. */
+	public final static int NODES = 0x10;
+	/** Lists, sets and maps. */
+	public final static int COLLECTIONS = 0x20;
+	/** Booleans, date-times and external values. */
+	public final static int OTHERS = 0x40;
+	public final static int ALL = 0x7f;
+
+	/**
+	 * Shares all values that are equal; the default.
+	 */
+	public final static SharingPolicy MAXIMAL = new SharingPolicy(true, false, 0, ALL, 0);
+
+	/**
+	 * Shares strings, numbers and locations that are equal, and other values
+	 * only when they are the same object.
+	 */
+	public final static SharingPolicy IDENTITY = new SharingPolicy(false, false, 0, ALL, 0);
+
+	private final boolean maximalSharing;
+	private final boolean hashConsed;
+	private final int window;
+	private final int kinds;
+	private final int minimalSize;
+
+	private SharingPolicy(boolean maximalSharing, boolean hashConsed, int window, int kinds, int minimalSize){
+		super();
+
+		this.maximalSharing = maximalSharing;
+		this.hashConsed = hashConsed;
+		this.window = window;
+		this.kinds = kinds;
+		this.minimalSize = minimalSize;
+	}
+
+	/**
+	 * @return the policy for the given kind of sharing
+	 */
+	public static SharingPolicy of(boolean maximalSharing){
+		return maximalSharing ? MAXIMAL : IDENTITY;
+	}
+
+	/**
+	 * @return a policy that only keeps the given number of most recently
+	 *         written values for sharing, or all of them for 0
+	 */
+	public SharingPolicy withWindow(int size){
+		if(size < 0){
+			throw new IllegalArgumentException("Negative window: " + size);
+		}
+		return new SharingPolicy(maximalSharing, hashConsed, size, kinds, minimalSize);
+	}
+
+	/**
+	 * @param sharedKinds a combination of {@link #STRINGS}, {@link #NUMBERS},
+	 *            {@link #LOCATIONS}, {@link #TUPLES}, {@link #NODES},
+	 *            {@link #COLLECTIONS} and {@link #OTHERS}
+	 * @return a policy that only shares the given kinds of values
+	 */
+	public SharingPolicy withKinds(int sharedKinds){
+		return new SharingPolicy(maximalSharing, hashConsed, window, sharedKinds & ALL, minimalSize);
+	}
+
+	/**
+	 * @return a policy that does not share strings, tuples, nodes and
+	 *         collections that are smaller than the given size
+	 */
+	public SharingPolicy withMinimalSize(int size){
+		return new SharingPolicy(maximalSharing, hashConsed, window, kinds, size);
+	}
+
+	/**
+	 * @return a maximally sharing policy for values of which equal ones are
+	 *         always the same object, which therefore does not need to hash
+	 *         them, apart from strings, numbers and locations
+	 */
+	public SharingPolicy hashConsed(){
+		return new SharingPolicy(true, true, window, kinds, minimalSize);
+	}
+
+	public boolean isMaximalSharing(){
+		return maximalSharing;
+	}
+
+	public boolean isHashConsed(){
+		return hashConsed;
+	}
+
+	public int getWindow(){
+		return window;
+	}
+
+	public int getKinds(){
+		return kinds;
+	}
+
+	public int getMinimalSize(){
+		return minimalSize;
+	}
+
+	/**
+	 * @return true if the value may be shared
+	 */
+	/*package*/ boolean shares(IValue value){
+		if(kinds == ALL && minimalSize == 0){
+			return true;
+		}
+
+		if(value instanceof IString){
+			return (kinds & STRINGS) != 0 && (minimalSize == 0 || ((IString) value).getValue().length() >= minimalSize);
+		}else if(value instanceof INumber){
+			return (kinds & NUMBERS) != 0;
+		}else if(value instanceof ISourceLocation){
+			return (kinds & LOCATIONS) != 0;
+		}else if(value instanceof ITuple){
+			return (kinds & TUPLES) != 0 && ((ITuple) value).arity() >= minimalSize;
+		}else if(value instanceof INode){
+			return (kinds & NODES) != 0 && ((INode) value).arity() >= minimalSize;
+		}else if(value instanceof IList){
+			return (kinds & COLLECTIONS) != 0 && ((IList) value).length() >= minimalSize;
+		}else if(value instanceof ISet){
+			return (kinds & COLLECTIONS) != 0 && ((ISet) value).size() >= minimalSize;
+		}else if(value instanceof IMap){
+			return (kinds & COLLECTIONS) != 0 && ((IMap) value).size() >= minimalSize;
+		}
+		return (kinds & OTHERS) != 0;
+	}
+
+	/**
+	 * @return the key under which the value is shared, which is the value
+	 *         itself if equal values should be shared, or an
+	 *         {@link BinaryWriter.IdentityValue} otherwise
+	 */
+	/*package*/ IValue key(IValue value){
+		if((maximalSharing && !hashConsed) || value instanceof IString || value instanceof INumber || value instanceof ISourceLocation){
+			return value;
+		}
+		return new BinaryWriter.IdentityValue(value);
+	}
+
+	@Override
+	public String toString(){
+		return "SharingPolicy[maximal=" + maximalSharing + ", hashConsed=" + hashConsed + ", window=" + window
+				+ ", kinds=0x" + Integer.toHexString(kinds) + ", minimalSize=" + minimalSize + "]";
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+/**
+ * How well the values a {@link BinaryWriter} wrote were shared, to tune its
+ * {@link SharingPolicy}.
+ */
+public final class SharingStatistics{
+	private final long lookups;
+	private final long hits;
+	private final long stored;
+	private final long skipped;
+	private final long evicted;
+
+	/*package*/ SharingStatistics(long lookups, long hits, long stored, long skipped, long evicted){
+		super();
+
+		this.lookups = lookups;
+		this.hits = hits;
+		this.stored = stored;
+		this.skipped = skipped;
+		this.evicted = evicted;
+	}
+
+	/**
+	 * @return the number of values that were looked up before writing them
+	 */
+	public long getLookups(){
+		return lookups;
+	}
+
+	/**
+	 * @return the number of values that were written as a reference to an earlier one
+	 */
+	public long getHits(){
+		return hits;
+	}
+
+	/**
+	 * @return the number of values that were kept for sharing
+	 */
+	public long getStored(){
+		return stored;
+	}
+
+	/**
+	 * @return the number of values that the policy did not share
+	 */
+	public long getSkipped(){
+		return skipped;
+	}
+
+	/**
+	 * @return the number of values that were forgotten since they fell out of the window
+	 */
+	public long getEvicted(){
+		return evicted;
+	}
+
+	/**
+	 * @return the fraction of the lookups that found an earlier value
+	 */
+	public double getHitRate(){
+		return lookups == 0 ? 0 : ((double) hits) / lookups;
+	}
+
+	@Override
+	public String toString(){
+		return String.format("lookups=%d, hits=%d (%.1f%%), stored=%d, skipped=%d, evicted=%d",
+				lookups, hits, 100 * getHitRate(), stored, skipped, evicted);
+	}
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.io.binary;
+
+/**
+ * Assigns consecutive identifiers to the values a {@link BinaryWriter} wrote,
+ * in the order in which the {@link BinaryReader} assigns them, and finds the
+ * identifier of a value that was written before. Values that may not be shared
+ * still take an identifier, since the reader does not know about the policy.
+ * <p>
+ * With a window, only the identifiers of the most recently written values are
+ * kept: when a value gets an identifier, the one that got an identifier a
+ * window earlier is forgotten. The reader keeps the same values.
+ */
+/*package*/ final class SharingTable{
+	private final static int INITIAL_LOG_SIZE = 4;
+
+	private final int window;
+
+	private int modSize;
+	private int hashMask;
+	private Entry[] data;
+	private int load;
+
+	/** The entry of every identifier in the window, if it has one. */
+	private Entry[] recent;
+	private int next;
+
+	private long lookups;
+	private long hits;
+	private long stored;
+	private long evicted;
+
+	SharingTable(int window){
+		super();
+
+		this.window = window;
+
+		modSize = INITIAL_LOG_SIZE;
+		data = new Entry[1 << modSize];
+		hashMask = data.length - 1;
+		recent = window > 0 ? new Entry[window] : null;
+	}
+
+	/**
+	 * Copies the table. The copy assigns the same identifiers as the original,
+	 * and both can be extended independently afterwards.
+	 */
+	SharingTable(SharingTable other){
+		super();
+
+		window = other.window;
+		modSize = other.modSize;
+		hashMask = other.hashMask;
+		data = new Entry[other.data.length];
+		load = other.load;
+		recent = window > 0 ? new Entry[window] : null;
+		next = other.next;
+
+		for(int i = 0; i < data.length; i++){
+			Entry last = null;
+			for(Entry entry = other.data[i]; entry != null; entry = entry.next){
+				Entry copy = new Entry(entry.hash, entry.key, entry.id, null);
+				if(last == null){
+					data[i] = copy;
+				}else{
+					last.next = copy;
+				}
+				last = copy;
+
+				if(recent != null && other.recent[entry.id % window] == entry){
+					recent[entry.id % window] = copy;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the identifier of the value, or -1 if it has none (anymore)
+	 */
+	int get(Object key){
+		lookups++;
+
+		int hash = key.hashCode();
+		for(Entry entry = data[hash & hashMask]; entry != null; entry = entry.next){
+			if(hash == entry.hash && key.equals(entry.key)){
+				hits++;
+				return entry.id;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Gives the value the next identifier.
+	 */
+	void store(Object key){
+		int id = assign();
+
+		if(load >= data.length){
+			rehash();
+		}
+
+		int hash = key.hashCode();
+		int position = hash & hashMask;
+		Entry entry = new Entry(hash, key, id, data[position]);
+		data[position] = entry;
+		load++;
+		stored++;
+
+		if(recent != null){
+			recent[id % window] = entry;
+		}
+	}
+
+	/**
+	 * Skips an identifier for a value that is not shared.
+	 */
+	void skip(){
+		int id = assign();
+
+		if(recent != null){
+			recent[id % window] = null;
+		}
+	}
+
+	/**
+	 * @return the number of identifiers that were assigned
+	 */
+	int size(){
+		return next;
+	}
+
+	SharingStatistics statistics(){
+		return new SharingStatistics(lookups, hits, stored, next - stored, evicted);
+	}
+
+	private int assign(){
+		int id = next++;
+
+		if(recent != null && id >= window){
+			Entry oldest = recent[id % window];
+			if(oldest != null){
+				remove(oldest);
+				evicted++;
+			}
+		}
+
+		return id;
+	}
+
+	private void remove(Entry removed){
+		int position = removed.hash & hashMask;
+
+		if(data[position] == removed){
+			data[position] = removed.next;
+		}else{
+			Entry entry = data[position];
+			while(entry.next != removed){
+				entry = entry.next;
+			}
+			entry.next = removed.next;
+		}
+		load--;
+	}
+
+	private void rehash(){
+		modSize++;
+		Entry[] newData = new Entry[1 << modSize];
+		hashMask = newData.length - 1;
+
+		for(int i = data.length - 1; i >= 0; i--){
+			Entry entry = data[i];
+			while(entry != null){
+				Entry following = entry.next;
+				int position = entry.hash & hashMask;
+				entry.next = newData[position];
+				newData[position] = entry;
+				entry = following;
+			}
+		}
+
+		data = newData;
+	}
+
+	private final static class Entry{
+		final int hash;
+		final Object key;
+		final int id;
+		Entry next;
+
+		Entry(int hash, Object key, int id, Entry next){
+			this.hash = hash;
+			this.key = key;
+			this.id = id;
+			this.next = next;
+		}
+	}
+}
@@ -43,12 +43,12 @@ import org.eclipse.imp.pdb.facts.exceptions.UndeclaredAnnotationException;
 	}
 	
 	@Override
-	public Type lub(Type other) {
+	protected Type computeLub(Type other) {
 	  return other.lubWithAbstractData(this);
 	}
 	
 	@Override
-	public Type glb(Type type) {
+	protected Type computeGlb(Type type) {
 	  return type.glbWithAbstractData(this);
 	}
 	
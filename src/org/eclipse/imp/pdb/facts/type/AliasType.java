@@ -89,12 +89,12 @@ import org.eclipse.imp.pdb.facts.exceptions.FactTypeUseException;
 	}
 	
 	@Override
-	public Type lub(Type other) {
+	protected Type computeLub(Type other) {
 	  return other.lubWithAlias(this);
 	}
 	
 	@Override
-	public Type glb(Type type) {
+	protected Type computeGlb(Type type) {
 	  return type.glbWithAlias(this);
 	}
 	
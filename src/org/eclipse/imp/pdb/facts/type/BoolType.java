@@ -56,7 +56,7 @@ package org.eclipse.imp.pdb.facts.type;
   }
   
   @Override
-  public Type lub(Type other) {
+  protected Type computeLub(Type other) {
     return other.lubWithBool(this);
   }
   
@@ -71,7 +71,7 @@ package org.eclipse.imp.pdb.facts.type;
   }
   
   @Override
-  public Type glb(Type type) {
+  protected Type computeGlb(Type type) {
     return type.glbWithBool(this);
   }
   
@@ -177,12 +177,12 @@ import org.eclipse.imp.pdb.facts.exceptions.UndeclaredAnnotationException;
 	}
 	
 	@Override
-	public Type lub(Type type) {
+	protected Type computeLub(Type type) {
 	  return type.lubWithConstructor(this);
 	}
 	
 	@Override
-	public Type glb(Type type) {
+	protected Type computeGlb(Type type) {
 	  return type.glbWithConstructor(this);
 	}
 	
@@ -54,12 +54,12 @@ public class DateTimeType extends DefaultSubtypeOfValue {
 	}
 	
 	@Override
-	public Type lub(Type other) {
+	protected Type computeLub(Type other) {
 	  return other.lubWithDateTime(this);
 	}
 	
 	@Override
-	public Type glb(Type type) {
+	protected Type computeGlb(Type type) {
 	  return type.glbWithDateTime(this);
 	}
 	
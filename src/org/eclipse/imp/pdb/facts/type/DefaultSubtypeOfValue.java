@@ -19,7 +19,7 @@ package org.eclipse.imp.pdb.facts.type;
   }
 
   @Override 
-  public abstract Type glb(Type type);
+  protected abstract Type computeGlb(Type type);
   
   @Override
   protected Type glbWithValue(Type type) {
@@ -162,12 +162,12 @@ import org.eclipse.imp.pdb.facts.exceptions.FactTypeUseException;
 	}
 	
 	@Override
-	public Type lub(Type other) {
+	protected Type computeLub(Type other) {
 	  return other.lubWithList(this);
 	}
 	
 	@Override
-	public Type glb(Type type) {
+	protected Type computeGlb(Type type) {
 	  return type.glbWithList(this);
 	}
 	
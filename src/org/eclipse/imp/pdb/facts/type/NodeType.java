@@ -53,7 +53,7 @@ class NodeType extends DefaultSubtypeOfValue {
   }
 
   @Override
-  public Type lub(Type other) {
+  protected Type computeLub(Type other) {
     return other.lubWithNode(this);
   }
 
@@ -78,7 +78,7 @@ class NodeType extends DefaultSubtypeOfValue {
   }
   
   @Override
-  public Type glb(Type type) {
+  protected Type computeGlb(Type type) {
     return type.glbWithNode(this);
   }
   
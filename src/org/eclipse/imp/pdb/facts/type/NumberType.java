@@ -37,7 +37,7 @@ package org.eclipse.imp.pdb.facts.type;
   }
 
   @Override
-  public Type lub(Type other) {
+  protected Type computeLub(Type other) {
     return other.lubWithNumber(this);
   }
 
@@ -67,7 +67,7 @@ package org.eclipse.imp.pdb.facts.type;
   }
   
   @Override
-  public Type glb(Type type) {
+  protected Type computeGlb(Type type) {
     return type.glbWithNumber(this);
   }
   
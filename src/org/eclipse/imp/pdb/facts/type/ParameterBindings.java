@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.type;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.imp.pdb.facts.IValue;
+
+/**
+ * A binding environment for {@link Type#match(Type, Map)} and
+ * {@link Type#instantiate(Map)} which stores the bindings in small arrays,
+ * indexed by the position of each parameter. The parameters of the data-type
+ * are entered first, so for a given constructor its bindings form a vector
+ * in the order of {@link Type#getTypeParameters()}.
+ * <p>
+ * Every thread reuses a small stack of environments to instantiate the
+ * constructors of parameterized data-types; computing the types of the
+ * children of a constructor instantiates nested constructors one level
+ * deeper. The results are kept in a direct mapped cache keyed by the
+ * constructor type and its binding vector. Creating values of parameterized
+ * data-types therefore neither allocates maps nor rebuilds the instantiated
+ * types on the hot path.
+ */
+/*package*/ final class ParameterBindings extends AbstractMap<Type, Type> {
+	private static final int CACHE_SIZE = 1 << 10;
+	private static final int CACHE_MASK = CACHE_SIZE - 1;
+
+	private static final Instance[] cache = new Instance[CACHE_SIZE];
+
+	private static final ThreadLocal<ParameterBindings> environment = new ThreadLocal<ParameterBindings>() {
+		@Override
+		protected ParameterBindings initialValue() {
+			return new ParameterBindings();
+		}
+	};
+
+	private Type[] keys = new Type[4];
+	private Type[] values = new Type[4];
+	private int size = 0;
+	private boolean inUse = false;
+	private Type[] childTypes = new Type[4];
+	private ParameterBindings nested = null;
+
+	private ParameterBindings() {
+		super();
+	}
+
+	private static final class Instance {
+		final Type constructor;
+		final Type[] bindings;
+		final Type result;
+
+		Instance(Type constructor, Type[] bindings, Type result) {
+			this.constructor = constructor;
+			this.bindings = bindings;
+			this.result = result;
+		}
+
+		boolean matches(Type constructor, Type[] bindings, int arity) {
+			if (this.constructor != constructor || this.bindings.length != arity) {
+				return false;
+			}
+
+			for (int i = 0; i < arity; i++) {
+				if (this.bindings[i] != bindings[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * Computes the most concrete instance of a constructor of a parameterized
+	 * data-type for the given children. Parameters that are not bound by the
+	 * children are bound to void.
+	 */
+	/*package*/ static Type instantiateConstructor(Type constructorType, IValue[] children) {
+		ParameterBindings env = environment.get();
+
+		while (env.inUse) {
+			// the children are nested constructors of parameterized data-types
+			if (env.nested == null) {
+				env.nested = new ParameterBindings();
+			}
+			env = env.nested;
+		}
+
+		env.inUse = true;
+		try {
+			return env.instantiate(constructorType, children);
+		}
+		finally {
+			env.clear();
+			Arrays.fill(env.childTypes, null);
+			env.inUse = false;
+		}
+	}
+
+	private Type instantiate(Type constructorType, IValue[] children) {
+		Type parameters = constructorType.getAbstractDataType().getTypeParameters();
+		int arity = parameters.getArity();
+
+		for (int i = 0; i < arity; i++) {
+			append(parameters.getFieldType(i), null);
+		}
+
+		match(constructorType.getFieldTypes(), children);
+
+		Type voidType = VoidType.getInstance();
+		for (int i = 0; i < arity; i++) {
+			if (values[i] == null) {
+				values[i] = voidType;
+			}
+		}
+
+		if (size != arity) {
+			// the fields mention parameters the data-type does not declare
+			return constructorType.instantiate(this);
+		}
+
+		int slot = slot(constructorType, values, arity);
+		Instance instance = cache[slot];
+
+		if (instance != null && instance.matches(constructorType, values, arity)) {
+			return instance.result;
+		}
+
+		Type result = constructorType.instantiate(this);
+		Type[] bindings = new Type[arity];
+		System.arraycopy(values, 0, bindings, 0, arity);
+		cache[slot] = new Instance(constructorType, bindings, result);
+		return result;
+	}
+
+	/**
+	 * Matches the children against the field types, which has the same effect
+	 * as matching a tuple of the types of the children, without building it.
+	 */
+	private void match(Type fieldTypes, IValue[] children) {
+		int arity = fieldTypes.getArity();
+
+		if (arity != children.length) {
+			return;
+		}
+
+		if (childTypes.length < arity) {
+			childTypes = new Type[arity];
+		}
+
+		// getType of a child may instantiate a nested constructor, so compute each only once
+		for (int i = 0; i < arity; i++) {
+			childTypes[i] = children[i].getType();
+			if (!childTypes[i].isSubtypeOf(fieldTypes.getFieldType(i))) {
+				return;
+			}
+		}
+
+		for (int i = 0; i < arity; i++) {
+			if (!fieldTypes.getFieldType(i).match(childTypes[i], this)) {
+				return;
+			}
+		}
+	}
+
+	private static int slot(Type constructorType, Type[] bindings, int arity) {
+		int h = constructorType.getMemoId();
+		for (int i = 0; i < arity; i++) {
+			h = h * 31 + bindings[i].getMemoId();
+		}
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h & CACHE_MASK;
+	}
+
+	private int indexOf(Object key) {
+		for (int i = 0; i < size; i++) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void append(Type key, Type value) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		keys[size] = key;
+		values[size] = value;
+		size++;
+	}
+
+	@Override
+	public Type get(Object key) {
+		int i = indexOf(key);
+		return i >= 0 ? values[i] : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		int i = indexOf(key);
+		return i >= 0 && values[i] != null;
+	}
+
+	@Override
+	public Type put(Type key, Type value) {
+		int i = indexOf(key);
+
+		if (i >= 0) {
+			Type old = values[i];
+			values[i] = value;
+			return old;
+		}
+
+		append(key, value);
+		return null;
+	}
+
+	@Override
+	public int size() {
+		int result = 0;
+		for (int i = 0; i < size; i++) {
+			if (values[i] != null) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			keys[i] = null;
+			values[i] = null;
+		}
+		size = 0;
+	}
+
+	@Override
+	public Set<Map.Entry<Type, Type>> entrySet() {
+		Set<Map.Entry<Type, Type>> result = new LinkedHashSet<>();
+		for (int i = 0; i < size; i++) {
+			if (values[i] != null) {
+				result.add(new SimpleImmutableEntry<>(keys[i], values[i]));
+			}
+		}
+		return result;
+	}
+}
@@ -91,12 +91,12 @@ import org.eclipse.imp.pdb.facts.exceptions.FactTypeUseException;
 	}
 	
 	@Override
-	public Type lub(Type type) {
+	protected Type computeLub(Type type) {
 	  return type.glbWithParameter(this);
 	}
 	
 	@Override
-	public Type glb(Type type) {
+	protected Type computeGlb(Type type) {
 	  return type.glbWithParameter(this);
 	}
 	
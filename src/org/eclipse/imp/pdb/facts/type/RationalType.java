@@ -55,7 +55,7 @@ package org.eclipse.imp.pdb.facts.type;
     }
     
     @Override
-    public Type lub(Type other) {
+    protected Type computeLub(Type other) {
       return other.lubWithRational(this);
     }
     
@@ -70,7 +70,7 @@ package org.eclipse.imp.pdb.facts.type;
     }
     
     @Override
-    public Type glb(Type type) {
+    protected Type computeGlb(Type type) {
       return type.glbWithRational(this);
     }
     
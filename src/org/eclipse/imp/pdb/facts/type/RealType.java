@@ -56,12 +56,12 @@ package org.eclipse.imp.pdb.facts.type;
 	}
 	
 	@Override
-	public Type lub(Type type) {
+	protected Type computeLub(Type type) {
 		return type.lubWithReal(this);
 	}
 	
 	@Override
-	public Type glb(Type type) {
+	protected Type computeGlb(Type type) {
 	  return type.glbWithReal(this);
 	}
 	
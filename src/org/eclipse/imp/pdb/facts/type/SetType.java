@@ -153,12 +153,12 @@ import org.eclipse.imp.pdb.facts.exceptions.FactTypeUseException;
   }
 
   @Override
-  public Type lub(Type other) {
+  protected Type computeLub(Type other) {
     return other.lubWithSet(this);
   }
   
   @Override
-  public Type glb(Type type) {
+  protected Type computeGlb(Type type) {
     return type.glbWithSet(this);
   }
   
@@ -55,12 +55,12 @@ package org.eclipse.imp.pdb.facts.type;
     }
     
     @Override
-    public Type lub(Type other) {
+    protected Type computeLub(Type other) {
       return other.lubWithString(this);
     }
     
     @Override
-    public Type glb(Type type) {
+    protected Type computeGlb(Type type) {
       return type.glbWithString(this);
     }
     
@@ -411,12 +411,12 @@ import org.eclipse.imp.pdb.facts.exceptions.UndeclaredFieldException;
 	}
 	
 	@Override
-	public Type lub(Type other) {
+	protected Type computeLub(Type other) {
 	  return other.lubWithTuple(this);
 	}
 	
 	@Override
-	public Type glb(Type type) {
+	protected Type computeGlb(Type type) {
 	  return type.glbWithTuple(this);
 	}
 	
@@ -41,6 +41,8 @@ import org.eclipse.imp.pdb.facts.exceptions.IllegalOperationException;
 public abstract class Type implements Iterable<Type>, Comparable<Type> {
   protected static final TypeFactory TF = TypeFactory.getInstance();
   
+  private int fMemoId = 0;
+  
   /**
    * Retrieve the type of elements in a set or a relation.
    * 
@@ -313,9 +315,31 @@ public abstract class Type implements Iterable<Type>, Comparable<Type> {
   /**
    * @return the least upper bound type of the receiver and the argument type
    */
-  public abstract Type lub(Type type);
+  public Type lub(Type type) {
+    return type == this ? this : TypeMemo.lub(this, type);
+  }
+
+  public Type glb(Type type) {
+    return type == this ? this : TypeMemo.glb(this, type);
+  }
+  
+  /**
+   * Computes the least upper bound, see {@link #lub(Type)}, which memoizes the results.
+   * Subclasses implement either this method, or override {@link #lub(Type)} 
+   * itself, in which case their results are not memoized.
+   */
+  protected Type computeLub(Type type) {
+    throw new IllegalOperationException("lub", this, type);
+  }
 
-  public abstract Type glb(Type type);
+  /**
+   * Computes the greatest lower bound, see {@link #glb(Type)}, which memoizes the results.
+   * Subclasses implement either this method, or override {@link #glb(Type)} 
+   * itself, in which case their results are not memoized.
+   */
+  protected Type computeGlb(Type type) {
+    throw new IllegalOperationException("glb", this, type);
+  }
   
   /**
    * The sub-type relation. Value is the biggest type and void is the smallest.
@@ -325,7 +349,21 @@ public abstract class Type implements Iterable<Type>, Comparable<Type> {
    * @return true if the receiver is a subtype of the other type
    */
   public final boolean isSubtypeOf(Type other) {
-    return other == this || other.isSupertypeOf(this);
+    return other == this || TypeMemo.isSubtypeOf(this, other);
+  }
+  
+  /**
+   * @return the dense id of this type in the memo tables of {@link TypeMemo},
+   * assigned on first use. Racing threads may assign different ids, which 
+   * only costs a few memo entries.
+   */
+  /*package*/ final int getMemoId() {
+    int id = fMemoId;
+    if (id == 0) {
+      id = TypeMemo.newId();
+      fMemoId = id;
+    }
+    return id;
   }
   
   public final boolean isStrictSubtypeOf(Type other) {
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.type;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The canonicalization table of the {@link TypeFactory}. Lookups of types that
+ * were created before never take a lock, and constructing a new type only
+ * contends with other threads that hash to the same bin.
+ * <p>
+ * By default types are held strongly. When the system property
+ * <code>org.eclipse.imp.pdb.facts.type.weakTypeCache</code> is set to true,
+ * the table only holds weak references, such that instantiated types that are
+ * no longer used anywhere can be collected. This trades a little lookup speed
+ * for memory in applications that create many short-lived parameterized types.
+ */
+/*package*/ final class TypeCache {
+	private final ConcurrentHashMap<Type, Type> strong;
+	private final ConcurrentHashMap<Object, WeakKey> weak;
+	private final ReferenceQueue<Type> collected;
+
+	/*package*/ TypeCache(boolean weakEntries) {
+		if (weakEntries) {
+			strong = null;
+			weak = new ConcurrentHashMap<>();
+			collected = new ReferenceQueue<>();
+		}
+		else {
+			strong = new ConcurrentHashMap<>();
+			weak = null;
+			collected = null;
+		}
+	}
+
+	/**
+	 * @return the canonical instance of the given type, which is <code>t</code>
+	 * itself if no equal type was cached yet.
+	 */
+	/*package*/ Type canonicalize(Type t) {
+		if (strong != null) {
+			Type result = strong.get(t);
+
+			if (result == null) {
+				result = strong.putIfAbsent(t, t);
+				return result == null ? t : result;
+			}
+
+			return result;
+		}
+
+		return canonicalizeWeak(t);
+	}
+
+	private Type canonicalizeWeak(Type t) {
+		expungeCollected();
+
+		WeakKey entry = weak.get(new Probe(t));
+		Type result = entry != null ? entry.get() : null;
+
+		while (result == null) {
+			WeakKey fresh = new WeakKey(t, collected);
+			entry = weak.putIfAbsent(fresh, fresh);
+
+			if (entry == null) {
+				return t;
+			}
+
+			// an equal type got in first, unless it was collected in the mean time
+			result = entry.get();
+		}
+
+		return result;
+	}
+
+	private void expungeCollected() {
+		Reference<? extends Type> ref;
+
+		while ((ref = collected.poll()) != null) {
+			weak.remove(ref);
+		}
+	}
+
+	/**
+	 * Keys compare the types they refer to. A key whose type was collected is
+	 * only equal to itself, so it can still be removed from the table.
+	 */
+	private static boolean keyEquals(Object self, Type mine, int hash, Object obj) {
+		if (self == obj) {
+			return true;
+		}
+
+		Type theirs;
+		if (obj instanceof WeakKey) {
+			WeakKey other = (WeakKey) obj;
+			if (hash != other.hash) {
+				return false;
+			}
+			theirs = other.get();
+		}
+		else if (obj instanceof Probe) {
+			Probe other = (Probe) obj;
+			if (hash != other.hash) {
+				return false;
+			}
+			theirs = other.type;
+		}
+		else {
+			return false;
+		}
+
+		return mine != null && theirs != null && (mine == theirs || mine.equals(theirs));
+	}
+
+	/**
+	 * Lookup key holding the candidate type strongly.
+	 */
+	private static final class Probe {
+		private final Type type;
+		private final int hash;
+
+		Probe(Type type) {
+			this.type = type;
+			this.hash = type.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return keyEquals(this, type, hash, obj);
+		}
+	}
+
+	private static final class WeakKey extends WeakReference<Type> {
+		private final int hash;
+
+		WeakKey(Type type, ReferenceQueue<Type> queue) {
+			super(type, queue);
+			this.hash = type.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return keyEquals(this, get(), hash, obj);
+		}
+	}
+}
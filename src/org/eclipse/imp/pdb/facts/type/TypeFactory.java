@@ -14,9 +14,6 @@
 
 package org.eclipse.imp.pdb.facts.type;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IValueFactory;
 import org.eclipse.imp.pdb.facts.exceptions.FactTypeDeclarationException;
@@ -41,7 +38,7 @@ public class TypeFactory {
   /**
    * Caches all types to implement canonicalization
    */
-  private final Map<Type, Type> fCache = new HashMap<Type, Type>();
+  private final TypeCache fCache = new TypeCache(Boolean.getBoolean("org.eclipse.imp.pdb.facts.type.weakTypeCache"));
 
   public static TypeFactory getInstance() {
     return InstanceHolder.sInstance;
@@ -79,16 +76,39 @@ public class TypeFactory {
   }
 
   private Type getFromCache(Type t) {
-    synchronized (fCache) {
-      Type result = fCache.get(t);
+    return fCache.canonicalize(t);
+  }
 
-      if (result == null) {
-        fCache.put(t, t);
-        return t;
-      }
+  /**
+   * @return a human readable summary of the hit rates of the memo tables for
+   * sub-typing, lub and glb, for tuning and diagnostics.
+   */
+  public String getMemoStatistics() {
+    return TypeMemo.statistics();
+  }
 
-      return result;
-    }
+  /**
+   * @return the number of sub-typing, lub and glb queries that were answered
+   * from the memo tables since the last {@link #resetMemoStatistics()}.
+   */
+  public long getMemoHits() {
+    return TypeMemo.hits();
+  }
+
+  /**
+   * @return the number of sub-typing, lub and glb queries that had to be
+   * computed since the last {@link #resetMemoStatistics()}.
+   */
+  public long getMemoMisses() {
+    return TypeMemo.misses();
+  }
+
+  /**
+   * Resets the counters reported by {@link #getMemoStatistics()}; the memo
+   * tables themselves are kept.
+   */
+  public void resetMemoStatistics() {
+    TypeMemo.resetStatistics();
   }
 
   /**
@@ -278,6 +298,25 @@ public class TypeFactory {
     return getOrCreateTuple(fieldTypes);
   }
 
+  /**
+   * Computes the most concrete instance of a constructor of a parameterized
+   * abstract data-type, by matching its field types against the types of the
+   * given children. Type parameters that the children do not bind are bound to
+   * void. Constructors of data-types without parameters are returned as is.
+   * 
+   * @param constructorType
+   *          a constructor type, possibly of a parameterized data-type
+   * @param children
+   *          the children of the constructor value
+   * @return the instantiated constructor type
+   */
+  public Type instantiateConstructor(Type constructorType, IValue... children) {
+    if (!constructorType.getAbstractDataType().isParameterized()) {
+      return constructorType;
+    }
+    return ParameterBindings.instantiateConstructor(constructorType, children);
+  }
+
   /**
    * Construct a set type
    * 
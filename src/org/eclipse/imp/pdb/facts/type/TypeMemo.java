@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.type;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memo tables for {@link Type#isSubtypeOf(Type)}, {@link Type#lub(Type)} and
+ * {@link Type#glb(Type)}. Since types are canonical, a pair of types is
+ * identified by the pair of their dense ids, which each type receives when it
+ * first takes part in one of these computations.
+ * <p>
+ * The tables are direct mapped caches of fixed size: a pair of ids hashes to a
+ * single slot, and a new result simply replaces whatever was there. Reads and
+ * writes take no locks. Subtype results are encoded in a single long per slot;
+ * lub and glb results are immutable entries, which are safely published by
+ * virtue of their final fields.
+ */
+/*package*/ final class TypeMemo {
+	private static final int SIZE = 1 << 13;
+	private static final int MASK = SIZE - 1;
+	private static final int MAX_ID = (1 << 30) - 1;
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private static final AtomicLongArray subtypes = new AtomicLongArray(SIZE);
+	private static final Entry[] lubs = new Entry[SIZE];
+	private static final Entry[] glbs = new Entry[SIZE];
+
+	private static final LongAdder subtypeHits = new LongAdder();
+	private static final LongAdder subtypeMisses = new LongAdder();
+	private static final LongAdder lubHits = new LongAdder();
+	private static final LongAdder lubMisses = new LongAdder();
+	private static final LongAdder glbHits = new LongAdder();
+	private static final LongAdder glbMisses = new LongAdder();
+
+	private TypeMemo() {
+		super();
+	}
+
+	private static final class Entry {
+		final int left;
+		final int right;
+		final Type result;
+
+		Entry(int left, int right, Type result) {
+			this.left = left;
+			this.right = right;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * @return a fresh id, or 0 when we ran out of ids and stop memoizing new types
+	 */
+	/*package*/ static int newId() {
+		int id = nextId.incrementAndGet();
+		return id <= MAX_ID ? id : 0;
+	}
+
+	private static int slot(int left, int right) {
+		int h = left * 0x9E3779B1 + right;
+		h ^= h >>> 15;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h & MASK;
+	}
+
+	/*package*/ static boolean isSubtypeOf(Type sub, Type sup) {
+		int left = sub.getMemoId();
+		int right = sup.getMemoId();
+
+		if (left == 0 || right == 0) {
+			return sup.isSupertypeOf(sub);
+		}
+
+		int slot = slot(left, right);
+		long key = ((long) left << 32) | ((long) right << 1);
+		long entry = subtypes.get(slot);
+
+		if ((entry & ~1L) == key) {
+			subtypeHits.increment();
+			return (entry & 1L) != 0;
+		}
+
+		subtypeMisses.increment();
+		boolean result = sup.isSupertypeOf(sub);
+		subtypes.set(slot, key | (result ? 1L : 0L));
+		return result;
+	}
+
+	/*package*/ static Type lub(Type left, Type right) {
+		int l = left.getMemoId();
+		int r = right.getMemoId();
+
+		if (l == 0 || r == 0) {
+			return left.computeLub(right);
+		}
+
+		int slot = slot(l, r);
+		Entry entry = lubs[slot];
+
+		if (entry != null && entry.left == l && entry.right == r) {
+			lubHits.increment();
+			return entry.result;
+		}
+
+		lubMisses.increment();
+		Type result = left.computeLub(right);
+		lubs[slot] = new Entry(l, r, result);
+		return result;
+	}
+
+	/*package*/ static Type glb(Type left, Type right) {
+		int l = left.getMemoId();
+		int r = right.getMemoId();
+
+		if (l == 0 || r == 0) {
+			return left.computeGlb(right);
+		}
+
+		int slot = slot(l, r);
+		Entry entry = glbs[slot];
+
+		if (entry != null && entry.left == l && entry.right == r) {
+			glbHits.increment();
+			return entry.result;
+		}
+
+		glbMisses.increment();
+		Type result = left.computeGlb(right);
+		glbs[slot] = new Entry(l, r, result);
+		return result;
+	}
+
+	/*package*/ static void resetStatistics() {
+		subtypeHits.reset();
+		subtypeMisses.reset();
+		lubHits.reset();
+		lubMisses.reset();
+		glbHits.reset();
+		glbMisses.reset();
+	}
+
+	/*package*/ static long hits() {
+		return subtypeHits.sum() + lubHits.sum() + glbHits.sum();
+	}
+
+	/*package*/ static long misses() {
+		return subtypeMisses.sum() + lubMisses.sum() + glbMisses.sum();
+	}
+
+	/*package*/ static String statistics() {
+		return "isSubtypeOf " + rate(subtypeHits.sum(), subtypeMisses.sum())
+				+ ", lub " + rate(lubHits.sum(), lubMisses.sum())
+				+ ", glb " + rate(glbHits.sum(), glbMisses.sum())
+				+ ", " + Math.min(nextId.get(), MAX_ID) + " type ids";
+	}
+
+	private static String rate(long hits, long misses) {
+		long total = hits + misses;
+		double percentage = total == 0 ? 0.0 : 100.0 * hits / total;
+		return String.format("%d/%d hits (%.1f%%)", hits, total, percentage);
+	}
+}
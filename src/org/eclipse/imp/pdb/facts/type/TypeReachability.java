@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.type;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers which types of values may, transitively, contain values of a given
+ * set of target types. The containment relation follows the children of
+ * values: the elements of lists, sets and maps, the fields of tuples, and the
+ * fields of the constructors that the {@link TypeStore} declares for an
+ * abstract data-type. Keyword parameters and annotations are not children.
+ * <p>
+ * The analysis is conservative: values of type value, node or of external
+ * types, and values of data-types the store does not know, may contain
+ * anything. Hence a false answer is a proof that a value can be skipped when
+ * looking for the targets, while a true answer is not a promise that it holds
+ * any.
+ * <p>
+ * Answers are memoized in the index of the store, so they are shared by all
+ * analyses for the same targets, and they are forgotten as soon as the store or
+ * one of its imports declares something new.
+ */
+public final class TypeReachability {
+	private final TypeStore store;
+	private final Set<Type> targets;
+	private final Type[] targetTypes;
+
+	private TypeReachability(TypeStore store, Set<Type> targets) {
+		this.store = store;
+		this.targets = targets;
+		this.targetTypes = new Type[targets.size()];
+
+		int i = 0;
+		for (Type target : targets) {
+			// a constructor does not occur as the type of a value, its data-type does
+			targetTypes[i++] = target.isConstructor() ? target.getAbstractDataType() : target;
+		}
+	}
+
+	/**
+	 * @param store   the declarations of the data-types to analyze
+	 * @param targets the types of the values of interest
+	 * @return an analysis of which types may reach values of the targets
+	 */
+	public static TypeReachability of(TypeStore store, Type... targets) {
+		return new TypeReachability(store, Collections.unmodifiableSet(new HashSet<>(Arrays.asList(targets))));
+	}
+
+	public Set<Type> getTargets() {
+		return targets;
+	}
+
+	/**
+	 * @return false if a value of the given type can neither be, nor contain, a
+	 *         value of one of the target types
+	 */
+	public boolean mayReach(Type type) {
+		ConcurrentHashMap<Type, Boolean> memo = store.reachabilityMemo(targets);
+		Boolean result = memo.get(type);
+
+		if (result == null) {
+			result = compute(type);
+			memo.putIfAbsent(type, result);
+		}
+
+		return result;
+	}
+
+	private boolean compute(Type type) {
+		Set<Type> done = new HashSet<>();
+		Expander expander = new Expander();
+
+		expander.todo.push(type);
+
+		while (!expander.todo.isEmpty()) {
+			Type next = expander.todo.pop();
+
+			if (!done.add(next)) {
+				continue;
+			}
+
+			if (isTarget(next) || next.accept(expander)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean isTarget(Type type) {
+		if (type.isBottom()) {
+			return false;
+		}
+
+		for (Type target : targetTypes) {
+			if (type.comparable(target)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Pushes the types of the children of values of a type, and returns true for
+	 * the types of which the children are unknown.
+	 */
+	private final class Expander implements ITypeVisitor<Boolean, RuntimeException> {
+		final Deque<Type> todo = new ArrayDeque<>();
+
+		@Override
+		public Boolean visitReal(Type type) {
+			return false;
+		}
+
+		@Override
+		public Boolean visitInteger(Type type) {
+			return false;
+		}
+
+		@Override
+		public Boolean visitRational(Type type) {
+			return false;
+		}
+
+		@Override
+		public Boolean visitList(Type type) {
+			todo.push(type.getElementType());
+			return false;
+		}
+
+		@Override
+		public Boolean visitMap(Type type) {
+			todo.push(type.getKeyType());
+			todo.push(type.getValueType());
+			return false;
+		}
+
+		@Override
+		public Boolean visitNumber(Type type) {
+			return false;
+		}
+
+		@Override
+		public Boolean visitAlias(Type type) {
+			todo.push(type.getAliased());
+			return false;
+		}
+
+		@Override
+		public Boolean visitSet(Type type) {
+			todo.push(type.getElementType());
+			return false;
+		}
+
+		@Override
+		public Boolean visitSourceLocation(Type type) {
+			return false;
+		}
+
+		@Override
+		public Boolean visitString(Type type) {
+			return false;
+		}
+
+		@Override
+		public Boolean visitNode(Type type) {
+			return true;
+		}
+
+		@Override
+		public Boolean visitConstructor(Type type) {
+			todo.push(type.getFieldTypes());
+			return false;
+		}
+
+		@Override
+		public Boolean visitAbstractData(Type type) {
+			// instances of parameterized data-types are not declared, their definition is
+			Type declared = store.lookupAbstractDataType(type.getName());
+
+			if (declared == null || declared.isExternalType()) {
+				return true;
+			}
+
+			for (Type alternative : store.lookupAlternatives(declared)) {
+				todo.push(alternative);
+			}
+
+			return false;
+		}
+
+		@Override
+		public Boolean visitTuple(Type type) {
+			for (int i = type.getArity() - 1; i >= 0; i--) {
+				todo.push(type.getFieldType(i));
+			}
+			return false;
+		}
+
+		@Override
+		public Boolean visitValue(Type type) {
+			return true;
+		}
+
+		@Override
+		public Boolean visitVoid(Type type) {
+			return false;
+		}
+
+		@Override
+		public Boolean visitBool(Type type) {
+			return false;
+		}
+
+		@Override
+		public Boolean visitParameter(Type type) {
+			todo.push(type.getBound());
+			return false;
+		}
+
+		@Override
+		public Boolean visitExternal(Type type) {
+			return true;
+		}
+
+		@Override
+		public Boolean visitDateTime(Type type) {
+			return false;
+		}
+	}
+}
@@ -11,7 +11,6 @@
 
 package org.eclipse.imp.pdb.facts.type;
 
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -19,6 +18,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.imp.pdb.facts.IValueFactory;
 import org.eclipse.imp.pdb.facts.exceptions.FactTypeDeclarationException;
@@ -32,6 +32,10 @@ import org.eclipse.imp.pdb.facts.exceptions.RedeclaredConstructorException;
 import org.eclipse.imp.pdb.facts.exceptions.RedeclaredFieldNameException;
 import org.eclipse.imp.pdb.facts.exceptions.RedeclaredKeywordParameterException;
 import org.eclipse.imp.pdb.facts.exceptions.UndeclaredAbstractDataTypeException;
+import org.eclipse.imp.pdb.facts.util.ImmutableMap;
+import org.eclipse.imp.pdb.facts.util.ImmutableSet;
+import org.eclipse.imp.pdb.facts.util.TrieMap;
+import org.eclipse.imp.pdb.facts.util.TrieSet;
 
 /**
  * This class manages type declarations. It stores declarations of annotations, 
@@ -39,19 +43,29 @@ import org.eclipse.imp.pdb.facts.exceptions.UndeclaredAbstractDataTypeException;
  * TypeStores can import others, but the imports are not transitive.
  * Cyclic imports are allowed.
  * <p>
+ * The declarations of a store are kept in an immutable snapshot of persistent
+ * maps. Declaring something publishes an updated copy of the snapshot, while
+ * lookups read the current snapshot without taking any locks. Lookups which
+ * combine the declarations of a store with those of its imports are answered
+ * from a flattened index that memoizes their results. The index is dropped as
+ * soon as the store or one of its imports publishes a new snapshot, and only
+ * rebuilt by the next lookup, so many readers can share one store without
+ * serializing on it and many declarations in a row do not rebuild it.
+ * <p>
  * @see {@link TypeFactory}, {@link Type} and {@link IValueFactory} for more information.
  */
 public class TypeStore {
 	private static final Type NODE_TYPE = TypeFactory.getInstance().nodeType();
+	private static final Object NOT_FOUND = new Object();
 
 	private final TypeFactory factory = TypeFactory.getInstance();
 
-	private final Map<String, Type> fAliases= new HashMap<>();
-	private final Map<String, Type> fADTs= new HashMap<>();
-	private final Map<Type, Set<Type>> fConstructors = new HashMap<>();
-	private final Map<Type, Map<String, Type>> fAnnotations = new HashMap<>();
-	private final Map<Type, Map<String, Type>> fkeywordParameters = new HashMap<>();
-	private final Set<TypeStore> fImports = new HashSet<>();
+	/**
+	 * Serializes the declarations in this store; lookups never take it.
+	 */
+	private final Object fDeclarationLock = new Object();
+	private volatile Declarations fDeclarations = Declarations.EMPTY;
+	private volatile Index fIndex;
 
 	/**
 	 * A type store that is initially empty and imports the given TypeStores.
@@ -66,7 +80,7 @@ public class TypeStore {
 	 * not return the ADT's of imported TypeStores.
 	 */
 	public Collection<Type> getAbstractDataTypes() {
-	  return Collections.unmodifiableCollection(fADTs.values());
+	  return Collections.unmodifiableCollection(fDeclarations.adts.values());
 	}
 
 	/**
@@ -74,7 +88,7 @@ public class TypeStore {
 	 * not return the aliases of imported TypeStores.
 	 */
 	public Collection<Type> getAliases() {
-	  return Collections.unmodifiableCollection(fAliases.values());
+	  return Collections.unmodifiableCollection(fDeclarations.aliases.values());
 	}
 
 	/**
@@ -85,11 +99,7 @@ public class TypeStore {
 	 * annotations to the types of the values that give access to these annotations.
 	 */
 	public Map<Type, Map<String, Type>> getAnnotations() {
-	  Map<Type, Map<String,Type>> unmodifiableMap = new HashMap<>();
-	  for (Type key : fAnnotations.keySet()) {
-	    unmodifiableMap.put(key, Collections.unmodifiableMap(fAnnotations.get(key)));
-	  }
-	  return unmodifiableMap;
+	  return new HashMap<Type, Map<String, Type>>(fDeclarations.annotations);
 	}
 	
 	/**
@@ -100,11 +110,7 @@ public class TypeStore {
 	 * annotations to the types of the values that give access to these annotations.
 	 */
 	public Map<Type, Map<String, Type>> getKeywordParameters() {
-	  Map<Type, Map<String,Type>> unmodifiableMap = new HashMap<>();
-	  for (Type key : fkeywordParameters.keySet()) {
-	    unmodifiableMap.put(key, Collections.unmodifiableMap(fkeywordParameters.get(key)));
-	  }
-	  return unmodifiableMap;
+	  return new HashMap<Type, Map<String, Type>>(fDeclarations.keywordParameters);
 	}
 
 	/**
@@ -113,7 +119,7 @@ public class TypeStore {
 	 */
 	public Collection<Type> getConstructors() {
 	  Set<Type> result = new HashSet<>();
-	  for (Set<Type> adt : fConstructors.values()) {
+	  for (Set<Type> adt : fDeclarations.constructors.values()) {
 	    result.addAll(adt);
 	  }
 	  return Collections.unmodifiableCollection(result);
@@ -124,7 +130,7 @@ public class TypeStore {
 	 * not return the imports of imported TypeStores.
 	 */
 	public Collection<TypeStore> getImports() {
-	  return Collections.unmodifiableCollection(fImports);
+	  return Collections.unmodifiableCollection(Arrays.asList(fDeclarations.imports));
 	}
 
 	/**
@@ -134,7 +140,7 @@ public class TypeStore {
 	 * @param stores
 	 */
 	public void importStore(TypeStore... stores) {
-	  synchronized(fImports) {
+	  synchronized (fDeclarationLock) {
 	    for (TypeStore s : stores) {
 	      doImport(s);
 	    }
@@ -148,8 +154,15 @@ public class TypeStore {
 	 * @param stores to be removed
 	 */
 	public void unimportStores(TypeStore... stores) {
-	  synchronized (fImports) {
-	    fImports.removeAll(Arrays.asList(stores));
+	  synchronized (fDeclarationLock) {
+	    Declarations decls = fDeclarations;
+	    TypeStore[] imports = decls.imports;
+
+	    for (TypeStore s : stores) {
+	      imports = without(imports, s);
+	    }
+
+	    fDeclarations = decls.withImports(imports);
 	  }
 	}
 
@@ -157,53 +170,78 @@ public class TypeStore {
 	  checkOverlappingAliases(s);
 	  checkConstructorOverloading(s);
 
-	  fImports.add(s);
+	  Declarations decls = fDeclarations;
+	  fDeclarations = decls.withImports(with(decls.imports, s));
 	}
 
-	/**
-	 * Blindly copy all declaration of the other store into the receiver.
-	 */
-	public void extendStore(TypeStore other) {
-	  synchronized (fAliases) {
-	    fAliases.putAll(other.fAliases);
+	private static TypeStore[] with(TypeStore[] imports, TypeStore s) {
+	  for (TypeStore i : imports) {
+	    if (i == s) {
+	      return imports;
+	    }
 	  }
 
-	  synchronized (fADTs) {
-	    fADTs.putAll(other.fADTs);
+	  TypeStore[] result = Arrays.copyOf(imports, imports.length + 1);
+	  result[imports.length] = s;
+	  return result;
+	}
+
+	private static TypeStore[] without(TypeStore[] imports, TypeStore s) {
+	  for (int i = 0; i < imports.length; i++) {
+	    if (imports[i] == s) {
+	      TypeStore[] result = new TypeStore[imports.length - 1];
+	      System.arraycopy(imports, 0, result, 0, i);
+	      System.arraycopy(imports, i + 1, result, i, imports.length - i - 1);
+	      return result;
+	    }
 	  }
 
-	  synchronized (fConstructors) {
-	    for (Type type : other.fConstructors.keySet()) {
-	      Set<Type> set = fConstructors.get(type);
+	  return imports;
+	}
 
-	      if (set == null) {
-	        set = new HashSet<>();
-	      }
+	/**
+	 * Blindly copy all declaration of the other store into the receiver.
+	 */
+	public void extendStore(TypeStore other) {
+	  Declarations theirs = other.fDeclarations;
+
+	  synchronized (fDeclarationLock) {
+	    Declarations decls = fDeclarations;
+	    ImmutableMap<Type, ImmutableSet<Type>> constructors = decls.constructors;
 
-	      set.addAll(other.fConstructors.get(type));
-	      fConstructors.put(type, set);
+	    for (Map.Entry<Type, ImmutableSet<Type>> entry : theirs.constructors.entrySet()) {
+	      ImmutableSet<Type> set = constructors.get(entry.getKey());
+	      constructors = constructors.__put(entry.getKey(), set == null ? entry.getValue() : set.__insertAll(entry.getValue()));
 	    }
-	  }
 
-	  synchronized (fAnnotations) {
-	    fAnnotations.putAll(other.fAnnotations);
-	  }
-	  
-	  synchronized (fkeywordParameters) {
-		  fkeywordParameters.putAll(other.fkeywordParameters);
-		  }
+	    TypeStore[] imports = decls.imports;
+	    for (TypeStore s : theirs.imports) {
+	      imports = with(imports, s);
+	    }
 
-	  synchronized (fImports) {
-	    fImports.addAll(other.fImports);
+	    fDeclarations = new Declarations(
+	        decls.aliases.__putAll(theirs.aliases),
+	        decls.adts.__putAll(theirs.adts),
+	        constructors,
+	        decls.annotations.__putAll(theirs.annotations),
+	        decls.keywordParameters.__putAll(theirs.keywordParameters),
+	        imports);
 	  }
 	}
 
 	private void checkConstructorOverloading(TypeStore s) {
-	  for (Type type : fADTs.values()) {
-	    Type other = s.fADTs.get(type.getName());
+	  Declarations decls = fDeclarations;
+	  Declarations theirs = s.fDeclarations;
+
+	  for (Type type : decls.adts.values()) {
+	    Type other = theirs.adts.get(type.getName());
 	    if (other != null && other == type) {
-	      Set<Type> signature1 = fConstructors.get(type);
-	      Set<Type> signature2 = s.fConstructors.get(type);
+	      Set<Type> signature1 = decls.constructors.get(type);
+	      Set<Type> signature2 = theirs.constructors.get(type);
+
+	      if (signature1 == null || signature2 == null) {
+	        continue;
+	      }
 
 	      for (Type alt : signature2) {
 	        Type children = alt.getFieldTypes();
@@ -223,12 +261,12 @@ public class TypeStore {
 	}
 
 	private void checkOverlappingAliases(TypeStore s) {
-	  synchronized (fAliases) {
-	    for (Type alias : fAliases.values()) {
-	      Type other = s.fAliases.get(alias.getName());
-	      if (other != null && !other.comparable(alias)) {
-	        throw new FactTypeRedeclaredException(alias.getName(), other);
-	      }
+	  Map<String, Type> theirs = s.fDeclarations.aliases;
+
+	  for (Type alias : fDeclarations.aliases.values()) {
+	    Type other = theirs.get(alias.getName());
+	    if (other != null && !other.comparable(alias)) {
+	      throw new FactTypeRedeclaredException(alias.getName(), other);
 	    }
 	  }
 	}
@@ -248,26 +286,25 @@ public class TypeStore {
 	 * @throws FactTypeRedeclaredException
 	 */
 	public void declareAlias(Type alias) throws FactTypeDeclarationException {
-	  synchronized (fADTs) {
-	    synchronized (fAliases) {
-	      String name = alias.getName();
-	      Type oldAdt = lookupAbstractDataType(name);
-	      if (oldAdt != null) {
-	        throw new FactTypeRedeclaredException(name, oldAdt);
-	      }
+	  synchronized (fDeclarationLock) {
+	    String name = alias.getName();
+	    Type oldAdt = findAbstractDataType(name);
+	    if (oldAdt != null) {
+	      throw new FactTypeRedeclaredException(name, oldAdt);
+	    }
 
-	      Type oldAlias = lookupAlias(name);
+	    Type oldAlias = findAlias(name);
 
-	      if (oldAlias != null) {
-	        if (alias.isSubtypeOf(oldAlias)) {
-	          // instantiating can be ignored.
-	          return;
-	        }
-	        throw new FactTypeRedeclaredException(name, oldAlias);
+	    if (oldAlias != null) {
+	      if (alias.isSubtypeOf(oldAlias)) {
+	        // instantiating can be ignored.
+	        return;
 	      }
-
-	      fAliases.put(name, alias);
+	      throw new FactTypeRedeclaredException(name, oldAlias);
 	    }
+
+	    Declarations decls = fDeclarations;
+	    fDeclarations = decls.withAliases(decls.aliases.__put(name, alias));
 	  }
 	}
 
@@ -281,32 +318,31 @@ public class TypeStore {
 	 */
 	public void declareAbstractDataType(Type adt)
 	    throws FactTypeDeclarationException {
-	  synchronized (fADTs) {
-	    synchronized (fAliases) {
-	      synchronized (fConstructors) {
-	        String name = adt.getName();
-	        Type oldAdt = lookupAbstractDataType(name);
-
-	        if (oldAdt != null) {
-	          if (adt.comparable(oldAdt) || oldAdt.isExternalType()) {
-	            return; // paramaterized ADT got instantiated, don't store.
-	          }
+	  synchronized (fDeclarationLock) {
+	    String name = adt.getName();
+	    Type oldAdt = findAbstractDataType(name);
 
-	          throw new FactTypeRedeclaredException(name, oldAdt);
-	        }
+	    if (oldAdt != null) {
+	      if (adt.comparable(oldAdt) || oldAdt.isExternalType()) {
+	        return; // paramaterized ADT got instantiated, don't store.
+	      }
 
-	        Type oldAlias = lookupAlias(name);
-	        if (oldAlias != null) {
-	          throw new FactTypeRedeclaredException(name, oldAlias);
-	        }
+	      throw new FactTypeRedeclaredException(name, oldAdt);
+	    }
 
-	        fADTs.put(name, adt);
+	    Type oldAlias = findAlias(name);
+	    if (oldAlias != null) {
+	      throw new FactTypeRedeclaredException(name, oldAlias);
+	    }
 
-	        if (fConstructors.get(adt) == null) {
-	          fConstructors.put(adt, new HashSet<Type>());
-	        }
-	      }
+	    Declarations decls = fDeclarations;
+	    ImmutableMap<Type, ImmutableSet<Type>> constructors = decls.constructors;
+
+	    if (constructors.get(adt) == null) {
+	      constructors = constructors.__put(adt, TrieSet.<Type>of());
 	    }
+
+	    fDeclarations = decls.withAbstractDataTypes(decls.adts.__put(name, adt), constructors);
 	  }
 	}
 
@@ -318,47 +354,61 @@ public class TypeStore {
 	 * @throws UndeclaredAbstractDataTypeException, RedeclaredFieldNameException, RedeclaredConstructorException 
 	 */
 	public void declareConstructor(Type constructor) throws FactTypeDeclarationException {
-	  synchronized (fADTs) {
-	    synchronized(fConstructors) {
-	      Type adt = constructor.getAbstractDataType();
+	  synchronized (fDeclarationLock) {
+	    Type adt = constructor.getAbstractDataType();
 
-	      Type other = lookupAbstractDataType(adt.getName());
-	      if (other == null) {
-	        throw new UndeclaredAbstractDataTypeException(adt);
-	      }
+	    Type other = findAbstractDataType(adt.getName());
+	    if (other == null) {
+	      throw new UndeclaredAbstractDataTypeException(adt);
+	    }
 
-	      Set<Type> signature = lookupAlternatives(adt);
-	      if (signature == null) {
-	        throw new UndeclaredAbstractDataTypeException(adt);
-	      }
-	      
 		  Type constructor1 = expandAliases(constructor);
 		  if(!constructor.equals(constructor1)){
 			  constructor = constructor1;
 		  }
-	      
-	      checkOverloading(signature, constructor.getName(), constructor.getFieldTypes());
-	      try {
-	        checkFieldNames(signature, constructor.getFieldTypes());
-	      }
-	      catch (RedeclaredFieldNameException e) {
-	        throw new RedeclaredFieldNameException(e.getFieldName(),
-	            e.getFirstType(), e.getSecondType(),
-	            adt);
+	    
+	    Declarations decls = fDeclarations;
+	    Type unaliased = adt;
+	    while (unaliased.isAliased()) {
+	      unaliased = unaliased.getAliased();
+	    }
+
+	    // the alternatives of the adt are checked per snapshot, rather than merged by the index
+	    checkAlternatives(decls.constructors.get(unaliased), adt, constructor);
+	    for (TypeStore s : decls.imports) {
+	      if (s != this) {
+	        checkAlternatives(s.fDeclarations.constructors.get(unaliased), adt, constructor);
 	      }
+	    }
 
-	      Set<Type> localSignature = fConstructors.get(adt);
-	      if (localSignature == null) {
-	        localSignature = new HashSet<>();
-	        fConstructors.put(adt, localSignature);
+	    ImmutableMap<String, Type> adts = decls.adts;
+	    ImmutableSet<Type> localSignature = decls.constructors.get(adt);
 
-	        if (!fADTs.containsKey(adt.getName())) {
-	          fADTs.put(adt.getName(), adt);
-	        }
-	      }
+	    if (localSignature == null) {
+	      localSignature = TrieSet.of();
 
-	      localSignature.add(constructor);
+	      if (!adts.containsKey(adt.getName())) {
+	        adts = adts.__put(adt.getName(), adt);
+	      }
 	    }
+
+	    fDeclarations = decls.withAbstractDataTypes(adts, decls.constructors.__put(adt, localSignature.__insert(constructor)));
+	  }
+	}
+
+	private void checkAlternatives(Set<Type> signature, Type adt, Type constructor) {
+	  if (signature == null) {
+	    return;
+	  }
+
+	  checkOverloading(signature, constructor.getName(), constructor.getFieldTypes());
+	  try {
+	    checkFieldNames(signature, constructor.getFieldTypes());
+	  }
+	  catch (RedeclaredFieldNameException e) {
+	    throw new RedeclaredFieldNameException(e.getFieldName(),
+	        e.getFirstType(), e.getSecondType(),
+	        adt);
 	  }
 	}
 
@@ -399,28 +449,109 @@ public class TypeStore {
 	  }
 	}
 
+	/**
+	 * @return the index over the current snapshots of this store and its imports
+	 */
+	private Index index() {
+	  Declarations decls = fDeclarations;
+	  Index index = fIndex;
+
+	  if (index == null || !index.isCurrent(decls)) {
+	    index = new Index(decls);
+	    fIndex = index;
+	  }
+
+	  return index;
+	}
+
+	/*
+	 * The declarations look up earlier declarations directly in the current
+	 * snapshots of this store and its imports, rather than through the index:
+	 * every declaration publishes a new snapshot, so an index built in between
+	 * would be discarded right away, and a loop of declarations would keep
+	 * rebuilding it. The index is only rebuilt by the next lookup.
+	 */
+
+	private Type findAlias(String name) {
+	  Declarations decls = fDeclarations;
+	  Type found = decls.aliases.get(name);
+
+	  for (int i = 0; found == null && i < decls.imports.length; i++) {
+	    found = decls.imports[i].fDeclarations.aliases.get(name);
+	  }
+
+	  return found;
+	}
+
+	private Type findAbstractDataType(String name) {
+	  Declarations decls = fDeclarations;
+	  Type found = decls.adts.get(name);
+
+	  for (int i = 0; found == null && i < decls.imports.length; i++) {
+	    found = decls.imports[i].fDeclarations.adts.get(name);
+	  }
+
+	  return found;
+	}
+
+	/**
+	 * @return the type that {@link #getAnnotations(Type)} reports for the key, or null
+	 */
+	private static Type findAnnotation(Declarations decls, Type onType, String key) {
+	  Type found = null;
+
+	  if (onType != NODE_TYPE) {
+	    found = find(decls.annotations.get(onType), key, found);
+	  }
+
+	  found = find(decls.annotations.get(NODE_TYPE), key, found);
+
+	  for (TypeStore s : decls.imports) {
+	    Declarations theirs = s.fDeclarations;
+	    found = find(theirs.annotations.get(onType), key, found);
+	    found = find(theirs.annotations.get(NODE_TYPE), key, found);
+	  }
+
+	  return found;
+	}
+
+	/**
+	 * @return the type that {@link #getKeywordParameters(Type)} reports for the key, or null
+	 */
+	private static Type findKeywordParameter(Declarations decls, Type onType, String key) {
+	  Type found = find(decls.keywordParameters.get(onType), key, null);
+
+	  if (onType.isConstructor()) {
+	    found = find(decls.keywordParameters.get(onType.getAbstractDataType()), key, found);
+	  }
+
+	  for (TypeStore s : decls.imports) {
+	    Declarations theirs = s.fDeclarations;
+	    found = find(theirs.keywordParameters.get(onType), key, found);
+	    if (onType.isConstructor()) {
+	      found = find(theirs.keywordParameters.get(onType.getAbstractDataType()), key, found);
+	    }
+	  }
+
+	  return found;
+	}
+
+	/**
+	 * @return the declaration of the key, if any, since later declarations take precedence
+	 * in the index; otherwise the one found earlier
+	 */
+	private static Type find(Map<String, Type> declarations, String key, Type found) {
+	  Type here = declarations != null ? declarations.get(key) : null;
+	  return here != null ? here : found;
+	}
+
 	/**
 	 * Lookup a AliasType that was declared before by name
 	 * @param name the name of the type to lookup
 	 * @return the AliasType
 	 */
 	public Type lookupAlias(final String name) {
-	  synchronized (fAliases) {
-	    synchronized (fImports) {
-	      Type result = fAliases.get(name);
-
-	      if (result == null) {
-	        for (TypeStore i : fImports) {
-	          result = i.fAliases.get(name);
-	          if (result != null) {
-	            return result;
-	          }
-	        }
-	      }
-
-	      return result;
-	    }
-	  }
+	  return index().alias(name);
 	}
 
 	/**
@@ -430,30 +561,11 @@ public class TypeStore {
 	 * @return all types that construct the given type
 	 */
 	public Set<Type> lookupAlternatives(Type adt) {
-	  synchronized (fConstructors) {
-	    synchronized (fImports) {
-	      while (adt.isAliased()) {
-	        adt = adt.getAliased();
-	      }
-
-	      Set<Type> result = fConstructors.get(adt);
-
-	      if (result == null) {
-	        result = new HashSet<>();
-	      }
-
-	      for (TypeStore s : fImports) {
-	        if (s != this) {
-	          Set<Type> imported = s.fConstructors.get(adt);
-	          if (imported != null) {
-	            result.addAll(imported);
-	          }
-	        }
-	      }
-
-	      return result;
-	    }
+	  while (adt.isAliased()) {
+	    adt = adt.getAliased();
 	  }
+
+	  return index().alternatives(adt);
 	}
 
 	/**
@@ -464,37 +576,11 @@ public class TypeStore {
 	 * @throws a FactTypeError if the type was not declared before
 	 */
 	public Set<Type> lookupConstructor(Type adt, String constructorName) throws FactTypeUseException {
-	  synchronized (fConstructors) {
-	    synchronized (fImports) {
-	      while (adt.isAliased()) {
-	        adt = adt.getAliased();
-	      }
-	      Type parameterizedADT = fADTs.get(adt.getName());
-	      Set<Type> local = parameterizedADT != null ? fConstructors.get(parameterizedADT) : null;
-	      Set<Type> result = new HashSet<>();
-
-	      if (local != null) {
-	        for (Type cand : local) {
-	          if (cand.getName().equals(constructorName)) {
-	            result.add(cand);
-	          }
-	        }
-	      }
-
-	      for (TypeStore i : fImports) {
-	        local = i.fConstructors.get(adt);
-	        if (local != null) {
-	          for (Type cand : local) {
-	            if (cand.getName().equals(constructorName)) {
-	              result.add(cand);
-	            }
-	          }
-	        }
-	      }
-
-	      return result;
-	    }
+	  while (adt.isAliased()) {
+	    adt = adt.getAliased();
 	  }
+
+	  return index().constructors(adt, constructorName);
 	}
 
 	/**
@@ -507,7 +593,7 @@ public class TypeStore {
 	 * @throws a FactTypeError if the type was not declared before
 	 */
 	public Type lookupFirstConstructor(final String cons, final Type args) {
-	  Collection<Type> adts = allAbstractDataTypes();
+	  Collection<Type> adts = index().abstractDataTypes();
 
 	  for (Type adt : adts) {
 	    Type cand = lookupConstructor(adt, cons, args);
@@ -519,21 +605,6 @@ public class TypeStore {
 	  return null;
 	}
 
-	private Set<Type> allAbstractDataTypes() {
-	  synchronized (fADTs) {
-	    synchronized (fImports) {
-	      Set<Type> result = new HashSet<>();
-	      result.addAll(fADTs.values());
-
-	      for (TypeStore s : fImports) {
-	        result.addAll(s.fADTs.values());
-	      }
-
-	      return result;
-	    }
-	  }
-	}
-
 	/**
 	 * Lookup a ConstructorType by name, and in the context of a certain AbstractDataType
 	 * for a specific list of argument types.
@@ -564,35 +635,7 @@ public class TypeStore {
 	 * @param constructName the name of the tree node
 	 */
 	public Set<Type> lookupConstructors(String constructorName) {
-	  synchronized (fConstructors) {
-	    synchronized (fImports) {
-	      Set<Type> result = new HashSet<>();
-
-	      for (Set<Type> adt : fConstructors.values()) {
-	        for (Type cand : adt) {
-	          String name = cand.getName();
-	          if (name.equals(constructorName)) {
-	            result.add(cand);
-	          }
-	        }
-	      }
-
-	      for (TypeStore i : fImports) {
-	        if (i != this) {
-	          for (Set<Type> adt : i.fConstructors.values()) {
-	            for (Type cand : adt) {
-	              String name = cand.getName();
-	              if (name.equals(constructorName)) {
-	                result.add(cand);
-	              }
-	            }
-	          }
-	        }
-	      }
-
-	      return result;
-	    }
-	  }
+	  return index().constructors(constructorName);
 	}
 
 	/**
@@ -601,25 +644,7 @@ public class TypeStore {
 	 * @return null if such type does not exist, or the type if it was declared earlier
 	 */
 	public Type lookupAbstractDataType(String name) {
-	  synchronized (fADTs) {
-	    synchronized (fImports) {
-
-	      Type result = fADTs.get(name);
-
-	      if (result != null) {
-	        return result;
-	      }
-
-	      for (TypeStore s : fImports) {
-	        result = s.fADTs.get(name);
-	        if (result != null) {
-	          return result;
-	        }
-	      }
-
-	      return result;
-	    }
-	  }
+	  return index().abstractDataType(name);
 	}
 
 	/**
@@ -637,25 +662,19 @@ public class TypeStore {
 	    throw new IllegalAnnotationDeclaration(onType);
 	  }
 
-	  synchronized (fAnnotations) {
-	    Map<String, Type> annotationsForType = fAnnotations.get(onType);
-
-	    if (!factory.isIdentifier(key)) {
-	      throw new IllegalIdentifierException(key);
-	    }
-
-	    if (annotationsForType == null) {
-	      annotationsForType = new HashMap<>();
-	      fAnnotations.put(onType, annotationsForType);
-	    }
+	  if (!factory.isIdentifier(key)) {
+	    throw new IllegalIdentifierException(key);
+	  }
 
-	    Map<String, Type> declaredEarlier = getAnnotations(onType);
+	  synchronized (fDeclarationLock) {
+	    Declarations decls = fDeclarations;
+	    Type declaredEarlier = findAnnotation(decls, onType, key);
 
-	    if (!declaredEarlier.containsKey(key)) {
-	      annotationsForType.put(key, valueType);
+	    if (declaredEarlier == null) {
+	      fDeclarations = decls.withAnnotations(declare(decls.annotations, onType, key, valueType));
 	    }
-	    else if (!declaredEarlier.get(key).equivalent(valueType)) {
-	      throw new RedeclaredAnnotationException(key, declaredEarlier.get(key));
+	    else if (!declaredEarlier.equivalent(valueType)) {
+	      throw new RedeclaredAnnotationException(key, declaredEarlier);
 	    }
 	    // otherwise its a safe re-declaration and we do nothing
 	  }
@@ -678,29 +697,33 @@ public class TypeStore {
 	    throw new IllegalKeywordParameterDeclarationException(onType);
 	  }
 
-	  synchronized (fkeywordParameters) {
-	    Map<String, Type> kwParamsForType = fkeywordParameters.get(onType);
-
-	    if (!factory.isIdentifier(key)) {
-	      throw new IllegalIdentifierException(key);
-	    }
-
-	    if (kwParamsForType == null) {
-	      kwParamsForType = new HashMap<>();
-	      fkeywordParameters.put(onType, kwParamsForType);
-	    }
+	  if (!factory.isIdentifier(key)) {
+	    throw new IllegalIdentifierException(key);
+	  }
 
-	    Map<String, Type> declaredEarlier = getKeywordParameters(onType);
+	  synchronized (fDeclarationLock) {
+	    Declarations decls = fDeclarations;
+	    Type declaredEarlier = findKeywordParameter(decls, onType, key);
 
-	    if (!declaredEarlier.containsKey(key)) {
-	      kwParamsForType.put(key, valueType);
+	    if (declaredEarlier == null) {
+	      fDeclarations = decls.withKeywordParameters(declare(decls.keywordParameters, onType, key, valueType));
 	    } 
-	    else if (!declaredEarlier.get(key).equivalent(valueType)) {
-	      throw new RedeclaredKeywordParameterException(key, declaredEarlier.get(key));
+	    else if (!declaredEarlier.equivalent(valueType)) {
+	      throw new RedeclaredKeywordParameterException(key, declaredEarlier);
 	    }
 	    // otherwise its a safe re-declaration and we do nothing
 	  }
 	}
+
+	private static ImmutableMap<Type, ImmutableMap<String, Type>> declare(ImmutableMap<Type, ImmutableMap<String, Type>> declarations, Type onType, String key, Type valueType) {
+	  ImmutableMap<String, Type> forType = declarations.get(onType);
+
+	  if (forType == null) {
+	    forType = TrieMap.of();
+	  }
+
+	  return declarations.__put(onType, forType.__put(key, valueType));
+	}
 	
 	// TODO: aliases are right now only expanded in declareConstructor, but this should also be done
 	// in at least declareAlias, declareAnnotation and declareKeywordParameters.
@@ -844,94 +867,28 @@ public class TypeStore {
 	 * for all the node type.
 	 * 
 	 * @param onType 
-	 * @return a map of all annotations declared for onType
+	 * @return an unmodifiable map of all annotations declared for onType
 	 */
 	public Map<String, Type> getAnnotations(Type onType) {
 	  if (!onType.isSubtypeOf(NODE_TYPE)) {
 	    return Collections.<String,Type>emptyMap();
 	  }
 
-	  synchronized(fAnnotations) {
-	    synchronized (fImports) {
-	      Map<String, Type> result = new HashMap<>();
-
-	      if (onType != NODE_TYPE) {
-	        Map<String, Type> local = fAnnotations.get(onType);
-	        if (local != null) {
-	          result.putAll(local); 
-	        }
-	      }
-
-	      Map<String, Type> onNode = fAnnotations.get(NODE_TYPE);
-	      if (onNode != null) {
-	        result.putAll(onNode);
-	      }
-
-
-	      for (TypeStore s : fImports) {
-	        Map<String, Type> local = s.fAnnotations.get(onType);
-	        if (local != null) {
-	          result.putAll(local);
-	        }
-
-	        onNode = s.fAnnotations.get(NODE_TYPE);
-	        if (onNode != null) {
-	          result.putAll(onNode);
-	        }
-	      }
-
-	      return result;
-	    }
-	  }
+	  return index().annotations(onType);
 	}
 
 	/**
 	 * Locates all declared keyword parameters for a constructor.
 	 * 
 	 * @param onType 
-	 * @return a map of all keyword parameters declared for the onType constructor
+	 * @return an unmodifiable map of all keyword parameters declared for the onType constructor
 	 */
 	public Map<String, Type> getKeywordParameters(Type onType) {
 	  if (!onType.isConstructor() && !onType.isAbstractData()) {
 	    return Collections.<String,Type>emptyMap();
 	  }
 
-	  synchronized(fkeywordParameters) {
-	    synchronized (fImports) {
-	      Map<String, Type> result = new HashMap<>();
-
-	      Map<String, Type> local = fkeywordParameters.get(onType);
-	      if (local != null) {
-	    	  result.putAll(local); 
-	      }
-	      
-	      if (onType.isConstructor()) {
-	    	  local = fkeywordParameters.get(onType.getAbstractDataType());
-	    	  if (local != null) {
-	    		  result.putAll(local);
-	    	  }
-	      }
-
-	      for (TypeStore s : fImports) {
-	    	  if (s.fkeywordParameters == null) {
-	    		  continue;
-	    	  }
-	    	  Map<String, Type> here = s.fkeywordParameters.get(onType);
-	    	  if (here != null) {
-	    		  result.putAll(here);
-	    	  }
-	    	  
-	    	  if (onType.isConstructor()) {
-		    	  here = s.fkeywordParameters.get(onType.getAbstractDataType());
-		    	  if (here != null) {
-		    		  result.putAll(here);
-		    	  }
-		      }
-	      }
-
-	      return result;
-	    }
-	  }
+	  return index().keywordParameters(onType);
 	}
 
 	/**
@@ -942,14 +899,7 @@ public class TypeStore {
 	 * @return the type of the requested annotation value or null if none exists
 	 */
 	public Type getAnnotationType(Type onType, String key) {
-	  Map<String, Type> annotationsFor = getAnnotations(onType);
-	  Type result = annotationsFor.get(key);
-
-	  if (result != null) {
-	    return result;
-	  }
-
-	  return null;
+	  return getAnnotations(onType).get(key);
 	}
 
 	/**
@@ -970,46 +920,345 @@ public class TypeStore {
 			return false;
 		}
 
-		synchronized(fkeywordParameters) {
-			synchronized (fImports) {
-				Map<String, Type> local = fkeywordParameters.get(onType);
-				if (local != null && local.size() > 0) {
-					return true; 
-				}
+		Index index = index();
 
-				for (TypeStore s : fImports) {
-					if (s.fkeywordParameters == null) {
-						continue;
-					}
-					
-					Map<String, Type> here = s.fkeywordParameters.get(onType);
-					if (here != null && here.size() > 0) {
-						return true;
-					}
-				}
+		Map<String, Type> local = index.local.keywordParameters.get(onType);
+		if (local != null && local.size() > 0) {
+			return true; 
+		}
 
-				return false;
+		for (Declarations s : index.imported) {
+			Map<String, Type> here = s.keywordParameters.get(onType);
+			if (here != null && here.size() > 0) {
+				return true;
 			}
 		}
+
+		return false;
 	}
 
 	public Type getAlias(String name) {
-	  synchronized (fAliases) {
-	    synchronized (fImports) {
-	      Type result = fAliases.get(name);
+	  return lookupAlias(name);
+	}
 
-	      if (result != null) {
-	        return result;
+	/**
+	 * @return the memo of {@link TypeReachability} for a set of target types, which
+	 * is dropped together with the index as soon as the declarations change
+	 */
+	/*package*/ ConcurrentHashMap<Type, Boolean> reachabilityMemo(Set<Type> targets) {
+	  return index().reachability(targets);
+	}
+
+	/**
+	 * An immutable snapshot of the declarations in a store.
+	 */
+	private static final class Declarations {
+	  static final Declarations EMPTY = new Declarations(
+	      TrieMap.<String, Type>of(),
+	      TrieMap.<String, Type>of(),
+	      TrieMap.<Type, ImmutableSet<Type>>of(),
+	      TrieMap.<Type, ImmutableMap<String, Type>>of(),
+	      TrieMap.<Type, ImmutableMap<String, Type>>of(),
+	      new TypeStore[0]);
+
+	  final ImmutableMap<String, Type> aliases;
+	  final ImmutableMap<String, Type> adts;
+	  final ImmutableMap<Type, ImmutableSet<Type>> constructors;
+	  final ImmutableMap<Type, ImmutableMap<String, Type>> annotations;
+	  final ImmutableMap<Type, ImmutableMap<String, Type>> keywordParameters;
+	  final TypeStore[] imports;
+
+	  Declarations(ImmutableMap<String, Type> aliases,
+	      ImmutableMap<String, Type> adts,
+	      ImmutableMap<Type, ImmutableSet<Type>> constructors,
+	      ImmutableMap<Type, ImmutableMap<String, Type>> annotations,
+	      ImmutableMap<Type, ImmutableMap<String, Type>> keywordParameters,
+	      TypeStore[] imports) {
+	    this.aliases = aliases;
+	    this.adts = adts;
+	    this.constructors = constructors;
+	    this.annotations = annotations;
+	    this.keywordParameters = keywordParameters;
+	    this.imports = imports;
+	  }
+
+	  Declarations withAliases(ImmutableMap<String, Type> newAliases) {
+	    return new Declarations(newAliases, adts, constructors, annotations, keywordParameters, imports);
+	  }
+
+	  Declarations withAbstractDataTypes(ImmutableMap<String, Type> newAdts, ImmutableMap<Type, ImmutableSet<Type>> newConstructors) {
+	    return new Declarations(aliases, newAdts, newConstructors, annotations, keywordParameters, imports);
+	  }
+
+	  Declarations withAnnotations(ImmutableMap<Type, ImmutableMap<String, Type>> newAnnotations) {
+	    return new Declarations(aliases, adts, constructors, newAnnotations, keywordParameters, imports);
+	  }
+
+	  Declarations withKeywordParameters(ImmutableMap<Type, ImmutableMap<String, Type>> newKeywordParameters) {
+	    return new Declarations(aliases, adts, constructors, annotations, newKeywordParameters, imports);
+	  }
+
+	  Declarations withImports(TypeStore[] newImports) {
+	    return newImports == imports ? this : new Declarations(aliases, adts, constructors, annotations, keywordParameters, newImports);
+	  }
+	}
+
+	/**
+	 * The flattened view on the snapshot of a store and the snapshots of its imports,
+	 * which memoizes the results of lookups. An index is only consulted as long as
+	 * none of these snapshots were replaced.
+	 */
+	private final class Index {
+	  final Declarations local;
+	  final Declarations[] imported;
+
+	  private final ConcurrentHashMap<String, Object> aliases = new ConcurrentHashMap<>();
+	  private final ConcurrentHashMap<String, Object> adts = new ConcurrentHashMap<>();
+	  private final ConcurrentHashMap<Type, Set<Type>> alternatives = new ConcurrentHashMap<>();
+	  private final ConcurrentHashMap<Type, ConcurrentHashMap<String, Set<Type>>> constructorsByAdt = new ConcurrentHashMap<>();
+	  private final ConcurrentHashMap<String, Set<Type>> constructorsByName = new ConcurrentHashMap<>();
+	  private final ConcurrentHashMap<Type, Map<String, Type>> annotations = new ConcurrentHashMap<>();
+	  private final ConcurrentHashMap<Type, Map<String, Type>> keywordParameters = new ConcurrentHashMap<>();
+	  private final ConcurrentHashMap<Set<Type>, ConcurrentHashMap<Type, Boolean>> reachability = new ConcurrentHashMap<>();
+	  private volatile Set<Type> allAdts;
+
+	  Index(Declarations local) {
+	    this.local = local;
+	    this.imported = new Declarations[local.imports.length];
+
+	    for (int i = 0; i < imported.length; i++) {
+	      imported[i] = local.imports[i].fDeclarations;
+	    }
+	  }
+
+	  boolean isCurrent(Declarations decls) {
+	    if (decls != local) {
+	      return false;
+	    }
+
+	    for (int i = 0; i < imported.length; i++) {
+	      if (local.imports[i].fDeclarations != imported[i]) {
+	        return false;
+	      }
+	    }
+
+	    return true;
+	  }
+
+	  ConcurrentHashMap<Type, Boolean> reachability(Set<Type> targets) {
+	    ConcurrentHashMap<Type, Boolean> result = reachability.get(targets);
+
+	    if (result == null) {
+	      result = new ConcurrentHashMap<>();
+	      ConcurrentHashMap<Type, Boolean> other = reachability.putIfAbsent(targets, result);
+	      if (other != null) {
+	        result = other;
+	      }
+	    }
+
+	    return result;
+	  }
+
+	  private boolean isSelf(int i) {
+	    return local.imports[i] == TypeStore.this;
+	  }
+
+	  Type alias(String name) {
+	    Object result = aliases.get(name);
+
+	    if (result == null) {
+	      Type found = local.aliases.get(name);
+
+	      for (int i = 0; found == null && i < imported.length; i++) {
+	        found = imported[i].aliases.get(name);
 	      }
 
-	      for (TypeStore s : fImports) {
-	        result = s.fAliases.get(name);
-	        if (result != null) {
-	          return result;
+	      result = found != null ? found : NOT_FOUND;
+	      aliases.putIfAbsent(name, result);
+	    }
+
+	    return result != NOT_FOUND ? (Type) result : null;
+	  }
+
+	  Type abstractDataType(String name) {
+	    Object result = adts.get(name);
+
+	    if (result == null) {
+	      Type found = local.adts.get(name);
+
+	      for (int i = 0; found == null && i < imported.length; i++) {
+	        found = imported[i].adts.get(name);
+	      }
+
+	      result = found != null ? found : NOT_FOUND;
+	      adts.putIfAbsent(name, result);
+	    }
+
+	    return result != NOT_FOUND ? (Type) result : null;
+	  }
+
+	  Set<Type> abstractDataTypes() {
+	    Set<Type> result = allAdts;
+
+	    if (result == null) {
+	      Set<Type> found = new HashSet<>(local.adts.values());
+
+	      for (Declarations s : imported) {
+	        found.addAll(s.adts.values());
+	      }
+
+	      result = Collections.unmodifiableSet(found);
+	      allAdts = result;
+	    }
+
+	    return result;
+	  }
+
+	  Set<Type> alternatives(Type adt) {
+	    Set<Type> result = alternatives.get(adt);
+
+	    if (result == null) {
+	      ImmutableSet<Type> found = local.constructors.get(adt);
+
+	      if (found == null) {
+	        found = TrieSet.of();
+	      }
+
+	      for (int i = 0; i < imported.length; i++) {
+	        if (!isSelf(i)) {
+	          ImmutableSet<Type> theirs = imported[i].constructors.get(adt);
+	          if (theirs != null) {
+	            found = found.__insertAll(theirs);
+	          }
+	        }
+	      }
+
+	      result = found;
+	      alternatives.putIfAbsent(adt, result);
+	    }
+
+	    return result;
+	  }
+
+	  Set<Type> constructors(Type adt, String name) {
+	    ConcurrentHashMap<String, Set<Type>> byName = constructorsByAdt.get(adt);
+
+	    if (byName == null) {
+	      byName = new ConcurrentHashMap<>();
+	      ConcurrentHashMap<String, Set<Type>> other = constructorsByAdt.putIfAbsent(adt, byName);
+	      if (other != null) {
+	        byName = other;
+	      }
+	    }
+
+	    Set<Type> result = byName.get(name);
+
+	    if (result == null) {
+	      Set<Type> found = new HashSet<>();
+	      Type parameterizedADT = local.adts.get(adt.getName());
+
+	      if (parameterizedADT != null) {
+	        collectNamed(local.constructors.get(parameterizedADT), name, found);
+	      }
+
+	      for (Declarations s : imported) {
+	        collectNamed(s.constructors.get(adt), name, found);
+	      }
+
+	      result = Collections.unmodifiableSet(found);
+	      byName.putIfAbsent(name, result);
+	    }
+
+	    return result;
+	  }
+
+	  Set<Type> constructors(String name) {
+	    Set<Type> result = constructorsByName.get(name);
+
+	    if (result == null) {
+	      Set<Type> found = new HashSet<>();
+
+	      for (Set<Type> adt : local.constructors.values()) {
+	        collectNamed(adt, name, found);
+	      }
+
+	      for (int i = 0; i < imported.length; i++) {
+	        if (!isSelf(i)) {
+	          for (Set<Type> adt : imported[i].constructors.values()) {
+	            collectNamed(adt, name, found);
+	          }
+	        }
+	      }
+
+	      result = Collections.unmodifiableSet(found);
+	      constructorsByName.putIfAbsent(name, result);
+	    }
+
+	    return result;
+	  }
+
+	  private void collectNamed(Set<Type> candidates, String name, Set<Type> result) {
+	    if (candidates != null) {
+	      for (Type cand : candidates) {
+	        if (cand.getName().equals(name)) {
+	          result.add(cand);
+	        }
+	      }
+	    }
+	  }
+
+	  Map<String, Type> annotations(Type onType) {
+	    Map<String, Type> result = annotations.get(onType);
+
+	    if (result == null) {
+	      Map<String, Type> found = new HashMap<>();
+
+	      if (onType != NODE_TYPE) {
+	        putAll(found, local.annotations.get(onType));
+	      }
+
+	      putAll(found, local.annotations.get(NODE_TYPE));
+
+	      for (Declarations s : imported) {
+	        putAll(found, s.annotations.get(onType));
+	        putAll(found, s.annotations.get(NODE_TYPE));
+	      }
+
+	      result = Collections.unmodifiableMap(found);
+	      annotations.putIfAbsent(onType, result);
+	    }
+
+	    return result;
+	  }
+
+	  Map<String, Type> keywordParameters(Type onType) {
+	    Map<String, Type> result = keywordParameters.get(onType);
+
+	    if (result == null) {
+	      Map<String, Type> found = new HashMap<>();
+
+	      putAll(found, local.keywordParameters.get(onType));
+	      if (onType.isConstructor()) {
+	        putAll(found, local.keywordParameters.get(onType.getAbstractDataType()));
+	      }
+
+	      for (Declarations s : imported) {
+	        putAll(found, s.keywordParameters.get(onType));
+	        if (onType.isConstructor()) {
+	          putAll(found, s.keywordParameters.get(onType.getAbstractDataType()));
 	        }
 	      }
 
-	      return null;
+	      result = Collections.unmodifiableMap(found);
+	      keywordParameters.putIfAbsent(onType, result);
+	    }
+
+	    return result;
+	  }
+
+	  private void putAll(Map<String, Type> result, Map<String, Type> declarations) {
+	    if (declarations != null) {
+	      result.putAll(declarations);
 	    }
 	  }
 	}
@@ -49,12 +49,12 @@ package org.eclipse.imp.pdb.facts.type;
   }
 
   @Override
-  public Type lub(Type other) {
+  protected Type computeLub(Type other) {
     return other.lubWithValue(this);
   }
 
   @Override
-  public Type glb(Type type) {
+  protected Type computeGlb(Type type) {
     return type.glbWithValue(this);
   }
   
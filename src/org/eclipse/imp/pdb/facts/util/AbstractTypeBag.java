@@ -13,18 +13,46 @@ package org.eclipse.imp.pdb.facts.util;
 
 import static org.eclipse.imp.pdb.facts.util.AbstractSpecialisedImmutableMap.mapOf;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeFactory;
 
 /**
  * Stores mapping (Type -> Integer) to keep track of a collection's element
  * types. The least upper bound type of is calculated on basis of the map keys.
+ * <p>
+ * Collections typically contain values of only a handful of distinct types, so
+ * bags with up to {@link #MAX_INLINE} types keep them in small arrays with
+ * primitive counts, and only larger bags spill into a persistent map.
  */
 public abstract class AbstractTypeBag implements Cloneable {
 
+	/**
+	 * The maximal number of distinct types that is stored inline.
+	 */
+	private static final int MAX_INLINE = 8;
+
 	public abstract AbstractTypeBag increase(Type t);
 
 	public abstract AbstractTypeBag decrease(Type t);
+
+	/**
+	 * Bulk version of {@link #increase(Type)}: adds the counts of all types of
+	 * the other bag to the receiver. The label of the receiver is kept.
+	 */
+	public abstract AbstractTypeBag merge(AbstractTypeBag other);
+
+	/**
+	 * Bulk version of {@link #decrease(Type)}: takes the counts of all types of
+	 * the other bag away from the receiver. The label of the receiver is kept.
+	 *
+	 * @throws IllegalStateException when the other bag contains a type more often
+	 * than the receiver.
+	 */
+	public abstract AbstractTypeBag subtract(AbstractTypeBag other);
 	
 	@Deprecated
 	public abstract AbstractTypeBag setLabel(String label);	
@@ -36,12 +64,292 @@ public abstract class AbstractTypeBag implements Cloneable {
 
 	public abstract AbstractTypeBag clone();
 	
+	/**
+	 * Adds the counts of this bag, multiplied by the given sign, to counts.
+	 */
+	/*package*/ abstract void addTo(Counts counts, int sign);
+
+	/**
+	 * @return the least upper bound if it was computed already, or null
+	 */
+	/*package*/ abstract Type knownLub();
+
 	public static AbstractTypeBag of(Type... ts) {
 		return of(null, ts);
 	}
 	
 	public static AbstractTypeBag of(String label, Type... ts) {
-		return new TypeBag(label, ts);
+		if (ts.length == 0) {
+			return new SmallTypeBag(label, new Type[0], new int[0], null);
+		}
+
+		Counts counts = new Counts();
+		for (Type t : ts) {
+			counts.add(t, 1);
+		}
+		return counts.freeze(label, null);
+	}
+
+	private static IllegalStateException notPresent(Type t) {
+		return new IllegalStateException(String.format("Type '%s' was not present.", t));
+	}
+
+	/**
+	 * Mutable counts, used to build a new bag in bulk.
+	 */
+	/*package*/ static final class Counts {
+		private Type[] types = new Type[MAX_INLINE];
+		private int[] counts = new int[MAX_INLINE];
+		private int size = 0;
+		private boolean reachedZero = false;
+
+		/**
+		 * Positions of the types, once there are too many to search linearly.
+		 */
+		private Map<Type, Integer> index;
+
+		private int indexOf(Type t) {
+			if (index != null) {
+				Integer i = index.get(t);
+				return i != null ? i : -1;
+			}
+
+			for (int i = 0; i < size; i++) {
+				if (types[i] == t || types[i].equals(t)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void add(Type t, int delta) {
+			int i = indexOf(t);
+
+			if (i >= 0) {
+				int count = counts[i] + delta;
+				if (count < 0) {
+					throw notPresent(t);
+				}
+				reachedZero |= count == 0;
+				counts[i] = count;
+			}
+			else if (delta < 0) {
+				throw notPresent(t);
+			}
+			else {
+				if (size == types.length) {
+					types = Arrays.copyOf(types, size * 2);
+					counts = Arrays.copyOf(counts, size * 2);
+				}
+
+				types[size] = t;
+				counts[size] = delta;
+
+				if (index != null) {
+					index.put(t, size);
+				}
+				else if (size == MAX_INLINE) {
+					index = new HashMap<>();
+					for (int j = 0; j <= size; j++) {
+						index.put(types[j], j);
+					}
+				}
+
+				size++;
+			}
+		}
+
+		/**
+		 * @param lub the least upper bound of the counted types, if known. It is
+		 * dropped when a type was taken away entirely.
+		 */
+		AbstractTypeBag freeze(String label, Type lub) {
+			int distinct = 0;
+			for (int i = 0; i < size; i++) {
+				if (counts[i] > 0) {
+					distinct++;
+				}
+			}
+
+			if (reachedZero) {
+				lub = null;
+			}
+
+			if (distinct <= MAX_INLINE) {
+				Type[] resultTypes = new Type[distinct];
+				int[] resultCounts = new int[distinct];
+
+				for (int i = 0, j = 0; i < size; i++) {
+					if (counts[i] > 0) {
+						resultTypes[j] = types[i];
+						resultCounts[j] = counts[i];
+						j++;
+					}
+				}
+
+				return new SmallTypeBag(label, resultTypes, resultCounts, lub);
+			}
+
+			ImmutableMap<Type, Integer> countMap = mapOf();
+			for (int i = 0; i < size; i++) {
+				if (counts[i] > 0) {
+					countMap = countMap.__put(types[i], counts[i]);
+				}
+			}
+			return new TypeBag(label, countMap, lub);
+		}
+	}
+
+	/**
+	 * Implementation of <@link AbstractTypeBag/> for a small number of distinct
+	 * types, stored in parallel arrays. Increasing the count of a type that is
+	 * already present only copies the array of counts.
+	 */
+	private static class SmallTypeBag extends AbstractTypeBag {
+		private final String label;
+		private final Type[] types;
+		private final int[] counts;
+
+		private Type cachedLub;
+
+		private SmallTypeBag(String label, Type[] types, int[] counts, Type cachedLub) {
+			this.label = label;
+			this.types = types;
+			this.counts = counts;
+			this.cachedLub = cachedLub;
+		}
+
+		private int indexOf(Type t) {
+			for (int i = 0; i < types.length; i++) {
+				if (types[i] == t || types[i].equals(t)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public AbstractTypeBag increase(Type t) {
+			final int i = indexOf(t);
+
+			if (i >= 0) {
+				final int[] newCounts = counts.clone();
+				newCounts[i]++;
+				return new SmallTypeBag(label, types, newCounts, cachedLub);
+			}
+
+			final Type newCachedLub = cachedLub != null ? cachedLub.lub(t) : null;
+
+			if (types.length == MAX_INLINE) {
+				ImmutableMap<Type, Integer> countMap = mapOf();
+				for (int j = 0; j < types.length; j++) {
+					countMap = countMap.__put(types[j], counts[j]);
+				}
+				return new TypeBag(label, countMap.__put(t, 1), newCachedLub);
+			}
+
+			final Type[] newTypes = Arrays.copyOf(types, types.length + 1);
+			final int[] newCounts = Arrays.copyOf(counts, counts.length + 1);
+			newTypes[types.length] = t;
+			newCounts[counts.length] = 1;
+			return new SmallTypeBag(label, newTypes, newCounts, newCachedLub);
+		}
+
+		@Override
+		public AbstractTypeBag decrease(Type t) {
+			final int i = indexOf(t);
+
+			if (i < 0) {
+				throw notPresent(t);
+			}
+
+			if (counts[i] > 1) {
+				// update and decrease count; lub stays the same
+				final int[] newCounts = counts.clone();
+				newCounts[i]--;
+				return new SmallTypeBag(label, types, newCounts, cachedLub);
+			}
+
+			// count was zero, thus remove entry and invalidate cached type
+			final Type[] newTypes = new Type[types.length - 1];
+			final int[] newCounts = new int[counts.length - 1];
+			System.arraycopy(types, 0, newTypes, 0, i);
+			System.arraycopy(types, i + 1, newTypes, i, newTypes.length - i);
+			System.arraycopy(counts, 0, newCounts, 0, i);
+			System.arraycopy(counts, i + 1, newCounts, i, newCounts.length - i);
+			return new SmallTypeBag(label, newTypes, newCounts, null);
+		}
+
+		@Override
+		public AbstractTypeBag merge(AbstractTypeBag other) {
+			final Counts result = new Counts();
+			addTo(result, 1);
+			other.addTo(result, 1);
+
+			final Type otherLub = other.knownLub();
+			return result.freeze(label, cachedLub != null && otherLub != null ? cachedLub.lub(otherLub) : null);
+		}
+
+		@Override
+		public AbstractTypeBag subtract(AbstractTypeBag other) {
+			final Counts result = new Counts();
+			addTo(result, 1);
+			other.addTo(result, -1);
+			return result.freeze(label, cachedLub);
+		}
+
+		@Override
+		/*package*/ void addTo(Counts result, int sign) {
+			for (int i = 0; i < types.length; i++) {
+				result.add(types[i], sign * counts[i]);
+			}
+		}
+
+		@Override
+		/*package*/ Type knownLub() {
+			return cachedLub;
+		}
+
+		@Deprecated
+		@Override
+		public AbstractTypeBag setLabel(String label) {
+			return new SmallTypeBag(label, types, counts, cachedLub);
+		}
+
+		@Deprecated
+		@Override
+		public String getLabel() {
+			return label;
+		}
+
+		@Override
+		public Type lub() {
+			if (cachedLub == null) {
+				Type inferredLubType = TypeFactory.getInstance().voidType();
+				for (Type t : types) {
+					inferredLubType = inferredLubType.lub(t);
+				}
+				cachedLub = inferredLubType;
+			}
+			return cachedLub;
+		}
+
+		@Override
+		public AbstractTypeBag clone() {
+			return new SmallTypeBag(label, types, counts, null);
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder b = new StringBuilder("{");
+			for (int i = 0; i < types.length; i++) {
+				if (i > 0) {
+					b.append(", ");
+				}
+				b.append(types[i]).append('=').append(counts[i]);
+			}
+			return b.append('}').toString();
+		}
 	}
 
 	/**
@@ -64,19 +372,6 @@ public abstract class AbstractTypeBag implements Cloneable {
 			this.cachedLub = cachedLub;
 		}
 		
-		private TypeBag(Type... ts) {
-			this(null, ts);
-		}
-		
-		private TypeBag(String label, Type... ts) {
-			this.label = label;
-			this.countMap = mapOf();
-			
-			for (Type t : ts) {
-				this.increase(t);
-			}
-		}
-		
 		@Override
 		public AbstractTypeBag increase(Type t) {	
 			final Integer oldCount = countMap.get(t);
@@ -103,7 +398,7 @@ public abstract class AbstractTypeBag implements Cloneable {
 			final Integer oldCount = countMap.get(t);
 			
 			if (oldCount == null) {
-				throw new IllegalStateException(String.format("Type '%s' was not present.", t));
+				throw notPresent(t);
 			} else if (oldCount > 1) {
 				// update and decrease count; lub stays the same
 				final ImmutableMap<Type, Integer> newCountMap = countMap.__put(t, oldCount - 1);
@@ -114,6 +409,36 @@ public abstract class AbstractTypeBag implements Cloneable {
 				return new TypeBag(label, newCountMap);
 			}			
 		}
+
+		@Override
+		public AbstractTypeBag merge(AbstractTypeBag other) {
+			final Counts result = new Counts();
+			addTo(result, 1);
+			other.addTo(result, 1);
+
+			final Type otherLub = other.knownLub();
+			return result.freeze(label, cachedLub != null && otherLub != null ? cachedLub.lub(otherLub) : null);
+		}
+
+		@Override
+		public AbstractTypeBag subtract(AbstractTypeBag other) {
+			final Counts result = new Counts();
+			addTo(result, 1);
+			other.addTo(result, -1);
+			return result.freeze(label, cachedLub);
+		}
+
+		@Override
+		/*package*/ void addTo(Counts result, int sign) {
+			for (Map.Entry<Type, Integer> entry : countMap.entrySet()) {
+				result.add(entry.getKey(), sign * entry.getValue());
+			}
+		}
+
+		@Override
+		/*package*/ Type knownLub() {
+			return cachedLub;
+		}
 		
 		@Deprecated
 		@Override
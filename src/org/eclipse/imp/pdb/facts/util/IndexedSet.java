@@ -46,6 +46,25 @@ public final class IndexedSet<E>{
 		load = 0;
 	}
 	
+	/**
+	 * Copy constructor. The copy assigns the same identifiers as the original,
+	 * and both can be extended independently afterwards.
+	 * 
+	 * @param other
+	 *            The set to copy.
+	 */
+	public IndexedSet(IndexedSet<E> other){
+		super();
+		
+		modSize = other.modSize;
+		hashMask = other.hashMask;
+		data = other.data.clone(); // The entries themselves are immutable.
+		
+		threshold = other.threshold;
+		
+		load = other.load;
+	}
+	
 	private void rehash(){
 		modSize++;
 		int tableSize = 1 << modSize;
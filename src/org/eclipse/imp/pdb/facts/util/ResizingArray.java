@@ -43,6 +43,18 @@ public class ResizingArray<E>{
 		content = (E[]) new Object[initialSize];
 	}
 	
+	/**
+	 * Copy constructor.
+	 * 
+	 * @param other
+	 *            The array to copy.
+	 */
+	public ResizingArray(ResizingArray<E> other){
+		super();
+		
+		content = other.content.clone();
+	}
+	
 	private void ensureCapacity(int max){
 		if(max >= content.length){
 			E[] newContent = (E[]) new Object[max << 2];
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.imp.pdb.facts.IMap;
+import org.eclipse.imp.pdb.facts.ISet;
+import org.eclipse.imp.pdb.facts.ISourceLocation;
+import org.eclipse.imp.pdb.facts.IValue;
+
+/**
+ * Immutable interval index over a collection of source locations, answering
+ * containment and overlap queries in O(log n + k) instead of a full scan.
+ * <br>
+ * Locations are grouped per file (their {@link ISourceLocation#top() top}) and
+ * each group is an augmented interval tree laid out implicitly over the array of
+ * locations sorted by offset: the node for the range [lo, hi) sits at the
+ * midpoint and records the maximal end offset found in its range. Locations
+ * without offset/length information cover their whole file.
+ * <br>
+ * Indices built through {@link #of(ISet)} and {@link #ofKeys(IMap)} are cached
+ * for as long as the collection they were built from is reachable.
+ */
+public final class SourceLocationIndex {
+	private static final Map<IValue, SourceLocationIndex> cache = Collections.synchronizedMap(new WeakHashMap<IValue, SourceLocationIndex>());
+
+	private static final SourceLocationIndex EMPTY = new SourceLocationIndex(Collections.<ISourceLocation, FileIndex>emptyMap());
+
+	private final Map<ISourceLocation, FileIndex> files;
+
+	private SourceLocationIndex(Map<ISourceLocation, FileIndex> files) {
+		this.files = files;
+	}
+
+	/**
+	 * @return the index over the source locations in the given set; elements that are
+	 * not source locations are ignored.
+	 */
+	public static SourceLocationIndex of(ISet set) {
+		SourceLocationIndex result = cache.get(set);
+
+		if (result == null) {
+			result = build(set.iterator());
+			cache.put(set, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the index over the source locations in the key set of the given map; keys
+	 * that are not source locations are ignored.
+	 */
+	public static SourceLocationIndex ofKeys(IMap map) {
+		SourceLocationIndex result = cache.get(map);
+
+		if (result == null) {
+			result = build(map.iterator());
+			cache.put(map, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Builds an index without caching it.
+	 */
+	public static SourceLocationIndex build(Iterator<? extends IValue> values) {
+		Map<ISourceLocation, List<ISourceLocation>> groups = new HashMap<>();
+
+		while (values.hasNext()) {
+			IValue v = values.next();
+
+			if (v instanceof ISourceLocation) {
+				ISourceLocation loc = (ISourceLocation) v;
+				ISourceLocation file = loc.top();
+				List<ISourceLocation> group = groups.get(file);
+
+				if (group == null) {
+					group = new ArrayList<>();
+					groups.put(file, group);
+				}
+
+				group.add(loc);
+			}
+		}
+
+		if (groups.isEmpty()) {
+			return EMPTY;
+		}
+
+		Map<ISourceLocation, FileIndex> files = new HashMap<>(groups.size() * 4 / 3 + 1);
+		for (Map.Entry<ISourceLocation, List<ISourceLocation>> e : groups.entrySet()) {
+			files.put(e.getKey(), new FileIndex(e.getValue()));
+		}
+
+		return new SourceLocationIndex(files);
+	}
+
+	/**
+	 * @return the number of indexed locations
+	 */
+	public int size() {
+		int result = 0;
+		for (FileIndex f : files.values()) {
+			result += f.locs.length;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the locations in the file of <code>file</code> whose range contains
+	 * the character at <code>offset</code>, ordered by their offset.
+	 */
+	public List<ISourceLocation> containing(ISourceLocation file, int offset) {
+		return query(file, offset, offset + 1);
+	}
+
+	/**
+	 * @return the locations that share at least one character with <code>loc</code>,
+	 * ordered by their offset.
+	 */
+	public List<ISourceLocation> overlapping(ISourceLocation loc) {
+		if (!loc.hasOffsetLength()) {
+			return query(loc, Integer.MAX_VALUE - 1, 1);
+		}
+		return query(loc, loc.getOffset() + loc.getLength() - 1, loc.getOffset() + 1);
+	}
+
+	/**
+	 * @return the locations that enclose <code>loc</code>, including <code>loc</code>
+	 * itself if it is indexed, ordered by their offset (outermost first for nested
+	 * locations).
+	 */
+	public List<ISourceLocation> enclosing(ISourceLocation loc) {
+		if (!loc.hasOffsetLength()) {
+			return query(loc, 0, Integer.MAX_VALUE);
+		}
+		return query(loc, loc.getOffset(), loc.getOffset() + loc.getLength());
+	}
+
+	/**
+	 * Collects the locations with <code>begin &lt;= maxBegin</code> and
+	 * <code>end &gt;= minEnd</code>.
+	 */
+	private List<ISourceLocation> query(ISourceLocation loc, int maxBegin, int minEnd) {
+		FileIndex f = files.get(loc.top());
+
+		if (f == null) {
+			return Collections.emptyList();
+		}
+
+		List<ISourceLocation> result = new ArrayList<>();
+		f.collect(0, f.locs.length, maxBegin, minEnd, result);
+		return result;
+	}
+
+	private static int begin(ISourceLocation loc) {
+		return loc.hasOffsetLength() ? loc.getOffset() : 0;
+	}
+
+	private static int end(ISourceLocation loc) {
+		return loc.hasOffsetLength() ? loc.getOffset() + loc.getLength() : Integer.MAX_VALUE;
+	}
+
+	private static final class FileIndex {
+		private final ISourceLocation[] locs;
+		private final int[] begin;
+		private final int[] end;
+		private final int[] maxEnd;
+
+		FileIndex(List<ISourceLocation> group) {
+			locs = group.toArray(new ISourceLocation[group.size()]);
+			Arrays.sort(locs, new Comparator<ISourceLocation>() {
+				@Override
+				public int compare(ISourceLocation a, ISourceLocation b) {
+					int ba = begin(a), bb = begin(b);
+					if (ba != bb) {
+						return ba < bb ? -1 : 1;
+					}
+					// longer locations first, such that enclosing locations precede their children
+					int ea = end(a), eb = end(b);
+					return ea == eb ? 0 : (ea > eb ? -1 : 1);
+				}
+			});
+
+			begin = new int[locs.length];
+			end = new int[locs.length];
+			maxEnd = new int[locs.length];
+
+			for (int i = 0; i < locs.length; i++) {
+				begin[i] = begin(locs[i]);
+				end[i] = end(locs[i]);
+			}
+
+			augment(0, locs.length);
+		}
+
+		private int augment(int lo, int hi) {
+			if (lo >= hi) {
+				return Integer.MIN_VALUE;
+			}
+
+			int mid = (lo + hi) >>> 1;
+			int max = Math.max(end[mid], Math.max(augment(lo, mid), augment(mid + 1, hi)));
+			maxEnd[mid] = max;
+			return max;
+		}
+
+		private void collect(int lo, int hi, int maxBegin, int minEnd, List<ISourceLocation> result) {
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+
+				if (maxEnd[mid] < minEnd) {
+					// nothing in this subtree reaches far enough
+					return;
+				}
+
+				collect(lo, mid, maxBegin, minEnd, result);
+
+				if (begin[mid] > maxBegin) {
+					// the right subtree only starts later
+					return;
+				}
+
+				if (end[mid] >= minEnd) {
+					result.add(locs[mid]);
+				}
+
+				lo = mid + 1;
+			}
+		}
+	}
+}
@@ -11,6 +11,9 @@
 *******************************************************************************/
 package org.eclipse.imp.pdb.facts.visitors;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import org.eclipse.imp.pdb.facts.IConstructor;
 import org.eclipse.imp.pdb.facts.IExternalValue;
 import org.eclipse.imp.pdb.facts.IList;
@@ -23,84 +26,161 @@ import org.eclipse.imp.pdb.facts.ISetWriter;
 import org.eclipse.imp.pdb.facts.ITuple;
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.type.TypeReachability;
 
 /**
  * This visitor will apply another visitor in a bottom-up fashion to an IValue 
- *
+ * <p>
+ * A value is only rebuilt when the transformation changed one of its children
+ * (by identity); otherwise the other visitor receives the original value, so a
+ * transformation which changes nothing allocates nothing.
+ * <p>
+ * When constructed with a {@link TypeReachability}, children which can neither
+ * be, nor contain, values of its target types are kept as they are, without
+ * being traversed. The value the traversal starts with is always visited.
+ * <p>
+ * When constructed to memoize, the results of transforming the children are
+ * remembered by identity for the life time of this transformer, such that
+ * shared sub-terms are transformed only once. This requires the other visitor
+ * to be a function of the value it visits.
  */
 public class BottomUpTransformer<E extends Throwable> extends VisitorAdapter<IValue,E> {
 	protected IValueFactory fFactory;
+	protected final TypeReachability fReachability;
+	private final Map<IValue, IValue> fMemo;
 
 	public BottomUpTransformer(IValueVisitor<IValue,E> visitor, IValueFactory factory) {
+		this(visitor, factory, null);
+	}
+
+	public BottomUpTransformer(IValueVisitor<IValue,E> visitor, IValueFactory factory, TypeReachability reachability) {
+		this(visitor, factory, reachability, false);
+	}
+
+	public BottomUpTransformer(IValueVisitor<IValue,E> visitor, IValueFactory factory, TypeReachability reachability, boolean memoize) {
 		super(visitor);
 		this.fFactory = factory;
+		this.fReachability = reachability;
+		this.fMemo = memoize ? new IdentityHashMap<IValue, IValue>() : null;
+	}
+
+	/**
+	 * @return true if the traversal does not need to transform the given child
+	 */
+	protected boolean isIrrelevant(IValue child) {
+		return fReachability != null && !fReachability.mayReach(child.getType());
+	}
+
+	private IValue transformChild(IValue child) throws E {
+		if (isIrrelevant(child)) {
+			return child;
+		}
+
+		if (fMemo == null) {
+			return child.accept(this);
+		}
+
+		IValue result = fMemo.get(child);
+
+		if (result == null) {
+			result = child.accept(this);
+			fMemo.put(child, result);
+		}
+
+		return result;
 	}
 	
 	@Override
 	public IValue visitNode(INode o) throws E {
+		INode result = o;
+
 		for (int i = 0; i < o.arity(); i++) {
-			o = o.set(i, o.get(i).accept(this));
+			IValue child = o.get(i);
+			IValue transformed = transformChild(child);
+
+			if (transformed != child) {
+				result = result.set(i, transformed);
+			}
 		}
 		
-		return fVisitor.visitNode(o);
+		return fVisitor.visitNode(result);
 	}
 	
 	public IValue visitConstructor(IConstructor o) throws E {
+		IConstructor result = o;
+
 		for (int i = 0; i < o.arity(); i++) {
-			o = o.set(i, o.get(i).accept(this));
+			IValue child = o.get(i);
+			IValue transformed = transformChild(child);
+
+			if (transformed != child) {
+				result = result.set(i, transformed);
+			}
 		}
 		
-		return fVisitor.visitConstructor(o);
+		return fVisitor.visitConstructor(result);
 	}
 	
 	@Override
 	public IValue visitList(IList o) throws E {
-		IListWriter w = fFactory.listWriter();
-		for (IValue elem : o) {
-			w.append(elem.accept(this));
-		}
-		
-		return fVisitor.visitList(w.done());
+		return fVisitor.visitList(transformElements(o));
 	}
 	
 	@Override
 	public IValue visitSet(ISet o) throws E {
-		ISetWriter w = fFactory.setWriter();
-		for (IValue elem : o) {
-			w.insert(elem.accept(this));
-		}
-		
-		return fVisitor.visitSet(w.done());
+		return fVisitor.visitSet(transformElements(o));
 	}
 	
 	@Override
 	public IValue visitMap(IMap o) throws E {
-		IMapWriter w = fFactory.mapWriter();
-		for (IValue elem : o) {
-			w.put(elem.accept(this), o.get(elem).accept(this));
+		IMapWriter w = null;
+		int done = 0;
+
+		for (IValue key : o) {
+			IValue value = o.get(key);
+			IValue newKey = transformChild(key);
+			IValue newValue = transformChild(value);
+
+			if (w == null && (newKey != key || newValue != value)) {
+				w = fFactory.mapWriter();
+				int copied = 0;
+				for (IValue previous : o) {
+					if (copied++ == done) {
+						break;
+					}
+					w.put(previous, o.get(previous));
+				}
+			}
+
+			if (w != null) {
+				w.put(newKey, newValue);
+			}
+
+			done++;
 		}
 		
-		return fVisitor.visitMap(w.done());
+		return fVisitor.visitMap(w == null ? o : w.done());
 	}
 
 	@Override
 	public IValue visitRelation(ISet o) throws E {
-		ISetWriter w = fFactory.setWriter();
-		
-		for (IValue tuple : o) {
-			w.insert((ITuple) tuple.accept(this));
-		}
-		
-		return fVisitor.visitRelation(w.done());
+		return fVisitor.visitRelation(transformElements(o));
 	}
 	
 	@Override
 	public IValue visitTuple(ITuple o) throws E {
+		ITuple result = o;
+
 		for (int i = 0; i < o.arity(); i++) {
-			o.set(i, o.get(i).accept(this));
+			IValue child = o.get(i);
+			IValue transformed = transformChild(child);
+
+			if (transformed != child) {
+				result = result.set(i, transformed);
+			}
 		}
 		
-		return fVisitor.visitTuple(o);
+		return fVisitor.visitTuple(result);
 	}
 
 	public IValue visitExternal(IExternalValue externalValue) throws E {
@@ -108,12 +188,62 @@ public class BottomUpTransformer<E extends Throwable> extends VisitorAdapter<IVa
 	}
 
 	public IValue visitListRelation(IList o) throws E {
-		IListWriter w = fFactory.listWriter();
-		
-		for (IValue tuple : o) {
-			w.insert((ITuple) tuple.accept(this));
+		return fVisitor.visitListRelation(transformElements(o));
+	}
+
+	/**
+	 * @return the list itself if no element changed, or else a new list
+	 */
+	private IList transformElements(IList o) throws E {
+		IListWriter w = null;
+		int done = 0;
+
+		for (IValue elem : o) {
+			IValue transformed = transformChild(elem);
+
+			if (w == null && transformed != elem) {
+				w = fFactory.listWriter();
+				w.appendAll(o.sublist(0, done));
+			}
+
+			if (w != null) {
+				w.append(transformed);
+			}
+
+			done++;
 		}
-		
-		return fVisitor.visitListRelation(w.done());
+
+		return w == null ? o : w.done();
+	}
+
+	/**
+	 * @return the set itself if no element changed, or else a new set
+	 */
+	private ISet transformElements(ISet o) throws E {
+		ISetWriter w = null;
+		int done = 0;
+
+		for (IValue elem : o) {
+			IValue transformed = transformChild(elem);
+
+			if (w == null && transformed != elem) {
+				w = fFactory.setWriter();
+				int copied = 0;
+				for (IValue previous : o) {
+					if (copied++ == done) {
+						break;
+					}
+					w.insert(previous);
+				}
+			}
+
+			if (w != null) {
+				w.insert(transformed);
+			}
+
+			done++;
+		}
+
+		return w == null ? o : w.done();
 	}
 }
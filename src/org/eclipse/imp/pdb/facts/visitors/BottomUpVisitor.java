@@ -14,32 +14,53 @@ package org.eclipse.imp.pdb.facts.visitors;
 import org.eclipse.imp.pdb.facts.IConstructor;
 import org.eclipse.imp.pdb.facts.IExternalValue;
 import org.eclipse.imp.pdb.facts.IList;
-import org.eclipse.imp.pdb.facts.IListWriter;
 import org.eclipse.imp.pdb.facts.IMap;
-import org.eclipse.imp.pdb.facts.IMapWriter;
 import org.eclipse.imp.pdb.facts.INode;
 import org.eclipse.imp.pdb.facts.ISet;
-import org.eclipse.imp.pdb.facts.ISetWriter;
 import org.eclipse.imp.pdb.facts.ITuple;
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.type.TypeReachability;
 
 /**
  * This visitor will apply another visitor in a bottom-up fashion to an IValue 
- *
+ * <p>
+ * When constructed with a {@link TypeReachability}, the traversal does not enter
+ * children which can neither be, nor contain, values of its target types, so the
+ * other visitor only sees the values on the way to the targets. The value the
+ * traversal starts with is always visited.
  */
 public class BottomUpVisitor<T, E extends Throwable> extends VisitorAdapter<T, E> {
 	protected IValueFactory fFactory;
+	protected final TypeReachability fReachability;
 
 	public BottomUpVisitor(IValueVisitor<T, E> visitor, IValueFactory factory) {
+		this(visitor, factory, null);
+	}
+
+	public BottomUpVisitor(IValueVisitor<T, E> visitor, IValueFactory factory, TypeReachability reachability) {
 		super(visitor);
 		this.fFactory = factory;
+		this.fReachability = reachability;
+	}
+
+	/**
+	 * @return true if the traversal does not need to visit the given child
+	 */
+	protected boolean isIrrelevant(IValue child) {
+		return fReachability != null && !fReachability.mayReach(child.getType());
+	}
+
+	private void visitChild(IValue child) throws E {
+		if (!isIrrelevant(child)) {
+			child.accept(this);
+		}
 	}
 	
 	@Override
 	public T visitNode(INode o) throws E {
 		for (int i = 0; i < o.arity(); i++) {
-			o.get(i).accept(this);
+			visitChild(o.get(i));
 		}
 		
 		return fVisitor.visitNode(o);
@@ -47,7 +68,7 @@ public class BottomUpVisitor<T, E extends Throwable> extends VisitorAdapter<T, E
 	
 	public T visitConstructor(IConstructor o) throws E {
 		for (int i = 0; i < o.arity(); i++) {
-			o.get(i).accept(this);
+			visitChild(o.get(i));
 		}
 		
 		return fVisitor.visitConstructor(o);
@@ -55,50 +76,45 @@ public class BottomUpVisitor<T, E extends Throwable> extends VisitorAdapter<T, E
 	
 	@Override
 	public T visitList(IList o) throws E {
-		IListWriter w = fFactory.listWriter();
 		for (IValue elem : o) {
-			elem.accept(this);
+			visitChild(elem);
 		}
 		
-		return fVisitor.visitList(w.done());
+		return fVisitor.visitList(o);
 	}
 	
 	@Override
 	public T visitSet(ISet o) throws E {
-		ISetWriter w = fFactory.setWriter();
 		for (IValue elem : o) {
-			elem.accept(this);
+			visitChild(elem);
 		}
 		
-		return fVisitor.visitSet(w.done());
+		return fVisitor.visitSet(o);
 	}
 	
 	@Override
 	public T visitMap(IMap o) throws E {
-		IMapWriter w = fFactory.mapWriter();
 		for (IValue elem : o) {
-			elem.accept(this);
-			o.get(elem).accept(this);
+			visitChild(elem);
+			visitChild(o.get(elem));
 		}
 		
-		return fVisitor.visitMap(w.done());
+		return fVisitor.visitMap(o);
 	}
 
 	@Override
 	public T visitRelation(ISet o) throws E {
-		ISetWriter w = fFactory.setWriter();
-		
 		for (IValue tuple : o) {
-			tuple.accept(this);
+			visitChild(tuple);
 		}
 		
-		return fVisitor.visitRelation(w.done());
+		return fVisitor.visitRelation(o);
 	}
 	
 	@Override
 	public T visitTuple(ITuple o) throws E {
 		for (int i = 0; i < o.arity(); i++) {
-			o.get(i).accept(this);
+			visitChild(o.get(i));
 		}
 		
 		return fVisitor.visitTuple(o);
@@ -109,12 +125,10 @@ public class BottomUpVisitor<T, E extends Throwable> extends VisitorAdapter<T, E
 	}
 
 	public T visitListRelation(IList o) throws E {
-		IListWriter w = fFactory.listWriter();
-		
 		for (IValue tuple : o) {
-			tuple.accept(this);
+			visitChild(tuple);
 		}
 		
-		return fVisitor.visitListRelation(w.done());
+		return fVisitor.visitListRelation(o);
 	}
 }
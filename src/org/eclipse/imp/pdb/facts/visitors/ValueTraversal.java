@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2013 CWI
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.imp.pdb.facts.visitors;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.eclipse.imp.pdb.facts.IList;
+import org.eclipse.imp.pdb.facts.IMap;
+import org.eclipse.imp.pdb.facts.INode;
+import org.eclipse.imp.pdb.facts.ISet;
+import org.eclipse.imp.pdb.facts.ITuple;
+import org.eclipse.imp.pdb.facts.IValue;
+
+/**
+ * Traverses values without recursion. The pending work is kept on an explicit
+ * stack, so the depth of the values that can be traversed does not depend on
+ * the size of the stack of the thread, and collections are iterated lazily, so
+ * the stack only grows with the depth of a value and not with its width.
+ * <p>
+ * Override {@link #enter(IValue)} for top-down, pre-order, processing and
+ * {@link #leave(IValue)} for bottom-up, post-order, processing. The children of
+ * nodes, constructors and tuples, the elements of lists and sets, and the keys
+ * and values of maps are traversed in order. A call to {@link #stop()} ends the
+ * traversal early.
+ * <p>
+ * Subclasses which need to do work in between the children of a value, like
+ * serializers, schedule their own steps with {@link #push(Object, int)}, using
+ * tags from {@link #CUSTOM} onwards, and handle them in {@link #step(int, Object)}.
+ * <p>
+ * A traversal is not thread-safe, and can not be started again from one of its
+ * own callbacks.
+ */
+public abstract class ValueTraversal<E extends Throwable> {
+	/** Enters a value, and schedules its children unless {@link #enter(IValue)} declines. */
+	protected static final int VISIT = 0;
+	/** Leaves a value after all of its children were traversed. */
+	protected static final int LEAVE = 1;
+	/** Visits the remaining values of an {@link Iterator}. */
+	protected static final int ELEMENTS = 2;
+	/** Visits the keys and values of the remaining entries of an {@link Iterator}. */
+	protected static final int ENTRIES = 3;
+	/** The first tag that subclasses may use for their own steps. */
+	protected static final int CUSTOM = 4;
+
+	private Object[] items = new Object[32];
+	private int[] tags = new int[32];
+	private int size = 0;
+	private boolean stopped = false;
+
+	/**
+	 * Traverses a value.
+	 *
+	 * @return false if the traversal was stopped early
+	 */
+	public final boolean traverse(IValue value) throws E {
+		size = 0;
+		stopped = false;
+
+		try {
+			push(value, VISIT);
+
+			while (size > 0 && !stopped) {
+				size--;
+				Object item = items[size];
+				int tag = tags[size];
+				items[size] = null;
+
+				switch (tag) {
+				case VISIT:
+					visit((IValue) item);
+					break;
+				case LEAVE:
+					leave((IValue) item);
+					break;
+				case ELEMENTS:
+					nextElement(item);
+					break;
+				case ENTRIES:
+					nextEntry(item);
+					break;
+				default:
+					step(tag, item);
+				}
+			}
+
+			return !stopped;
+		}
+		finally {
+			Arrays.fill(items, 0, size, null);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Called when the traversal reaches a value, before any of its children.
+	 *
+	 * @return false if neither the children of the value should be traversed,
+	 *         nor {@link #leave(IValue)} should be called for it
+	 */
+	protected boolean enter(IValue value) throws E {
+		return true;
+	}
+
+	/**
+	 * Called after all children of a value were traversed.
+	 */
+	protected void leave(IValue value) throws E {
+		// nothing by default
+	}
+
+	/**
+	 * Handles a step that a subclass scheduled with one of its own tags.
+	 */
+	protected void step(int tag, Object item) throws E {
+		throw new IllegalStateException("Unknown traversal step: " + tag);
+	}
+
+	/**
+	 * Ends the traversal as soon as the current callback returns.
+	 */
+	protected final void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Schedules a step. Steps are executed in the reverse order of being pushed,
+	 * so the last step pushed is executed first.
+	 */
+	protected final void push(Object item, int tag) {
+		if (size == items.length) {
+			items = Arrays.copyOf(items, size * 2);
+			tags = Arrays.copyOf(tags, size * 2);
+		}
+
+		items[size] = item;
+		tags[size] = tag;
+		size++;
+	}
+
+	/**
+	 * Schedules the values of an iterator to be visited, in order.
+	 */
+	protected final void pushElements(Iterator<IValue> elements) {
+		if (elements.hasNext()) {
+			push(elements, ELEMENTS);
+		}
+	}
+
+	/**
+	 * Schedules the keys and values of the entries of an iterator to be visited,
+	 * in order.
+	 */
+	protected final void pushEntries(Iterator<Entry<IValue, IValue>> entries) {
+		if (entries.hasNext()) {
+			push(entries, ENTRIES);
+		}
+	}
+
+	/**
+	 * Schedules the children of a value to be visited, in order.
+	 */
+	protected void pushChildren(IValue value) {
+		if (value instanceof INode) {
+			pushElements(((INode) value).iterator());
+		}
+		else if (value instanceof IList) {
+			pushElements(((IList) value).iterator());
+		}
+		else if (value instanceof ISet) {
+			pushElements(((ISet) value).iterator());
+		}
+		else if (value instanceof IMap) {
+			pushEntries(((IMap) value).entryIterator());
+		}
+		else if (value instanceof ITuple) {
+			pushElements(((ITuple) value).iterator());
+		}
+	}
+
+	private void visit(IValue value) throws E {
+		if (enter(value)) {
+			push(value, LEAVE);
+			pushChildren(value);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void nextElement(Object item) {
+		Iterator<IValue> elements = (Iterator<IValue>) item;
+		IValue next = elements.next();
+
+		if (elements.hasNext()) {
+			push(elements, ELEMENTS);
+		}
+
+		push(next, VISIT);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void nextEntry(Object item) {
+		Iterator<Entry<IValue, IValue>> entries = (Iterator<Entry<IValue, IValue>>) item;
+		Entry<IValue, IValue> next = entries.next();
+
+		if (entries.hasNext()) {
+			push(entries, ENTRIES);
+		}
+
+		push(next.getValue(), VISIT);
+		push(next.getKey(), VISIT);
+	}
+}
@@ -31,6 +31,8 @@ public class AllTests {
 		suite.addTestSuite(TestTypeFactory.class);
 		suite.addTestSuite(TestIO.class);
 		suite.addTestSuite(TestBinaryIO.class);
+		suite.addTestSuite(TestVisitors.class);
+		suite.addTestSuite(TestBigDecimalCalculations.class);
 
 		addReferenceTests(suite);
 		addFastTests(suite);
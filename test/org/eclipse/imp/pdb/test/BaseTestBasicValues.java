@@ -1,19 +1,29 @@
 package org.eclipse.imp.pdb.test;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 
 import jdk.nashorn.internal.runtime.URIUtils;
 import junit.framework.TestCase;
 
 import org.eclipse.imp.pdb.facts.IDateTime;
 import org.eclipse.imp.pdb.facts.IInteger;
+import org.eclipse.imp.pdb.facts.IMap;
 import org.eclipse.imp.pdb.facts.INumber;
+import org.eclipse.imp.pdb.facts.IRational;
 import org.eclipse.imp.pdb.facts.IReal;
+import org.eclipse.imp.pdb.facts.ISet;
 import org.eclipse.imp.pdb.facts.ISourceLocation;
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.exceptions.FactParseError;
+import org.eclipse.imp.pdb.facts.exceptions.InvalidDateTimeException;
+import org.eclipse.imp.pdb.facts.io.StandardTextReader;
 import org.eclipse.imp.pdb.facts.type.TypeFactory;
+import org.eclipse.imp.pdb.facts.util.SourceLocationIndex;
 
 abstract public class BaseTestBasicValues extends TestCase {
 	protected IValueFactory vf;
@@ -162,7 +172,28 @@ abstract public class BaseTestBasicValues extends TestCase {
 		assertEqual(vf.rational(0, 1), vf.rational(0, 1).abs());
 		assertEqual(vf.real(0), vf.real(0).abs());
 	}
-	
+
+	public void testRationalNormalization() {
+		IRational third = vf.rational(1, 3);
+		IRational sixth = vf.rational(1, 6);
+		IRational half = third.add(sixth);
+
+		assertEqual(half, vf.rational(1, 2));
+		assertEquals(vf.rational(1, 2).hashCode(), half.hashCode());
+		assertEquals("1r2", half.toString());
+		assertEqual(half.numerator(), vf.integer(1));
+		assertEqual(half.denominator(), vf.integer(2));
+
+		IRational big = vf.rational(vf.integer("123456789012345678901234567890"), vf.integer("987654321098765432109876543210"));
+		IRational sum = big;
+		for (int i = 0; i < 10; i++) {
+			sum = sum.add(big);
+		}
+		assertEqual(sum, big.multiply(vf.rational(11, 1)));
+		assertEquals(0, sum.subtract(big.multiply(vf.rational(10, 1))).compare(big));
+		assertEquals(sum.toString(), big.multiply(vf.rational(22, 2)).toString());
+	}
+
 	
 	public void testPreciseRealDivision() {
 		IReal e100 = vf.real("1E100");
@@ -182,6 +213,143 @@ abstract public class BaseTestBasicValues extends TestCase {
 		assertEqual(dt, vf.datetime(dt.getInstant(), dt.getTimezoneOffsetHours(), dt.getTimezoneOffsetMinutes()));
 	}
 	
+	public void testDateTimeFields() {
+		IDateTime dt = vf.datetime(1999, 12, 31, 23, 59, 58, 999, -9, -30);
+		assertEquals(1999, dt.getYear());
+		assertEquals(12, dt.getMonthOfYear());
+		assertEquals(31, dt.getDayOfMonth());
+		assertEquals(23, dt.getHourOfDay());
+		assertEquals(59, dt.getMinuteOfHour());
+		assertEquals(58, dt.getSecondOfMinute());
+		assertEquals(999, dt.getMillisecondsOfSecond());
+		assertEquals(-9, dt.getTimezoneOffsetHours());
+		assertEquals(-30, dt.getTimezoneOffsetMinutes());
+		assertEquals(946718998999L, dt.getInstant());
+		
+		IDateTime mixed = vf.datetime(1999, 12, 31, 23, 59, 58, 999, 1, -30);
+		assertEquals(1, mixed.getTimezoneOffsetHours());
+		assertEquals(-30, mixed.getTimezoneOffsetMinutes());
+		assertFalse(mixed.isEqual(vf.datetime(1999, 12, 31, 23, 59, 58, 999, 0, 30)));
+		assertEqual(mixed, vf.datetime(mixed.getYear(), 12, 31, 23, 59, 58, 999, 1, -30));
+	}
+	
+	public void testDateTimeParsing() throws IOException {
+		IDateTime leapDay = readDateTime("$2012-02-29$");
+		assertTrue(leapDay.isDate());
+		assertEqual(vf.date(2012, 2, 29), leapDay);
+		assertEqual(vf.date(9999, 12, 31), readDateTime("$9999-12-31$"));
+		
+		IDateTime time = readDateTime("$T23:59:59.999+00:00$");
+		assertTrue(time.isTime());
+		assertEqual(vf.time(23, 59, 59, 999, 0, 0), time);
+		
+		IDateTime dateTime = readDateTime("$2012-01-03T10:11:12.123+01:30$");
+		assertTrue(dateTime.isDateTime());
+		assertEqual(vf.datetime(2012, 1, 3, 10, 11, 12, 123, 1, 30), dateTime);
+		assertEqual(dateTime, readDateTime("$2012-01-03t10:11:12.123+01:30$"));
+	}
+	
+	public void testDateTimeOffsetForms() throws IOException {
+		IDateTime colon = readDateTime("$T10:30:00.000+05:30$");
+		IDateTime compact = readDateTime("$T10:30:00.000+0530$");
+		assertEqual(colon, compact);
+		assertEquals(5, compact.getTimezoneOffsetHours());
+		assertEquals(30, compact.getTimezoneOffsetMinutes());
+		
+		IDateTime negative = readDateTime("$2012-01-03T10:11:12.123-08:00$");
+		assertEquals(-8, negative.getTimezoneOffsetHours());
+		assertEquals(0, negative.getTimezoneOffsetMinutes());
+		assertEqual(negative, readDateTime("$2012-01-03T10:11:12.123-0800$"));
+		
+		// the offsets shift the instant to the same moment in UTC
+		long utc = vf.datetime(2012, 1, 3, 18, 11, 12, 123, 0, 0).getInstant();
+		assertEquals(utc, negative.getInstant());
+		assertEquals(utc, readDateTime("$2012-01-03T18:41:12.123+00:30$").getInstant());
+	}
+	
+	public void testInvalidDateTimes() throws IOException {
+		String[] invalidValues = new String[] {
+				"$2013-02-29$", "$2012-04-31$", "$2012-13-01$", "$2012-00-10$", "$0000-01-01$",
+				"$T24:00:00.000+00:00$", "$T10:60:00.000+00:00$", "$T10:00:60.000+00:00$",
+				"$2012-01-03T24:00:00.000+01:00$", "$2013-02-29T10:00:00.000+01:00$"
+		};
+		for (String input : invalidValues) {
+			try {
+				readDateTime(input);
+				fail("expected an invalid datetime: " + input);
+			} catch (InvalidDateTimeException e) {
+				// expected
+			}
+		}
+		
+		String[] malformed = new String[] {
+				"$2012-1-03$", "$2012/01/03$", "$x012-01-03$", "$2012-01-03T10:11$",
+				"$T10:11:12.123$", "$T10:11:12.123Z$", "$2012-01-03T10:11:12.123Z$", "$T10:11:12.123+1:00$"
+		};
+		for (String input : malformed) {
+			try {
+				readDateTime(input);
+				fail("expected a parse error: " + input);
+			} catch (FactParseError e) {
+				// expected
+			}
+		}
+	}
+	
+	private IDateTime readDateTime(String input) throws IOException {
+		return (IDateTime) new StandardTextReader().read(vf, new StringReader(input));
+	}
+	
+	public void testLocationSchemes() throws URISyntaxException {
+		String[] valid = new String[] { "file", "F", "a1", "svn+ssh", "x-y", "a.b", "a+-.9" };
+		for (String scheme : valid) {
+			assertEquals(scheme, vf.sourceLocation(scheme, "", "/file.txt").getScheme());
+		}
+		
+		String[] invalid = new String[] { "", "1file", "+x", "-x", ".x", "fi le", "fi_le", "fi/le", "\u00e9t\u00e9" };
+		for (String scheme : invalid) {
+			try {
+				vf.sourceLocation(scheme, "", "/file.txt");
+				fail("expected an invalid scheme: " + scheme);
+			} catch (URISyntaxException e) {
+				// expected
+			}
+		}
+	}
+	
+	public void testLocationSlashes() throws URISyntaxException {
+		assertEquals("/a/b/c.txt", vf.sourceLocation("tmp", "", "//a///b//c.txt").getPath());
+		assertEquals("/a/b/", vf.sourceLocation("tmp", "", "a/b//").getPath());
+		assertEquals("/a/b", vf.sourceLocation("tmp", "auth", "/a/b").getPath());
+		assertEquals("/", vf.sourceLocation("tmp", "", "//").getPath());
+		
+		ISourceLocation normal = vf.sourceLocation("tmp", "", "/a/b");
+		ISourceLocation doubled = vf.sourceLocation("tmp", "", "//a//b");
+		assertEqual(normal, doubled);
+		assertEquals(normal.hashCode(), doubled.hashCode());
+		assertEquals(normal.getURI(), doubled.getURI());
+	}
+	
+	public void testLocationInterning() throws URISyntaxException {
+		ISourceLocation l1 = vf.sourceLocation("tmp", "", "/interned.txt");
+		ISourceLocation l2 = vf.sourceLocation("tmp", "", "/interned.txt");
+		ISourceLocation l3 = vf.sourceLocation(l2, 10, 20);
+		
+		// equal arguments share the URI, which is only built once
+		assertSame(l1.getURI(), l2.getURI());
+		assertSame(l1.getURI(), l3.getURI());
+		assertEqual(l1, l2);
+		
+		// equal locations need not be interned to each other, but are still equal
+		ISourceLocation unnormalized = vf.sourceLocation("tmp", "", "interned.txt");
+		assertEqual(l1, unnormalized);
+		assertEquals(l1.getURI(), unnormalized.getURI());
+		
+		ISourceLocation other = vf.sourceLocation("tmp", "", "/other.txt");
+		assertFalse(l1.isEqual(other));
+		assertFalse(l1.getURI().equals(other.getURI()));
+	}
+	
 	public void testLocationTop() throws URISyntaxException {
 		ISourceLocation l = vf.sourceLocation("tmp","","/file.txt");
 		assertTrue(l.top() == l);
@@ -189,4 +357,30 @@ abstract public class BaseTestBasicValues extends TestCase {
 		ISourceLocation m = vf.sourceLocation(l, 10, 20);
 		assertEquals(m.top(), l);
 	}
+	
+	public void testLocationIndex() throws URISyntaxException {
+		ISourceLocation file = vf.sourceLocation("tmp","","/file.txt");
+		ISourceLocation other = vf.sourceLocation("tmp","","/other.txt");
+		ISourceLocation outer = vf.sourceLocation(file, 0, 100);
+		ISourceLocation inner = vf.sourceLocation(file, 10, 20);
+		ISourceLocation innermost = vf.sourceLocation(file, 15, 2);
+		ISourceLocation sibling = vf.sourceLocation(file, 40, 10);
+		ISourceLocation elsewhere = vf.sourceLocation(other, 0, 100);
+		
+		ISet set = vf.set(outer, inner, innermost, sibling, elsewhere, vf.integer(1));
+		SourceLocationIndex index = SourceLocationIndex.of(set);
+		
+		assertSame(index, SourceLocationIndex.of(set));
+		assertEquals(5, index.size());
+		assertEquals(Arrays.asList(outer, inner, innermost), index.containing(file, 15));
+		assertEquals(Arrays.asList(outer, inner), index.containing(file, 29));
+		assertEquals(Arrays.asList(outer), index.containing(file, 30));
+		assertEquals(Arrays.asList(outer, inner, innermost), index.enclosing(innermost));
+		assertEquals(Arrays.asList(outer, inner, sibling), index.overlapping(vf.sourceLocation(file, 25, 20)));
+		assertEquals(Arrays.asList(elsewhere), index.containing(other, 50));
+		assertTrue(index.containing(file, 100).isEmpty());
+		
+		IMap map = vf.map(tf.sourceLocationType(), tf.integerType()).put(inner, vf.integer(1)).put(sibling, vf.integer(2));
+		assertEquals(Arrays.asList(sibling), SourceLocationIndex.ofKeys(map).containing(file, 45));
+	}
 }
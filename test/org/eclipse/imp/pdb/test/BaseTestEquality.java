@@ -16,6 +16,7 @@ import junit.framework.TestCase;
 
 import org.eclipse.imp.pdb.facts.IConstructor;
 import org.eclipse.imp.pdb.facts.INode;
+import org.eclipse.imp.pdb.facts.IReal;
 import org.eclipse.imp.pdb.facts.IValueFactory;
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeFactory;
@@ -41,6 +42,20 @@ public abstract class BaseTestEquality extends TestCase {
 		assertTrue(vf.real(1.0).isEqual(vf.real(1.00000)));
 		assertFalse(vf.real(0.0).isEqual(vf.real(1.0)));
 	}
+
+	public void testDoubleRepresentations() {
+		IReal small = vf.real(1.25);
+		IReal big = vf.real("1.25", 10);
+
+		assertTrue(small.isEqual(big));
+		assertTrue(big.isEqual(small));
+		assertEquals(small.hashCode(), big.hashCode());
+		assertEquals(0, small.compare(big));
+
+		assertTrue(small.add(vf.real(0.5)).isEqual(vf.real("1.75")));
+		assertTrue(small.multiply(vf.real(0.5)).isEqual(vf.real("0.625")));
+		assertTrue(vf.real("9000000000000000000").add(vf.real("9000000000000000000")).isEqual(vf.real("18000000000000000000")));
+	}
 	
 	public void testString() {
 		assertTrue(vf.string("").isEqual(vf.string("")));
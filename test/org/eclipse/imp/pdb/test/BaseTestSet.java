@@ -344,4 +344,31 @@ public abstract class BaseTestSet extends TestCase {
 		assertEquals(tf.realType(), set2.getElementType());
 	}
 	
+	public void testElementTypeAfterSetAlgebra() {
+		ISet ints = vf.set(integers[0], integers[1]);
+		ISet reals = vf.set(doubles[0], doubles[1]);
+		ISet mixed = ints.union(reals);
+
+		assertEquals(tf.numberType(), mixed.getElementType());
+		assertEquals(tf.realType(), mixed.subtract(ints).getElementType());
+		assertEquals(tf.integerType(), mixed.intersect(vf.set(integers[0], integers[2])).getElementType());
+		assertEquals(tf.voidType(), mixed.intersect(vf.set(integers[3])).getElementType());
+
+		// more distinct element types than a small bag holds inline
+		ISetWriter w = vf.setWriter();
+		for (int i = 0; i < 12; i++) {
+			IValue[] fields = new IValue[i + 1];
+			for (int j = 0; j <= i; j++) {
+				fields[j] = integers[j];
+			}
+			w.insert(vf.tuple(fields));
+		}
+		ISet tuples = w.done();
+		ISet withInts = tuples.union(ints);
+
+		assertEquals(tf.valueType(), withInts.getElementType());
+		assertEquals(tuples.getElementType(), withInts.subtract(ints).getElementType());
+		assertEquals(tf.integerType(), withInts.subtract(tuples).getElementType());
+	}
+	
 }
@@ -19,6 +19,7 @@ import java.net.MalformedURLException;
 
 import junit.framework.TestCase;
 
+import org.eclipse.imp.pdb.facts.IConstructor;
 import org.eclipse.imp.pdb.facts.IList;
 import org.eclipse.imp.pdb.facts.IMap;
 import org.eclipse.imp.pdb.facts.IReal;
@@ -263,6 +264,39 @@ public abstract class BaseTestValueFactory extends TestCase {
 		}
 	}
 
+	public void testParameterizedConstructorType() {
+		TypeStore store = new TypeStore();
+		Type T = ft.parameterType("T");
+		Type Maybe = ft.abstractDataType(store, "Maybe", T);
+		Type just = ft.constructor(store, Maybe, "just", T, "val");
+		Type nothing = ft.constructor(store, Maybe, "nothing");
+
+		IConstructor justInt = ff.constructor(just, integers[1]);
+		assertEquals(ft.abstractDataType(store, "Maybe", ft.integerType()), justInt.getType());
+		assertSame(justInt.getConstructorType(), ff.constructor(just, integers[2]).getConstructorType());
+
+		IConstructor justString = ff.constructor(just, ff.string("a"));
+		assertEquals(ft.abstractDataType(store, "Maybe", ft.stringType()), justString.getType());
+
+		// unbound parameters are instantiated with void
+		assertEquals(ft.abstractDataType(store, "Maybe", ft.voidType()), ff.constructor(nothing).getType());
+	}
+
+	public void testNestedParameterizedConstructorType() {
+		TypeStore store = new TypeStore();
+		Type T = ft.parameterType("T");
+		Type List = ft.abstractDataType(store, "List", T);
+		Type cons = ft.constructor(store, List, "cons", T, "head", List, "tail");
+		Type nil = ft.constructor(store, List, "nil");
+
+		// typing the children of every level more than once would take exponential time
+		IValue list = ff.constructor(nil);
+		for (int i = 0; i < 64; i++) {
+			list = ff.constructor(cons, integers[i % integers.length], list);
+		}
+		assertEquals(ft.abstractDataType(store, "List", ft.integerType()), list.getType());
+	}
+
 	public void testInteger() {
 		assertTrue(ff.integer(42).toString().equals("42"));
 	}
@@ -1,5 +1,7 @@
 package org.eclipse.imp.pdb.test;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -9,6 +11,7 @@ import org.eclipse.imp.pdb.facts.IInteger;
 import org.eclipse.imp.pdb.facts.INumber;
 import org.eclipse.imp.pdb.facts.IReal;
 import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.util.BigDecimalCalculations;
 import org.eclipse.imp.pdb.facts.impl.reference.ValueFactory;
 
 public class TestBigDecimalCalculations extends TestCase {
@@ -128,6 +131,89 @@ public class TestBigDecimalCalculations extends TestCase {
 	}	
 	
 
+	private static final int SCALE = 30;
+
+	private static void assertExact(String x, String expected, BigDecimal actual) {
+		assertTrue("failed for " + x + " expected: " + expected + " actual: " + actual,
+				new BigDecimal(expected).compareTo(actual) == 0);
+	}
+
+	private static void assertSignificant(String x, String expected, BigDecimal actual) {
+		BigDecimal value = new BigDecimal(expected);
+		assertExact(x, expected, actual.round(new MathContext(value.precision())));
+	}
+
+	public void testExpKnownValues() {
+		String[][] cases = {
+			{ "1", "2.718281828459045235360287471353" },
+			{ "0.000001", "1.000001000000500000166666708333" },
+			{ "50", "5184705528587072464087.453322933485384827469100583846" },
+		};
+		for (String[] c : cases) {
+			assertExact(c[0], c[1], BigDecimalCalculations.exp(new BigDecimal(c[0]), SCALE));
+		}
+		
+		// for negative x the scale is the number of significant digits
+		assertExact("-1", "0.367879441171442321595523770161", BigDecimalCalculations.exp(new BigDecimal("-1"), SCALE));
+		assertExact("-20.5", "1.25015286638674262893755311923E-9", BigDecimalCalculations.exp(new BigDecimal("-20.5"), SCALE));
+		
+		assertSignificant("200000", "7.877359218758458228660827E+86858", BigDecimalCalculations.exp(new BigDecimal("200000"), SCALE));
+		assertSignificant("1234567.891", "1.053407085650070741193595E+536166", BigDecimalCalculations.exp(new BigDecimal("1234567.891"), SCALE));
+		assertSignificant("-1234567.891", "9.493006204556593067198230E-536167", BigDecimalCalculations.exp(new BigDecimal("-1234567.891"), SCALE));
+		assertSignificant("1.4E9", "4.6190488866085761181E+608012274", BigDecimalCalculations.exp(new BigDecimal("1.4E9"), SCALE));
+		assertSignificant("-1.4E9", "2.1649478595023608581E-608012275", BigDecimalCalculations.exp(new BigDecimal("-1.4E9"), SCALE));
+	}
+
+	public void testExpOutOfRange() {
+		for (String x : new String[] { "1.6E9", "-1.6E9", "3E9", "1E100", "-1E100" }) {
+			try {
+				BigDecimalCalculations.exp(new BigDecimal(x), 5);
+				fail("exp(" + x + ") can not be represented");
+			}
+			catch (ArithmeticException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith(x.startsWith("-") ? "exp underflow" : "exp overflow"));
+			}
+		}
+	}
+
+	public void testLnKnownValues() {
+		String[][] cases = {
+			{ "2", "0.693147180559945309417232121458" },
+			{ "0.5", "-0.693147180559945309417232121458" },
+			{ "1.0000001", "9.9999995000000333333308E-8" },
+			{ "1E-20", "-46.051701859880913680359829093687" },
+			{ "123456789012345678901234567890", "66.985688719142977397576753896334" },
+		};
+		for (String[] c : cases) {
+			assertExact(c[0], c[1], BigDecimalCalculations.ln(new BigDecimal(c[0]), SCALE));
+		}
+	}
+
+	public void testSinCosKnownValues() {
+		String[][] cases = {
+			{ "1", "0.841470984807896506652502321630", "0.540302305868139717400936607443" },
+			{ "-2.5", "-0.598472144103956494051854702186", "-0.801143615546933714833502790467" },
+			{ "0.000001", "9.99999999999833333333333E-7", "0.999999999999500000000000041667" },
+			{ "1000000", "-0.349993502171292952117652486781", "0.936752127533144786938532535075" },
+			{ "123456.789", "-0.998664082343447097867599122583", "0.051672532714399770042785874438" },
+		};
+		for (String[] c : cases) {
+			assertExact(c[0], c[1], BigDecimalCalculations.sin(new BigDecimal(c[0]), SCALE));
+			assertExact(c[0], c[2], BigDecimalCalculations.cos(new BigDecimal(c[0]), SCALE));
+		}
+	}
+
+	public void testExpLargeArgumentPerformance() {
+		for (final String x : new String[] { "200000", "1234567.891", "-1234567.891", "1E8", "-1E8" }) {
+			assertTakesLessThan(2, "exp(" + x + ")", new Runnable() {
+				@Override
+				public void run() {
+					vf.real(x).exp(vf.getPrecision());
+				}
+			});
+		}
+	}
+
 	private void assertTakesLessThan(final int seconds, String call, final Runnable x) {
 		final Semaphore done = new Semaphore(0);
 		Thread t = new Thread(new Runnable() {
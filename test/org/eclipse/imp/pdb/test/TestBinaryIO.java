@@ -10,17 +10,48 @@
 *******************************************************************************/
 package org.eclipse.imp.pdb.test;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
+import org.eclipse.imp.pdb.facts.IDateTime;
+import org.eclipse.imp.pdb.facts.IList;
+import org.eclipse.imp.pdb.facts.IListWriter;
+import org.eclipse.imp.pdb.facts.IMap;
+import org.eclipse.imp.pdb.facts.IMapWriter;
+import org.eclipse.imp.pdb.facts.ISet;
+import org.eclipse.imp.pdb.facts.ISetWriter;
+import org.eclipse.imp.pdb.facts.ISourceLocation;
+import org.eclipse.imp.pdb.facts.ITuple;
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.exceptions.FactTypeUseException;
 import org.eclipse.imp.pdb.facts.impl.fast.ValueFactory;
+import org.eclipse.imp.pdb.facts.impl.primitive.AbstractPrimitiveValueFactory;
+import org.eclipse.imp.pdb.facts.io.BinaryValueReader;
+import org.eclipse.imp.pdb.facts.io.BinaryValueWriter;
 import org.eclipse.imp.pdb.facts.io.binary.BinaryReader;
+import org.eclipse.imp.pdb.facts.io.binary.BinaryStreamReader;
+import org.eclipse.imp.pdb.facts.io.binary.BinaryStreamWriter;
 import org.eclipse.imp.pdb.facts.io.binary.BinaryWriter;
+import org.eclipse.imp.pdb.facts.io.binary.BlockCompressedInputStream;
+import org.eclipse.imp.pdb.facts.io.binary.BlockCompressedOutputStream;
+import org.eclipse.imp.pdb.facts.io.binary.ChunkedBinaryReader;
+import org.eclipse.imp.pdb.facts.io.binary.ChunkedBinaryWriter;
+import org.eclipse.imp.pdb.facts.io.binary.SharingPolicy;
+import org.eclipse.imp.pdb.facts.io.binary.SharingStatistics;
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeFactory;
 import org.eclipse.imp.pdb.facts.type.TypeStore;
@@ -61,12 +92,30 @@ public class TestBinaryIO extends TestCase {
 			vf.integer(Integer.MAX_VALUE),
 			vf.integer(Integer.MIN_VALUE),
 			vf.integer(new byte[]{(byte)0xfe, (byte)0xdc, (byte)0xba, (byte)0x98, (byte)0x76, (byte)0x54}),
-			vf.constructor(True).asAnnotatable().setAnnotation("test", vf.integer(1))
+			vf.constructor(True).asAnnotatable().setAnnotation("test", vf.integer(1)),
+			vf.datetime(2014, 10, 13, 10, 7, 50, 0, 2, 0),
+			vf.datetime(2014, 10, 13, 10, 7, 50, 123, -3, -30),
+			vf.datetime(1014, 1, 1, 0, 0, 0, 1, 0, -45),
+			vf.datetime(2014, 10, 13, 10, 7, 50, 123, 1, -30),
+			vf.datetime(-62135596800001L, 0, 0),
+			vf.date(2014, 10, 13),
+			vf.time(10, 7, 50, 123, 5, 30)
 	};
 
 	private static IValue name(String n){
 		return vf.constructor(NameNode, vf.string(n));
 	}
+	
+	/**
+	 * @return a list of n tuples of an integer and a name, with many shared names
+	 */
+	private static IList largeRelation(int n){
+		IListWriter elements = vf.listWriter();
+		for(int i = 0; i < n; i++){
+			elements.append(vf.tuple(vf.integer(i), name("n" + (i % 100))));
+		}
+		return elements.done();
+	}
 
 	public void testBinaryIO(){
 		try{
@@ -102,6 +151,538 @@ public class TestBinaryIO extends TestCase {
 		}
 	}
 	
+	public void testDeepValue() throws IOException{
+		int depth = 100000;
+		IValue deep = vf.constructor(True);
+		for(int i = 0; i < depth; i++){
+			deep = vf.constructor(Not, deep);
+		}
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new BinaryWriter(deep, baos, false, ts).serialize();
+		
+		assertTrue(baos.size() > 2 * depth);
+	}
+	
+	public void testColumnarRelation() throws IOException{
+		ISetWriter uses = vf.setWriter();
+		ISetWriter counts = vf.setWriter();
+		ISetWriter names = vf.setWriter();
+		ISetWriter mixed = vf.setWriter();
+		IListWriter rows = vf.listWriter();
+		for(int i = 0; i < 1000; i++){
+			ISourceLocation file = vf.sourceLocation("/src/File" + (i % 10) + ".java");
+			IValue use = vf.sourceLocation(file, i * 10, 5, i, i, 4, 9);
+			IValue definition = i % 3 == 0 ? file : vf.sourceLocation(file, i, 3);
+			ITuple tuple = vf.tuple(use, definition);
+			uses.insert(tuple);
+			rows.append(tuple);
+			counts.insert(vf.tuple(vf.string("name" + (i % 50)), vf.integer(i - 500)));
+			names.insert(vf.tuple(vf.integer(i), name("n" + (i % 100)), vf.constructor(True)));
+			mixed.insert(vf.tuple(vf.integer(i % 2 == 0 ? Long.MAX_VALUE + "" + i : "" + i), vf.constructor(True).asAnnotatable().setAnnotation("n", vf.integer(i % 2))));
+		}
+		ISet relation = uses.done();
+		
+		IValue[] values = new IValue[]{relation, counts.done(), names.done(), mixed.done(), vf.list(relation, relation), vf.set(vf.tuple(vf.integer(1)), vf.tuple(vf.integer(1000)))};
+		
+		for(IValue value : values){
+			for(boolean maximalSharing : new boolean[]{true, false}){
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				new BinaryWriter(value, baos, maximalSharing, ts).serialize();
+				
+				IValue result = new BinaryReader(vf, ts, new ByteArrayInputStream(baos.toByteArray())).deserialize();
+				assertEquals(value.getType(), result.getType());
+				assertTrue(value.isEqual(result));
+			}
+		}
+		
+		ByteArrayOutputStream columns = new ByteArrayOutputStream();
+		new BinaryWriter(relation, columns, ts).serialize();
+		ByteArrayOutputStream tuples = new ByteArrayOutputStream();
+		new BinaryWriter(rows.done(), tuples, ts).serialize();
+		assertTrue(columns.size() < tuples.size() / 2);
+		
+		// for older readers relations are written tuple by tuple
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		BinaryWriter writer = new BinaryWriter(relation, plain, ts);
+		writer.setCompactEncodings(false);
+		writer.serialize();
+		assertTrue(plain.size() > columns.size());
+		assertTrue(relation.isEqual(new BinaryReader(vf, ts, new ByteArrayInputStream(plain.toByteArray())).deserialize()));
+	}
+	
+	public void testWithoutCompactEncodings() throws IOException{
+		for(int i = 0; i < testValues.length; i++){
+			IValue value = testValues[i];
+			
+			ByteArrayOutputStream compact = new ByteArrayOutputStream();
+			new BinaryWriter(value, compact, ts).serialize();
+			
+			ByteArrayOutputStream plain = new ByteArrayOutputStream();
+			BinaryWriter writer = new BinaryWriter(value, plain, ts);
+			writer.setCompactEncodings(false);
+			writer.serialize();
+			
+			if(value.getType().isDateTime() && isPacked((IDateTime) value)){
+				assertTrue(plain.size() > compact.size());
+				
+				if(((IDateTime) value).getYear() < 1){
+					continue; // field by field, datetimes can not be in year 0 or before
+				}
+			}else{
+				assertEquals(compact.size(), plain.size());
+			}
+			
+			IValue result = new BinaryReader(vf, ts, new ByteArrayInputStream(plain.toByteArray())).deserialize();
+			assertTrue(value.isEqual(result));
+		}
+	}
+	
+	private static boolean isPacked(IDateTime dateTime){
+		return dateTime.isDateTime() && AbstractPrimitiveValueFactory.canPackDateTime(dateTime.getInstant(),
+				dateTime.getTimezoneOffsetHours(), dateTime.getTimezoneOffsetMinutes());
+	}
+	
+	public void testBufferedIO() throws IOException{
+		for(int i = 0; i < testValues.length; i++){
+			IValue value = testValues[i];
+			
+			ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+			new BinaryWriter(value, streamed, ts).serialize();
+			
+			ByteArrayOutputStream channeled = new ByteArrayOutputStream();
+			new BinaryWriter(value, Channels.newChannel(channeled), ts).serialize();
+			
+			byte[] data = streamed.toByteArray();
+			assertTrue(Arrays.equals(data, channeled.toByteArray()));
+			
+			ByteBuffer buffer = ByteBuffer.allocateDirect(data.length + 1);
+			buffer.put(data).put((byte) 42).flip();
+			
+			IValue result = new BinaryReader(vf, ts, buffer).deserialize();
+			assertTrue(value.isEqual(result));
+			assertEquals(1, buffer.remaining());
+		}
+	}
+	
+	public void testUnbufferedStream() throws IOException{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new BinaryWriter(largeRelation(5000), baos, ts).serialize();
+		final int[] reads = new int[1];
+		
+		// counts the calls that reach the stream, as an unbuffered file stream would
+		InputStream unbuffered = new FilterInputStream(new ByteArrayInputStream(baos.toByteArray())){
+			@Override
+			public int read() throws IOException{
+				reads[0]++;
+				return super.read();
+			}
+			
+			@Override
+			public int read(byte[] data, int offset, int length) throws IOException{
+				reads[0]++;
+				return super.read(data, offset, length);
+			}
+		};
+		
+		IValue result = new BinaryValueReader().read(vf, ts, tf.valueType(), unbuffered);
+		assertTrue(largeRelation(5000).isEqual(result));
+		assertTrue(reads[0] < 10);
+	}
+	
+	public void testConsecutiveValues() throws IOException{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new BinaryWriter(largeRelation(1000), baos, ts).serialize();
+		new BinaryWriter(testValues[7], baos, ts).serialize();
+		
+		// buffered streams are not wrapped again, so they are left right after the value
+		InputStream in = new BufferedInputStream(new FilterInputStream(new ByteArrayInputStream(baos.toByteArray())){});
+		assertTrue(largeRelation(1000).isEqual(new BinaryValueReader().read(vf, ts, tf.valueType(), in)));
+		assertTrue(testValues[7].isEqual(new BinaryValueReader().read(vf, ts, tf.valueType(), in)));
+		assertEquals(-1, in.read());
+	}
+	
+	public void testTruncatedBuffer() throws IOException{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new BinaryWriter(testValues[7], baos, ts).serialize();
+		byte[] data = baos.toByteArray();
+		
+		try{
+			new BinaryReader(vf, ts, ByteBuffer.wrap(data, 0, data.length - 1)).deserialize();
+			fail("read a truncated value");
+		}catch(IOException e){
+			// expected
+		}
+	}
+	
+	public void testFileIO() throws IOException{
+		IListWriter writer = vf.listWriter();
+		for(int i = 0; i < 100000; i++){
+			// large enough to need a couple of buffers
+			writer.append(vf.tuple(vf.integer(i), vf.string("value " + i)));
+		}
+		IValue value = writer.done();
+		
+		File file = File.createTempFile("pdb", ".pbf");
+		try{
+			BinaryValueWriter.writeValueToFile(value, file, ts);
+			assertTrue(file.length() > 64 * 1024);
+			
+			IValue result = BinaryValueReader.readValueFromFile(vf, ts, file);
+			assertTrue(value.isEqual(result));
+		}finally{
+			file.delete();
+		}
+	}
+	
+	public void testCompressedFile() throws IOException{
+		IListWriter elements = vf.listWriter();
+		for(int i = 0; i < 20000; i++){
+			elements.append(vf.tuple(vf.integer(i), name("n" + (i % 100)), vf.string("some text " + (i % 7))));
+		}
+		IList list = elements.done();
+		
+		File plain = File.createTempFile("pdb", ".pbf");
+		File compressed = File.createTempFile("pdb", ".pbz");
+		try{
+			BinaryValueWriter.writeValueToFile(list, plain, ts);
+			BinaryValueWriter.writeCompressedValueToFile(list, compressed, ts);
+			assertTrue(compressed.length() < plain.length() / 2);
+			
+			assertTrue(list.isEqual(BinaryValueReader.readValueFromFile(vf, ts, compressed)));
+			assertTrue(list.isEqual(BinaryValueReader.readValueFromFile(vf, ts, plain)));
+		}finally{
+			plain.delete();
+			compressed.delete();
+		}
+	}
+	
+	public void testCompressedSeek() throws IOException{
+		byte[] data = new byte[10000];
+		for(int i = 0; i < data.length; i++){
+			data[i] = (byte) (i * 7 / 100);
+		}
+		
+		File file = File.createTempFile("pdb", ".pbz");
+		try{
+			BlockCompressedOutputStream out = new BlockCompressedOutputStream(new FileOutputStream(file), 1000, 6);
+			out.write(data, 0, 4321);
+			out.write(data[4321]);
+			out.write(data, 4322, data.length - 4322);
+			out.close();
+			
+			FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+			try{
+				BlockCompressedInputStream in = new BlockCompressedInputStream(channel);
+				assertEquals(data.length, in.length());
+				
+				byte[] read = new byte[data.length];
+				int offset = 0;
+				for(int n; (n = in.read(read, offset, read.length - offset)) > 0;){
+					offset += n;
+				}
+				assertEquals(data.length, offset);
+				assertTrue(Arrays.equals(data, read));
+				assertEquals(-1, in.read());
+				
+				for(int position : new int[]{5555, 0, 999, 1000, 9999, 3}){
+					in.seek(position);
+					assertEquals(position, in.position());
+					assertEquals(data[position] & 0xff, in.read());
+				}
+				
+				in.seek(data.length);
+				assertEquals(-1, in.read());
+				in.close();
+			}finally{
+				channel.close();
+			}
+		}finally{
+			file.delete();
+		}
+	}
+	
+	public void testStreamReader() throws IOException{
+		IList list = largeRelation(5000);
+		ISetWriter tuples = vf.setWriter();
+		IMapWriter entries = vf.mapWriter();
+		for(IValue element : list){
+			tuples.insert(element);
+			entries.put(((ITuple) element).get(0), element);
+		}
+		ISet relation = tuples.done();
+		IMap map = entries.done();
+		
+		BinaryStreamReader listReader = openStream(list);
+		assertEquals(list.getType(), listReader.getType());
+		assertEquals(list.length(), listReader.size());
+		for(IValue element : list){
+			assertTrue(listReader.hasNext());
+			assertTrue(element.isEqual(listReader.next()));
+		}
+		assertFalse(listReader.hasNext());
+		
+		BinaryStreamReader setReader = openStream(relation);
+		assertEquals(relation.getType(), setReader.getType());
+		ISetWriter setWriter = vf.setWriter();
+		while(setReader.hasNext()){
+			setWriter.insert(setReader.next());
+		}
+		assertTrue(relation.isEqual(setWriter.done()));
+		
+		BinaryStreamReader mapReader = openStream(map);
+		assertEquals(map.getType(), mapReader.getType());
+		int count = 0;
+		while(mapReader.hasNext()){
+			ITuple entry = (ITuple) mapReader.next();
+			assertTrue(map.get(entry.get(0)).isEqual(entry.get(1)));
+			count++;
+		}
+		assertEquals(map.size(), count);
+		
+		try{
+			openStream(testValues[0]);
+			fail("streamed a constructor");
+		}catch(IOException e){
+			// expected
+		}
+	}
+	
+	private static BinaryStreamReader openStream(IValue value) throws IOException{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new BinaryWriter(value, baos, ts).serialize();
+		return new BinaryStreamReader(vf, ts, new ByteArrayInputStream(baos.toByteArray()));
+	}
+	
+	public void testStreamWriter() throws IOException{
+		IListWriter expectedList = vf.listWriter();
+		IMapWriter expectedMap = vf.mapWriter();
+		
+		File listFile = File.createTempFile("pdb", ".pbf");
+		File mapFile = File.createTempFile("pdb", ".pbf");
+		FileChannel listChannel = new RandomAccessFile(listFile, "rw").getChannel();
+		FileChannel mapChannel = new RandomAccessFile(mapFile, "rw").getChannel();
+		try{
+			Type elementType = tf.tupleType(tf.integerType(), Name);
+			BinaryStreamWriter list = new BinaryStreamWriter(listChannel, tf.listType(elementType), true, ts);
+			BinaryStreamWriter map = new BinaryStreamWriter(mapChannel, tf.mapType(tf.integerType(), elementType), true, ts);
+			
+			for(IValue element : largeRelation(5000)){
+				IValue key = ((ITuple) element).get(0);
+				list.append(element);
+				expectedList.append(element);
+				map.put(key, element);
+				expectedMap.put(key, element);
+			}
+			
+			try{
+				list.append(vf.string("wrong"));
+				fail("appended an element of the wrong type");
+			}catch(FactTypeUseException e){
+				// expected
+			}
+			
+			assertEquals(5000, list.length());
+			list.done();
+			map.done();
+		}finally{
+			listChannel.close();
+			mapChannel.close();
+		}
+		
+		try{
+			assertTrue(expectedList.done().isEqual(BinaryValueReader.readValueFromFile(vf, ts, listFile)));
+			assertTrue(expectedMap.done().isEqual(BinaryValueReader.readValueFromFile(vf, ts, mapFile)));
+		}finally{
+			listFile.delete();
+			mapFile.delete();
+		}
+	}
+	
+	public void testIndexedFile() throws IOException{
+		IList list = largeRelation(5000);
+		IMapWriter entries = vf.mapWriter();
+		for(IValue element : list){
+			entries.put(vf.string("k" + ((ITuple) element).get(0)), element);
+		}
+		ISet set = vf.set(testValues);
+		IMap map = entries.done();
+		
+		IValue[] values = new IValue[]{list, set, map, vf.list(), vf.set(), vf.mapWriter().done(), testValues[7]};
+		
+		for(IValue value : values){
+			IValue result = writeAndOpenIndexed(value);
+			assertEquals(value.getType(), result.getType());
+			assertTrue(value.isEqual(result));
+			assertTrue(result.isEqual(value));
+		}
+		
+		IList lazyList = (IList) writeAndOpenIndexed(list);
+		assertEquals(list.length(), lazyList.length());
+		assertTrue(list.get(4321).isEqual(lazyList.get(4321)));
+		assertSame(lazyList.get(4321), lazyList.get(4321));
+		assertTrue(lazyList.append(vf.tuple(vf.integer(0), name("x"))).length() == list.length() + 1);
+		
+		ISet lazySet = (ISet) writeAndOpenIndexed(set);
+		for(IValue element : testValues){
+			assertTrue(lazySet.contains(element));
+		}
+		assertFalse(lazySet.contains(vf.string("absent")));
+		
+		IMap lazyMap = (IMap) writeAndOpenIndexed(map);
+		assertTrue(map.get(vf.string("k1234")).isEqual(lazyMap.get(vf.string("k1234"))));
+		assertTrue(lazyMap.containsKey(vf.string("k0")));
+		assertNull(lazyMap.get(vf.string("k5000")));
+	}
+	
+	public void testIndexedFileIsChecked() throws IOException{
+		File file = File.createTempFile("pdb", ".pbf");
+		try{
+			BinaryValueWriter.writeValueToFile(vf.list(testValues), file, ts);
+			BinaryValueReader.readIndexedValueFromFile(vf, ts, file);
+			fail("opened a file in the wrong format");
+		}catch(IOException e){
+			// expected
+		}finally{
+			file.delete();
+		}
+	}
+	
+	private static IValue writeAndOpenIndexed(IValue value) throws IOException{
+		File file = File.createTempFile("pdb", ".pbi");
+		try{
+			BinaryValueWriter.writeIndexedValueToFile(value, file, ts);
+			return BinaryValueReader.readIndexedValueFromFile(vf, ts, file);
+		}finally{
+			file.delete();
+		}
+	}
+	
+	public void testChunkedIO() throws IOException{
+		IValueFactory persistent = org.eclipse.imp.pdb.facts.impl.persistent.ValueFactory.getInstance();
+		
+		IList list = largeRelation(5000);
+		ISetWriter tuples = vf.setWriter();
+		IMapWriter entries = vf.mapWriter();
+		for(IValue element : list){
+			tuples.insert(element);
+			entries.put(vf.string("k" + ((ITuple) element).get(0)), element);
+		}
+		
+		IValue[] values = new IValue[]{list, tuples.done(), entries.done(), vf.list(testValues), vf.list(), vf.set(), vf.mapWriter().done()};
+		
+		for(IValue value : values){
+			for(IValueFactory factory : new IValueFactory[]{vf, persistent}){
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				new ChunkedBinaryWriter(value, out, 100, ts).serialize();
+				
+				IValue result = new ChunkedBinaryReader(factory, ts, ByteBuffer.wrap(out.toByteArray())).deserialize();
+				assertEquals(value.getType(), result.getType());
+				assertTrue(value.isEqual(result));
+			}
+		}
+		
+		try{
+			new ChunkedBinaryWriter(vf.integer(1), new ByteArrayOutputStream(), ts);
+			fail("chunked a value that is not a collection");
+		}catch(IllegalArgumentException e){
+			// expected
+		}
+		
+		try{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new ChunkedBinaryWriter(values[0], out, 100, ts).serialize();
+			new ChunkedBinaryReader(vf, ts, ByteBuffer.wrap(Arrays.copyOf(out.toByteArray(), out.size() / 2))).deserialize();
+			fail("read a truncated file");
+		}catch(IOException e){
+			// expected
+		}
+	}
+	
+	public void testSharingPolicies() throws IOException{
+		IListWriter elements = vf.listWriter();
+		for(int i = 0; i < 5000; i++){
+			elements.append(vf.tuple(vf.integer(i % 300), name("n" + (i % 100)), vf.string("s" + (i % 10))));
+		}
+		IValue dag = vf.constructor(True);
+		for(int i = 0; i < 16; i++){
+			dag = vf.constructor(And, dag, dag);
+		}
+		
+		IValue[] values = new IValue[]{elements.done(), dag, vf.list(testValues)};
+		SharingPolicy[] policies = new SharingPolicy[]{
+			SharingPolicy.MAXIMAL.withWindow(1),
+			SharingPolicy.MAXIMAL.withWindow(16),
+			SharingPolicy.IDENTITY.withWindow(7),
+			SharingPolicy.MAXIMAL.withKinds(SharingPolicy.STRINGS | SharingPolicy.NODES),
+			SharingPolicy.MAXIMAL.withMinimalSize(3),
+			SharingPolicy.MAXIMAL.hashConsed().withWindow(100)
+		};
+		
+		for(IValue value : values){
+			for(SharingPolicy policy : policies){
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				new BinaryWriter(value, out, policy, ts).serialize();
+				
+				IValue result = new BinaryReader(vf, ts, new ByteArrayInputStream(out.toByteArray())).deserialize();
+				assertTrue(policy.toString(), value.isEqual(result));
+			}
+		}
+		
+		BinaryWriter unbounded = new BinaryWriter(values[0], new ByteArrayOutputStream(), ts);
+		unbounded.serialize();
+		BinaryWriter windowed = new BinaryWriter(values[0], new ByteArrayOutputStream(), SharingPolicy.MAXIMAL.withWindow(64), ts);
+		windowed.serialize();
+		
+		SharingStatistics all = unbounded.getSharingStatistics();
+		SharingStatistics recent = windowed.getSharingStatistics();
+		assertEquals(0, all.getEvicted());
+		assertTrue(recent.getEvicted() > 0);
+		assertTrue(recent.getHits() > 0);
+		assertTrue(recent.getHits() < all.getHits());
+		assertEquals(all.getLookups(), all.getHits() + all.getStored());
+	}
+	
+	public void testBoundedStreamWriter() throws IOException{
+		IListWriter expected = vf.listWriter();
+		
+		File file = File.createTempFile("pdb", ".pbf");
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		try{
+			Type elementType = tf.tupleType(tf.integerType(), Name);
+			BinaryStreamWriter list = new BinaryStreamWriter(channel, tf.listType(elementType), SharingPolicy.MAXIMAL.withWindow(32), ts);
+			
+			for(IValue element : largeRelation(5000)){
+				list.append(element);
+				expected.append(element);
+			}
+			list.done();
+			
+			assertTrue(list.getSharingStatistics().getEvicted() > 0);
+		}finally{
+			channel.close();
+		}
+		
+		try{
+			IList result = expected.done();
+			assertTrue(result.isEqual(BinaryValueReader.readValueFromFile(vf, ts, file)));
+			
+			RandomAccessFile input = new RandomAccessFile(file, "r");
+			try{
+				FileChannel inputChannel = input.getChannel();
+				BinaryStreamReader reader = new BinaryStreamReader(vf, ts, inputChannel.map(FileChannel.MapMode.READ_ONLY, 0, inputChannel.size()));
+				for(IValue element : result){
+					assertTrue(element.isEqual(reader.next()));
+				}
+				assertFalse(reader.hasNext());
+			}finally{
+				input.close();
+			}
+		}finally{
+			file.delete();
+		}
+	}
+	
 	private final static String[] HEX = new String[]{"0","1","2","3","4","5","6","7","8","9","a","b","c","d","e","f"};
 	
 	// May be handy when debugging.
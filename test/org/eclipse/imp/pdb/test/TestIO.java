@@ -20,11 +20,14 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.net.URI;
 
 import junit.framework.TestCase;
 
+import org.eclipse.imp.pdb.facts.ISourceLocation;
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.exceptions.FactParseError;
 import org.eclipse.imp.pdb.facts.exceptions.FactTypeUseException;
 import org.eclipse.imp.pdb.facts.impl.reference.ValueFactory;
 import org.eclipse.imp.pdb.facts.io.SerializableValue;
@@ -174,5 +177,61 @@ public class TestIO extends TestCase {
 		}
     }
 
+	public void testStandardReaderLexing() throws IOException {
+		StandardTextReader reader = new StandardTextReader();
+
+		assertEquals(vf.integer(-42), reader.read(vf, new StringReader("-42")));
+		assertEquals(vf.integer("123456789012345678901234567890"), reader.read(vf, new StringReader("123456789012345678901234567890")));
+		assertEquals(vf.rational(-1, 3), reader.read(vf, new StringReader("-1r3")));
+		assertEquals(vf.real("1.5E3"), reader.read(vf, new StringReader("1.5E3")));
+
+		try {
+			reader.read(vf, new StringReader("1.2.3"));
+			fail("read a number with two dots");
+		} catch (FactParseError e) {
+			// expected
+		}
+
+		ISourceLocation loc = (ISourceLocation) reader.read(vf, new StringReader("|file:///a/b|(1,2,<3,4>,<5,6>)"));
+		assertEquals(vf.sourceLocation(vf.sourceLocation(URI.create("file:///a/b")), 1, 2, 3, 5, 4, 6), loc);
+
+		for (String invalid : new String[] { "|file:///a|(99999999999,2)", "|file:///a|(1,2147483648)", "|file:///a|(1.5,2)",
+				"|file:///a|(1,2,<3,4>,<5,4294967296>)", "|file:///a|(1,2,<3,4.0>,<5,6>)", "|file:///a|(1,2,3,4)" }) {
+			try {
+				reader.read(vf, new StringReader(invalid));
+				fail("read an invalid source location " + invalid);
+			} catch (FactParseError e) {
+				// expected
+			}
+		}
+
+		assertEquals(vf.datetime(2012, 1, 3, 10, 11, 12, 123, 1, 30), reader.read(vf, new StringReader("$2012-01-03T10:11:12.123+01:30$")));
+
+		// longer than the buffer of the reader, with escapes across its boundaries
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			builder.append(i % 7 == 0 ? "\"" : i % 11 == 0 ? "\\" : "ab c");
+		}
+		IValue string = vf.string(builder.toString());
+		StringWriter w = new StringWriter();
+		new StandardTextWriter().write(vf.list(string, vf.integer(1)), w);
+		assertEquals(vf.list(string, vf.integer(1)), reader.read(vf, new StringReader(w.toString())));
+	}
+
+	public void testStandardWriterDeepValue() throws IOException {
+		int depth = 100000;
+		IValue deep = vf.node("f");
+		for (int i = 0; i < depth; i++) {
+			deep = vf.node("f", deep);
+		}
+
+		StringWriter w = new StringWriter();
+		new StandardTextWriter().write(deep, w);
+		String result = w.toString();
+
+		assertEquals(5 * (depth + 1), result.length());
+		assertTrue(result.startsWith("\"f\"(\"f\"(") && result.endsWith("))))"));
+	}
+
 	
 }
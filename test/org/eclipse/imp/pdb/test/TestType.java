@@ -381,6 +381,33 @@ public class TestType extends TestCase {
       }
     }
   }
+
+	public void testMemoizedRelations() {
+		for (Type t1 : basic) {
+			for (Type t2 : allTypes) {
+				if (t1.isSubtypeOf(t2)) {
+					assertTrue(t1.lub(t2).equivalent(t2));
+					assertTrue(t1.glb(t2).equivalent(t1));
+				}
+			}
+		}
+
+		Type t1 = ft.listType(ft.integerType());
+		Type t2 = ft.setType(ft.tupleType(ft.realType(), ft.stringType()));
+		Type lub = t1.lub(t2);
+		Type glb = t1.glb(t2);
+		boolean subtype = t1.isSubtypeOf(t2);
+
+		// the memo tables are shared by all tests, so only look at what these calls add
+		long hits = ft.getMemoHits();
+		long misses = ft.getMemoMisses();
+		assertSame(lub, t1.lub(t2));
+		assertSame(glb, t1.glb(t2));
+		assertEquals(subtype, t1.isSubtypeOf(t2));
+		assertEquals(3, ft.getMemoHits() - hits);
+		assertEquals(0, ft.getMemoMisses() - misses);
+	}
+
 	public void testGetTypeDescriptor() {
 		int count = 0;
 		for (Type t1 : allTypes) {
@@ -20,6 +20,9 @@ import junit.framework.TestCase;
 import org.eclipse.imp.pdb.facts.IValue;
 import org.eclipse.imp.pdb.facts.exceptions.FactTypeDeclarationException;
 import org.eclipse.imp.pdb.facts.exceptions.FactTypeUseException;
+import org.eclipse.imp.pdb.facts.exceptions.RedeclaredAnnotationException;
+import org.eclipse.imp.pdb.facts.exceptions.RedeclaredConstructorException;
+import org.eclipse.imp.pdb.facts.exceptions.RedeclaredFieldNameException;
 import org.eclipse.imp.pdb.facts.impl.reference.ValueFactory;
 import org.eclipse.imp.pdb.facts.type.Type;
 import org.eclipse.imp.pdb.facts.type.TypeFactory;
@@ -396,6 +399,66 @@ public class TestTypeFactory extends TestCase {
 		}
 	}
 
+	public void testImportedDeclarations() {
+		TypeStore lib = new TypeStore();
+		TypeStore main = new TypeStore(lib);
+
+		assertNull(main.lookupAbstractDataType("Imported"));
+		assertTrue(main.lookupConstructors("imported").isEmpty());
+
+		// declarations in an imported store become visible to earlier lookups
+		Type adt = ft.abstractDataType(lib, "Imported");
+		Type cons = ft.constructor(lib, adt, "imported", ft.integerType());
+
+		assertSame(adt, main.lookupAbstractDataType("Imported"));
+		assertTrue(main.lookupConstructors("imported").contains(cons));
+		assertTrue(main.lookupConstructor(adt, "imported").contains(cons));
+		assertTrue(main.lookupAlternatives(adt).contains(cons));
+
+		main.unimportStores(lib);
+		assertNull(main.lookupAbstractDataType("Imported"));
+		assertTrue(main.lookupConstructors("imported").isEmpty());
+	}
+
+	public void testRepeatedDeclarations() {
+		TypeStore lib = new TypeStore();
+		TypeStore main = new TypeStore(lib);
+		Type adt = ft.abstractDataType(lib, "Repeated");
+		ft.constructor(lib, adt, "repeated", ft.integerType(), "x");
+		lib.declareAnnotation(adt, "note", ft.stringType());
+
+		// declarations check against the imports without consulting the index in between
+		for (int i = 0; i < 100; i++) {
+			ft.constructor(main, adt, "repeated" + i, ft.integerType(), "x");
+			main.declareAnnotation(adt, "note" + i, ft.integerType());
+		}
+
+		assertEquals(101, main.lookupAlternatives(adt).size());
+		assertEquals(ft.stringType(), main.getAnnotationType(adt, "note"));
+		assertEquals(ft.integerType(), main.getAnnotationType(adt, "note99"));
+
+		try {
+			ft.constructor(main, adt, "repeated", ft.integerType(), "y");
+			fail("should not overload a constructor of an imported store");
+		} catch (RedeclaredConstructorException e) {
+			// expected
+		}
+
+		try {
+			ft.constructor(main, adt, "other", ft.stringType(), "x");
+			fail("should not redeclare a field of an imported store");
+		} catch (RedeclaredFieldNameException e) {
+			// expected
+		}
+
+		try {
+			main.declareAnnotation(adt, "note", ft.integerType());
+			fail("should not redeclare an annotation of an imported store");
+		} catch (RedeclaredAnnotationException e) {
+			// expected
+		}
+	}
+
 	public void testListType() {
 		Type t1 = ft.listType(ft.integerType());
 		Type t2 = ft.listType(ft.integerType());
@@ -0,0 +1,280 @@
+/*******************************************************************************
+* Copyright (c) 2013 CWI
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*******************************************************************************/
+package org.eclipse.imp.pdb.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.imp.pdb.facts.IConstructor;
+import org.eclipse.imp.pdb.facts.IInteger;
+import org.eclipse.imp.pdb.facts.IString;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.fast.ValueFactory;
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeFactory;
+import org.eclipse.imp.pdb.facts.type.TypeReachability;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+import org.eclipse.imp.pdb.facts.visitors.BottomUpTransformer;
+import org.eclipse.imp.pdb.facts.visitors.BottomUpVisitor;
+import org.eclipse.imp.pdb.facts.visitors.IdentityVisitor;
+import org.eclipse.imp.pdb.facts.visitors.NullVisitor;
+import org.eclipse.imp.pdb.facts.visitors.ValueTraversal;
+
+public class TestVisitors extends TestCase {
+	private static TypeFactory tf = TypeFactory.getInstance();
+	private static IValueFactory vf = ValueFactory.getInstance();
+
+	private TypeStore ts;
+	private Type Expr;
+	private Type Stat;
+	private Type Name;
+	private Type Pos;
+	private Type lit;
+	private Type add;
+	private Type var;
+	private Type block;
+	private Type assign;
+	private Type name;
+	private Type pos;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TypeStore();
+		Expr = tf.abstractDataType(ts, "Expr");
+		Stat = tf.abstractDataType(ts, "Stat");
+		Name = tf.abstractDataType(ts, "Name");
+		Pos = tf.abstractDataType(ts, "Pos");
+		lit = tf.constructor(ts, Expr, "lit", tf.integerType());
+		add = tf.constructor(ts, Expr, "add", Expr, Expr);
+		var = tf.constructor(ts, Expr, "var", Name);
+		block = tf.constructor(ts, Expr, "block", tf.listType(Stat));
+		assign = tf.constructor(ts, Stat, "assign", Name, Expr);
+		name = tf.constructor(ts, Name, "name", tf.stringType());
+		pos = tf.constructor(ts, Pos, "pos", tf.integerType(), tf.integerType());
+	}
+
+	private IConstructor program() {
+		IValue x = vf.constructor(name, vf.string("x"));
+		IValue one = vf.constructor(lit, vf.integer(1));
+		IValue two = vf.constructor(lit, vf.integer(2));
+		IValue body = vf.list(vf.constructor(assign, x, vf.constructor(add, one, two)));
+
+		return vf.constructor(add, vf.constructor(block, body), vf.constructor(var, x));
+	}
+
+	public void testReachability() {
+		TypeReachability names = TypeReachability.of(ts, Name);
+
+		assertTrue(names.mayReach(Name));
+		assertTrue(names.mayReach(Expr));
+		assertTrue(names.mayReach(Stat));
+		assertTrue(names.mayReach(tf.listType(Stat)));
+		assertTrue(names.mayReach(tf.tupleType(tf.integerType(), Expr)));
+		assertTrue(names.mayReach(tf.valueType()));
+		assertTrue(names.mayReach(tf.nodeType()));
+
+		assertFalse(names.mayReach(Pos));
+		assertFalse(names.mayReach(tf.integerType()));
+		assertFalse(names.mayReach(tf.mapType(tf.stringType(), Pos)));
+		assertFalse(names.mayReach(tf.voidType()));
+
+		TypeReachability literals = TypeReachability.of(ts, lit);
+		assertTrue(literals.mayReach(Stat));
+		assertFalse(literals.mayReach(Name));
+	}
+
+	public void testReachabilityFollowsDeclarations() {
+		TypeReachability names = TypeReachability.of(ts, Name);
+		assertFalse(names.mayReach(Pos));
+
+		tf.constructor(ts, Pos, "named", Name);
+		assertTrue(names.mayReach(Pos));
+
+		TypeStore other = new TypeStore(ts);
+		assertTrue(TypeReachability.of(other, Name).mayReach(Expr));
+		assertTrue(TypeReachability.of(new TypeStore(), Name).mayReach(Expr));
+	}
+
+	public void testPrunedVisitor() {
+		final int[] integers = new int[1];
+		final int[] strings = new int[1];
+
+		NullVisitor<IValue, RuntimeException> counter = new NullVisitor<IValue, RuntimeException>() {
+			@Override
+			public IValue visitInteger(IInteger o) {
+				integers[0]++;
+				return null;
+			}
+
+			@Override
+			public IValue visitString(IString o) {
+				strings[0]++;
+				return null;
+			}
+		};
+
+		IConstructor program = program();
+
+		program.accept(new BottomUpVisitor<IValue, RuntimeException>(counter, vf));
+		assertEquals(2, integers[0]);
+		assertEquals(2, strings[0]);
+
+		integers[0] = 0;
+		strings[0] = 0;
+
+		program.accept(new BottomUpVisitor<IValue, RuntimeException>(counter, vf, TypeReachability.of(ts, tf.stringType())));
+		assertEquals(0, integers[0]);
+		assertEquals(2, strings[0]);
+	}
+
+	public void testPrunedTransformer() {
+		IdentityVisitor<RuntimeException> rename = new IdentityVisitor<RuntimeException>() {
+			@Override
+			public IValue visitConstructor(IConstructor o) {
+				if (o.getConstructorType() == name) {
+					return o.set(0, vf.string("y"));
+				}
+				return o;
+			}
+		};
+
+		IConstructor program = program();
+		IValue full = program.accept(new BottomUpTransformer<RuntimeException>(rename, vf));
+		IValue pruned = program.accept(new BottomUpTransformer<RuntimeException>(rename, vf, TypeReachability.of(ts, Name)));
+
+		assertFalse(full.isEqual(program));
+		assertTrue(pruned.isEqual(full));
+	}
+
+	public void testTransformerPreservesIdentity() {
+		IdentityVisitor<RuntimeException> three = new IdentityVisitor<RuntimeException>() {
+			@Override
+			public IValue visitInteger(IInteger o) {
+				return o.intValue() == 1 ? vf.integer(3) : o;
+			}
+		};
+
+		IConstructor program = program();
+		IValue same = program.accept(new BottomUpTransformer<RuntimeException>(new IdentityVisitor<RuntimeException>() { }, vf));
+		assertSame(program, same);
+
+		IConstructor changed = (IConstructor) program.accept(new BottomUpTransformer<RuntimeException>(three, vf));
+		assertFalse(changed.isEqual(program));
+		assertTrue(program.get(0) != changed.get(0));
+		assertSame(program.get(1), changed.get(1));
+	}
+
+	public void testMemoizedTransformerVisitsSharedTermsOnce() {
+		final int[] visits = new int[1];
+
+		IdentityVisitor<RuntimeException> counter = new IdentityVisitor<RuntimeException>() {
+			@Override
+			public IValue visitConstructor(IConstructor o) {
+				visits[0]++;
+				return o.getConstructorType() == lit ? vf.constructor(lit, vf.integer(0)) : o;
+			}
+		};
+
+		IValue dag = vf.constructor(lit, vf.integer(1));
+		for (int i = 0; i < 40; i++) {
+			dag = vf.constructor(add, dag, dag);
+		}
+
+		IValue result = dag.accept(new BottomUpTransformer<RuntimeException>(counter, vf, null, true));
+		assertEquals(41, visits[0]);
+
+		IValue leaf = result;
+		while (((IConstructor) leaf).getConstructorType() == add) {
+			assertSame(((IConstructor) leaf).get(0), ((IConstructor) leaf).get(1));
+			leaf = ((IConstructor) leaf).get(0);
+		}
+		assertTrue(leaf.isEqual(vf.constructor(lit, vf.integer(0))));
+	}
+
+	public void testTraversalOrder() {
+		final List<IValue> pre = new ArrayList<>();
+		final List<IValue> post = new ArrayList<>();
+
+		IValue one = vf.integer(1);
+		IValue two = vf.integer(2);
+		IValue three = vf.integer(3);
+		IValue tuple = vf.tuple(two, three);
+		IValue list = vf.list(one, tuple);
+
+		boolean completed = new ValueTraversal<RuntimeException>() {
+			@Override
+			protected boolean enter(IValue value) {
+				pre.add(value);
+				return true;
+			}
+
+			@Override
+			protected void leave(IValue value) {
+				post.add(value);
+			}
+		}.traverse(list);
+
+		assertTrue(completed);
+		assertEquals(5, pre.size());
+		assertSame(list, pre.get(0));
+		assertSame(one, pre.get(1));
+		assertSame(tuple, pre.get(2));
+		assertSame(two, pre.get(3));
+		assertSame(three, pre.get(4));
+
+		assertEquals(5, post.size());
+		assertSame(one, post.get(0));
+		assertSame(two, post.get(1));
+		assertSame(three, post.get(2));
+		assertSame(tuple, post.get(3));
+		assertSame(list, post.get(4));
+	}
+
+	public void testTraversalSkipsAndStops() {
+		final int[] strings = new int[1];
+
+		ValueTraversal<RuntimeException> firstString = new ValueTraversal<RuntimeException>() {
+			@Override
+			protected boolean enter(IValue value) {
+				if (value.getType().isString()) {
+					strings[0]++;
+					stop();
+				}
+				// nothing to find in the literals
+				return !(value instanceof IConstructor) || ((IConstructor) value).getConstructorType() != lit;
+			}
+		};
+
+		assertFalse(firstString.traverse(program()));
+		assertEquals(1, strings[0]);
+		assertTrue(firstString.traverse(vf.constructor(lit, vf.integer(1))));
+	}
+
+	public void testDeepTraversal() {
+		IValue deep = vf.constructor(lit, vf.integer(0));
+		for (int i = 0; i < 100000; i++) {
+			deep = vf.constructor(add, deep, vf.constructor(lit, vf.integer(i)));
+		}
+
+		final int[] integers = new int[1];
+		new ValueTraversal<RuntimeException>() {
+			@Override
+			protected void leave(IValue value) {
+				if (value.getType().isInteger()) {
+					integers[0]++;
+				}
+			}
+		}.traverse(deep);
+
+		assertEquals(100001, integers[0]);
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+* Copyright (c) 2013 Centrum Wiskunde en Informatica (CWI)
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*******************************************************************************/
+package org.eclipse.imp.pdb.test.benchmark;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.eclipse.imp.pdb.facts.impl.util.BigDecimalCalculations;
+
+/**
+ * Times the arbitrary precision functions of BigDecimalCalculations for
+ * precisions from 50 up to 10,000 digits. Run it as a Java application; the
+ * constants are measured on their first computation at each precision, before
+ * they are served from the cache.
+ */
+public class BigDecimalCalculationsBenchmark {
+	private static final int[] PRECISIONS = { 50, 100, 500, 1000, 2000, 5000, 10000 };
+	
+	private static final BigDecimal X = new BigDecimal("1.2345678901234567890");
+	private static final BigDecimal LARGE_X = new BigDecimal("98765.4321");
+	
+	private interface Function {
+		BigDecimal apply(int precision);
+	}
+	
+	public static void main(String[] args) {
+		System.out.println(String.format("%-12s %s", "function", header()));
+		
+		run("pi", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.pi(precision); }
+		});
+		run("e", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.e(precision); }
+		});
+		run("ln2", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.ln2(precision); }
+		});
+		run("exp", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.exp(X, precision); }
+		});
+		run("exp(-large)", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.exp(LARGE_X.negate().movePointLeft(2), precision); }
+		});
+		run("ln", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.ln(LARGE_X, precision); }
+		});
+		run("sin", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.sin(LARGE_X, precision); }
+		});
+		run("cos", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.cos(X, precision); }
+		});
+		run("tan", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.tan(X, precision); }
+		});
+		run("sqrt", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.sqrt(LARGE_X, precision); }
+		});
+		run("intRoot(7)", new Function() {
+			public BigDecimal apply(int precision) { return BigDecimalCalculations.intRoot(LARGE_X, BigInteger.valueOf(7), precision); }
+		});
+	}
+	
+	private static String header() {
+		StringBuilder b = new StringBuilder();
+		for (int precision : PRECISIONS) {
+			b.append(String.format("%10d", precision));
+		}
+		return b.append("  (ms)").toString();
+	}
+	
+	private static void run(String name, Function f) {
+		StringBuilder b = new StringBuilder(String.format("%-12s ", name));
+		for (int precision : PRECISIONS) {
+			long start = System.nanoTime();
+			f.apply(precision);
+			long elapsed = System.nanoTime() - start;
+			b.append(String.format("%10.1f", elapsed / 1e6));
+		}
+		System.out.println(b);
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+* Copyright (c) 2013 Centrum Wiskunde en Informatica (CWI)
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*******************************************************************************/
+package org.eclipse.imp.pdb.test.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Random;
+
+import org.eclipse.imp.pdb.facts.IListWriter;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.fast.ValueFactory;
+import org.eclipse.imp.pdb.facts.io.BinaryValueReader;
+import org.eclipse.imp.pdb.facts.io.BinaryValueWriter;
+import org.eclipse.imp.pdb.facts.io.binary.BinaryReader;
+import org.eclipse.imp.pdb.facts.io.binary.BinaryWriter;
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeFactory;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Compares writing and reading a large value in the binary format through
+ * buffered streams with doing so through a file channel and a memory mapped
+ * buffer, and with writing and reading a block compressed file. The value is a list of small constructor trees with integers,
+ * strings and source locations. Run it as a Java application; the optional
+ * argument is the number of elements of the list.
+ */
+public class BinaryIOBenchmark {
+	private static final int DEFAULT_SIZE = 500000;
+	private static final int ROUNDS = 10;
+
+	private static final TypeFactory tf = TypeFactory.getInstance();
+	private static final IValueFactory vf = ValueFactory.getInstance();
+	private static final TypeStore ts = new TypeStore();
+
+	private static final Type Expr = tf.abstractDataType(ts, "Expr");
+	private static final Type lit = tf.constructor(ts, Expr, "lit", tf.integerType());
+	private static final Type var = tf.constructor(ts, Expr, "var", tf.stringType(), tf.sourceLocationType());
+	private static final Type add = tf.constructor(ts, Expr, "add", Expr, Expr);
+
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+		IValue value = generate(size);
+		File file = File.createTempFile("benchmark", ".pbf");
+		file.deleteOnExit();
+		File compressed = File.createTempFile("benchmark", ".pbz");
+		compressed.deleteOnExit();
+
+		System.out.println("round   stream write   channel write   stream read   mapped read   compressed write   compressed read (ms, " + size + " elements)");
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long streamWrite = writeStream(value, file);
+			long channelWrite = writeChannel(value, file);
+			long streamRead = readStream(file);
+			long mappedRead = readMapped(file);
+			long compressedWrite = writeCompressed(value, compressed);
+			long compressedRead = readCompressed(compressed);
+
+			System.out.println(String.format("%5d %14.1f %15.1f %13.1f %13.1f %18.1f %17.1f", round,
+					streamWrite / 1e6, channelWrite / 1e6, streamRead / 1e6, mappedRead / 1e6,
+					compressedWrite / 1e6, compressedRead / 1e6));
+		}
+
+		System.out.println(String.format("file size: %d bytes, compressed: %d bytes", file.length(), compressed.length()));
+	}
+
+	private static IValue generate(int size) {
+		Random random = new Random(42);
+		IListWriter writer = vf.listWriter();
+
+		for (int i = 0; i < size; i++) {
+			IValue left = vf.constructor(lit, vf.integer(random.nextInt()));
+			IValue right = vf.constructor(var, vf.string("x" + random.nextInt(1000)),
+					vf.sourceLocation(vf.sourceLocation("/src/" + random.nextInt(100)), random.nextInt(10000), 5));
+			writer.append(vf.constructor(add, left, right));
+		}
+
+		return writer.done();
+	}
+
+	private static long writeStream(IValue value, File file) throws IOException {
+		long start = System.nanoTime();
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			new BinaryWriter(value, out, false, ts).serialize();
+		} finally {
+			out.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long writeChannel(IValue value, File file) throws IOException {
+		long start = System.nanoTime();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			new BinaryWriter(value, out.getChannel(), false, ts).serialize();
+		} finally {
+			out.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long readStream(File file) throws IOException {
+		long start = System.nanoTime();
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			new BinaryReader(vf, ts, in).deserialize();
+		} finally {
+			in.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long readMapped(File file) throws IOException {
+		long start = System.nanoTime();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			new BinaryReader(vf, ts, buffer).deserialize();
+		} finally {
+			raf.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long writeCompressed(IValue value, File file) throws IOException {
+		long start = System.nanoTime();
+		BinaryValueWriter.writeCompressedValueToFile(value, file, ts);
+		return System.nanoTime() - start;
+	}
+
+	private static long readCompressed(File file) throws IOException {
+		long start = System.nanoTime();
+		BinaryValueReader.readValueFromFile(vf, ts, file);
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+* Copyright (c) 2013 Centrum Wiskunde en Informatica (CWI)
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*******************************************************************************/
+package org.eclipse.imp.pdb.test.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.eclipse.imp.pdb.facts.IListWriter;
+import org.eclipse.imp.pdb.facts.IMapWriter;
+import org.eclipse.imp.pdb.facts.ISetWriter;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.fast.ValueFactory;
+import org.eclipse.imp.pdb.facts.io.binary.BinaryReader;
+import org.eclipse.imp.pdb.facts.io.binary.BinaryWriter;
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeFactory;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Measures writing and reading values in the binary format for every kind of
+ * value: collections of each kind of atomic value, tuples, relations, nodes and
+ * constructors. Each value is written and read a number of times, and the
+ * fastest round is reported. Run it as a Java application; the optional
+ * argument is the number of elements of each collection.
+ */
+public class BinaryWriterBenchmark {
+	private static final int DEFAULT_SIZE = 200000;
+	private static final int ROUNDS = 10;
+
+	private static final TypeFactory tf = TypeFactory.getInstance();
+	private static final IValueFactory vf = ValueFactory.getInstance();
+	private static final TypeStore ts = new TypeStore();
+
+	private static final Type Expr = tf.abstractDataType(ts, "Expr");
+	private static final Type lit = tf.constructor(ts, Expr, "lit", tf.integerType());
+	private static final Type var = tf.constructor(ts, Expr, "var", tf.stringType());
+	private static final Type add = tf.constructor(ts, Expr, "add", Expr, Expr);
+
+	private static final String[] KINDS = new String[]{
+		"list[int]", "list[str]", "set[str]", "list[real]", "list[rat]", "list[bool]", "list[loc]",
+		"list[datetime]", "map[str,int]", "list[tuple[int,str]]", "rel[loc,loc]", "list[node]", "list[Expr]"
+	};
+
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+
+		System.out.println("kind                      write (ms)   read (ms)        bytes (" + size + " elements)");
+
+		for (int kind = 0; kind < KINDS.length; kind++) {
+			IValue value = generate(kind, size, new Random(42));
+			long write = Long.MAX_VALUE;
+			long read = Long.MAX_VALUE;
+			byte[] data = null;
+
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				new BinaryWriter(value, out, ts).serialize();
+				data = out.toByteArray();
+				write = Math.min(write, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				new BinaryReader(vf, ts, new ByteArrayInputStream(data)).deserialize();
+				read = Math.min(read, System.nanoTime() - start);
+			}
+
+			System.out.println(String.format("%-22s %13.1f %11.1f %12d", KINDS[kind], write / 1e6, read / 1e6, data.length));
+		}
+	}
+
+	private static IValue generate(int kind, int size, Random random) {
+		if (kind == 2) {
+			ISetWriter writer = vf.setWriter();
+			for (int i = 0; i < size; i++) {
+				writer.insert(vf.string("s" + i));
+			}
+			return writer.done();
+		}
+		if (kind == 8) {
+			IMapWriter writer = vf.mapWriter();
+			for (int i = 0; i < size; i++) {
+				writer.put(vf.string("k" + i), vf.integer(random.nextInt(1000)));
+			}
+			return writer.done();
+		}
+		if (kind == 10) {
+			ISetWriter writer = vf.setWriter();
+			for (int i = 0; i < size; i++) {
+				writer.insert(vf.tuple(location(random), location(random)));
+			}
+			return writer.done();
+		}
+
+		IListWriter writer = vf.listWriter();
+		for (int i = 0; i < size; i++) {
+			writer.append(element(kind, i, random));
+		}
+		return writer.done();
+	}
+
+	private static IValue element(int kind, int i, Random random) {
+		switch (kind) {
+		case 0:
+			return vf.integer(random.nextInt());
+		case 1:
+			return vf.string("s" + random.nextInt(10000));
+		case 3:
+			return vf.real(random.nextDouble());
+		case 4:
+			return vf.rational(random.nextInt(1000), 1 + random.nextInt(1000));
+		case 5:
+			return vf.bool(random.nextBoolean());
+		case 6:
+			return location(random);
+		case 7:
+			return vf.datetime(1000L * random.nextInt());
+		case 9:
+			return vf.tuple(vf.integer(i), vf.string("s" + random.nextInt(1000)));
+		case 11:
+			return vf.node("f", vf.integer(random.nextInt(1000)), vf.string("s" + random.nextInt(1000)));
+		default:
+			IValue left = vf.constructor(lit, vf.integer(random.nextInt()));
+			IValue right = vf.constructor(var, vf.string("x" + random.nextInt(1000)));
+			return vf.constructor(add, left, right);
+		}
+	}
+
+	private static IValue location(Random random) {
+		return vf.sourceLocation(vf.sourceLocation("/src/" + random.nextInt(100)), random.nextInt(10000), 5);
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+* Copyright (c) 2013 Centrum Wiskunde en Informatica (CWI)
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*******************************************************************************/
+package org.eclipse.imp.pdb.test.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.eclipse.imp.pdb.facts.IList;
+import org.eclipse.imp.pdb.facts.IListWriter;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.fast.ValueFactory;
+import org.eclipse.imp.pdb.facts.io.BinaryValueReader;
+import org.eclipse.imp.pdb.facts.io.BinaryValueWriter;
+import org.eclipse.imp.pdb.facts.io.StandardTextReader;
+import org.eclipse.imp.pdb.facts.io.StandardTextWriter;
+import org.eclipse.imp.pdb.facts.type.TypeFactory;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Measures bulk parsing of date, time and datetime values, through the
+ * StandardTextReader and the BinaryReader, as well as direct construction
+ * through the value factory. Run it as a Java application; the optional
+ * argument is the number of values per kind.
+ */
+public class DateTimeParsingBenchmark {
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		IValueFactory vf = ValueFactory.getInstance();
+		TypeFactory tf = TypeFactory.getInstance();
+		TypeStore store = new TypeStore();
+
+		IList values = generate(vf, count);
+
+		StringWriter text = new StringWriter();
+		new StandardTextWriter().write(values, text);
+		String textInput = text.toString();
+
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		new BinaryValueWriter().write(values, binary);
+		byte[] binaryInput = binary.toByteArray();
+
+		System.out.println(String.format("%d values, %d chars of text, %d bytes of binary", values.length(), textInput.length(), binaryInput.length));
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			IValue fromText = new StandardTextReader().read(vf, store, tf.valueType(), new StringReader(textInput));
+			long textTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			IValue fromBinary = new BinaryValueReader().read(vf, store, tf.valueType(), new ByteArrayInputStream(binaryInput));
+			long binaryTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			generate(vf, count);
+			long constructionTime = System.nanoTime() - start;
+
+			if (!fromText.isEqual(values) || !fromBinary.isEqual(values)) {
+				throw new AssertionError("values did not survive the round trip");
+			}
+
+			System.out.println(String.format("round %2d: text %8.1f ms, binary %8.1f ms, construction %8.1f ms", round, textTime / 1e6, binaryTime / 1e6, constructionTime / 1e6));
+		}
+	}
+
+	private static IList generate(IValueFactory vf, int count) {
+		Random random = new Random(42);
+		IListWriter w = vf.listWriter();
+
+		for (int i = 0; i < count; i++) {
+			int year = 1900 + random.nextInt(200);
+			int month = 1 + random.nextInt(12);
+			int day = 1 + random.nextInt(28);
+			int hour = random.nextInt(24);
+			int minute = random.nextInt(60);
+			int second = random.nextInt(60);
+			int millis = random.nextInt(1000);
+			// the text format does not round trip negative offsets, so we stick to positive ones
+			int offsetHours = random.nextInt(13);
+			int offsetMinutes = random.nextInt(2) * 30;
+
+			w.append(vf.date(year, month, day));
+			w.append(vf.time(hour, minute, second, millis, offsetHours, offsetMinutes));
+			w.append(vf.datetime(year, month, day, hour, minute, second, millis, offsetHours, offsetMinutes));
+		}
+
+		return w.done();
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+* Copyright (c) 2013 Centrum Wiskunde en Informatica (CWI)
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*******************************************************************************/
+package org.eclipse.imp.pdb.test.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import org.eclipse.imp.pdb.facts.IListWriter;
+import org.eclipse.imp.pdb.facts.IMapWriter;
+import org.eclipse.imp.pdb.facts.IValue;
+import org.eclipse.imp.pdb.facts.IValueFactory;
+import org.eclipse.imp.pdb.facts.impl.fast.ValueFactory;
+import org.eclipse.imp.pdb.facts.io.StandardTextReader;
+import org.eclipse.imp.pdb.facts.io.StandardTextWriter;
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeFactory;
+import org.eclipse.imp.pdb.facts.type.TypeStore;
+
+/**
+ * Measures reading a large text dump, as written by the StandardTextWriter,
+ * with the StandardTextReader, from a string and from a file. The value is a
+ * list of facts: constructors with integers, strings, source locations and
+ * reals, sets of those, and maps. Run it as a Java application; the optional
+ * argument is the number of facts.
+ */
+public class TextReaderBenchmark {
+	private static final int DEFAULT_SIZE = 200000;
+	private static final int ROUNDS = 10;
+
+	private static final TypeFactory tf = TypeFactory.getInstance();
+	private static final IValueFactory vf = ValueFactory.getInstance();
+	private static final TypeStore ts = new TypeStore();
+
+	private static final Type Fact = tf.abstractDataType(ts, "Fact");
+	private static final Type decl = tf.constructor(ts, Fact, "decl", tf.stringType(), tf.sourceLocationType(), tf.integerType());
+	private static final Type metric = tf.constructor(ts, Fact, "metric", tf.stringType(), tf.realType(), tf.rationalType());
+	private static final Type uses = tf.constructor(ts, Fact, "uses", tf.setType(tf.sourceLocationType()), tf.mapType(tf.stringType(), tf.integerType()));
+
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+		IValue value = generate(size);
+
+		StringWriter text = new StringWriter();
+		new StandardTextWriter().write(value, text);
+		String input = text.toString();
+
+		File file = File.createTempFile("benchmark", ".pdb");
+		file.deleteOnExit();
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			out.write(input);
+		} finally {
+			out.close();
+		}
+
+		System.out.println(String.format("%d facts, %d chars of text", size, input.length()));
+		System.out.println("round   string read (ms)   MB/s   file read (ms)   MB/s");
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long fromString = read(new StringReader(input));
+			long fromFile = read(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+			System.out.println(String.format("%5d %18.1f %6.1f %16.1f %6.1f", round,
+					fromString / 1e6, throughput(input.length(), fromString),
+					fromFile / 1e6, throughput(input.length(), fromFile)));
+		}
+	}
+
+	private static long read(Reader reader) throws IOException {
+		long start = System.nanoTime();
+		try {
+			new StandardTextReader().read(vf, ts, tf.valueType(), reader);
+		} finally {
+			reader.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static double throughput(int chars, long nanos) {
+		return chars / 1e6 / (nanos / 1e9);
+	}
+
+	private static IValue generate(int size) {
+		Random random = new Random(42);
+		IListWriter writer = vf.listWriter();
+
+		for (int i = 0; i < size; i++) {
+			String name = "name" + random.nextInt(10000);
+
+			switch (i % 3) {
+			case 0:
+				writer.append(vf.constructor(decl, vf.string(name), location(random), vf.integer(random.nextInt())));
+				break;
+			case 1:
+				writer.append(vf.constructor(metric, vf.string(name), vf.real(random.nextDouble()),
+						vf.rational(random.nextInt(1000), 1 + random.nextInt(1000))));
+				break;
+			default:
+				IMapWriter counts = vf.mapWriter();
+				for (int j = 0; j < 3; j++) {
+					counts.put(vf.string("k" + random.nextInt(100)), vf.integer(random.nextInt(100)));
+				}
+				writer.append(vf.constructor(uses, vf.set(location(random), location(random)), counts.done()));
+			}
+		}
+
+		return writer.done();
+	}
+
+	private static IValue location(Random random) {
+		int line = random.nextInt(1000);
+		return vf.sourceLocation(vf.sourceLocation("/src/" + random.nextInt(100) + ".java"),
+				random.nextInt(100000), random.nextInt(100), line, line + 1, random.nextInt(80), random.nextInt(80));
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+* Copyright (c) 2013 Centrum Wiskunde en Informatica (CWI)
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*******************************************************************************/
+package org.eclipse.imp.pdb.test.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.imp.pdb.facts.type.Type;
+import org.eclipse.imp.pdb.facts.type.TypeFactory;
+
+/**
+ * Measures the throughput of type construction in the TypeFactory with an
+ * increasing number of threads. Every thread builds the same mix of list, set,
+ * map, tuple and relation types over a small pool of element types, which
+ * mirrors what value constructors do on their hot paths. Run it as a Java
+ * application; pass -Dorg.eclipse.imp.pdb.facts.type.weakTypeCache=true to
+ * measure the weak canonicalization table.
+ */
+public class TypeFactoryBenchmark {
+	private static final int OPERATIONS = 2000000;
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+	private static final int ROUNDS = 5;
+
+	private static final TypeFactory tf = TypeFactory.getInstance();
+
+	private static final Type[] ELEMENTS = {
+		tf.integerType(), tf.stringType(), tf.boolType(), tf.realType(),
+		tf.sourceLocationType(), tf.valueType(), tf.numberType(), tf.dateTimeType()
+	};
+
+	public static void main(String[] args) throws InterruptedException {
+		System.out.println("threads   ms/round   Mops/s (per round of " + OPERATIONS + " constructions per thread)");
+
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int threads : THREADS) {
+				long elapsed = run(threads);
+				double mops = ((double) threads * OPERATIONS) / (elapsed / 1e9) / 1e6;
+				System.out.println(String.format("%7d %10.1f %8.2f", threads, elapsed / 1e6, mops));
+			}
+		}
+	}
+
+	private static long run(int threads) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			final int seed = t;
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					construct(seed);
+					done.countDown();
+				}
+			}.start();
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - begin;
+	}
+
+	private static void construct(int seed) {
+		int sink = 0;
+
+		for (int i = 0; i < OPERATIONS; i++) {
+			Type a = ELEMENTS[(i + seed) & 7];
+			Type b = ELEMENTS[(i >>> 3) & 7];
+			Type result;
+
+			switch (i % 5) {
+			case 0: result = tf.listType(a); break;
+			case 1: result = tf.setType(a); break;
+			case 2: result = tf.mapType(a, b); break;
+			case 3: result = tf.tupleType(a, b); break;
+			default: result = tf.relType(a, b); break;
+			}
+
+			sink += result.hashCode();
+		}
+
+		if (sink == 42) {
+			System.out.println(sink);
+		}
+	}
+}